@@ -0,0 +1,448 @@
+package de.proteinms.xtandemparser.cli;
+
+import de.proteinms.xtandemparser.parser.XTandemFilter;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Command line tool summarising and converting X!Tandem files without GUI.
+ * The files, or all the xml files found in the given directories, are parsed
+ * in parallel and written as PSM tables, protein tables, MGF files and run
+ * statistics. Run without arguments for the list of options.
+ */
+public class XTandemCLI {
+
+    /**
+     * The usage of the tool.
+     */
+    private static final String USAGE = "Usage: java -cp xtandem-parser.jar de.proteinms.xtandemparser.cli.XTandemCLI [options] <file or directory>...\n"
+            + "\n"
+            + "Outputs (default: --psms --proteins --stats):\n"
+            + "  --psms                       write <name>.psms.txt, one line per PSM\n"
+            + "  --proteins                   write <name>.proteins.txt, one line per protein\n"
+            + "  --mgf                        write <name>.mgf with the embedded spectra\n"
+            + "  --stats                      print the run statistics, and write them to\n"
+            + "                               statistics.txt in the output directory if given\n"
+            + "\n"
+            + "Options:\n"
+            + "  -o, --output <directory>     the output directory, default next to each file\n"
+            + "  -t, --threads <number>       the number of files parsed in parallel,\n"
+            + "                               default the number of processors\n"
+            + "  --skip-details               only parse the identifiers, sequences,\n"
+            + "                               modifications and e-values (no --mgf)\n"
+            + "  --mapped                     memory map the files and read them with the\n"
+            + "                               byte level tokenizer, faster on large files\n"
+            + "                               up to 2 GB, larger files being read with the\n"
+            + "                               standard parser, the spectra being read when\n"
+            + "                               written\n"
+            + "  --salvage                    keep the complete model groups of truncated\n"
+            + "                               files and report where the parsing stopped,\n"
+            + "                               reading the files with the standard parser\n"
+            + "\n"
+            + "Filters:\n"
+            + "  --max-spectrum-expect <e>    the maximal spectrum e-value\n"
+            + "  --charges <z>[,<z>...]       the accepted precursor charges\n"
+            + "  --max-expect <e>             the maximal PSM e-value\n"
+            + "  --min-hyperscore <h>         the minimal PSM hyperscore\n"
+            + "  --max-delta <d>              the maximal absolute PSM mass delta\n"
+            + "  --max-missed-cleavages <n>   the maximal number of missed cleavages\n"
+            + "  --protein <regex>            a pattern the protein label has to contain\n"
+            + "  --max-rank <n>               the number of best ranked PSMs kept per spectrum\n";
+    /**
+     * The files to process.
+     */
+    private final ArrayList<File> iFiles = new ArrayList<File>();
+    /**
+     * The output directory, null to write next to the input files.
+     */
+    private File iOutputDirectory = null;
+    /**
+     * The number of files parsed in parallel.
+     */
+    private int iThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * True if the details are skipped while parsing.
+     */
+    private boolean iSkipDetails = false;
+    /**
+     * True if the files are memory mapped and read by the byte level
+     * tokenizer.
+     */
+    private boolean iMapped = false;
+    /**
+     * True if the complete groups of truncated files are kept.
+     */
+    private boolean iSalvage = false;
+    /**
+     * True if the PSM tables are written.
+     */
+    private boolean iPsms = false;
+    /**
+     * True if the protein tables are written.
+     */
+    private boolean iProteins = false;
+    /**
+     * True if the MGF files are written.
+     */
+    private boolean iMgf = false;
+    /**
+     * True if the statistics are written.
+     */
+    private boolean iStatistics = false;
+    /**
+     * The filter applied while parsing, null if no filter is set.
+     */
+    private XTandemFilter iFilter = null;
+
+    /**
+     * Constructor for a tool run with the given arguments.
+     *
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    public XTandemCLI(String[] args) {
+        parseArguments(args);
+    }
+
+    /**
+     * Runs the tool.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || Arrays.asList(args).contains("-h") || Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        XTandemCLI cli;
+        try {
+            cli = new XTandemCLI(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        if (!cli.run()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Processes all the files.
+     *
+     * @return true if all the files were processed
+     */
+    public boolean run() {
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(iThreads, Math.max(1, iFiles.size())));
+        ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+        for (final File file : iFiles) {
+            results.add(pool.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return process(file);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        boolean success = true;
+        ArrayList<String> statistics = new ArrayList<String>();
+        for (int i = 0; i < iFiles.size(); i++) {
+            try {
+                statistics.add(results.get(i).get());
+            } catch (ExecutionException e) {
+                success = false;
+                System.err.println("Error while processing " + iFiles.get(i).getPath() + ": " + e.getCause());
+                e.getCause().printStackTrace();
+            } catch (InterruptedException e) {
+                success = false;
+                e.printStackTrace();
+            }
+        }
+
+        if (iStatistics) {
+            System.out.println(XTandemExporter.STATISTICS_HEADER);
+            for (String line : statistics) {
+                System.out.println(line);
+            }
+            if (iOutputDirectory != null) {
+                try {
+                    Writer writer = new BufferedWriter(new FileWriter(new File(iOutputDirectory, "statistics.txt")));
+                    try {
+                        writer.write(XTandemExporter.STATISTICS_HEADER + "\n");
+                        for (String line : statistics) {
+                            writer.write(line + "\n");
+                        }
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    success = false;
+                    e.printStackTrace();
+                }
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Parses the given file and writes the selected outputs.
+     *
+     * @param aFile the X!Tandem file
+     * @return the statistics of the file
+     * @throws Exception if the file could not be parsed or the outputs could
+     * not be written
+     */
+    private String process(File aFile) throws Exception {
+
+        long start = System.currentTimeMillis();
+        XTandemParserOptions options = new XTandemParserOptions(iSkipDetails, iFilter);
+        options.setMapped(iMapped);
+        options.setLazySupportData(true);
+        options.setSalvage(iSalvage);
+        XTandemFile xTandemFile = new XTandemFile(aFile, options);
+        long parsingTime = System.currentTimeMillis() - start;
+        if (iSalvage && !xTandemFile.getSalvageReport().isComplete()) {
+            System.err.println("Salvaged " + aFile.getPath() + ": " + xTandemFile.getSalvageReport());
+        }
+
+        try {
+            XTandemExporter exporter = new XTandemExporter(xTandemFile, aFile.getName(), !iSkipDetails);
+            String name = aFile.getName();
+            if (name.toLowerCase().endsWith(".xml")) {
+                name = name.substring(0, name.length() - ".xml".length());
+            }
+            File directory = iOutputDirectory != null ? iOutputDirectory : aFile.getAbsoluteFile().getParentFile();
+
+            if (iPsms) {
+                Writer writer = new BufferedWriter(new FileWriter(new File(directory, name + ".psms.txt")));
+                try {
+                    exporter.writePsms(writer);
+                } finally {
+                    writer.close();
+                }
+            }
+            if (iProteins) {
+                Writer writer = new BufferedWriter(new FileWriter(new File(directory, name + ".proteins.txt")));
+                try {
+                    exporter.writeProteins(writer);
+                } finally {
+                    writer.close();
+                }
+            }
+            if (iMgf) {
+                Writer writer = new BufferedWriter(new FileWriter(new File(directory, name + ".mgf")));
+                try {
+                    exporter.writeMgf(writer);
+                } finally {
+                    writer.close();
+                }
+            }
+            return iStatistics ? exporter.getStatistics(parsingTime) : null;
+        } finally {
+            xTandemFile.close();
+        }
+    }
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    private void parseArguments(String[] args) {
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--psms")) {
+                iPsms = true;
+            } else if (arg.equals("--proteins")) {
+                iProteins = true;
+            } else if (arg.equals("--mgf")) {
+                iMgf = true;
+            } else if (arg.equals("--stats")) {
+                iStatistics = true;
+            } else if (arg.equals("--skip-details")) {
+                iSkipDetails = true;
+            } else if (arg.equals("--mapped")) {
+                iMapped = true;
+            } else if (arg.equals("--salvage")) {
+                iSalvage = true;
+            } else if (arg.equals("-o") || arg.equals("--output")) {
+                iOutputDirectory = new File(getValue(args, ++i, arg));
+                if (!iOutputDirectory.isDirectory() && !iOutputDirectory.mkdirs()) {
+                    throw new IllegalArgumentException("The output directory " + iOutputDirectory.getPath() + " could not be created.");
+                }
+            } else if (arg.equals("-t") || arg.equals("--threads")) {
+                iThreads = getInteger(args, ++i, arg);
+                if (iThreads < 1) {
+                    throw new IllegalArgumentException("The number of threads must be at least 1.");
+                }
+            } else if (arg.equals("--max-spectrum-expect")) {
+                getFilter().setMaxSpectrumExpect(getDouble(args, ++i, arg));
+            } else if (arg.equals("--charges")) {
+                String[] values = getValue(args, ++i, arg).split(",");
+                int[] charges = new int[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    try {
+                        charges[j] = Integer.parseInt(values[j].trim().replace("+", ""));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid charge for " + arg + ": " + values[j]);
+                    }
+                }
+                getFilter().setCharges(charges);
+            } else if (arg.equals("--max-expect")) {
+                getFilter().setMaxDomainExpect(getDouble(args, ++i, arg));
+            } else if (arg.equals("--min-hyperscore")) {
+                getFilter().setMinHyperscore(getDouble(args, ++i, arg));
+            } else if (arg.equals("--max-delta")) {
+                getFilter().setMaxAbsoluteDelta(getDouble(args, ++i, arg));
+            } else if (arg.equals("--max-missed-cleavages")) {
+                getFilter().setMaxMissedCleavages(getInteger(args, ++i, arg));
+            } else if (arg.equals("--protein")) {
+                try {
+                    getFilter().setProteinLabelPattern(Pattern.compile(getValue(args, ++i, arg)));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid pattern for " + arg + ": " + e.getMessage());
+                }
+            } else if (arg.equals("--max-rank")) {
+                getFilter().setMaxDomainRank(getInteger(args, ++i, arg));
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                addFiles(new File(arg));
+            }
+        }
+
+        if (!iPsms && !iProteins && !iMgf && !iStatistics) {
+            iPsms = true;
+            iProteins = true;
+            iStatistics = true;
+        }
+        if (iMgf && iSkipDetails) {
+            throw new IllegalArgumentException("The spectra are not parsed with --skip-details, --mgf cannot be used.");
+        }
+        if (iFiles.isEmpty()) {
+            throw new IllegalArgumentException("No X!Tandem file found.");
+        }
+    }
+
+    /**
+     * Adds the given file, or the xml files found in the given directory and
+     * its subdirectories.
+     *
+     * @param aFile the file or directory
+     * @throws IllegalArgumentException if the file does not exist
+     */
+    private void addFiles(File aFile) {
+        if (aFile.isDirectory()) {
+            File[] children = aFile.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (child.isDirectory() || child.getName().toLowerCase().endsWith(".xml")) {
+                        addFiles(child);
+                    }
+                }
+            }
+        } else if (aFile.isFile()) {
+            if (!iFiles.contains(aFile.getAbsoluteFile())) {
+                iFiles.add(aFile.getAbsoluteFile());
+            }
+        } else {
+            throw new IllegalArgumentException("The file " + aFile.getPath() + " does not exist.");
+        }
+    }
+
+    /**
+     * Returns the filter, creating it if needed.
+     *
+     * @return the filter
+     */
+    private XTandemFilter getFilter() {
+        if (iFilter == null) {
+            iFilter = new XTandemFilter();
+        }
+        return iFilter;
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args the command line arguments
+     * @param aIndex the index of the value
+     * @param aOption the option
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String getValue(String[] args, int aIndex, String aOption) {
+        if (aIndex >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + aOption + ".");
+        }
+        return args[aIndex];
+    }
+
+    /**
+     * Returns the value of an option as an integer.
+     *
+     * @param args the command line arguments
+     * @param aIndex the index of the value
+     * @param aOption the option
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing or not an
+     * integer
+     */
+    private static int getInteger(String[] args, int aIndex, String aOption) {
+        String value = getValue(args, aIndex, aOption);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + aOption + ": " + value);
+        }
+    }
+
+    /**
+     * Returns the value of an option as a double.
+     *
+     * @param args the command line arguments
+     * @param aIndex the index of the value
+     * @param aOption the option
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing or not a
+     * number
+     */
+    private static double getDouble(String[] args, int aIndex, String aOption) {
+        String value = getValue(args, aIndex, aOption);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + aOption + ": " + value);
+        }
+    }
+
+    /**
+     * Returns the files to process.
+     *
+     * @return the files to process
+     */
+    public List<File> getFiles() {
+        return iFiles;
+    }
+}
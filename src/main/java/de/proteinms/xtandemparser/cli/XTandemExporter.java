@@ -0,0 +1,405 @@
+package de.proteinms.xtandemparser.cli;
+
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.HitList;
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.PeptideIndex;
+import de.proteinms.xtandemparser.xtandem.PeptideMap;
+import de.proteinms.xtandemparser.xtandem.Protein;
+import de.proteinms.xtandemparser.xtandem.ProteinHitIndex;
+import de.proteinms.xtandemparser.xtandem.ProteinMap;
+import de.proteinms.xtandemparser.xtandem.Spectrum;
+import de.proteinms.xtandemparser.xtandem.SupportData;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * This class writes the content of a parsed X!Tandem file as tab delimited
+ * PSM and protein tables, as MGF file of the embedded spectra, and as run
+ * statistics. It does not use any GUI class.
+ */
+public class XTandemExporter {
+
+    /**
+     * The mass of a proton.
+     */
+    private static final double PROTON_MASS = 1.007276;
+    /**
+     * The header of the PSM table.
+     */
+    public static final String PSM_HEADER = "File\tSpectrum\tTitle\tCharge\tPrecursor MH\tSpectrum E-value\tDomain\tSequence"
+            + "\tPeptide Key\tStart\tEnd\tPre\tPost\tCalculated MH\tDelta\tHyperscore\tNext Score\tE-value"
+            + "\tMissed Cleavages\tProtein\tDescription";
+    /**
+     * The header of the protein table.
+     */
+    public static final String PROTEIN_HEADER = "File\tProtein\tDescription\tPSMs\tSpectra\tPeptides\tBest E-value";
+    /**
+     * The header of the statistics.
+     */
+    public static final String STATISTICS_HEADER = "File\tSpectra\tIdentified Spectra\tPSMs\tPeptides\tProteins\tParsing Time (ms)";
+    /**
+     * The parsed file.
+     */
+    private final XTandemFile iXTandemFile;
+    /**
+     * The name of the file written in the tables.
+     */
+    private final String iName;
+    /**
+     * True if the details of the file were parsed.
+     */
+    private final boolean iDetails;
+    /**
+     * The summaries of the proteins, null until first needed.
+     */
+    private LinkedHashMap<String, ProteinSummary> iProteinSummaries = null;
+
+    /**
+     * Constructor for an exporter of the given file.
+     *
+     * @param aXTandemFile the parsed file
+     * @param aName the name of the file written in the tables
+     * @param aDetails true if the details of the file were parsed, i.e. if
+     * the support data can be exported
+     */
+    public XTandemExporter(XTandemFile aXTandemFile, String aName, boolean aDetails) {
+        iXTandemFile = aXTandemFile;
+        iName = aName;
+        iDetails = aDetails;
+    }
+
+    /**
+     * Writes the PSM table, one line per domain.
+     *
+     * @param aWriter the writer
+     * @throws IOException if the table could not be written
+     */
+    public void writePsms(Writer aWriter) throws IOException {
+        aWriter.write(PSM_HEADER);
+        aWriter.write('\n');
+        PeptideMap peptideMap = iXTandemFile.getPeptideMap();
+        int numberOfSpectra = getNumberOfSpectra();
+        for (int spectrumNumber = 1; spectrumNumber <= numberOfSpectra; spectrumNumber++) {
+            Spectrum spectrum = iDetails ? iXTandemFile.getSpectrum(spectrumNumber) : null;
+            String title = getTitle(spectrumNumber);
+            for (Peptide peptide : peptideMap.getAllPeptides(spectrumNumber)) {
+                for (Domain domain : peptide.getDomains()) {
+                    writePsm(aWriter, spectrumNumber, spectrum, title, domain);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the PSM table of the given domains, one line per domain.
+     *
+     * @param aWriter the writer
+     * @param aDomains the domains
+     * @throws IOException if the table could not be written
+     */
+    public void writePsms(Writer aWriter, List<Domain> aDomains) throws IOException {
+        aWriter.write(PSM_HEADER);
+        aWriter.write('\n');
+        for (Domain domain : aDomains) {
+            int spectrumNumber = getSpectrumNumber(domain);
+            Spectrum spectrum = iDetails ? iXTandemFile.getSpectrum(spectrumNumber) : null;
+            writePsm(aWriter, spectrumNumber, spectrum, getTitle(spectrumNumber), domain);
+        }
+    }
+
+    /**
+     * Writes the line of the PSM table of the given domain.
+     *
+     * @param aWriter the writer
+     * @param aSpectrumNumber the spectrum number
+     * @param aSpectrum the spectrum, null if the details were not parsed
+     * @param aTitle the title of the spectrum
+     * @param aDomain the domain
+     * @throws IOException if the line could not be written
+     */
+    private void writePsm(Writer aWriter, int aSpectrumNumber, Spectrum aSpectrum, String aTitle, Domain aDomain) throws IOException {
+        Protein protein = iXTandemFile.getProteinMap().getProtein(aDomain.getProteinKey());
+        StringBuilder line = new StringBuilder();
+        line.append(iName).append('\t');
+        line.append(aSpectrumNumber).append('\t');
+        line.append(clean(aTitle)).append('\t');
+        if (aSpectrum != null) {
+            line.append(aSpectrum.getPrecursorCharge()).append('\t');
+            line.append(aSpectrum.getPrecursorMh()).append('\t');
+            line.append(aSpectrum.getExpectValue()).append('\t');
+        } else {
+            line.append("\t\t\t");
+        }
+        line.append(aDomain.getDomainKey()).append('\t');
+        line.append(aDomain.getDomainSequence()).append('\t');
+        line.append(PeptideIndex.getPeptideKey(aDomain, iXTandemFile.getModificationMap())).append('\t');
+        line.append(aDomain.getDomainStart()).append('\t');
+        line.append(aDomain.getDomainEnd()).append('\t');
+        line.append(clean(aDomain.getUpFlankSequence())).append('\t');
+        line.append(clean(aDomain.getDownFlankSequence())).append('\t');
+        line.append(aDomain.getDomainMh()).append('\t');
+        line.append(aDomain.getDomainDeltaMh()).append('\t');
+        line.append(aDomain.getDomainHyperScore()).append('\t');
+        line.append(aDomain.getDomainNextScore()).append('\t');
+        line.append(aDomain.getDomainExpect()).append('\t');
+        line.append(aDomain.getMissedCleavages()).append('\t');
+        line.append(clean(getProteinLabel(protein, aDomain))).append('\t');
+        line.append(protein == null ? "" : clean(protein.getDescription())).append('\n');
+        aWriter.write(line.toString());
+    }
+
+    /**
+     * Writes the protein table, one line per protein label.
+     *
+     * @param aWriter the writer
+     * @throws IOException if the table could not be written
+     */
+    public void writeProteins(Writer aWriter) throws IOException {
+        aWriter.write(PROTEIN_HEADER);
+        aWriter.write('\n');
+        for (ProteinSummary summary : getProteinSummaries().values()) {
+            StringBuilder line = new StringBuilder();
+            line.append(iName).append('\t');
+            line.append(clean(summary.iLabel)).append('\t');
+            line.append(clean(summary.iDescription)).append('\t');
+            line.append(summary.iPsms).append('\t');
+            line.append(summary.iSpectra).append('\t');
+            line.append(summary.iPeptides).append('\t');
+            line.append(summary.iBestExpect).append('\n');
+            aWriter.write(line.toString());
+        }
+    }
+
+    /**
+     * Writes the spectra embedded in the file as MGF. The spectra are only
+     * available if the details of the file were parsed.
+     *
+     * @param aWriter the writer
+     * @throws IOException if the spectra could not be written
+     */
+    public void writeMgf(Writer aWriter) throws IOException {
+        if (!iDetails) {
+            throw new IllegalStateException("The spectra are not available when the details are skipped.");
+        }
+        for (Spectrum spectrum : iXTandemFile.getSpectraList()) {
+            SupportData supportData = iXTandemFile.getSupportData(spectrum.getSpectrumNumber());
+            List<Double> mzValues = supportData.getXValuesFragIonMass2Charge();
+            List<Double> intensityValues = supportData.getYValuesFragIonMass2Charge();
+            int charge = spectrum.getPrecursorCharge();
+            StringBuilder entry = new StringBuilder();
+            entry.append("BEGIN IONS\n");
+            entry.append("TITLE=").append(getTitle(spectrum.getSpectrumNumber())).append('\n');
+            if (charge > 0) {
+                entry.append("PEPMASS=").append((spectrum.getPrecursorMh() + (charge - 1) * PROTON_MASS) / charge).append('\n');
+                entry.append("CHARGE=").append(charge).append("+\n");
+            }
+            if (spectrum.getPrecursorRetentionTime() != null && spectrum.getPrecursorRetentionTime().length() > 0) {
+                entry.append("RTINSECONDS=").append(spectrum.getPrecursorRetentionTime()).append('\n');
+            }
+            if (mzValues != null && intensityValues != null) {
+                for (int i = 0; i < mzValues.size(); i++) {
+                    entry.append(mzValues.get(i)).append(' ').append(intensityValues.get(i)).append('\n');
+                }
+            }
+            entry.append("END IONS\n\n");
+            aWriter.write(entry.toString());
+        }
+    }
+
+    /**
+     * Returns the statistics of the file as a tab delimited line matching
+     * STATISTICS_HEADER.
+     *
+     * @param aParsingTime the time needed to parse the file in milliseconds
+     * @return the statistics
+     */
+    public String getStatistics(long aParsingTime) {
+        PeptideMap peptideMap = iXTandemFile.getPeptideMap();
+        int identifiedSpectra = 0;
+        int psms = 0;
+        HashSet<String> peptides = new HashSet<String>();
+        int spectrumCount = getNumberOfSpectra();
+        for (int spectrumNumber = 1; spectrumNumber <= spectrumCount; spectrumNumber++) {
+            ArrayList<Peptide> peptideList = peptideMap.getAllPeptides(spectrumNumber);
+            boolean identified = false;
+            for (Peptide peptide : peptideList) {
+                for (Domain domain : peptide.getDomains()) {
+                    identified = true;
+                    psms++;
+                    peptides.add(domain.getDomainSequence());
+                }
+            }
+            if (identified) {
+                identifiedSpectra++;
+            }
+        }
+        return iName + "\t" + spectrumCount + "\t" + identifiedSpectra + "\t" + psms + "\t" + peptides.size()
+                + "\t" + getProteinSummaries().size() + "\t" + aParsingTime;
+    }
+
+    /**
+     * Returns the summaries of the proteins, indexed by protein label in
+     * order of appearance in the file. The summaries are built once from the
+     * protein hit index, only the hits of each protein being visited, and the
+     * occurrences of the proteins.
+     *
+     * @return the protein summaries
+     */
+    private LinkedHashMap<String, ProteinSummary> getProteinSummaries() {
+        if (iProteinSummaries != null) {
+            return iProteinSummaries;
+        }
+        iProteinSummaries = new LinkedHashMap<String, ProteinSummary>();
+        PeptideMap peptideMap = iXTandemFile.getPeptideMap();
+        ProteinMap proteinMap = iXTandemFile.getProteinMap();
+        ProteinHitIndex hitIndex = proteinMap.getHitIndex();
+        if (hitIndex == null) {
+            return iProteinSummaries;
+        }
+        for (String proteinKey : hitIndex.getProteinKeys()) {
+            HitList hits = hitIndex.getHits(proteinKey);
+            if (hits.size() == 0) {
+                continue;
+            }
+            Protein protein = proteinMap.getProtein(proteinKey);
+            String label = protein != null && protein.getLabel() != null ? protein.getLabel() : proteinKey;
+            ProteinSummary summary = iProteinSummaries.get(label);
+            if (summary == null) {
+                summary = new ProteinSummary(label, protein == null ? null : protein.getDescription());
+                iProteinSummaries.put(label, summary);
+            }
+            summary.iPsms += hits.size();
+            summary.iPeptides += hitIndex.getNumberOfPeptideSequences(proteinKey);
+            int lastSpectrum = -1;
+            for (int i = 0; i < hits.size(); i++) {
+                // the hits are added spectrum per spectrum
+                if (hits.getSpectrumNumber(i) != lastSpectrum) {
+                    lastSpectrum = hits.getSpectrumNumber(i);
+                    summary.iSpectra++;
+                }
+                Domain domain = peptideMap.getPeptideByIndex(hits.getSpectrumNumber(i), hits.getPeptideIndex(i))
+                        .getDomains().get(hits.getDomainIndex(i) - 1);
+                summary.iBestExpect = Math.min(summary.iBestExpect, domain.getDomainExpect());
+            }
+            if (protein != null && protein.getNumberOfOccurrences() > 0) {
+                summary.iSpectra = protein.getNumberOfOccurrences();
+            }
+        }
+        return iProteinSummaries;
+    }
+
+    /**
+     * Returns the number of spectra of the file. The spectra list is only
+     * built when the details were parsed, the number is therefore taken from
+     * the parser.
+     *
+     * @return the number of spectra
+     */
+    private int getNumberOfSpectra() {
+        return iXTandemFile.getXTandemParser().getNumberOfSpectra();
+    }
+
+    /**
+     * Returns the spectrum number of the given domain, taken from the domain
+     * key, e.g. 3 for s3_p2_d1.
+     *
+     * @param aDomain the domain
+     * @return the spectrum number
+     */
+    public static int getSpectrumNumber(Domain aDomain) {
+        String key = aDomain.getDomainKey();
+        return Integer.parseInt(key.substring(1, key.indexOf('_')));
+    }
+
+    /**
+     * Returns the label of the protein of the given domain. Without details
+     * the proteins are not parsed, the protein key of the domain, which is the
+     * protein label, is then used.
+     *
+     * @param aProtein the protein, can be null
+     * @param aDomain the domain
+     * @return the protein label, null if not known
+     */
+    private static String getProteinLabel(Protein aProtein, Domain aDomain) {
+        if (aProtein != null && aProtein.getLabel() != null) {
+            return aProtein.getLabel();
+        }
+        return aDomain.getProteinKey();
+    }
+
+    /**
+     * Returns the title of the given spectrum, empty if the details were not
+     * parsed.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the title of the spectrum
+     */
+    private String getTitle(int aSpectrumNumber) {
+        if (!iDetails) {
+            return "";
+        }
+        String title = iXTandemFile.getSupportData(aSpectrumNumber).getFragIonSpectrumDescription();
+        return title == null ? "" : title;
+    }
+
+    /**
+     * Replaces the tabs and line breaks of a value written in a table.
+     *
+     * @param aValue the value
+     * @return the cleaned value, empty if the value is null
+     */
+    private static String clean(String aValue) {
+        if (aValue == null) {
+            return "";
+        }
+        return aValue.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * The values of a protein gathered over its PSMs.
+     */
+    private static class ProteinSummary {
+
+        /**
+         * The protein label.
+         */
+        private final String iLabel;
+        /**
+         * The protein description.
+         */
+        private final String iDescription;
+        /**
+         * The number of PSMs.
+         */
+        private int iPsms = 0;
+        /**
+         * The number of spectra.
+         */
+        private int iSpectra = 0;
+        /**
+         * The number of distinct peptide sequences.
+         */
+        private int iPeptides = 0;
+        /**
+         * The best expectation value.
+         */
+        private double iBestExpect = Double.MAX_VALUE;
+
+        /**
+         * Constructor for a protein summary.
+         *
+         * @param aLabel the protein label
+         * @param aDescription the protein description
+         */
+        public ProteinSummary(String aLabel, String aDescription) {
+            iLabel = aLabel;
+            iDescription = aDescription;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class exposes the remaining bytes of a ByteBuffer as an InputStream,
+ * without copying the buffer content.
+ */
+class ByteBufferInputStream extends InputStream {
+
+    /**
+     * The buffer the bytes are read from.
+     */
+    private ByteBuffer iBuffer;
+
+    /**
+     * Constructor gets the buffer to read from. The position and limit of the
+     * given buffer are not changed, reading happens on a duplicate.
+     *
+     * @param aBuffer the buffer to read from
+     */
+    public ByteBufferInputStream(ByteBuffer aBuffer) {
+        iBuffer = aBuffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        if (!iBuffer.hasRemaining()) {
+            return -1;
+        }
+        return iBuffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] aBytes, int aOffset, int aLength) {
+        if (aLength == 0) {
+            return 0;
+        }
+        if (!iBuffer.hasRemaining()) {
+            return -1;
+        }
+        int length = Math.min(aLength, iBuffer.remaining());
+        iBuffer.get(aBytes, aOffset, length);
+        return length;
+    }
+
+    @Override
+    public long skip(long aNumber) {
+        if (aNumber <= 0) {
+            return 0;
+        }
+        int skipped = (int) Math.min(aNumber, iBuffer.remaining());
+        iBuffer.position(iBuffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return iBuffer.remaining();
+    }
+}
@@ -0,0 +1,361 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class reads the compact binary form of the parsed model written by
+ * CompactOutput.
+ */
+public class CompactInput {
+
+    /**
+     * The input.
+     */
+    private final DataInput iInput;
+    /**
+     * The block being read.
+     */
+    private final byte[] iBlock = new byte[CompactOutput.BLOCK_SIZE];
+    /**
+     * The number of bytes in the block being read.
+     */
+    private int iBlockLength = 0;
+    /**
+     * The position in the block being read.
+     */
+    private int iPosition = 0;
+    /**
+     * The strings of the dictionary, in order of appearance.
+     */
+    private final ArrayList<String> iDictionary = new ArrayList<String>();
+
+    /**
+     * Constructor for a compact input.
+     *
+     * @param aInput the input
+     */
+    public CompactInput(DataInput aInput) {
+        iInput = aInput;
+    }
+
+    /**
+     * Reads a byte, reading the next block from the input when the block
+     * being read is exhausted.
+     *
+     * @return the byte, from 0 to 255
+     * @throws IOException if the byte could not be read
+     */
+    private int readByte() throws IOException {
+        if (iPosition == iBlockLength) {
+            iBlockLength = iInput.readInt();
+            if (iBlockLength <= 0 || iBlockLength > CompactOutput.BLOCK_SIZE) {
+                throw new StreamCorruptedException("Invalid block length: " + iBlockLength);
+            }
+            iInput.readFully(iBlock, 0, iBlockLength);
+            iPosition = 0;
+        }
+        return iBlock[iPosition++] & 0xFF;
+    }
+
+    /**
+     * Reads bytes.
+     *
+     * @param aValues the array receiving the bytes
+     * @throws IOException if the bytes could not be read
+     */
+    private void readBytes(byte[] aValues) throws IOException {
+        int offset = 0;
+        while (offset < aValues.length) {
+            if (iPosition == iBlockLength) {
+                aValues[offset++] = (byte) readByte();
+            }
+            int length = Math.min(aValues.length - offset, iBlockLength - iPosition);
+            System.arraycopy(iBlock, iPosition, aValues, offset, length);
+            iPosition += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Reads a positive integer written by writeVarInt.
+     *
+     * @return the integer
+     * @throws IOException if the integer could not be read
+     */
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Invalid variable length integer: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a positive long written by writeVarLong.
+     *
+     * @return the long
+     * @throws IOException if the long could not be read
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Invalid variable length long.");
+    }
+
+    /**
+     * Reads an integer written by writeSignedVarInt.
+     *
+     * @return the integer
+     * @throws IOException if the integer could not be read
+     */
+    public int readSignedVarInt() throws IOException {
+        return (int) readSignedVarLong();
+    }
+
+    /**
+     * Reads a long written by writeSignedVarLong.
+     *
+     * @return the long
+     * @throws IOException if the long could not be read
+     */
+    public long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a double.
+     *
+     * @return the double
+     * @throws IOException if the double could not be read
+     */
+    public double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Reads a float.
+     *
+     * @return the float
+     * @throws IOException if the float could not be read
+     */
+    public float readFloat() throws IOException {
+        int bits = 0;
+        for (int i = 0; i < 4; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * Reads a boolean.
+     *
+     * @return the boolean
+     * @throws IOException if the boolean could not be read
+     */
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    /**
+     * Reads a string written by writeString.
+     *
+     * @return the string, can be null
+     * @throws IOException if the string could not be read
+     */
+    public String readString() throws IOException {
+        int marker = readVarInt();
+        if (marker == CompactOutput.NULL_STRING) {
+            return null;
+        } else if (marker == CompactOutput.NEW_STRING) {
+            String value = readUtf8();
+            iDictionary.add(value);
+            return value;
+        } else if (marker == CompactOutput.LITERAL_STRING) {
+            return readUtf8();
+        }
+        int number = marker - CompactOutput.MARKERS;
+        if (number >= iDictionary.size()) {
+            throw new StreamCorruptedException("Unknown string reference: " + number);
+        }
+        return iDictionary.get(number);
+    }
+
+    /**
+     * Reads UTF-8 bytes preceded by their number.
+     *
+     * @return the string
+     * @throws IOException if the string could not be read
+     */
+    private String readUtf8() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        readBytes(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Reads strings written by writeStrings.
+     *
+     * @return the strings, null if null was written
+     * @throws IOException if the strings could not be read
+     */
+    public ArrayList<String> readStrings() throws IOException {
+        int size = readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        ArrayList<String> values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    /**
+     * Reads an int array written by writeInts.
+     *
+     * @return the int array
+     * @throws IOException if the values could not be read
+     */
+    public int[] readInts() throws IOException {
+        int[] values = new int[readVarInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readSignedVarInt();
+        }
+        return values;
+    }
+
+    /**
+     * Reads a map written by writeStringMap.
+     *
+     * @return the map, null if null was written
+     * @throws IOException if the map could not be read
+     */
+    public HashMap<String, String> readStringMap() throws IOException {
+        int size = readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        HashMap<String, String> map = new HashMap<String, String>(Math.max(16, (int) (size / 0.75f) + 1));
+        int numberOfTemplates = readVarInt();
+        StringBuilder key = new StringBuilder();
+        for (int t = 0; t < numberOfTemplates; t++) {
+            String template = readString();
+            int placeholders = 0;
+            for (int i = 0; i < template.length(); i++) {
+                if (template.charAt(i) == CompactOutput.NUMBER_PLACEHOLDER) {
+                    placeholders++;
+                }
+            }
+            int[] numbers = new int[placeholders];
+            int count = readVarInt();
+            for (int e = 0; e < count; e++) {
+                for (int i = 0; i < placeholders; i++) {
+                    numbers[i] = (e == 0 ? 0 : numbers[i]) + readSignedVarInt();
+                }
+                key.setLength(0);
+                int n = 0;
+                for (int i = 0; i < template.length(); i++) {
+                    char c = template.charAt(i);
+                    if (c == CompactOutput.NUMBER_PLACEHOLDER) {
+                        key.append(numbers[n++]);
+                    } else {
+                        key.append(c);
+                    }
+                }
+                map.put(key.toString(), readValue());
+            }
+        }
+        if (map.size() != size) {
+            throw new StreamCorruptedException("Invalid map size: " + map.size() + " instead of " + size + ".");
+        }
+        return map;
+    }
+
+    /**
+     * Reads a map written by writeStringIntegerMap.
+     *
+     * @return the map, null if null was written
+     * @throws IOException if the map could not be read
+     */
+    public HashMap<String, Integer> readStringIntegerMap() throws IOException {
+        int size = readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        HashMap<String, Integer> map = new HashMap<String, Integer>(Math.max(16, (int) (size / 0.75f) + 1));
+        for (int i = 0; i < size; i++) {
+            String key = readString();
+            map.put(key, readSignedVarInt());
+        }
+        return map;
+    }
+
+    /**
+     * Reads a map written by writeIntegerStringMap.
+     *
+     * @return the map, null if null was written
+     * @throws IOException if the map could not be read
+     */
+    public HashMap<Integer, String> readIntegerStringMap() throws IOException {
+        int size = readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        HashMap<Integer, String> map = new HashMap<Integer, String>(Math.max(16, (int) (size / 0.75f) + 1));
+        for (int i = 0; i < size; i++) {
+            int key = readSignedVarInt();
+            map.put(key, readString());
+        }
+        return map;
+    }
+
+    /**
+     * Reads a value of a string map.
+     *
+     * @return the value
+     * @throws IOException if the value could not be read
+     */
+    private String readValue() throws IOException {
+        int kind = readVarInt();
+        if (kind == CompactOutput.STRING_VALUE) {
+            return readString();
+        } else if (kind != CompactOutput.NUMBER_LIST_VALUE) {
+            throw new StreamCorruptedException("Unknown value kind: " + kind);
+        }
+        String prefix = readString();
+        String suffix = readString();
+        int size = readVarInt();
+        boolean sameScale = readBoolean();
+        int scale = sameScale ? readVarInt() : 0;
+        StringBuilder value = new StringBuilder(prefix.length() + suffix.length() + 8 * size);
+        value.append(prefix);
+        long mantissa = 0;
+        for (int i = 0; i < size; i++) {
+            if (!sameScale) {
+                scale = readVarInt();
+            }
+            mantissa += readSignedVarLong();
+            if (i > 0) {
+                value.append(' ');
+            }
+            CompactOutput.NumberList.appendNumber(value, mantissa, scale);
+        }
+        value.append(suffix);
+        return value.toString();
+    }
+}
@@ -0,0 +1,703 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class writes the compact binary form of the parsed model, read back by
+ * CompactInput. The integers are written as variable length integers, the
+ * strings are dictionary encoded: a string is written once and referred to by
+ * its number afterwards. The string maps of the parser are written grouped by
+ * key template, i.e. the key with its numbers replaced, e.g. delta_s#_p#_d#,
+ * with the numbers delta encoded, and the values made of many numbers, e.g.
+ * the peak lists, are written as delta encoded decimal mantissas. The
+ * encoding is lossless: the strings read back are equal to the strings
+ * written.
+ * <p>
+ * The bytes are written in blocks preceded by their length, so that the
+ * input can read a whole block at once. The last block is written by
+ * flush(), which has to be called when everything is written.
+ */
+public class CompactOutput {
+
+    /**
+     * The version of the compact form.
+     */
+    public static final int VERSION = 2;
+    /**
+     * Marker of a null string.
+     */
+    static final int NULL_STRING = 0;
+    /**
+     * Marker of a new string added to the dictionary.
+     */
+    static final int NEW_STRING = 1;
+    /**
+     * Marker of a string not added to the dictionary.
+     */
+    static final int LITERAL_STRING = 2;
+    /**
+     * The number of markers before the dictionary references.
+     */
+    static final int MARKERS = 3;
+    /**
+     * The maximal length of the strings added to the dictionary, longer
+     * strings are seldom repeated.
+     */
+    static final int MAX_DICTIONARY_LENGTH = 256;
+    /**
+     * The character replacing the numbers in the key templates.
+     */
+    static final char NUMBER_PLACEHOLDER = '\u0000';
+    /**
+     * The minimal number of numbers in a value written as number list.
+     */
+    static final int MIN_NUMBER_LIST_SIZE = 4;
+    /**
+     * Value kind of a value written as string.
+     */
+    static final int STRING_VALUE = 0;
+    /**
+     * Value kind of a value written as number list.
+     */
+    static final int NUMBER_LIST_VALUE = 1;
+    /**
+     * The size of the blocks.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * The numbers of a key without numbers.
+     */
+    private static final int[] NO_NUMBERS = new int[0];
+    /**
+     * The output.
+     */
+    private final DataOutput iOutput;
+    /**
+     * The block being written.
+     */
+    private final byte[] iBlock = new byte[BLOCK_SIZE];
+    /**
+     * The number of bytes in the block being written.
+     */
+    private int iBlockLength = 0;
+    /**
+     * This map has as key the strings already written and as value their
+     * number in the dictionary.
+     */
+    private final HashMap<String, Integer> iDictionary = new HashMap<String, Integer>();
+
+    /**
+     * Constructor for a compact output.
+     *
+     * @param aOutput the output
+     */
+    public CompactOutput(DataOutput aOutput) {
+        iOutput = aOutput;
+    }
+
+    /**
+     * Writes the block being written, if not empty, to the output.
+     *
+     * @throws IOException if the block could not be written
+     */
+    public void flush() throws IOException {
+        if (iBlockLength > 0) {
+            iOutput.writeInt(iBlockLength);
+            iOutput.write(iBlock, 0, iBlockLength);
+            iBlockLength = 0;
+        }
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param aValue the byte
+     * @throws IOException if the byte could not be written
+     */
+    private void writeByte(int aValue) throws IOException {
+        if (iBlockLength == BLOCK_SIZE) {
+            flush();
+        }
+        iBlock[iBlockLength++] = (byte) aValue;
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param aValues the bytes
+     * @throws IOException if the bytes could not be written
+     */
+    private void writeBytes(byte[] aValues) throws IOException {
+        int offset = 0;
+        while (offset < aValues.length) {
+            if (iBlockLength == BLOCK_SIZE) {
+                flush();
+            }
+            int length = Math.min(aValues.length - offset, BLOCK_SIZE - iBlockLength);
+            System.arraycopy(aValues, offset, iBlock, iBlockLength, length);
+            iBlockLength += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Writes a positive integer on one to five bytes.
+     *
+     * @param aValue the integer, has to be positive
+     * @throws IOException if the integer could not be written
+     */
+    public void writeVarInt(int aValue) throws IOException {
+        if (aValue < 0) {
+            throw new IllegalArgumentException("Negative variable length integer: " + aValue);
+        }
+        writeVarLong(aValue);
+    }
+
+    /**
+     * Writes a positive long on one to ten bytes.
+     *
+     * @param aValue the long, has to be positive
+     * @throws IOException if the long could not be written
+     */
+    public void writeVarLong(long aValue) throws IOException {
+        while ((aValue & ~0x7FL) != 0) {
+            writeByte((int) ((aValue & 0x7F) | 0x80));
+            aValue >>>= 7;
+        }
+        writeByte((int) aValue);
+    }
+
+    /**
+     * Writes an integer, small absolute values taking less space.
+     *
+     * @param aValue the integer
+     * @throws IOException if the integer could not be written
+     */
+    public void writeSignedVarInt(int aValue) throws IOException {
+        writeSignedVarLong(aValue);
+    }
+
+    /**
+     * Writes a long, small absolute values taking less space.
+     *
+     * @param aValue the long
+     * @throws IOException if the long could not be written
+     */
+    public void writeSignedVarLong(long aValue) throws IOException {
+        writeVarLong((aValue << 1) ^ (aValue >> 63));
+    }
+
+    /**
+     * Writes a double.
+     *
+     * @param aValue the double
+     * @throws IOException if the double could not be written
+     */
+    public void writeDouble(double aValue) throws IOException {
+        long bits = Double.doubleToLongBits(aValue);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (bits >>> shift));
+        }
+    }
+
+    /**
+     * Writes a float.
+     *
+     * @param aValue the float
+     * @throws IOException if the float could not be written
+     */
+    public void writeFloat(float aValue) throws IOException {
+        int bits = Float.floatToIntBits(aValue);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(bits >>> shift);
+        }
+    }
+
+    /**
+     * Writes a boolean.
+     *
+     * @param aValue the boolean
+     * @throws IOException if the boolean could not be written
+     */
+    public void writeBoolean(boolean aValue) throws IOException {
+        writeByte(aValue ? 1 : 0);
+    }
+
+    /**
+     * Writes a string, using the dictionary.
+     *
+     * @param aValue the string, can be null
+     * @throws IOException if the string could not be written
+     */
+    public void writeString(String aValue) throws IOException {
+        if (aValue == null) {
+            writeVarInt(NULL_STRING);
+            return;
+        }
+        Integer number = iDictionary.get(aValue);
+        if (number != null) {
+            writeVarInt(MARKERS + number);
+        } else if (aValue.length() <= MAX_DICTIONARY_LENGTH) {
+            iDictionary.put(aValue, iDictionary.size());
+            writeVarInt(NEW_STRING);
+            writeUtf8(aValue);
+        } else {
+            writeVarInt(LITERAL_STRING);
+            writeUtf8(aValue);
+        }
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a string preceded by their number.
+     *
+     * @param aValue the string
+     * @throws IOException if the string could not be written
+     */
+    private void writeUtf8(String aValue) throws IOException {
+        byte[] bytes = aValue.getBytes("UTF-8");
+        writeVarInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes a collection of strings.
+     *
+     * @param aValues the strings, can be null
+     * @throws IOException if the strings could not be written
+     */
+    public void writeStrings(Collection<String> aValues) throws IOException {
+        if (aValues == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(aValues.size() + 1);
+        for (String value : aValues) {
+            writeString(value);
+        }
+    }
+
+    /**
+     * Writes the first values of an int array.
+     *
+     * @param aValues the int array
+     * @param aLength the number of values to write
+     * @throws IOException if the values could not be written
+     */
+    public void writeInts(int[] aValues, int aLength) throws IOException {
+        writeVarInt(aLength);
+        for (int i = 0; i < aLength; i++) {
+            writeSignedVarInt(aValues[i]);
+        }
+    }
+
+    /**
+     * Writes a map of strings. The entries are grouped by key template and
+     * the values made of numbers are written as number lists.
+     *
+     * @param aMap the map, can be null
+     * @throws IOException if the map could not be written
+     */
+    public void writeStringMap(Map<String, String> aMap) throws IOException {
+        if (aMap == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(aMap.size() + 1);
+
+        // group the keys by template
+        HashMap<String, ArrayList<KeyNumbers>> groups = new HashMap<String, ArrayList<KeyNumbers>>();
+        ArrayList<String> templates = new ArrayList<String>();
+        StringBuilder template = new StringBuilder();
+        for (Map.Entry<String, String> entry : aMap.entrySet()) {
+            template.setLength(0);
+            int[] numbers = getKeyNumbers(entry.getKey(), template);
+            String key = template.toString();
+            ArrayList<KeyNumbers> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<KeyNumbers>();
+                groups.put(key, group);
+                templates.add(key);
+            }
+            group.add(new KeyNumbers(numbers, entry.getValue()));
+        }
+
+        writeVarInt(templates.size());
+        for (String key : templates) {
+            ArrayList<KeyNumbers> group = groups.get(key);
+            KeyNumbers[] entries = group.toArray(new KeyNumbers[group.size()]);
+            sort(entries);
+            writeString(key);
+            writeVarInt(entries.length);
+            int[] previous = null;
+            for (KeyNumbers entry : entries) {
+                for (int i = 0; i < entry.iNumbers.length; i++) {
+                    writeSignedVarInt(previous == null ? entry.iNumbers[i] : entry.iNumbers[i] - previous[i]);
+                }
+                previous = entry.iNumbers;
+                writeValue(entry.iValue);
+            }
+        }
+    }
+
+    /**
+     * Writes a map from strings to integers.
+     *
+     * @param aMap the map, can be null
+     * @throws IOException if the map could not be written
+     */
+    public void writeStringIntegerMap(Map<String, Integer> aMap) throws IOException {
+        if (aMap == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(aMap.size() + 1);
+        for (Map.Entry<String, Integer> entry : aMap.entrySet()) {
+            writeString(entry.getKey());
+            writeSignedVarInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Writes a map from integers to strings.
+     *
+     * @param aMap the map, can be null
+     * @throws IOException if the map could not be written
+     */
+    public void writeIntegerStringMap(Map<Integer, String> aMap) throws IOException {
+        if (aMap == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(aMap.size() + 1);
+        for (Map.Entry<Integer, String> entry : aMap.entrySet()) {
+            writeSignedVarInt(entry.getKey());
+            writeString(entry.getValue());
+        }
+    }
+
+    /**
+     * Writes a value of a string map, as number list if it is made of numbers
+     * separated by spaces and can be restored exactly, as string otherwise.
+     *
+     * @param aValue the value
+     * @throws IOException if the value could not be written
+     */
+    private void writeValue(String aValue) throws IOException {
+        NumberList numberList = aValue == null ? null : NumberList.parse(aValue);
+        if (numberList == null) {
+            writeVarInt(STRING_VALUE);
+            writeString(aValue);
+            return;
+        }
+        writeVarInt(NUMBER_LIST_VALUE);
+        writeString(numberList.iPrefix);
+        writeString(numberList.iSuffix);
+        writeVarInt(numberList.iSize);
+        boolean sameScale = true;
+        for (int i = 1; i < numberList.iSize; i++) {
+            sameScale &= numberList.iScales[i] == numberList.iScales[0];
+        }
+        writeBoolean(sameScale);
+        if (sameScale) {
+            writeVarInt(numberList.iScales[0]);
+        }
+        long previous = 0;
+        for (int i = 0; i < numberList.iSize; i++) {
+            if (!sameScale) {
+                writeVarInt(numberList.iScales[i]);
+            }
+            writeSignedVarLong(numberList.iMantissas[i] - previous);
+            previous = numberList.iMantissas[i];
+        }
+    }
+
+    /**
+     * Sorts the entries of a key template by numbers. When the numbers and
+     * the entry indexes fit together in a long, the packed values are sorted
+     * as primitives, which is much faster than comparing the entries.
+     *
+     * @param aEntries the entries of a key template
+     */
+    private static void sort(KeyNumbers[] aEntries) {
+        if (aEntries.length < 2 || aEntries[0].iNumbers.length == 0) {
+            return;
+        }
+        int count = aEntries[0].iNumbers.length;
+        int[] widths = new int[count];
+        for (KeyNumbers entry : aEntries) {
+            for (int i = 0; i < count; i++) {
+                widths[i] = Math.max(widths[i], 32 - Integer.numberOfLeadingZeros(entry.iNumbers[i]));
+            }
+        }
+        int indexWidth = 32 - Integer.numberOfLeadingZeros(aEntries.length - 1);
+        int totalWidth = indexWidth;
+        for (int width : widths) {
+            totalWidth += width;
+        }
+        if (totalWidth > 63) {
+            Arrays.sort(aEntries);
+            return;
+        }
+        long[] packed = new long[aEntries.length];
+        for (int e = 0; e < aEntries.length; e++) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << widths[i]) | aEntries[e].iNumbers[i];
+            }
+            packed[e] = (value << indexWidth) | e;
+        }
+        Arrays.sort(packed);
+        KeyNumbers[] entries = aEntries.clone();
+        long indexMask = (1L << indexWidth) - 1;
+        for (int e = 0; e < aEntries.length; e++) {
+            aEntries[e] = entries[(int) (packed[e] & indexMask)];
+        }
+    }
+
+    /**
+     * Returns the numbers of a key and appends its template, i.e. the key
+     * with the numbers replaced by the placeholder, to the given builder.
+     * Only the numbers written without leading zero and fitting in an int
+     * are replaced, so that the key can be restored exactly.
+     *
+     * @param aKey the key
+     * @param aTemplate the builder receiving the template
+     * @return the numbers of the key
+     */
+    static int[] getKeyNumbers(String aKey, StringBuilder aTemplate) {
+        int[] numbers = null;
+        int count = 0;
+        int length = aKey.length();
+        int i = 0;
+        while (i < length) {
+            char c = aKey.charAt(i);
+            if (c < '0' || c > '9') {
+                aTemplate.append(c);
+                i++;
+                continue;
+            }
+            int end = i;
+            int number = 0;
+            while (end < length && aKey.charAt(end) >= '0' && aKey.charAt(end) <= '9') {
+                number = 10 * number + (aKey.charAt(end) - '0');
+                end++;
+            }
+            if ((c != '0' || end - i == 1) && end - i <= 9) {
+                if (numbers == null) {
+                    numbers = new int[4];
+                } else if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, 2 * count);
+                }
+                numbers[count++] = number;
+                aTemplate.append(NUMBER_PLACEHOLDER);
+            } else {
+                aTemplate.append(aKey, i, end);
+            }
+            i = end;
+        }
+        return count == 0 ? NO_NUMBERS : numbers.length == count ? numbers : Arrays.copyOf(numbers, count);
+    }
+
+    /**
+     * The numbers and the value of a map entry, sorted by numbers.
+     */
+    private static class KeyNumbers implements Comparable<KeyNumbers> {
+
+        /**
+         * The numbers of the key.
+         */
+        private final int[] iNumbers;
+        /**
+         * The value.
+         */
+        private final String iValue;
+
+        /**
+         * Constructor.
+         *
+         * @param aNumbers the numbers of the key
+         * @param aValue the value
+         */
+        public KeyNumbers(int[] aNumbers, String aValue) {
+            iNumbers = aNumbers;
+            iValue = aValue;
+        }
+
+        @Override
+        public int compareTo(KeyNumbers aOther) {
+            for (int i = 0; i < iNumbers.length; i++) {
+                if (iNumbers[i] != aOther.iNumbers[i]) {
+                    return iNumbers[i] < aOther.iNumbers[i] ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * A value made of decimal numbers separated by single spaces, each number
+     * given as mantissa and scale, i.e. number of decimals.
+     */
+    static class NumberList {
+
+        /**
+         * The white space before the first number.
+         */
+        String iPrefix;
+        /**
+         * The white space after the last number.
+         */
+        String iSuffix;
+        /**
+         * The number of numbers.
+         */
+        int iSize;
+        /**
+         * The mantissas.
+         */
+        long[] iMantissas;
+        /**
+         * The scales.
+         */
+        int[] iScales;
+
+        /**
+         * Parses a value as number list.
+         *
+         * @param aValue the value
+         * @return the number list, null if the value is not a number list that
+         * can be restored exactly
+         */
+        static NumberList parse(String aValue) {
+            int start = 0;
+            int end = aValue.length();
+            while (start < end && Character.isWhitespace(aValue.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(aValue.charAt(end - 1))) {
+                end--;
+            }
+            if (end - start < 2 * MIN_NUMBER_LIST_SIZE - 1 || aValue.indexOf(' ', start) == -1) {
+                return null;
+            }
+            char first = aValue.charAt(start);
+            if ((first < '0' || first > '9') && first != '-') {
+                return null;
+            }
+            NumberList numberList = new NumberList();
+            numberList.iPrefix = aValue.substring(0, start);
+            numberList.iSuffix = aValue.substring(end);
+            numberList.iMantissas = new long[16];
+            numberList.iScales = new int[16];
+            int tokenStart = start;
+            while (tokenStart < end) {
+                int tokenEnd = aValue.indexOf(' ', tokenStart);
+                if (tokenEnd == -1 || tokenEnd > end) {
+                    tokenEnd = end;
+                }
+                if (!numberList.add(aValue, tokenStart, tokenEnd)) {
+                    return null;
+                }
+                tokenStart = tokenEnd + 1;
+            }
+            if (numberList.iSize < MIN_NUMBER_LIST_SIZE) {
+                return null;
+            }
+            return numberList;
+        }
+
+        /**
+         * Adds a number.
+         *
+         * @param aValue the value containing the number
+         * @param aStart the start of the number
+         * @param aEnd the end of the number
+         * @return false if the text is not a number that appendNumber restores
+         * exactly
+         */
+        private boolean add(String aValue, int aStart, int aEnd) {
+            boolean negative = aStart < aEnd && aValue.charAt(aStart) == '-';
+            int i = negative ? aStart + 1 : aStart;
+            if (i == aEnd || aEnd - i > 18) {
+                return false;
+            }
+            // a leading zero is only restored alone or before the decimals
+            if (aValue.charAt(i) == '0' && i + 1 < aEnd && aValue.charAt(i + 1) != '.') {
+                return false;
+            }
+            long mantissa = 0;
+            int scale = 0;
+            int integerDigits = 0;
+            boolean decimals = false;
+            for (; i < aEnd; i++) {
+                char c = aValue.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    mantissa = 10 * mantissa + (c - '0');
+                    if (decimals) {
+                        scale++;
+                    } else {
+                        integerDigits++;
+                    }
+                } else if (c == '.' && !decimals && integerDigits > 0) {
+                    decimals = true;
+                } else {
+                    return false;
+                }
+            }
+            // the sign of zero and a decimal point without decimals are lost
+            if ((decimals && scale == 0) || (negative && mantissa == 0)) {
+                return false;
+            }
+            if (iSize == iMantissas.length) {
+                iMantissas = Arrays.copyOf(iMantissas, 2 * iSize);
+                iScales = Arrays.copyOf(iScales, 2 * iSize);
+            }
+            iMantissas[iSize] = negative ? -mantissa : mantissa;
+            iScales[iSize] = scale;
+            iSize++;
+            return true;
+        }
+
+        /**
+         * Appends the text of a number to the given builder.
+         *
+         * @param aBuilder the builder
+         * @param aMantissa the mantissa
+         * @param aScale the scale
+         */
+        static void appendNumber(StringBuilder aBuilder, long aMantissa, int aScale) {
+            if (aMantissa < 0) {
+                aBuilder.append('-');
+            }
+            String digits = Long.toString(Math.abs(aMantissa));
+            if (aScale == 0) {
+                aBuilder.append(digits);
+                return;
+            }
+            for (int i = digits.length(); i <= aScale; i++) {
+                aBuilder.append('0');
+            }
+            aBuilder.append(digits);
+            aBuilder.insert(aBuilder.length() - aScale, '.');
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(iPrefix);
+            for (int i = 0; i < iSize; i++) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                appendNumber(builder, iMantissas[i], iScales[i]);
+            }
+            builder.append(iSuffix);
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,1165 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a pull tokenizer reading X!Tandem output at the byte level,
+ * e.g. from a memory mapped file. It only handles the subset of XML written
+ * by X!Tandem: elements, attributes, text, comments, processing instructions
+ * and a DOCTYPE without internal subset, in UTF-8, US-ASCII or ISO-8859-1.
+ * Element names and attribute values are compared on the bytes, numeric
+ * attributes are parsed from the bytes, and strings are only created when
+ * asked for.
+ * <p>
+ * Anything outside of this subset, including malformed content, throws an
+ * UnsupportedContentException, upon which the caller is expected to fall
+ * back to the standard XML parser.
+ */
+class GamlTokenizer {
+
+    /**
+     * Event of the start of an element.
+     */
+    static final int START_ELEMENT = 1;
+    /**
+     * Event of the end of an element.
+     */
+    static final int END_ELEMENT = 2;
+    /**
+     * Event of a text between two tags.
+     */
+    static final int TEXT = 3;
+    /**
+     * Event of the end of the input.
+     */
+    static final int END_DOCUMENT = 4;
+    /**
+     * The UTF-8 encoding.
+     */
+    private static final int UTF_8 = 0;
+    /**
+     * The US-ASCII encoding.
+     */
+    private static final int US_ASCII = 1;
+    /**
+     * The ISO-8859-1 encoding.
+     */
+    private static final int ISO_8859_1 = 2;
+    /**
+     * The names of the encodings, indexed by encoding.
+     */
+    private static final String[] ENCODING_NAMES = {"UTF-8", "US-ASCII", "ISO-8859-1"};
+    /**
+     * The powers of ten exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /**
+     * The largest mantissa exactly representable as double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /**
+     * The buffer holding the input, only read with absolute gets.
+     */
+    private ByteBuffer iBuffer;
+    /**
+     * The position of the next byte to read.
+     */
+    private int iPosition;
+    /**
+     * The end of the input.
+     */
+    private int iLimit;
+    /**
+     * The encoding of the input.
+     */
+    private int iEncoding = UTF_8;
+    /**
+     * The current event.
+     */
+    private int iEvent = 0;
+    /**
+     * The position of the '&lt;' of the current tag.
+     */
+    private int iTagStart;
+    /**
+     * The start of the name of the current element.
+     */
+    private int iNameStart;
+    /**
+     * The end of the name of the current element.
+     */
+    private int iNameEnd;
+    /**
+     * The start of the current text.
+     */
+    private int iTextStart;
+    /**
+     * The end of the current text.
+     */
+    private int iTextEnd;
+    /**
+     * The number of attributes of the current element.
+     */
+    private int iAttributeCount = 0;
+    /**
+     * The start and end of the attribute names, two ints per attribute.
+     */
+    private int[] iAttributeNames = new int[32];
+    /**
+     * The start and end of the raw attribute values, two ints per attribute.
+     */
+    private int[] iAttributeValues = new int[32];
+    /**
+     * True if the current element is empty, i.e. its end is the next event.
+     */
+    private boolean iEmptyElement = false;
+    /**
+     * The start and end of the names of the open elements, two ints per
+     * element.
+     */
+    private int[] iOpenElements = new int[32];
+    /**
+     * The number of open elements.
+     */
+    private int iDepth = 0;
+    /**
+     * Buffer used to create the strings.
+     */
+    private char[] iChars = new char[256];
+
+    /**
+     * Creates a tokenizer reading the given range of the buffer, the encoding
+     * being given by the XML declaration or a byte order mark.
+     *
+     * @param aBuffer the buffer holding the input
+     * @param aStart the position of the first byte
+     * @param aEnd the position after the last byte
+     * @throws UnsupportedContentException if the input starts with a UTF-16 or
+     * UTF-32 byte order mark
+     */
+    GamlTokenizer(ByteBuffer aBuffer, int aStart, int aEnd) throws UnsupportedContentException {
+        iBuffer = aBuffer;
+        iPosition = aStart;
+        iLimit = aEnd;
+        if (startsWith(aStart, new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF})) {
+            iPosition += 3;
+        } else if (aEnd - aStart >= 2 && (byteAt(aStart) == (byte) 0xFE || byteAt(aStart) == (byte) 0xFF || byteAt(aStart) == 0)) {
+            throw new UnsupportedContentException("Unsupported byte order mark.");
+        }
+    }
+
+    /**
+     * Creates a tokenizer reading a range of the buffer of the given
+     * tokenizer, e.g. an element whose range was returned by getTagStart()
+     * and getPosition(), with the same encoding.
+     *
+     * @param aTokenizer the tokenizer giving the buffer and the encoding
+     * @param aStart the position of the first byte
+     * @param aEnd the position after the last byte
+     */
+    GamlTokenizer(GamlTokenizer aTokenizer, int aStart, int aEnd) {
+        iBuffer = aTokenizer.iBuffer;
+        iEncoding = aTokenizer.iEncoding;
+        iPosition = aStart;
+        iLimit = aEnd;
+    }
+
+    /**
+     * Returns the name of the encoding of the input.
+     *
+     * @return the name of the encoding
+     */
+    String getEncoding() {
+        return ENCODING_NAMES[iEncoding];
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return the event, START_ELEMENT, END_ELEMENT, TEXT or END_DOCUMENT
+     * @throws UnsupportedContentException if the content is not supported or
+     * not well-formed
+     */
+    int next() throws UnsupportedContentException {
+
+        if (iEmptyElement) {
+            iEmptyElement = false;
+            iDepth--;
+            return iEvent = END_ELEMENT;
+        }
+
+        while (true) {
+
+            if (iPosition >= iLimit) {
+                if (iDepth > 0) {
+                    throw new UnsupportedContentException("Unexpected end of input at " + iPosition + ".");
+                }
+                return iEvent = END_DOCUMENT;
+            }
+
+            if (byteAt(iPosition) != '<') {
+                iTextStart = iPosition;
+                iPosition = indexOf((byte) '<', iPosition);
+                if (iPosition < 0) {
+                    iPosition = iLimit;
+                }
+                iTextEnd = iPosition;
+                if (iDepth > 0) {
+                    return iEvent = TEXT;
+                }
+                for (int i = iTextStart; i < iTextEnd; i++) {
+                    if (!isWhitespace(byteAt(i))) {
+                        throw new UnsupportedContentException("Text outside of the root element at " + i + ".");
+                    }
+                }
+                continue;
+            }
+
+            iTagStart = iPosition;
+            byte next = iPosition + 1 < iLimit ? byteAt(iPosition + 1) : 0;
+
+            if (next == '?') {
+                int end = indexOf(new byte[]{'?', '>'}, iPosition + 2);
+                if (end < 0) {
+                    throw new UnsupportedContentException("Unterminated processing instruction at " + iPosition + ".");
+                }
+                if (startsWith(iPosition, new byte[]{'<', '?', 'x', 'm', 'l'}) && iPosition + 5 < end && isWhitespace(byteAt(iPosition + 5))) {
+                    readEncoding(iPosition + 5, end);
+                }
+                iPosition = end + 2;
+                continue;
+            }
+
+            if (next == '!') {
+                if (startsWith(iPosition, new byte[]{'<', '!', '-', '-'})) {
+                    int end = indexOf(new byte[]{'-', '-', '>'}, iPosition + 4);
+                    if (end < 0) {
+                        throw new UnsupportedContentException("Unterminated comment at " + iPosition + ".");
+                    }
+                    iPosition = end + 3;
+                    continue;
+                }
+                if (iDepth == 0 && startsWith(iPosition, new byte[]{'<', '!', 'D', 'O', 'C', 'T', 'Y', 'P', 'E'})) {
+                    int end = indexOf((byte) '>', iPosition);
+                    if (end < 0) {
+                        throw new UnsupportedContentException("Unterminated document type declaration at " + iPosition + ".");
+                    }
+                    for (int i = iPosition; i < end; i++) {
+                        if (byteAt(i) == '[') {
+                            throw new UnsupportedContentException("Unsupported internal subset at " + iPosition + ".");
+                        }
+                    }
+                    iPosition = end + 1;
+                    continue;
+                }
+                throw new UnsupportedContentException("Unsupported markup at " + iPosition + ".");
+            }
+
+            if (next == '/') {
+                int nameStart = iPosition + 2;
+                int nameEnd = scanName(nameStart);
+                int end = skipWhitespace(nameEnd);
+                if (end >= iLimit || byteAt(end) != '>') {
+                    throw new UnsupportedContentException("Malformed end tag at " + iPosition + ".");
+                }
+                if (iDepth == 0 || !rangeEquals(nameStart, nameEnd, iOpenElements[2 * iDepth - 2], iOpenElements[2 * iDepth - 1])) {
+                    throw new UnsupportedContentException("Unexpected end tag at " + iPosition + ".");
+                }
+                iDepth--;
+                iNameStart = nameStart;
+                iNameEnd = nameEnd;
+                iPosition = end + 1;
+                return iEvent = END_ELEMENT;
+            }
+
+            readStartTag();
+            return iEvent = START_ELEMENT;
+        }
+    }
+
+    /**
+     * Returns the current event.
+     *
+     * @return the current event
+     */
+    int getEvent() {
+        return iEvent;
+    }
+
+    /**
+     * Returns the position after the last byte read, i.e. after the current
+     * tag or text.
+     *
+     * @return the position
+     */
+    int getPosition() {
+        return iPosition;
+    }
+
+    /**
+     * Returns the position of the '&lt;' of the current tag.
+     *
+     * @return the position of the current tag
+     */
+    int getTagStart() {
+        return iTagStart;
+    }
+
+    /**
+     * Returns the number of open elements, the current element included if
+     * the current event is START_ELEMENT.
+     *
+     * @return the depth
+     */
+    int getDepth() {
+        return iDepth;
+    }
+
+    /**
+     * Reads the next child element of the current element, skipping the text
+     * in between. When a child is returned, its content must be consumed by
+     * the caller, e.g. with nextChild, skipElement or readText, before the
+     * next call.
+     *
+     * @param aText the builder the skipped text is appended to, can be null
+     * @return true if a child element was read, false if the end of the
+     * current element was reached
+     * @throws UnsupportedContentException if the content is not supported
+     */
+    boolean nextChild(StringBuilder aText) throws UnsupportedContentException {
+        while (true) {
+            int event = next();
+            if (event == START_ELEMENT) {
+                return true;
+            } else if (event == TEXT) {
+                if (aText != null) {
+                    appendText(aText);
+                }
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skips the content and the end of the current element.
+     *
+     * @param aText the builder the text of the element is appended to, can be
+     * null
+     * @throws UnsupportedContentException if the content is not supported
+     */
+    void skipElement(StringBuilder aText) throws UnsupportedContentException {
+        int depth = iDepth;
+        while (iDepth >= depth) {
+            if (next() == TEXT && aText != null) {
+                appendText(aText);
+            }
+        }
+    }
+
+    /**
+     * Reads the content and the end of the current element, and returns the
+     * concatenated text of the element and its descendants, like the
+     * getTextContent method of the DOM.
+     *
+     * @return the text content
+     * @throws UnsupportedContentException if the content is not supported
+     */
+    String readText() throws UnsupportedContentException {
+        int depth = iDepth;
+        String text = null;
+        StringBuilder builder = null;
+        while (iDepth >= depth) {
+            if (next() == TEXT) {
+                if (text == null) {
+                    text = decode(iTextStart, iTextEnd, false);
+                } else {
+                    if (builder == null) {
+                        builder = new StringBuilder(text);
+                    }
+                    appendText(builder);
+                }
+            }
+        }
+        if (builder != null) {
+            return builder.toString();
+        }
+        return text == null ? "" : text;
+    }
+
+    /**
+     * Appends the current text to the given builder.
+     *
+     * @param aText the builder
+     * @throws UnsupportedContentException if the text is not supported
+     */
+    void appendText(StringBuilder aText) throws UnsupportedContentException {
+        decode(iTextStart, iTextEnd, false, aText);
+    }
+
+    /**
+     * Skips the content and the end of the current element if the content is
+     * a single text in plain ASCII, i.e. whose bytes are the text itself
+     * without references or line ends to normalize. The content starts at
+     * the position before the call.
+     *
+     * @return the position after the content, -1 if the content is not plain
+     * text, in which case nothing is read
+     * @throws UnsupportedContentException if the end tag is not well-formed
+     */
+    int skipPlainText() throws UnsupportedContentException {
+        if (iEmptyElement) {
+            next();
+            return iPosition;
+        }
+        int end = indexOf((byte) '<', iPosition);
+        if (end < 0 || end + 1 >= iLimit || byteAt(end + 1) != '/') {
+            return -1;
+        }
+        for (int i = iPosition; i < end; i++) {
+            byte value = byteAt(i);
+            if (value == '&' || value == '\r' || (value < ' ' && value != '\n' && value != '\t')) {
+                return -1;
+            }
+        }
+        iPosition = end;
+        next();
+        return end;
+    }
+
+    /**
+     * Returns true if the name of the current element equals the given name,
+     * ignoring the case.
+     *
+     * @param aName the name in ASCII
+     * @return true if the current element has the given name
+     */
+    boolean isElement(byte[] aName) {
+        if (iNameEnd - iNameStart != aName.length) {
+            return false;
+        }
+        for (int i = 0; i < aName.length; i++) {
+            if (toLowerCase(byteAt(iNameStart + i)) != toLowerCase(aName[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the current element has the given attribute.
+     *
+     * @param aName the attribute name in ASCII
+     * @return true if the attribute is given
+     */
+    boolean hasAttribute(byte[] aName) {
+        return indexOfAttribute(aName) >= 0;
+    }
+
+    /**
+     * Returns the value of the given attribute of the current element.
+     *
+     * @param aName the attribute name in ASCII
+     * @return the value, null if the attribute is not given
+     * @throws UnsupportedContentException if the value is not supported
+     */
+    String getAttribute(byte[] aName) throws UnsupportedContentException {
+        int index = indexOfAttribute(aName);
+        if (index < 0) {
+            return null;
+        }
+        return decode(iAttributeValues[2 * index], iAttributeValues[2 * index + 1], true);
+    }
+
+    /**
+     * Returns the value of the given attribute of the current element, which
+     * has to be given.
+     *
+     * @param aName the attribute name in ASCII
+     * @return the value
+     * @throws UnsupportedContentException if the attribute is not given or its
+     * value is not supported
+     */
+    String getRequiredAttribute(byte[] aName) throws UnsupportedContentException {
+        String value = getAttribute(aName);
+        if (value == null) {
+            throw new UnsupportedContentException("Missing attribute " + toString(aName) + " at " + iTagStart + ".");
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if the value of the given attribute equals the given
+     * value.
+     *
+     * @param aName the attribute name in ASCII
+     * @param aValue the value in ASCII
+     * @param aIgnoreCase if true the case is ignored
+     * @return true if the attribute is given and has the given value
+     * @throws UnsupportedContentException if the value is not supported
+     */
+    boolean attributeEquals(byte[] aName, byte[] aValue, boolean aIgnoreCase) throws UnsupportedContentException {
+        int index = indexOfAttribute(aName);
+        if (index < 0) {
+            return false;
+        }
+        int start = iAttributeValues[2 * index];
+        int end = iAttributeValues[2 * index + 1];
+        for (int i = start; i < end; i++) {
+            byte b = byteAt(i);
+            if (b == '&' || b == '\t' || b == '\n' || b == '\r') {
+                String value = decode(start, end, true);
+                String expected = toString(aValue);
+                return aIgnoreCase ? value.equalsIgnoreCase(expected) : value.equals(expected);
+            }
+        }
+        if (end - start != aValue.length) {
+            return false;
+        }
+        for (int i = 0; i < aValue.length; i++) {
+            byte b = byteAt(start + i);
+            if (aIgnoreCase ? toLowerCase(b) != toLowerCase(aValue[i]) : b != aValue[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of the given attribute as double, parsed from the
+     * bytes. Leading and trailing whitespace is ignored.
+     *
+     * @param aName the attribute name in ASCII
+     * @return the value, NaN if the attribute is not given or not a number
+     * @throws UnsupportedContentException if the value is not supported
+     */
+    double getDoubleAttribute(byte[] aName) throws UnsupportedContentException {
+        int index = indexOfAttribute(aName);
+        if (index < 0) {
+            return Double.NaN;
+        }
+        try {
+            return parseDouble(iAttributeValues[2 * index], iAttributeValues[2 * index + 1]);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the value of the given attribute as double, parsed from the
+     * bytes, which has to be given and to be a number.
+     *
+     * @param aName the attribute name in ASCII
+     * @return the value
+     * @throws UnsupportedContentException if the attribute is not given or
+     * not a number
+     */
+    double getRequiredDoubleAttribute(byte[] aName) throws UnsupportedContentException {
+        int index = indexOfAttribute(aName);
+        if (index < 0) {
+            throw new UnsupportedContentException("Missing attribute " + toString(aName) + " at " + iTagStart + ".");
+        }
+        try {
+            return parseDouble(iAttributeValues[2 * index], iAttributeValues[2 * index + 1]);
+        } catch (NumberFormatException e) {
+            throw new UnsupportedContentException("Attribute " + toString(aName) + " at " + iTagStart + " is not a number.");
+        }
+    }
+
+    /**
+     * Returns the value of the given attribute as int, parsed from the bytes,
+     * which has to be given and to be an integer.
+     *
+     * @param aName the attribute name in ASCII
+     * @param aTrim if true leading and trailing whitespace is ignored
+     * @return the value
+     * @throws UnsupportedContentException if the attribute is not given or
+     * not an integer
+     */
+    int getRequiredIntAttribute(byte[] aName, boolean aTrim) throws UnsupportedContentException {
+        int index = indexOfAttribute(aName);
+        if (index < 0) {
+            throw new UnsupportedContentException("Missing attribute " + toString(aName) + " at " + iTagStart + ".");
+        }
+        int start = iAttributeValues[2 * index];
+        int end = iAttributeValues[2 * index + 1];
+        if (aTrim) {
+            while (start < end && (byteAt(start) & 0xFF) <= ' ') {
+                start++;
+            }
+            while (end > start && (byteAt(end - 1) & 0xFF) <= ' ') {
+                end--;
+            }
+        }
+        boolean negative = start < end && byteAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 9) {
+            throw new UnsupportedContentException("Attribute " + toString(aName) + " at " + iTagStart + " is not a supported integer.");
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            byte b = byteAt(i);
+            if (b < '0' || b > '9') {
+                throw new UnsupportedContentException("Attribute " + toString(aName) + " at " + iTagStart + " is not an integer.");
+            }
+            value = 10 * value + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a double from the given bytes, with the result of
+     * Double.parseDouble. Decimal numbers with at most 18 significant digits
+     * whose value is exactly computed in double precision are parsed from
+     * the bytes, the others through a string.
+     *
+     * @param aStart the start of the bytes
+     * @param aEnd the end of the bytes
+     * @return the value
+     * @throws UnsupportedContentException if the bytes are not supported
+     */
+    private double parseDouble(int aStart, int aEnd) throws UnsupportedContentException {
+        int start = aStart;
+        int end = aEnd;
+        while (start < end && (byteAt(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (byteAt(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (byteAt(i) == '-' || byteAt(i) == '+')) {
+            negative = byteAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        boolean digit = false;
+        int digits = 0;
+        int exponent = 0;
+        boolean point = false;
+        boolean simple = i < end;
+        for (; i < end && simple; i++) {
+            byte b = byteAt(i);
+            if (b >= '0' && b <= '9') {
+                digit = true;
+                if (mantissa > 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = 10 * mantissa + (b - '0');
+                if (point) {
+                    exponent--;
+                }
+                simple = digits <= 18;
+            } else if (b == '.' && !point) {
+                point = true;
+            } else if ((b == 'e' || b == 'E') && digit && i + 1 < end) {
+                int j = i + 1;
+                boolean negativeExponent = false;
+                if (byteAt(j) == '-' || byteAt(j) == '+') {
+                    negativeExponent = byteAt(j) == '-';
+                    j++;
+                }
+                int explicit = 0;
+                simple = j < end && end - j <= 3;
+                for (; j < end && simple; j++) {
+                    byte e = byteAt(j);
+                    simple = e >= '0' && e <= '9';
+                    explicit = 10 * explicit + (e - '0');
+                }
+                exponent += negativeExponent ? -explicit : explicit;
+                i = end;
+                break;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && digit && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(decode(aStart, aEnd, true));
+    }
+
+    /**
+     * Reads the start tag at the current position.
+     *
+     * @throws UnsupportedContentException if the tag is not supported
+     */
+    private void readStartTag() throws UnsupportedContentException {
+
+        iNameStart = iPosition + 1;
+        iNameEnd = scanName(iNameStart);
+        if (iNameEnd == iNameStart) {
+            throw new UnsupportedContentException("Malformed start tag at " + iPosition + ".");
+        }
+        iAttributeCount = 0;
+        int position = iNameEnd;
+
+        while (true) {
+            int next = skipWhitespace(position);
+            if (next >= iLimit) {
+                throw new UnsupportedContentException("Unterminated start tag at " + iTagStart + ".");
+            }
+            byte b = byteAt(next);
+            if (b == '>') {
+                iPosition = next + 1;
+                break;
+            }
+            if (b == '/') {
+                if (next + 1 >= iLimit || byteAt(next + 1) != '>') {
+                    throw new UnsupportedContentException("Malformed start tag at " + iTagStart + ".");
+                }
+                iPosition = next + 2;
+                iEmptyElement = true;
+                break;
+            }
+            if (next == position) {
+                throw new UnsupportedContentException("Missing whitespace before attribute at " + next + ".");
+            }
+            int attributeNameEnd = scanName(next);
+            int equals = skipWhitespace(attributeNameEnd);
+            if (attributeNameEnd == next || equals >= iLimit || byteAt(equals) != '=') {
+                throw new UnsupportedContentException("Malformed attribute at " + next + ".");
+            }
+            int quote = skipWhitespace(equals + 1);
+            if (quote >= iLimit || byteAt(quote) != '"' && byteAt(quote) != '\'') {
+                throw new UnsupportedContentException("Malformed attribute value at " + quote + ".");
+            }
+            int valueEnd = indexOf(byteAt(quote), quote + 1);
+            if (valueEnd < 0) {
+                throw new UnsupportedContentException("Unterminated attribute value at " + quote + ".");
+            }
+            for (int i = quote + 1; i < valueEnd; i++) {
+                if (byteAt(i) == '<') {
+                    throw new UnsupportedContentException("Malformed attribute value at " + quote + ".");
+                }
+            }
+            if (2 * iAttributeCount + 2 > iAttributeNames.length) {
+                iAttributeNames = grow(iAttributeNames);
+                iAttributeValues = grow(iAttributeValues);
+            }
+            iAttributeNames[2 * iAttributeCount] = next;
+            iAttributeNames[2 * iAttributeCount + 1] = attributeNameEnd;
+            iAttributeValues[2 * iAttributeCount] = quote + 1;
+            iAttributeValues[2 * iAttributeCount + 1] = valueEnd;
+            iAttributeCount++;
+            position = valueEnd + 1;
+        }
+
+        if (2 * iDepth + 2 > iOpenElements.length) {
+            iOpenElements = grow(iOpenElements);
+        }
+        iOpenElements[2 * iDepth] = iNameStart;
+        iOpenElements[2 * iDepth + 1] = iNameEnd;
+        iDepth++;
+    }
+
+    /**
+     * Reads the encoding of the XML declaration between the given positions.
+     *
+     * @param aStart the position after "&lt;?xml"
+     * @param aEnd the position of "?&gt;"
+     * @throws UnsupportedContentException if the encoding is not supported
+     */
+    private void readEncoding(int aStart, int aEnd) throws UnsupportedContentException {
+        byte[] name = {'e', 'n', 'c', 'o', 'd', 'i', 'n', 'g'};
+        for (int i = aStart; i + name.length <= aEnd; i++) {
+            if (startsWith(i, name)) {
+                int equals = skipWhitespace(i + name.length);
+                if (equals >= aEnd || byteAt(equals) != '=') {
+                    throw new UnsupportedContentException("Malformed XML declaration.");
+                }
+                int quote = skipWhitespace(equals + 1);
+                if (quote >= aEnd || byteAt(quote) != '"' && byteAt(quote) != '\'') {
+                    throw new UnsupportedContentException("Malformed XML declaration.");
+                }
+                int end = indexOf(byteAt(quote), quote + 1);
+                if (end < 0 || end > aEnd) {
+                    throw new UnsupportedContentException("Malformed XML declaration.");
+                }
+                String encoding = decode(quote + 1, end, true).toUpperCase();
+                if (encoding.equals("UTF-8") || encoding.equals("UTF8")) {
+                    iEncoding = UTF_8;
+                } else if (encoding.equals("US-ASCII") || encoding.equals("ASCII")) {
+                    iEncoding = US_ASCII;
+                } else if (encoding.equals("ISO-8859-1") || encoding.equals("LATIN1")) {
+                    iEncoding = ISO_8859_1;
+                } else {
+                    throw new UnsupportedContentException("Unsupported encoding " + encoding + ".");
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decodes the given bytes into a string.
+     *
+     * @param aStart the start of the bytes
+     * @param aEnd the end of the bytes
+     * @param aAttribute if true the whitespace is normalized as in attribute
+     * values
+     * @return the string
+     * @throws UnsupportedContentException if the bytes are not supported
+     */
+    private String decode(int aStart, int aEnd, boolean aAttribute) throws UnsupportedContentException {
+        int length = aEnd - aStart;
+        if (length > iChars.length) {
+            iChars = new char[Math.max(length, 2 * iChars.length)];
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = byteAt(aStart + i);
+            if (b < ' ' || b == '&') {
+                if (!(b == '\t' || b == '\n') || aAttribute) {
+                    StringBuilder builder = new StringBuilder(length);
+                    decode(aStart, aEnd, aAttribute, builder);
+                    return builder.toString();
+                }
+            }
+            iChars[i] = (char) b;
+        }
+        return new String(iChars, 0, length);
+    }
+
+    /**
+     * Decodes the given bytes and appends them to the given builder,
+     * replacing the entity and character references and normalizing the line
+     * ends.
+     *
+     * @param aStart the start of the bytes
+     * @param aEnd the end of the bytes
+     * @param aAttribute if true the whitespace is normalized as in attribute
+     * values
+     * @param aBuilder the builder
+     * @throws UnsupportedContentException if the bytes are not supported
+     */
+    private void decode(int aStart, int aEnd, boolean aAttribute, StringBuilder aBuilder) throws UnsupportedContentException {
+        int i = aStart;
+        while (i < aEnd) {
+            int b = byteAt(i) & 0xFF;
+            if (b == '&') {
+                int end = indexOf((byte) ';', i);
+                if (end < 0 || end >= aEnd || end - i > 10) {
+                    throw new UnsupportedContentException("Unsupported reference at " + i + ".");
+                }
+                appendReference(i + 1, end, aBuilder);
+                i = end + 1;
+            } else if (b == '\r') {
+                aBuilder.append(aAttribute ? ' ' : '\n');
+                i += i + 1 < aEnd && byteAt(i + 1) == '\n' ? 2 : 1;
+            } else if (b < 0x80) {
+                aBuilder.append(aAttribute && (b == '\t' || b == '\n') ? ' ' : (char) b);
+                i++;
+            } else if (iEncoding == ISO_8859_1) {
+                aBuilder.append((char) b);
+                i++;
+            } else if (iEncoding == UTF_8) {
+                i = appendUtf8(i, aEnd, aBuilder);
+            } else {
+                throw new UnsupportedContentException("Non ASCII byte at " + i + ".");
+            }
+        }
+    }
+
+    /**
+     * Appends the character of the given entity or character reference.
+     *
+     * @param aStart the position after the '&amp;'
+     * @param aEnd the position of the ';'
+     * @param aBuilder the builder
+     * @throws UnsupportedContentException if the reference is not supported
+     */
+    private void appendReference(int aStart, int aEnd, StringBuilder aBuilder) throws UnsupportedContentException {
+        if (aEnd - aStart >= 2 && byteAt(aStart) == '#') {
+            int radix = 10;
+            int i = aStart + 1;
+            if (byteAt(i) == 'x') {
+                radix = 16;
+                i++;
+            }
+            int codePoint = 0;
+            if (i == aEnd || aEnd - i > 6) {
+                throw new UnsupportedContentException("Unsupported character reference at " + aStart + ".");
+            }
+            for (; i < aEnd; i++) {
+                int digit = Character.digit((char) byteAt(i), radix);
+                if (digit < 0) {
+                    throw new UnsupportedContentException("Malformed character reference at " + aStart + ".");
+                }
+                codePoint = radix * codePoint + digit;
+            }
+            if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT || codePoint >= 0xD800 && codePoint <= 0xDFFF) {
+                throw new UnsupportedContentException("Invalid character reference at " + aStart + ".");
+            }
+            aBuilder.appendCodePoint(codePoint);
+        } else if (rangeEquals(aStart, aEnd, new byte[]{'a', 'm', 'p'})) {
+            aBuilder.append('&');
+        } else if (rangeEquals(aStart, aEnd, new byte[]{'l', 't'})) {
+            aBuilder.append('<');
+        } else if (rangeEquals(aStart, aEnd, new byte[]{'g', 't'})) {
+            aBuilder.append('>');
+        } else if (rangeEquals(aStart, aEnd, new byte[]{'q', 'u', 'o', 't'})) {
+            aBuilder.append('"');
+        } else if (rangeEquals(aStart, aEnd, new byte[]{'a', 'p', 'o', 's'})) {
+            aBuilder.append('\'');
+        } else {
+            throw new UnsupportedContentException("Unsupported entity reference at " + aStart + ".");
+        }
+    }
+
+    /**
+     * Decodes the UTF-8 sequence at the given position and appends it to the
+     * given builder.
+     *
+     * @param aPosition the position of the first byte of the sequence
+     * @param aEnd the end of the bytes
+     * @param aBuilder the builder
+     * @return the position after the sequence
+     * @throws UnsupportedContentException if the sequence is malformed
+     */
+    private int appendUtf8(int aPosition, int aEnd, StringBuilder aBuilder) throws UnsupportedContentException {
+        int b = byteAt(aPosition) & 0xFF;
+        int length;
+        int codePoint;
+        if (b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+            codePoint = b & 0x1F;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+            codePoint = b & 0x0F;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+            codePoint = b & 0x07;
+        } else {
+            throw new UnsupportedContentException("Malformed UTF-8 at " + aPosition + ".");
+        }
+        if (aPosition + length > aEnd) {
+            throw new UnsupportedContentException("Malformed UTF-8 at " + aPosition + ".");
+        }
+        for (int i = 1; i < length; i++) {
+            int c = byteAt(aPosition + i) & 0xFF;
+            if ((c & 0xC0) != 0x80) {
+                throw new UnsupportedContentException("Malformed UTF-8 at " + aPosition + ".");
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+        if (length == 3 && (codePoint < 0x800 || codePoint >= 0xD800 && codePoint <= 0xDFFF)
+                || length == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT)) {
+            throw new UnsupportedContentException("Malformed UTF-8 at " + aPosition + ".");
+        }
+        aBuilder.appendCodePoint(codePoint);
+        return aPosition + length;
+    }
+
+    /**
+     * Returns the index of the given attribute of the current element.
+     *
+     * @param aName the attribute name in ASCII
+     * @return the index, -1 if the attribute is not given
+     */
+    private int indexOfAttribute(byte[] aName) {
+        for (int i = 0; i < iAttributeCount; i++) {
+            if (rangeEquals(iAttributeNames[2 * i], iAttributeNames[2 * i + 1], aName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of the name starting at the given position.
+     *
+     * @param aStart the start of the name
+     * @return the position after the name
+     */
+    private int scanName(int aStart) {
+        int i = aStart;
+        while (i < iLimit) {
+            byte b = byteAt(i);
+            if (isWhitespace(b) || b == '>' || b == '/' || b == '=' || b == '<') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position of the first non whitespace byte from the given
+     * position.
+     *
+     * @param aStart the start position
+     * @return the position, iLimit if only whitespace follows
+     */
+    private int skipWhitespace(int aStart) {
+        int i = aStart;
+        while (i < iLimit && isWhitespace(byteAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position of the given byte.
+     *
+     * @param aByte the byte
+     * @param aStart the position to start searching from
+     * @return the position, -1 if not found
+     */
+    private int indexOf(byte aByte, int aStart) {
+        for (int i = aStart; i < iLimit; i++) {
+            if (byteAt(i) == aByte) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the given bytes.
+     *
+     * @param aBytes the bytes
+     * @param aStart the position to start searching from
+     * @return the position, -1 if not found
+     */
+    private int indexOf(byte[] aBytes, int aStart) {
+        int i = aStart;
+        while (true) {
+            i = indexOf(aBytes[0], i);
+            if (i < 0 || i + aBytes.length > iLimit) {
+                return -1;
+            }
+            if (startsWith(i, aBytes)) {
+                return i;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns true if the input at the given position starts with the given
+     * bytes.
+     *
+     * @param aPosition the position
+     * @param aBytes the bytes
+     * @return true if the bytes are found at the position
+     */
+    private boolean startsWith(int aPosition, byte[] aBytes) {
+        if (aPosition + aBytes.length > iLimit) {
+            return false;
+        }
+        for (int i = 0; i < aBytes.length; i++) {
+            if (byteAt(aPosition + i) != aBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given range holds the given bytes.
+     *
+     * @param aStart the start of the range
+     * @param aEnd the end of the range
+     * @param aBytes the bytes
+     * @return true if the range holds the bytes
+     */
+    private boolean rangeEquals(int aStart, int aEnd, byte[] aBytes) {
+        return aEnd - aStart == aBytes.length && startsWith(aStart, aBytes);
+    }
+
+    /**
+     * Returns true if the two given ranges hold the same bytes.
+     *
+     * @param aStart the start of the first range
+     * @param aEnd the end of the first range
+     * @param aOtherStart the start of the second range
+     * @param aOtherEnd the end of the second range
+     * @return true if the ranges hold the same bytes
+     */
+    private boolean rangeEquals(int aStart, int aEnd, int aOtherStart, int aOtherEnd) {
+        if (aEnd - aStart != aOtherEnd - aOtherStart) {
+            return false;
+        }
+        for (int i = 0; i < aEnd - aStart; i++) {
+            if (byteAt(aStart + i) != byteAt(aOtherStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the byte at the given position.
+     *
+     * @param aPosition the position
+     * @return the byte
+     */
+    private byte byteAt(int aPosition) {
+        return iBuffer.get(aPosition);
+    }
+
+    /**
+     * Returns true if the given byte is XML whitespace.
+     *
+     * @param aByte the byte
+     * @return true if the byte is whitespace
+     */
+    private static boolean isWhitespace(byte aByte) {
+        return aByte == ' ' || aByte == '\n' || aByte == '\t' || aByte == '\r';
+    }
+
+    /**
+     * Returns the given ASCII byte in lower case.
+     *
+     * @param aByte the byte
+     * @return the byte in lower case
+     */
+    private static byte toLowerCase(byte aByte) {
+        return aByte >= 'A' && aByte <= 'Z' ? (byte) (aByte + 'a' - 'A') : aByte;
+    }
+
+    /**
+     * Returns the given ASCII bytes as string.
+     *
+     * @param aBytes the bytes
+     * @return the string
+     */
+    private static String toString(byte[] aBytes) {
+        char[] chars = new char[aBytes.length];
+        for (int i = 0; i < aBytes.length; i++) {
+            chars[i] = (char) aBytes[i];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns a copy of the given array of twice the length.
+     *
+     * @param aArray the array
+     * @return the grown array
+     */
+    private static int[] grow(int[] aArray) {
+        int[] array = new int[2 * aArray.length];
+        System.arraycopy(aArray, 0, array, 0, aArray.length);
+        return array;
+    }
+
+    /**
+     * Exception thrown when the input is outside of the subset of XML handled
+     * by the tokenizer.
+     */
+    static class UnsupportedContentException extends Exception {
+
+        /**
+         * Creates the exception.
+         *
+         * @param aMessage the message
+         */
+        UnsupportedContentException(String aMessage) {
+            super(aMessage);
+        }
+    }
+}
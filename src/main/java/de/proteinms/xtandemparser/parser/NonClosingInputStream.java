@@ -0,0 +1,27 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * This class wraps the stream given by the caller of the parser, so that the
+ * XML parsers, which close their input when done, leave it open.
+ */
+class NonClosingInputStream extends FilterInputStream {
+
+    /**
+     * Constructor gets the stream to read from.
+     *
+     * @param aInputStream the stream to read from
+     */
+    public NonClosingInputStream(InputStream aInputStream) {
+        super(aInputStream);
+    }
+
+    /**
+     * Does not close the wrapped stream, its caller does.
+     */
+    @Override
+    public void close() {
+    }
+}
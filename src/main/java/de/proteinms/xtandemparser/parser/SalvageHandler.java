@@ -0,0 +1,197 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.util.Map;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class builds the DOM representation of an X!Tandem file from the SAX
+ * events of the XML parser, so that the part of the document read before an
+ * error is kept. The top level group being read when the parsing stops is
+ * incomplete and can be discarded, the complete groups before it are then
+ * parsed as usual.
+ * <p>
+ * When a filter is given, the model groups are filtered while the file is
+ * read, so that the document only holds the groups kept: a model group
+ * failing the spectrum criteria is skipped without creating any node, and a
+ * model group without any domain passing the domain criteria is removed
+ * once read.
+ */
+class SalvageHandler extends DefaultHandler {
+
+    /**
+     * The document built.
+     */
+    private final Document iDocument;
+    /**
+     * The node the next content is appended to.
+     */
+    private Node iCurrent;
+    /**
+     * The number of open elements.
+     */
+    private int iDepth = 0;
+    /**
+     * The top level group being read, null if none.
+     */
+    private Element iOpenGroup = null;
+    /**
+     * The locator of the SAX events, null if not given by the XML parser.
+     */
+    private Locator iLocator = null;
+    /**
+     * The text read since the last element event.
+     */
+    private StringBuilder iText = new StringBuilder();
+    /**
+     * The filter applied to the model groups, null to keep everything.
+     */
+    private final XTandemFilter iFilter;
+    /**
+     * The number of open elements of the model group being skipped, 0 if
+     * none.
+     */
+    private int iSkipDepth = 0;
+
+    /**
+     * Creates a handler building the given empty document.
+     *
+     * @param aDocument the empty document
+     */
+    SalvageHandler(Document aDocument) {
+        this(aDocument, null);
+    }
+
+    /**
+     * Creates a handler building the given empty document, the model groups
+     * failing the given filter being dropped.
+     *
+     * @param aDocument the empty document
+     * @param aFilter the filter applied to the model groups, null to keep
+     * everything
+     */
+    SalvageHandler(Document aDocument, XTandemFilter aFilter) {
+        iDocument = aDocument;
+        iCurrent = aDocument;
+        iFilter = aFilter;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator aLocator) {
+        iLocator = aLocator;
+    }
+
+    @Override
+    public void startElement(String aUri, String aLocalName, String aQualifiedName, Attributes aAttributes) {
+        if (iSkipDepth > 0) {
+            iSkipDepth++;
+            return;
+        }
+        appendText();
+        Element element = iDocument.createElement(aQualifiedName);
+        for (int i = 0; i < aAttributes.getLength(); i++) {
+            element.setAttribute(aAttributes.getQName(i), aAttributes.getValue(i));
+        }
+        if (iFilter != null && iDepth == 1 && XTandemParser.isModelGroup(element) && !XTandemParser.acceptSpectrum(element, iFilter)) {
+            iSkipDepth = 1;
+            return;
+        }
+        iCurrent.appendChild(element);
+        iCurrent = element;
+        iDepth++;
+        if (iDepth == 2) {
+            iOpenGroup = element;
+        }
+    }
+
+    @Override
+    public void endElement(String aUri, String aLocalName, String aQualifiedName) {
+        if (iSkipDepth > 0) {
+            iSkipDepth--;
+            return;
+        }
+        appendText();
+        if (iDepth == 2) {
+            iOpenGroup = null;
+            if (iFilter != null && iFilter.hasDomainCriteria() && XTandemParser.isModelGroup(iCurrent)) {
+                Map<Node, Node> acceptedDomains = XTandemParser.getAcceptedDomains(iCurrent, iFilter);
+                if (acceptedDomains != null && acceptedDomains.isEmpty()) {
+                    Node group = iCurrent;
+                    iCurrent = group.getParentNode();
+                    iCurrent.removeChild(group);
+                    iDepth--;
+                    return;
+                }
+            }
+        }
+        iDepth--;
+        iCurrent = iCurrent.getParentNode();
+    }
+
+    @Override
+    public void characters(char[] aCharacters, int aStart, int aLength) {
+        if (iDepth > 0 && iSkipDepth == 0) {
+            iText.append(aCharacters, aStart, aLength);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] aCharacters, int aStart, int aLength) {
+        characters(aCharacters, aStart, aLength);
+    }
+
+    /**
+     * Appends the text read since the last element event to the current
+     * node.
+     */
+    private void appendText() {
+        if (iText.length() > 0) {
+            iCurrent.appendChild(iDocument.createTextNode(iText.toString()));
+            iText.setLength(0);
+        }
+    }
+
+    /**
+     * Removes the top level group being read, if any, from the document.
+     *
+     * @return the description of the removed group, e.g. group id="1234"
+     * type="model", null if none
+     */
+    String discardOpenGroup() {
+        if (iOpenGroup == null) {
+            return null;
+        }
+        StringBuilder description = new StringBuilder(iOpenGroup.getTagName());
+        String[] attributes = {"id", "label", "type"};
+        for (String attribute : attributes) {
+            if (iOpenGroup.hasAttribute(attribute)) {
+                description.append(' ').append(attribute).append("=\"").append(iOpenGroup.getAttribute(attribute)).append('"');
+            }
+        }
+        iOpenGroup.getParentNode().removeChild(iOpenGroup);
+        iOpenGroup = null;
+        return description.toString();
+    }
+
+    /**
+     * Returns the line of the last SAX event.
+     *
+     * @return the line number, -1 if unknown
+     */
+    int getLineNumber() {
+        return iLocator == null ? -1 : iLocator.getLineNumber();
+    }
+
+    /**
+     * Returns the column of the last SAX event.
+     *
+     * @return the column number, -1 if unknown
+     */
+    int getColumnNumber() {
+        return iLocator == null ? -1 : iLocator.getColumnNumber();
+    }
+}
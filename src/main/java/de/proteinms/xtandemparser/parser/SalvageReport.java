@@ -0,0 +1,155 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * This class reports the outcome of parsing an X!Tandem file in salvage mode,
+ * see XTandemParser: whether the file was read to the end, and otherwise
+ * where and why the parsing stopped, which top level group was discarded, and
+ * what was kept of the file.
+ */
+public class SalvageReport implements Serializable {
+
+    /**
+     * True if the file was read to the end.
+     */
+    private final boolean iComplete;
+    /**
+     * The line where the parsing stopped, -1 if unknown.
+     */
+    private final int iLineNumber;
+    /**
+     * The column where the parsing stopped, -1 if unknown.
+     */
+    private final int iColumnNumber;
+    /**
+     * The reason why the parsing stopped, null if the file is complete.
+     */
+    private final String iReason;
+    /**
+     * The description of the incomplete top level group discarded, null if
+     * none.
+     */
+    private final String iDiscardedGroup;
+    /**
+     * The number of complete model groups read, before filtering.
+     */
+    private final int iNumberOfModelGroups;
+    /**
+     * The labels of the complete parameter groups read.
+     */
+    private final ArrayList<String> iParameterGroups;
+
+    /**
+     * Creates a salvage report.
+     *
+     * @param aComplete true if the file was read to the end
+     * @param aLineNumber the line where the parsing stopped, -1 if unknown
+     * @param aColumnNumber the column where the parsing stopped, -1 if unknown
+     * @param aReason the reason why the parsing stopped, null if the file is
+     * complete
+     * @param aDiscardedGroup the description of the incomplete top level group
+     * discarded, null if none
+     * @param aNumberOfModelGroups the number of complete model groups read
+     * @param aParameterGroups the labels of the complete parameter groups read
+     */
+    public SalvageReport(boolean aComplete, int aLineNumber, int aColumnNumber, String aReason, String aDiscardedGroup,
+            int aNumberOfModelGroups, ArrayList<String> aParameterGroups) {
+        iComplete = aComplete;
+        iLineNumber = aLineNumber;
+        iColumnNumber = aColumnNumber;
+        iReason = aReason;
+        iDiscardedGroup = aDiscardedGroup;
+        iNumberOfModelGroups = aNumberOfModelGroups;
+        iParameterGroups = aParameterGroups;
+    }
+
+    /**
+     * Returns true if the file was read to the end, in which case nothing was
+     * discarded.
+     *
+     * @return true if the file is complete
+     */
+    public boolean isComplete() {
+        return iComplete;
+    }
+
+    /**
+     * Returns the line where the parsing stopped.
+     *
+     * @return the line number, -1 if the file is complete or the line is
+     * unknown
+     */
+    public int getLineNumber() {
+        return iLineNumber;
+    }
+
+    /**
+     * Returns the column where the parsing stopped.
+     *
+     * @return the column number, -1 if the file is complete or the column is
+     * unknown
+     */
+    public int getColumnNumber() {
+        return iColumnNumber;
+    }
+
+    /**
+     * Returns the reason why the parsing stopped, i.e. the message of the XML
+     * parser or of the input stream.
+     *
+     * @return the reason, null if the file is complete
+     */
+    public String getReason() {
+        return iReason;
+    }
+
+    /**
+     * Returns the description of the incomplete top level group discarded,
+     * e.g. group id="1234" type="model".
+     *
+     * @return the discarded group, null if none
+     */
+    public String getDiscardedGroup() {
+        return iDiscardedGroup;
+    }
+
+    /**
+     * Returns the number of complete model groups read, before the filter is
+     * applied.
+     *
+     * @return the number of model groups
+     */
+    public int getNumberOfModelGroups() {
+        return iNumberOfModelGroups;
+    }
+
+    /**
+     * Returns the labels of the complete parameter groups read, e.g. input
+     * parameters. X!Tandem writes them after the model groups, they are
+     * therefore usually missing from a truncated file.
+     *
+     * @return the labels of the parameter groups
+     */
+    public ArrayList<String> getParameterGroups() {
+        return iParameterGroups;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        if (iComplete) {
+            report.append("complete");
+        } else {
+            report.append("stopped at line ").append(iLineNumber).append(", column ").append(iColumnNumber)
+                    .append(": ").append(iReason);
+            if (iDiscardedGroup != null) {
+                report.append("; discarded the incomplete ").append(iDiscardedGroup);
+            }
+        }
+        report.append("; kept ").append(iNumberOfModelGroups).append(" model groups and ")
+                .append(iParameterGroups.size()).append(" parameter groups");
+        return report.toString();
+    }
+}
@@ -0,0 +1,248 @@
+package de.proteinms.xtandemparser.parser;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class loads several X!Tandem files concurrently through the
+ * XTandemIdfileReader. The files are parsed on a bounded thread pool, and the
+ * number of files parsed at the same time is limited by a memory budget: each
+ * file reserves an estimate of the heap needed to parse it, based on its size,
+ * and a file is only started when its reservation fits in the budget.
+ */
+public class XTandemBatchLoader {
+
+    /**
+     * One megabyte, the unit of the memory reservations.
+     */
+    private static final long MEGABYTE = 1024 * 1024;
+    /**
+     * The default estimate of the heap needed per byte of X!Tandem file while
+     * the file is being parsed.
+     */
+    public static final double DEFAULT_HEAP_PER_FILE_BYTE = 10;
+    /**
+     * The number of threads used to parse the files.
+     */
+    private int iNumberOfThreads;
+    /**
+     * The memory budget in megabytes shared by all the files being parsed.
+     */
+    private int iMemoryBudget;
+    /**
+     * The estimated heap needed per byte of X!Tandem file.
+     */
+    private double iHeapPerFileByte = DEFAULT_HEAP_PER_FILE_BYTE;
+
+    /**
+     * Interface for the objects receiving the loaded files. The methods are
+     * called from the loading threads as soon as a file is done, the
+     * implementations therefore have to be thread safe. A runtime exception
+     * thrown by a method is printed and does not stop the loading of the
+     * other files.
+     */
+    public interface BatchListener {
+
+        /**
+         * Called when a file has been loaded.
+         *
+         * @param aFile the loaded file
+         * @param aReader the reader for the loaded file
+         */
+        public void fileLoaded(File aFile, XTandemIdfileReader aReader);
+
+        /**
+         * Called when a file could not be loaded.
+         *
+         * @param aFile the file
+         * @param aException the exception thrown while loading the file
+         */
+        public void fileFailed(File aFile, Exception aException);
+    }
+
+    /**
+     * Constructor for a batch loader using one thread per available processor
+     * and half of the maximum heap as memory budget.
+     */
+    public XTandemBatchLoader() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Constructor for a batch loader.
+     *
+     * @param aNumberOfThreads the number of files to parse at most at the same
+     * time
+     * @param aMemoryBudget the memory budget in bytes shared by all the files
+     * being parsed
+     */
+    public XTandemBatchLoader(int aNumberOfThreads, long aMemoryBudget) {
+        if (aNumberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1.");
+        }
+        if (aMemoryBudget < MEGABYTE) {
+            throw new IllegalArgumentException("The memory budget must be at least 1 MB.");
+        }
+        iNumberOfThreads = aNumberOfThreads;
+        iMemoryBudget = (int) Math.min(Integer.MAX_VALUE, aMemoryBudget / MEGABYTE);
+    }
+
+    /**
+     * Loads the given files. The method returns when all files are loaded, or
+     * when the run is canceled through the waiting handler, the files not
+     * started yet being skipped. Each file is given to the listener as soon as
+     * it is loaded, in order of completion.
+     *
+     * @param aFiles the X!Tandem files to load
+     * @param aListener the listener receiving the loaded files
+     * @param aWaitingHandler the waiting handler displaying the progress, can
+     * be null
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the files to be loaded
+     */
+    public void load(List<File> aFiles, final BatchListener aListener, final WaitingHandler aWaitingHandler) throws InterruptedException {
+
+        if (aWaitingHandler != null) {
+            aWaitingHandler.setMaxSecondaryProgressCounter(aFiles.size());
+        }
+
+        final Semaphore budget = new Semaphore(iMemoryBudget, true);
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(iNumberOfThreads, new ThreadFactory() {
+            public Thread newThread(Runnable aRunnable) {
+                Thread thread = new Thread(aRunnable, "XTandemBatchLoader-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            for (final File file : aFiles) {
+
+                // wait until the file fits in the budget, a file larger than
+                // the whole budget is loaded alone
+                final int reservation = getReservation(file);
+                boolean acquired = false;
+                while (!acquired && (aWaitingHandler == null || !aWaitingHandler.isRunCanceled())) {
+                    acquired = budget.tryAcquire(reservation, 100, TimeUnit.MILLISECONDS);
+                }
+                if (!acquired) {
+                    break;
+                }
+
+                pool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (aWaitingHandler == null || !aWaitingHandler.isRunCanceled()) {
+                                XTandemIdfileReader reader = null;
+                                Exception exception = null;
+                                try {
+                                    reader = createReader(file);
+                                } catch (Exception e) {
+                                    exception = e;
+                                }
+                                try {
+                                    if (exception == null) {
+                                        aListener.fileLoaded(file, reader);
+                                    } else {
+                                        aListener.fileFailed(file, exception);
+                                    }
+                                } catch (RuntimeException e) {
+                                    System.err.println("Error in the batch listener for " + file.getPath() + ": " + e);
+                                    e.printStackTrace();
+                                }
+                            }
+                        } finally {
+                            budget.release(reservation);
+                            if (aWaitingHandler != null) {
+                                synchronized (aWaitingHandler) {
+                                    aWaitingHandler.increaseSecondaryProgressCounter();
+                                }
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        while (!pool.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+            if (aWaitingHandler != null && aWaitingHandler.isRunCanceled()) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Loads the given file, called from the loading threads. Can be
+     * overridden to read the files differently.
+     *
+     * @param aFile the file
+     * @return the reader for the loaded file
+     * @throws Exception if the file could not be loaded
+     */
+    protected XTandemIdfileReader createReader(File aFile) throws Exception {
+        return new XTandemIdfileReader(aFile);
+    }
+
+    /**
+     * Returns the number of megabytes of the budget to reserve for the given
+     * file.
+     *
+     * @param aFile the file
+     * @return the number of megabytes to reserve
+     */
+    private int getReservation(File aFile) {
+        double estimate = Math.ceil(aFile.length() * iHeapPerFileByte / MEGABYTE);
+        return (int) Math.max(1, Math.min(iMemoryBudget, estimate));
+    }
+
+    /**
+     * Returns the number of threads used to parse the files.
+     *
+     * @return the number of threads
+     */
+    public int getNumberOfThreads() {
+        return iNumberOfThreads;
+    }
+
+    /**
+     * Returns the memory budget in bytes.
+     *
+     * @return the memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        return iMemoryBudget * MEGABYTE;
+    }
+
+    /**
+     * Returns the estimated heap needed per byte of X!Tandem file.
+     *
+     * @return the estimated heap needed per byte of file
+     */
+    public double getHeapPerFileByte() {
+        return iHeapPerFileByte;
+    }
+
+    /**
+     * Sets the estimated heap needed per byte of X!Tandem file. The default
+     * value is an estimate for the DOM based parser.
+     *
+     * @param aHeapPerFileByte the estimated heap needed per byte of file, must
+     * be positive
+     */
+    public void setHeapPerFileByte(double aHeapPerFileByte) {
+        if (!(aHeapPerFileByte > 0)) {
+            throw new IllegalArgumentException("The heap per file byte must be positive.");
+        }
+        iHeapPerFileByte = aHeapPerFileByte;
+    }
+}
@@ -0,0 +1,273 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.Serializable;
+import java.util.regex.Pattern;
+
+/**
+ * This class holds the criteria used to select the spectra and domains while
+ * an X!Tandem file is parsed. Model groups and domains failing the criteria
+ * are skipped by the parser and never stored. The kept spectra are numbered
+ * consecutively, the spectrum numbers therefore refer to the filtered file.
+ * Criteria that are not set are not applied.
+ * <p>
+ * The file is streamed while it is filtered: a model group failing the
+ * spectrum criteria is skipped without building anything for it or its
+ * spectrum, and a model group is otherwise read completely, its GAML traces
+ * included, before its domains are filtered. The memory used while parsing
+ * is therefore bounded by the groups kept plus the group being read. In
+ * salvage mode, the groups are only filtered once the file is read.
+ */
+public class XTandemFilter implements Serializable {
+
+    /**
+     * The maximal expectation value of the spectrum.
+     */
+    private Double iMaxSpectrumExpect = null;
+    /**
+     * The accepted precursor charges, null if all charges are accepted.
+     */
+    private int[] iCharges = null;
+    /**
+     * The maximal expectation value of the domains.
+     */
+    private Double iMaxDomainExpect = null;
+    /**
+     * The minimal hyperscore of the domains.
+     */
+    private Double iMinHyperscore = null;
+    /**
+     * The maximal absolute mass delta of the domains.
+     */
+    private Double iMaxAbsoluteDelta = null;
+    /**
+     * The maximal number of missed cleavages of the domains.
+     */
+    private Integer iMaxMissedCleavages = null;
+    /**
+     * The pattern the protein label of the domains has to contain.
+     */
+    private Pattern iProteinLabelPattern = null;
+    /**
+     * The number of best ranked domains kept per spectrum.
+     */
+    private int iMaxDomainRank = 0;
+
+    /**
+     * Returns true if a spectrum with the given values passes the spectrum
+     * criteria.
+     *
+     * @param aExpect the expectation value of the spectrum, NaN if not given
+     * @param aCharge the precursor charge
+     * @return true if the spectrum passes the criteria
+     */
+    public boolean acceptSpectrum(double aExpect, int aCharge) {
+        if (iMaxSpectrumExpect != null && !(aExpect <= iMaxSpectrumExpect)) {
+            return false;
+        }
+        if (iCharges != null) {
+            for (int charge : iCharges) {
+                if (charge == aCharge) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a domain with the given values passes the domain
+     * criteria. The number of domains per spectrum is not verified here.
+     *
+     * @param aExpect the expectation value of the domain, NaN if not given
+     * @param aHyperscore the hyperscore of the domain, NaN if not given
+     * @param aDelta the mass delta of the domain, NaN if not given
+     * @param aMissedCleavages the number of missed cleavages
+     * @param aProteinLabel the label of the protein
+     * @return true if the domain passes the criteria
+     */
+    public boolean acceptDomain(double aExpect, double aHyperscore, double aDelta, int aMissedCleavages, String aProteinLabel) {
+        if (iMaxDomainExpect != null && !(aExpect <= iMaxDomainExpect)) {
+            return false;
+        }
+        if (iMinHyperscore != null && !(aHyperscore >= iMinHyperscore)) {
+            return false;
+        }
+        if (iMaxAbsoluteDelta != null && !(Math.abs(aDelta) <= iMaxAbsoluteDelta)) {
+            return false;
+        }
+        if (iMaxMissedCleavages != null && aMissedCleavages > iMaxMissedCleavages) {
+            return false;
+        }
+        if (iProteinLabelPattern != null && (aProteinLabel == null || !iProteinLabelPattern.matcher(aProteinLabel).find())) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if criteria on the domains are set.
+     *
+     * @return true if criteria on the domains are set
+     */
+    public boolean hasDomainCriteria() {
+        return iMaxDomainExpect != null || iMinHyperscore != null || iMaxAbsoluteDelta != null
+                || iMaxMissedCleavages != null || iProteinLabelPattern != null || iMaxDomainRank > 0;
+    }
+
+    /**
+     * Returns the maximal expectation value of the spectrum.
+     *
+     * @return the maximal expectation value, null if not set
+     */
+    public Double getMaxSpectrumExpect() {
+        return iMaxSpectrumExpect;
+    }
+
+    /**
+     * Sets the maximal expectation value of the spectrum.
+     *
+     * @param aMaxSpectrumExpect the maximal expectation value, null to remove
+     * the criterion
+     */
+    public void setMaxSpectrumExpect(Double aMaxSpectrumExpect) {
+        iMaxSpectrumExpect = aMaxSpectrumExpect;
+    }
+
+    /**
+     * Returns the accepted precursor charges.
+     *
+     * @return the accepted precursor charges, null if all charges are accepted
+     */
+    public int[] getCharges() {
+        return iCharges;
+    }
+
+    /**
+     * Sets the accepted precursor charges.
+     *
+     * @param aCharges the accepted precursor charges, null to accept all
+     * charges
+     */
+    public void setCharges(int... aCharges) {
+        iCharges = aCharges;
+    }
+
+    /**
+     * Returns the maximal expectation value of the domains.
+     *
+     * @return the maximal expectation value, null if not set
+     */
+    public Double getMaxDomainExpect() {
+        return iMaxDomainExpect;
+    }
+
+    /**
+     * Sets the maximal expectation value of the domains.
+     *
+     * @param aMaxDomainExpect the maximal expectation value, null to remove
+     * the criterion
+     */
+    public void setMaxDomainExpect(Double aMaxDomainExpect) {
+        iMaxDomainExpect = aMaxDomainExpect;
+    }
+
+    /**
+     * Returns the minimal hyperscore of the domains.
+     *
+     * @return the minimal hyperscore, null if not set
+     */
+    public Double getMinHyperscore() {
+        return iMinHyperscore;
+    }
+
+    /**
+     * Sets the minimal hyperscore of the domains.
+     *
+     * @param aMinHyperscore the minimal hyperscore, null to remove the
+     * criterion
+     */
+    public void setMinHyperscore(Double aMinHyperscore) {
+        iMinHyperscore = aMinHyperscore;
+    }
+
+    /**
+     * Returns the maximal absolute mass delta of the domains.
+     *
+     * @return the maximal absolute mass delta, null if not set
+     */
+    public Double getMaxAbsoluteDelta() {
+        return iMaxAbsoluteDelta;
+    }
+
+    /**
+     * Sets the maximal absolute mass delta of the domains, i.e. the maximal
+     * absolute difference between the spectrum mh and the calculated mh.
+     *
+     * @param aMaxAbsoluteDelta the maximal absolute mass delta, null to remove
+     * the criterion
+     */
+    public void setMaxAbsoluteDelta(Double aMaxAbsoluteDelta) {
+        iMaxAbsoluteDelta = aMaxAbsoluteDelta;
+    }
+
+    /**
+     * Returns the maximal number of missed cleavages of the domains.
+     *
+     * @return the maximal number of missed cleavages, null if not set
+     */
+    public Integer getMaxMissedCleavages() {
+        return iMaxMissedCleavages;
+    }
+
+    /**
+     * Sets the maximal number of missed cleavages of the domains.
+     *
+     * @param aMaxMissedCleavages the maximal number of missed cleavages, null
+     * to remove the criterion
+     */
+    public void setMaxMissedCleavages(Integer aMaxMissedCleavages) {
+        iMaxMissedCleavages = aMaxMissedCleavages;
+    }
+
+    /**
+     * Returns the pattern the protein label of the domains has to contain.
+     *
+     * @return the protein label pattern, null if not set
+     */
+    public Pattern getProteinLabelPattern() {
+        return iProteinLabelPattern;
+    }
+
+    /**
+     * Sets the pattern the protein label of the domains has to contain, e.g.
+     * Pattern.compile("^sp\\|") to keep the Swiss-Prot proteins only.
+     *
+     * @param aProteinLabelPattern the protein label pattern, null to remove
+     * the criterion
+     */
+    public void setProteinLabelPattern(Pattern aProteinLabelPattern) {
+        iProteinLabelPattern = aProteinLabelPattern;
+    }
+
+    /**
+     * Returns the number of best ranked domains kept per spectrum.
+     *
+     * @return the number of ranks kept, 0 if all domains are kept
+     */
+    public int getMaxDomainRank() {
+        return iMaxDomainRank;
+    }
+
+    /**
+     * Sets the number of best ranked domains kept per spectrum. The domains
+     * are ranked by expectation value, domains with the same expectation value
+     * share the same rank. Setting 1 keeps the rank 1 peptide, with all the
+     * proteins it matches.
+     *
+     * @param aMaxDomainRank the number of ranks kept, 0 to keep all domains
+     */
+    public void setMaxDomainRank(int aMaxDomainRank) {
+        iMaxDomainRank = aMaxDomainRank;
+    }
+}
@@ -63,7 +63,10 @@ public class XTandemIdfileReader extends ExperimentObject implements IdfileReade
      * @throws ParserConfigurationException if a ParserConfigurationException occurs
      */
     public XTandemIdfileReader(File aFile) throws SAXException, ParserConfigurationException {
+        // the raw spectrum map, used for the charges, is kept by trim() when
+        // the details are skipped
         xTandemFile = new XTandemFile(aFile.getPath(), true);
+        xTandemFile.trim();
         peptideMap = xTandemFile.getPeptideMap();
         modificationMap = xTandemFile.getModificationMap();
     }
@@ -1,29 +1,55 @@
 package de.proteinms.xtandemparser.parser;
 
+import de.proteinms.xtandemparser.xtandem.PeakStore;
+import de.proteinms.xtandemparser.xtandem.PeptideIndex;
+import de.proteinms.xtandemparser.xtandem.ProteinHitIndex;
+import de.proteinms.xtandemparser.xtandem.ProteinOccurrences;
+import de.proteinms.xtandemparser.xtandem.SupportDataRanges;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 /**
  * This class extracts information from the xtandem output xml.
+ * <p>
+ * The parser is serialized in the compact form of CompactOutput: the string
+ * maps are written grouped by key template with dictionary encoded strings,
+ * and the indexes as variable length integers.
  *
  * @author Thilo Muth
  */
-public class XTandemParser implements Serializable {
+public class XTandemParser implements Externalizable {
 
     /**
      * Pattern to extract the modification mass number if multiple modification
@@ -40,6 +66,186 @@ public class XTandemParser implements Serializable {
      * masses are given.
      */
     private static Pattern refPotModificationMotifPattern = Pattern.compile("label=\"refine, potential modification motif (\\d+)\"");
+    /**
+     * The type attribute name, for the tokenizer.
+     */
+    private static final byte[] TYPE = toBytes("type");
+    /**
+     * The label attribute name, for the tokenizer.
+     */
+    private static final byte[] LABEL = toBytes("label");
+    /**
+     * The id attribute name, for the tokenizer.
+     */
+    private static final byte[] ID = toBytes("id");
+    /**
+     * The uid attribute name, for the tokenizer.
+     */
+    private static final byte[] UID = toBytes("uid");
+    /**
+     * The z attribute name, for the tokenizer.
+     */
+    private static final byte[] Z = toBytes("z");
+    /**
+     * The expect attribute name, for the tokenizer.
+     */
+    private static final byte[] EXPECT = toBytes("expect");
+    /**
+     * The mh attribute name, for the tokenizer.
+     */
+    private static final byte[] MH = toBytes("mh");
+    /**
+     * The rt attribute name, for the tokenizer.
+     */
+    private static final byte[] RT = toBytes("rt");
+    /**
+     * The sumI attribute name, for the tokenizer.
+     */
+    private static final byte[] SUM_I = toBytes("sumI");
+    /**
+     * The maxI attribute name, for the tokenizer.
+     */
+    private static final byte[] MAX_I = toBytes("maxI");
+    /**
+     * The fI attribute name, for the tokenizer.
+     */
+    private static final byte[] F_I = toBytes("fI");
+    /**
+     * The URL attribute name, for the tokenizer.
+     */
+    private static final byte[] URL = toBytes("URL");
+    /**
+     * The start attribute name, for the tokenizer.
+     */
+    private static final byte[] START = toBytes("start");
+    /**
+     * The end attribute name, for the tokenizer.
+     */
+    private static final byte[] END = toBytes("end");
+    /**
+     * The seq attribute name, for the tokenizer.
+     */
+    private static final byte[] SEQ = toBytes("seq");
+    /**
+     * The delta attribute name, for the tokenizer.
+     */
+    private static final byte[] DELTA = toBytes("delta");
+    /**
+     * The hyperscore attribute name, for the tokenizer.
+     */
+    private static final byte[] HYPERSCORE = toBytes("hyperscore");
+    /**
+     * The nextscore attribute name, for the tokenizer.
+     */
+    private static final byte[] NEXTSCORE = toBytes("nextscore");
+    /**
+     * The y_score attribute name, for the tokenizer.
+     */
+    private static final byte[] Y_SCORE = toBytes("y_score");
+    /**
+     * The y_ions attribute name, for the tokenizer.
+     */
+    private static final byte[] Y_IONS = toBytes("y_ions");
+    /**
+     * The b_score attribute name, for the tokenizer.
+     */
+    private static final byte[] B_SCORE = toBytes("b_score");
+    /**
+     * The b_ions attribute name, for the tokenizer.
+     */
+    private static final byte[] B_IONS = toBytes("b_ions");
+    /**
+     * The pre attribute name, for the tokenizer.
+     */
+    private static final byte[] PRE = toBytes("pre");
+    /**
+     * The post attribute name, for the tokenizer.
+     */
+    private static final byte[] POST = toBytes("post");
+    /**
+     * The missed_cleavages attribute name, for the tokenizer.
+     */
+    private static final byte[] MISSED_CLEAVAGES = toBytes("missed_cleavages");
+    /**
+     * The at attribute name, for the tokenizer.
+     */
+    private static final byte[] AT = toBytes("at");
+    /**
+     * The modified attribute name, for the tokenizer.
+     */
+    private static final byte[] MODIFIED = toBytes("modified");
+    /**
+     * The pm attribute name, for the tokenizer.
+     */
+    private static final byte[] PM = toBytes("pm");
+    /**
+     * The model attribute value, for the tokenizer.
+     */
+    private static final byte[] MODEL = toBytes("model");
+    /**
+     * The parameters attribute value, for the tokenizer.
+     */
+    private static final byte[] PARAMETERS = toBytes("parameters");
+    /**
+     * The input parameters attribute value, for the tokenizer.
+     */
+    private static final byte[] INPUT_PARAMETERS = toBytes("input parameters");
+    /**
+     * The unused input parameters attribute value, for the tokenizer.
+     */
+    private static final byte[] UNUSED_INPUT_PARAMETERS = toBytes("unused input parameters");
+    /**
+     * The description attribute value, for the tokenizer.
+     */
+    private static final byte[] DESCRIPTION = toBytes("description");
+    /**
+     * The group element name, for the tokenizer.
+     */
+    private static final byte[] GROUP = toBytes("group");
+    /**
+     * The protein element name, for the tokenizer.
+     */
+    private static final byte[] PROTEIN = toBytes("protein");
+    /**
+     * The file element name, for the tokenizer.
+     */
+    private static final byte[] FILE = toBytes("file");
+    /**
+     * The note element name, for the tokenizer.
+     */
+    private static final byte[] NOTE = toBytes("note");
+    /**
+     * The peptide element name, for the tokenizer.
+     */
+    private static final byte[] PEPTIDE = toBytes("peptide");
+    /**
+     * The domain element name, for the tokenizer.
+     */
+    private static final byte[] DOMAIN = toBytes("domain");
+    /**
+     * The aa element name, for the tokenizer.
+     */
+    private static final byte[] AA = toBytes("aa");
+    /**
+     * The GAML:trace element name, for the tokenizer.
+     */
+    private static final byte[] GAML_TRACE = toBytes("GAML:trace");
+    /**
+     * The GAML:attribute element name, for the tokenizer.
+     */
+    private static final byte[] GAML_ATTRIBUTE = toBytes("GAML:attribute");
+    /**
+     * The GAML:Xdata element name, for the tokenizer.
+     */
+    private static final byte[] GAML_XDATA = toBytes("GAML:Xdata");
+    /**
+     * The GAML:Ydata element name, for the tokenizer.
+     */
+    private static final byte[] GAML_YDATA = toBytes("GAML:Ydata");
+    /**
+     * The GAML:values element name, for the tokenizer.
+     */
+    private static final byte[] GAML_VALUES = toBytes("GAML:values");
     /**
      * This variable holds the total number of spectra in the xtandem file.
      */
@@ -84,6 +290,44 @@ public class XTandemParser implements Serializable {
      * X!Tandem id to spectrum title map
      */
     private HashMap<Integer, String> idToSpectrumMap;
+    /**
+     * Index from the protein keys to the hits of the proteins.
+     */
+    private ProteinHitIndex iProteinHitIndex = null;
+    /**
+     * This map has as key the protein key and as value the occurrences of the
+     * protein in the model groups.
+     */
+    private HashMap<String, ProteinOccurrences> iProteinOccurrences = null;
+    /**
+     * Index from the peptide keys to the hits of the peptides.
+     */
+    private PeptideIndex iPeptideIndex = null;
+    /**
+     * The store holding the fragment ion peaks outside of the heap, null if
+     * the peaks are kept in the support data map.
+     */
+    private PeakStore iPeakStore = null;
+    /**
+     * True if the file was parsed with the byte level tokenizer.
+     */
+    private boolean iMappedParse = false;
+    /**
+     * The ranges of the support data values read lazily from the file, null
+     * if all the values are in the support data map.
+     */
+    private SupportDataRanges iSupportDataRanges = null;
+    /**
+     * The report of the parsing in salvage mode, null if not parsed in
+     * salvage mode.
+     */
+    private SalvageReport iSalvageReport = null;
+
+    /**
+     * Constructor used by the deserialization only.
+     */
+    public XTandemParser() {
+    }
 
     /**
      * Constructor for parsing a result file stored locally.
@@ -113,38 +357,310 @@ public class XTandemParser implements Serializable {
      * occurs
      */
     public XTandemParser(File aFile, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
-        this.parseXTandemFile(aFile, skipDetails);
+        this(aFile, skipDetails, null);
     }
 
     /**
-     * In this method the X!Tandem file gets parsed.
+     * Constructor for parsing a result file stored locally, keeping only the
+     * spectra and domains passing the given filter.
      *
-     * @param aInputFile the file which will be parsed
+     * @param aFile the input XML file
      * @param skipDetails if true only the spectrum identifiers, the peptides
      * sequences, modifications and matches e-values will be loaded. Plus the
      * input and performance parameters.
+     * @param aFilter the filter applied while parsing, null to keep everything
      *
      * @exception IOException if an IOException occurs
      * @exception SAXException if a SAXException occurs
      * @throws ParserConfigurationException if a ParserConfigurationException
      * occurs
      */
-    private void parseXTandemFile(File aInputFile, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+    public XTandemParser(File aFile, boolean skipDetails, XTandemFilter aFilter) throws IOException, SAXException, ParserConfigurationException {
+        this(aFile, new XTandemParserOptions(skipDetails, aFilter));
+    }
 
-        NodeList idNodes, proteinNodes, peptideNodes, nodes, parameterNodes, supportDataNodes, xDataNodes, yDataNodes;
-        NodeList hyperNodes, convolNodes, aIonNodes, bIonNodes, cIonNodes, xIonNodes, yIonNodes, zIonNodes, fragIonNodes;
-        DocumentBuilderFactory dbf;
-        DocumentBuilder db;
-        Document dom;
-        Element docEle;
+    /**
+     * Constructor for parsing a result file stored locally with the given
+     * options. If mapped, the file is memory mapped and the model groups are
+     * read by a byte level tokenizer, without building the DOM, and if the
+     * support data is also read lazily, only the positions of the GAML values
+     * are recorded while parsing, the values being read from the file when
+     * first needed, see getSupportDataRanges(). The file then stays open until
+     * the parser is closed. Files the tokenizer does not support, and files
+     * larger than 2 GB, are parsed with the standard parser. In salvage mode, the file is not mapped, see
+     * XTandemParserOptions.setSalvage().
+     *
+     * @param aFile the input XML file
+     * @param aOptions the parsing options
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(File aFile, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        InputSource inputSource = new InputSource(aFile.toURI().toASCIIString());
+        if (aOptions.isSalvage()) {
+            this.salvageXTandemFile(inputSource, aOptions.isSkipDetails(), aOptions.getFilter());
+        } else if (!aOptions.isMapped()
+                || !this.parseMappedFile(aFile, aOptions.isSkipDetails(), aOptions.getFilter(), aOptions.isLazySupportData())) {
+            this.parseXTandemFile(inputSource, aOptions.isSkipDetails(), aOptions.getFilter());
+        }
+    }
 
-        // Modifications: Specific to residues within a domain
-        String modificationName;
-        double modificationMass;
-        NamedNodeMap modificationMap;
+    /**
+     * Constructor for parsing a result file read from a stream, e.g. an entry
+     * of a zip archive or a download from a remote storage. The stream is read
+     * to the end but not closed.
+     *
+     * @param aInputStream the stream providing the input XML
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(InputStream aInputStream, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+        this(aInputStream, skipDetails, null);
+    }
+
+    /**
+     * Constructor for parsing a result file read from a stream, keeping only
+     * the spectra and domains passing the given filter. The stream is read to
+     * the end but not closed.
+     *
+     * @param aInputStream the stream providing the input XML
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied while parsing, null to keep everything
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(InputStream aInputStream, boolean skipDetails, XTandemFilter aFilter) throws IOException, SAXException, ParserConfigurationException {
+        this(aInputStream, new XTandemParserOptions(skipDetails, aFilter));
+    }
+
+    /**
+     * Constructor for parsing a result file read from a stream with the given
+     * options. In salvage mode, a file truncated or not well-formed is parsed
+     * up to the error, see XTandemParserOptions.setSalvage(). The options of
+     * the memory mapped parsing do not apply to streams. The stream is read to
+     * the end but not closed.
+     *
+     * @param aInputStream the stream providing the input XML
+     * @param aOptions the parsing options
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(InputStream aInputStream, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        InputSource inputSource = new InputSource(new NonClosingInputStream(aInputStream));
+        if (aOptions.isSalvage()) {
+            this.salvageXTandemFile(inputSource, aOptions.isSkipDetails(), aOptions.getFilter());
+        } else {
+            this.parseXTandemFile(inputSource, aOptions.isSkipDetails(), aOptions.getFilter());
+        }
+    }
+
+    /**
+     * Constructor for parsing a result file read from a channel. The channel
+     * is read to the end but not closed.
+     *
+     * @param aChannel the channel providing the input XML
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(ReadableByteChannel aChannel, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+        this(Channels.newInputStream(aChannel), skipDetails);
+    }
+
+    /**
+     * Constructor for parsing a result file read from a channel with the
+     * given options. As for streams, the options of the memory mapped parsing
+     * do not apply. The channel is read to the end but not closed.
+     *
+     * @param aChannel the channel providing the input XML
+     * @param aOptions the parsing options
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(ReadableByteChannel aChannel, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        this(Channels.newInputStream(aChannel), aOptions);
+    }
+
+    /**
+     * Constructor for parsing a result file held in memory. The remaining bytes
+     * of the buffer are parsed, the position of the buffer is not changed.
+     *
+     * @param aBuffer the buffer containing the input XML
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(ByteBuffer aBuffer, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+        this(new ByteBufferInputStream(aBuffer), skipDetails);
+    }
+
+    /**
+     * Constructor for parsing a result file held in memory with the given
+     * options. As for streams, the options of the memory mapped parsing do
+     * not apply. The remaining bytes of the buffer are parsed, the position
+     * of the buffer is not changed.
+     *
+     * @param aBuffer the buffer containing the input XML
+     * @param aOptions the parsing options
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemParser(ByteBuffer aBuffer, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        this(new ByteBufferInputStream(aBuffer), aOptions);
+    }
+
+    /**
+     * In this method the X!Tandem file gets parsed. Without filter, the whole
+     * file is read into a DOM representation first. With a filter, the file
+     * is streamed to the DOM representation and the model groups are filtered
+     * as soon as they are read: a group failing the spectrum criteria is
+     * skipped without creating any node for it or its spectrum, and a group
+     * without any domain passing the domain criteria is removed once read.
+     *
+     * @param aInputSource the source of the XML which will be parsed
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied to the model groups, null to keep
+     * everything
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    private void parseXTandemFile(InputSource aInputSource, boolean skipDetails, XTandemFilter aFilter) throws IOException, SAXException, ParserConfigurationException {
+
+        if (aFilter == null) {
+            // Parse using builder to get DOM representation of the XML file
+            parseXTandemDocument(newDocumentBuilder().parse(aInputSource), skipDetails, aFilter);
+        } else {
+            // Stream the file to the DOM representation, the rejected model
+            // groups being dropped while read
+            Document document = newDocumentBuilder().newDocument();
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setValidating(false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.newSAXParser().parse(aInputSource, new SalvageHandler(document, aFilter));
+            parseXTandemDocument(document, skipDetails, aFilter);
+        }
+    }
+
+    /**
+     * In this method the X!Tandem file gets parsed in salvage mode. The file is
+     * streamed to a DOM representation, and an error of the XML parser or of
+     * the stream stops the reading instead of failing the parsing. The top
+     * level group being read at that point is discarded and the document read
+     * so far is parsed as usual.
+     *
+     * @param aInputSource the source of the XML which will be parsed
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied to the model groups, null to keep
+     * everything
+     *
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    private void salvageXTandemFile(InputSource aInputSource, boolean skipDetails, XTandemFilter aFilter) throws SAXException, ParserConfigurationException {
+
+        Document document = newDocumentBuilder().newDocument();
+        SalvageHandler handler = new SalvageHandler(document);
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setValidating(false);
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+
+        boolean complete = true;
+        int lineNumber = -1;
+        int columnNumber = -1;
+        String reason = null;
+        String discardedGroup = null;
+        try {
+            factory.newSAXParser().parse(aInputSource, handler);
+        } catch (SAXParseException e) {
+            complete = false;
+            lineNumber = e.getLineNumber();
+            columnNumber = e.getColumnNumber();
+            reason = e.getMessage();
+        } catch (IOException e) {
+            // e.g. a truncated compressed stream
+            complete = false;
+            lineNumber = handler.getLineNumber();
+            columnNumber = handler.getColumnNumber();
+            reason = e.toString();
+        }
+        if (!complete) {
+            discardedGroup = handler.discardOpenGroup();
+        }
+        if (document.getDocumentElement() == null) {
+            document.appendChild(document.createElement("bioml"));
+        }
+
+        int numberOfModelGroups = 0;
+        ArrayList<String> parameterGroups = new ArrayList<String>();
+        NodeList nodes = document.getDocumentElement().getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                Element group = (Element) nodes.item(i);
+                if (group.getAttribute("type").equalsIgnoreCase("model")) {
+                    numberOfModelGroups++;
+                } else if (group.getAttribute("type").equalsIgnoreCase("parameters")) {
+                    parameterGroups.add(group.getAttribute("label"));
+                }
+            }
+        }
+
+        parseXTandemDocument(document, skipDetails, aFilter);
+        iSalvageReport = new SalvageReport(complete, lineNumber, columnNumber, reason, discardedGroup, numberOfModelGroups, parameterGroups);
+    }
+
+    /**
+     * Returns a non validating document builder, not loading the external
+     * document type.
+     *
+     * @return the document builder
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
 
         // Get the document builder factory
-        dbf = DocumentBuilderFactory.newInstance();
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 
         dbf.setValidating(false);
         dbf.setAttribute("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
@@ -152,15 +668,34 @@ public class XTandemParser implements Serializable {
         dbf.setAttribute("http://xml.org/sax/features/validation", false);
 
         // Using factory to get an instance of document builder
-        db = dbf.newDocumentBuilder();
-
-        // Parse using builder to get DOM representation of the XML file
-        dom = db.parse(aInputFile);
-
-        // Get the root elememt
-        docEle = dom.getDocumentElement();
+        return dbf.newDocumentBuilder();
+    }
 
-        // Get all the nodes
+    /**
+     * In this method the DOM representation of the X!Tandem file gets parsed.
+     *
+     * @param aDocument the DOM representation of the X!Tandem file
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied to the model groups, null to keep
+     * everything
+     */
+    private void parseXTandemDocument(Document aDocument, boolean skipDetails, XTandemFilter aFilter) {
+
+        NodeList idNodes, proteinNodes, peptideNodes, nodes, parameterNodes, supportDataNodes, xDataNodes, yDataNodes;
+        NodeList hyperNodes, convolNodes, aIonNodes, bIonNodes, cIonNodes, xIonNodes, yIonNodes, zIonNodes, fragIonNodes;
+        Element docEle;
+
+        // Modifications: Specific to residues within a domain
+        String modificationName;
+        double modificationMass;
+        NamedNodeMap modificationMap;
+
+        // Get the root elememt
+        docEle = aDocument.getDocumentElement();
+
+        // Get all the nodes
         nodes = docEle.getChildNodes();
 
         // Initialize the maps
@@ -176,6 +711,13 @@ public class XTandemParser implements Serializable {
 
         // List of all the protein ids
         iProteinKeyList = new ArrayList<String>();
+        iProteinOccurrences = new HashMap<String, ProteinOccurrences>();
+        iProteinHitIndex = new ProteinHitIndex();
+        iPeptideIndex = new PeptideIndex();
+
+        // The positions and masses of the modifications of the current domain
+        int[] modificationPositions = new int[8];
+        double[] modificationMasses = new double[8];
         boolean aIonFlag = false;
         boolean bIonFlag = false;
         boolean cIonFlag = false;
@@ -865,6 +1407,19 @@ public class XTandemParser implements Serializable {
 
         // Iterate over all the nodes
         for (int i = 0; i < nodes.getLength(); i++) {
+
+            // Apply the filter before anything of the model group is stored
+            IdentityHashMap<Node, Node> acceptedDomains = null;
+            if (aFilter != null && isModelGroup(nodes.item(i))) {
+                if (!acceptSpectrum(nodes.item(i), aFilter)) {
+                    continue;
+                }
+                acceptedDomains = getAcceptedDomains(nodes.item(i), aFilter);
+                if (acceptedDomains != null && acceptedDomains.isEmpty()) {
+                    continue;
+                }
+            }
+
             if (nodes.item(i).getAttributes() != null) {
                 if (nodes.item(i).getAttributes().getNamedItem("type") != null) {
 
@@ -924,27 +1479,51 @@ public class XTandemParser implements Serializable {
             // Iterate over all the child nodes
             for (int j = 0; j < idNodes.getLength(); j++) {
 
-                if (idNodes.item(j).getNodeName().equalsIgnoreCase("protein")) {
+                if (idNodes.item(j).getNodeName().equalsIgnoreCase("protein")
+                        && (acceptedDomains == null || hasAcceptedDomain(idNodes.item(j), acceptedDomains))) {
                     p_counter++;
                     // the identifier of this particular identification (spectrum#).(id#)
                     String protID = idNodes.item(j).getAttributes().getNamedItem("id").getNodeValue();
 
                     // Since the ID is not unique to the protein, we will use the label to reference it. That will be dirty for some files.
                     String proteinKey = idNodes.item(j).getAttributes().getNamedItem("label").getNodeValue();
+                    // the protein is stored once per label, the values of the later occurrences only in the occurrence arrays
+                    boolean newProtein = false;
                     if (!skipDetails) {
-                        iProteinKeyList.add(proteinKey);
-
                         // a unique number of this protein, calculated by the search engine. Well unique. Most often yes.
-                        iRawProteinMap.put("uid" + proteinKey, idNodes.item(j).getAttributes().getNamedItem("uid").getNodeValue());
+                        String uid = idNodes.item(j).getAttributes().getNamedItem("uid").getNodeValue();
 
                         // the log10 value of the expection value of the protein
-                        iRawProteinMap.put("expect" + proteinKey, idNodes.item(j).getAttributes().getNamedItem("expect").getNodeValue());
-
-                        // the description line from the FASTA file
-                        iRawProteinMap.put("label" + proteinKey, idNodes.item(j).getAttributes().getNamedItem("label").getNodeValue());
+                        String expect = idNodes.item(j).getAttributes().getNamedItem("expect").getNodeValue();
 
                         // the sum of all of the fragment ions that identify this protein
-                        iRawProteinMap.put("sumI" + proteinKey, idNodes.item(j).getAttributes().getNamedItem("sumI").getNodeValue());
+                        String sumI = idNodes.item(j).getAttributes().getNamedItem("sumI").getNodeValue();
+
+                        ProteinOccurrences occurrences = iProteinOccurrences.get(proteinKey);
+                        if (occurrences == null) {
+                            newProtein = true;
+                            occurrences = new ProteinOccurrences();
+                            iProteinOccurrences.put(proteinKey, occurrences);
+                            iProteinKeyList.add(proteinKey);
+                            iRawProteinMap.put("uid" + proteinKey, uid);
+                            iRawProteinMap.put("expect" + proteinKey, expect);
+                            // the description line from the FASTA file
+                            iRawProteinMap.put("label" + proteinKey, proteinKey);
+                            iRawProteinMap.put("sumI" + proteinKey, sumI);
+                        }
+                        double expectValue;
+                        try {
+                            expectValue = Double.parseDouble(expect);
+                        } catch (NumberFormatException e) {
+                            expectValue = Double.NaN;
+                        }
+                        double summedScore;
+                        try {
+                            summedScore = Double.parseDouble(sumI);
+                        } catch (NumberFormatException e) {
+                            summedScore = Double.NaN;
+                        }
+                        occurrences.add(spectraCounter, protID, uid, expectValue, summedScore);
                     }
 
                     proteinNodes = idNodes.item(j).getChildNodes();
@@ -957,7 +1536,7 @@ public class XTandemParser implements Serializable {
                                 iRawPeptideMap.put("URL" + "_s" + spectraCounter + "_p" + p_counter, proteinNodes.item(k).getAttributes().getNamedItem("URL").getNodeValue());
                             }
 
-                            if (proteinNodes.item(k).getNodeName().equalsIgnoreCase("note") && proteinNodes.item(k).getAttributes().getNamedItem("label") != null
+                            if (newProtein && proteinNodes.item(k).getNodeName().equalsIgnoreCase("note") && proteinNodes.item(k).getAttributes().getNamedItem("label") != null
                                     && proteinNodes.item(k).getAttributes().getNamedItem("label").getNodeValue().equalsIgnoreCase("description")) {
                                 // the protein description (xml tag: note label="description")
                                 String test = proteinNodes.item(k).getTextContent();
@@ -986,7 +1565,8 @@ public class XTandemParser implements Serializable {
                             for (int m = 0; m < peptideNodes.getLength(); m++) {
 
                                 // Get the domain entries
-                                if (peptideNodes.item(m).getNodeName().equalsIgnoreCase("domain")) {
+                                if (peptideNodes.item(m).getNodeName().equalsIgnoreCase("domain")
+                                        && (acceptedDomains == null || acceptedDomains.containsKey(peptideNodes.item(m)))) {
 
                                     // Get the domainid
                                     String domainKey = "s" + spectraCounter + "_p" + p_counter + "_d" + dCount;
@@ -1006,6 +1586,10 @@ public class XTandemParser implements Serializable {
                                         // Store the protein key a la Thilo. There should be only one protein key per domain.
                                         iRawPeptideMap.put("proteinkey" + "_" + domainKey, proteinKey);
 
+                                        // index the hit for the protein
+                                        iProteinHitIndex.addHit(proteinKey, spectraCounter, p_counter, dCount,
+                                                peptideNodes.item(m).getAttributes().getNamedItem("seq").getNodeValue());
+
                                         // the end position of the peptide
                                         iRawPeptideMap.put("domainend" + "_" + domainKey, peptideNodes.item(m).getAttributes().getNamedItem("end").getNodeValue());
 
@@ -1085,6 +1669,7 @@ public class XTandemParser implements Serializable {
                                     // the domain sequence
                                     iRawPeptideMap.put("domainseq" + "_" + domainKey, peptideNodes.item(m).getAttributes().getNamedItem("seq").getNodeValue());
 
+                                    int domainStart = Integer.parseInt(peptideNodes.item(m).getAttributes().getNamedItem("start").getNodeValue());
                                     int modCounter = 0;
                                     for (int n = 0; n < peptideNodes.item(m).getChildNodes().getLength(); n++) {
 
@@ -1105,6 +1690,18 @@ public class XTandemParser implements Serializable {
 
                                             modificationName = modificationMass + "@" + modificationName;
 
+                                            // keep the modification for the peptide key
+                                            if (modCounter > modificationPositions.length) {
+                                                int[] positions = new int[2 * modificationPositions.length];
+                                                double[] masses = new double[2 * modificationMasses.length];
+                                                System.arraycopy(modificationPositions, 0, positions, 0, modificationPositions.length);
+                                                System.arraycopy(modificationMasses, 0, masses, 0, modificationMasses.length);
+                                                modificationPositions = positions;
+                                                modificationMasses = masses;
+                                            }
+                                            modificationPositions[modCounter - 1] = Integer.parseInt(modificationMap.getNamedItem("at").getNodeValue()) - domainStart + 1;
+                                            modificationMasses[modCounter - 1] = modificationMass;
+
                                             // type is the single letter abbreviation for the modified residue
                                             iRawModMap.put("name" + "_" + domainKey + "_m" + modCounter, modificationName);
 
@@ -1114,6 +1711,14 @@ public class XTandemParser implements Serializable {
                                             }
                                         }
                                     }
+
+                                    // index the hit for the modified peptide
+                                    if (!skipDetails) {
+                                        iPeptideIndex.addHit(PeptideIndex.getPeptideKey(
+                                                peptideNodes.item(m).getAttributes().getNamedItem("seq").getNodeValue(),
+                                                modificationPositions, modificationMasses, modCounter),
+                                                spectraCounter, p_counter, dCount);
+                                    }
                                 }
                             }
                         }
@@ -1338,144 +1943,963 @@ public class XTandemParser implements Serializable {
                                         }
                                     }
 
-                                    if (yIonFlag) {
-                                        // Parse the y ion histogram values
-                                        if (supportDataNodes.item(a).getAttributes().getNamedItem("type").getNodeValue().equals("y ion histogram")) {
-                                            iSupportDataMap.put("Y_IONLABEL" + "_s" + spectraCounter,
-                                                    supportDataNodes.item(a).getAttributes().getNamedItem("label").getNodeValue());
-                                            supportDataNodes.item(a).getChildNodes();
+                                    if (yIonFlag) {
+                                        // Parse the y ion histogram values
+                                        if (supportDataNodes.item(a).getAttributes().getNamedItem("type").getNodeValue().equals("y ion histogram")) {
+                                            iSupportDataMap.put("Y_IONLABEL" + "_s" + spectraCounter,
+                                                    supportDataNodes.item(a).getAttributes().getNamedItem("label").getNodeValue());
+                                            supportDataNodes.item(a).getChildNodes();
+
+                                            yIonNodes = supportDataNodes.item(a).getChildNodes();
+                                            // Iterate over the y ion nodes
+                                            for (int b = 0; b < yIonNodes.getLength(); b++) {
+                                                // Get the Xdata
+                                                if (yIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Xdata")) {
+                                                    xDataNodes = yIonNodes.item(b).getChildNodes();
+                                                    for (int d = 0; d < xDataNodes.getLength(); d++) {
+                                                        if (xDataNodes.item(d).getNodeName().equalsIgnoreCase("GAML:values")) {
+                                                            iSupportDataMap.put("XVAL_YIONS" + "_s"
+                                                                    + spectraCounter, xDataNodes.item(d).getTextContent());
+                                                        }
+                                                    }
+                                                }
+                                                // Get the Ydata
+                                                if (yIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Ydata")) {
+                                                    yDataNodes = yIonNodes.item(b).getChildNodes();
+                                                    for (int e = 0; e < yDataNodes.getLength(); e++) {
+                                                        if (yDataNodes.item(e).getNodeName().equalsIgnoreCase("GAML:values")) {
+                                                            iSupportDataMap.put("YVAL_YIONS" + "_s"
+                                                                    + spectraCounter, yDataNodes.item(e).getTextContent());
+                                                        }
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+
+                                    if (zIonFlag) {
+                                        // Parse the x ion histogram values
+                                        if (supportDataNodes.item(a).getAttributes().getNamedItem("type").getNodeValue().equals("y ion histogram")) {
+                                            iSupportDataMap.put("Z_IONLABEL" + "_s" + spectraCounter,
+                                                    supportDataNodes.item(a).getAttributes().getNamedItem("label").getNodeValue());
+                                            supportDataNodes.item(a).getChildNodes();
+
+                                            zIonNodes = supportDataNodes.item(a).getChildNodes();
+                                            // Iterate over the y ion nodes
+                                            for (int b = 0; b < zIonNodes.getLength(); b++) {
+                                                // Get the Xdata
+                                                if (zIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Xdata")) {
+                                                    xDataNodes = zIonNodes.item(b).getChildNodes();
+                                                    for (int d = 0; d < xDataNodes.getLength(); d++) {
+                                                        if (xDataNodes.item(d).getNodeName().equalsIgnoreCase("GAML:values")) {
+                                                            iSupportDataMap.put("XVAL_ZIONS" + "_s"
+                                                                    + spectraCounter, xDataNodes.item(d).getTextContent());
+                                                        }
+                                                    }
+                                                }
+                                                // Get the Ydata
+                                                if (zIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Ydata")) {
+                                                    yDataNodes = zIonNodes.item(b).getChildNodes();
+                                                    for (int e = 0; e < yDataNodes.getLength(); e++) {
+                                                        if (yDataNodes.item(e).getNodeName().equalsIgnoreCase("GAML:values")) {
+                                                            iSupportDataMap.put("YVAL_ZIONS" + "_s"
+                                                                    + spectraCounter, yDataNodes.item(e).getTextContent());
+                                                        }
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    if (idNodes.item(j).getAttributes().getNamedItem("label").getNodeValue().equalsIgnoreCase("fragment ion mass spectrum")) {
+
+                        supportDataNodes = idNodes.item(j).getChildNodes();
+                        // Iterate over all the support data nodes
+                        for (int a = 0; a < supportDataNodes.getLength(); a++) {
+                            if (supportDataNodes.item(a).getNodeName().equalsIgnoreCase("note")) {
+                                String title = supportDataNodes.item(a).getTextContent().trim();
+                                idToSpectrumMap.put(spectraCounter, title);
+                                if (!skipDetails) {
+                                    iSupportDataMap.put("FRAGIONSPECDESC" + "_s" + spectraCounter, title);
+                                    iTitle2SpectrumIDMap.put(title, spectraCounter);
+                                } else {
+                                    break;
+                                }
+                            }
+                            if (!skipDetails) {
+                                if (supportDataNodes.item(a).getNodeName().equalsIgnoreCase("GAML:trace")) {
+                                    // Parse the tandem mass spectrum values
+                                    if (supportDataNodes.item(a).getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("tandem mass spectrum")) {
+                                        iSupportDataMap.put("SPECTRUMLABEL" + "_s" + spectraCounter,
+                                                supportDataNodes.item(a).getAttributes().getNamedItem("label").getNodeValue());
+                                        supportDataNodes.item(a).getChildNodes();
+
+                                        fragIonNodes = supportDataNodes.item(a).getChildNodes();
+                                        // Iterate over the fragment ion nodes
+                                        for (int b = 0; b < fragIonNodes.getLength(); b++) {
+                                            if (fragIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:attribute")) {
+                                                // Get the a0 value
+                                                if (fragIonNodes.item(b).getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("M+H")) {
+                                                    iSupportDataMap.put("FRAGIONMZ" + "_s"
+                                                            + spectraCounter, fragIonNodes.item(b).getTextContent());
+                                                }
+                                                // Get the a1 value
+                                                if (fragIonNodes.item(b).getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("charge")) {
+                                                    iSupportDataMap.put("FRAGIONCHARGE" + "_s"
+                                                            + spectraCounter, fragIonNodes.item(b).getTextContent());
+                                                }
+                                            }
+                                            // Get the Xdata
+                                            if (fragIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Xdata")) {
+                                                xDataNodes = fragIonNodes.item(b).getChildNodes();
+                                                for (int d = 0; d < xDataNodes.getLength(); d++) {
+                                                    if (xDataNodes.item(d).getNodeName().equalsIgnoreCase("GAML:values")) {
+                                                        iSupportDataMap.put("XVAL_FRAGIONMZ" + "_s"
+                                                                + spectraCounter, xDataNodes.item(d).getTextContent());
+                                                    }
+                                                }
+                                            }
+                                            // Get the Ydata
+                                            if (fragIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Ydata")) {
+                                                yDataNodes = fragIonNodes.item(b).getChildNodes();
+                                                for (int e = 0; e < yDataNodes.getLength(); e++) {
+                                                    if (yDataNodes.item(e).getNodeName().equalsIgnoreCase("GAML:values")) {
+                                                        iSupportDataMap.put("YVAL_FRAGIONMZ" + "_s"
+                                                                + spectraCounter, yDataNodes.item(e).getTextContent());
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (ProteinOccurrences occurrences : iProteinOccurrences.values()) {
+            occurrences.trim();
+        }
+        iProteinHitIndex.trim();
+        iPeptideIndex.trim();
+    }
+
+    /**
+     * Parses the given file with the byte level tokenizer over a memory mapped
+     * buffer, see GamlTokenizer, filling the same maps and indexes as
+     * parseXTandemFile. The model groups are read by the tokenizer, the other
+     * top level groups, i.e. the parameters, are small and passed to the
+     * standard parser.
+     *
+     * @param aFile the input XML file
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied to the model groups, null to keep
+     * everything
+     * @param aLazySupportData if true only the ranges of the GAML values in
+     * plain text are recorded
+     * @return true if the file was parsed, false if its content is not
+     * supported by the tokenizer or if it is larger than 2 GB, the maximal
+     * size of a mapped buffer, and the file has to be parsed with the
+     * standard parser
+     *
+     * @exception IOException if an IOException occurs
+     * @exception SAXException if a SAXException occurs
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    private boolean parseMappedFile(File aFile, boolean skipDetails, XTandemFilter aFilter, boolean aLazySupportData) throws IOException, SAXException, ParserConfigurationException {
+
+        ByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(aFile, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                return false;
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (aLazySupportData && !skipDetails) {
+            iSupportDataRanges = new SupportDataRanges(aFile);
+        }
+        boolean parsed = false;
+        try {
+            GamlTokenizer tokenizer = new GamlTokenizer(buffer, 0, buffer.limit());
+
+            // Locate the model groups and copy the other top level elements to a document for the standard parser
+            if (!tokenizer.nextChild(null)) {
+                return false;
+            }
+            int[] modelGroups = new int[64];
+            int numberOfModelGroups = 0;
+            boolean[] ionFlags = new boolean[6];
+            ByteArrayOutputStream parameters = new ByteArrayOutputStream();
+            while (tokenizer.nextChild(null)) {
+                int start = tokenizer.getTagStart();
+                if (tokenizer.attributeEquals(TYPE, MODEL, true)) {
+                    tokenizer.skipElement(null);
+                    if (2 * numberOfModelGroups + 2 > modelGroups.length) {
+                        int[] groups = new int[2 * modelGroups.length];
+                        System.arraycopy(modelGroups, 0, groups, 0, modelGroups.length);
+                        modelGroups = groups;
+                    }
+                    modelGroups[2 * numberOfModelGroups] = start;
+                    modelGroups[2 * numberOfModelGroups + 1] = tokenizer.getPosition();
+                    numberOfModelGroups++;
+                } else {
+                    readParameterGroup(tokenizer, ionFlags);
+                    byte[] bytes = new byte[tokenizer.getPosition() - start];
+                    ByteBuffer range = buffer.duplicate();
+                    range.position(start);
+                    range.get(bytes);
+                    parameters.write(bytes);
+                }
+            }
+            while (tokenizer.next() != GamlTokenizer.END_DOCUMENT) {
+                if (tokenizer.getEvent() == GamlTokenizer.START_ELEMENT) {
+                    throw new GamlTokenizer.UnsupportedContentException("Content after the root element.");
+                }
+            }
+
+            // Parse the parameters with the standard parser, this also initializes the maps
+            byte[] header = ("<?xml version=\"1.0\" encoding=\"" + tokenizer.getEncoding() + "\"?><bioml>").getBytes("US-ASCII");
+            byte[] footer = "</bioml>".getBytes("US-ASCII");
+            byte[] document = new byte[header.length + parameters.size() + footer.length];
+            System.arraycopy(header, 0, document, 0, header.length);
+            System.arraycopy(parameters.toByteArray(), 0, document, header.length, parameters.size());
+            System.arraycopy(footer, 0, document, header.length + parameters.size(), footer.length);
+            parseXTandemFile(new InputSource(new ByteArrayInputStream(document)), skipDetails, null);
+            iProteinHitIndex = new ProteinHitIndex();
+            iPeptideIndex = new PeptideIndex();
+
+            // Parse the model groups
+            int spectraCounter = 0;
+            int[] modificationPositions = new int[8];
+            double[] modificationMasses = new double[8];
+            for (int i = 0; i < numberOfModelGroups; i++) {
+                GamlTokenizer group = new GamlTokenizer(tokenizer, modelGroups[2 * i], modelGroups[2 * i + 1]);
+                group.next();
+
+                // Apply the filter before anything of the model group is stored
+                boolean[] acceptedDomains = null;
+                ArrayList<Integer> proteinDomains = null;
+                if (aFilter != null) {
+                    int charge = 0;
+                    if (group.hasAttribute(Z)) {
+                        charge = group.getRequiredIntAttribute(Z, true);
+                    }
+                    if (!aFilter.acceptSpectrum(group.getDoubleAttribute(EXPECT), charge)) {
+                        continue;
+                    }
+                    if (aFilter.hasDomainCriteria()) {
+                        GamlTokenizer filterGroup = new GamlTokenizer(tokenizer, modelGroups[2 * i], modelGroups[2 * i + 1]);
+                        filterGroup.next();
+                        proteinDomains = new ArrayList<Integer>();
+                        acceptedDomains = getAcceptedDomains(filterGroup, aFilter, proteinDomains);
+                        if (!hasAcceptedDomain(acceptedDomains, 0, acceptedDomains.length)) {
+                            continue;
+                        }
+                    }
+                }
+
+                spectraCounter++;
+
+                // id is the number associated with the mass spectrum that was identified
+                putAttribute(group, ID, iRawSpectrumMap, "id" + spectraCounter);
+                // z is the parent/precursor ion charge
+                putAttribute(group, Z, iRawSpectrumMap, "z" + spectraCounter);
+                if (!skipDetails) {
+                    putAttribute(group, EXPECT, iRawSpectrumMap, "expect" + spectraCounter);
+                    putAttribute(group, MH, iRawSpectrumMap, "mh" + spectraCounter);
+                    putAttribute(group, RT, iRawSpectrumMap, "rt" + spectraCounter);
+                    putAttribute(group, LABEL, iRawSpectrumMap, "label" + spectraCounter);
+                    putAttribute(group, SUM_I, iRawSpectrumMap, "sumI" + spectraCounter);
+                    putAttribute(group, MAX_I, iRawSpectrumMap, "maxI" + spectraCounter);
+                    putAttribute(group, F_I, iRawSpectrumMap, "fI" + spectraCounter);
+                }
+
+                int p_counter = 0;
+                int proteinOrdinal = 0;
+                int domainOrdinal = 0;
+                while (group.nextChild(null)) {
+
+                    if (group.isElement(PROTEIN)) {
+                        if (acceptedDomains != null) {
+                            int domains = proteinDomains.get(proteinOrdinal++);
+                            if (!hasAcceptedDomain(acceptedDomains, domainOrdinal, domainOrdinal + domains)) {
+                                domainOrdinal += domains;
+                                group.skipElement(null);
+                                continue;
+                            }
+                        }
+                        p_counter++;
+                        String protID = group.getRequiredAttribute(ID);
+                        String proteinKey = group.getRequiredAttribute(LABEL);
+                        boolean newProtein = false;
+                        if (!skipDetails) {
+                            String uid = group.getRequiredAttribute(UID);
+                            String expect = group.getRequiredAttribute(EXPECT);
+                            String sumI = group.getRequiredAttribute(SUM_I);
+                            ProteinOccurrences occurrences = iProteinOccurrences.get(proteinKey);
+                            if (occurrences == null) {
+                                newProtein = true;
+                                occurrences = new ProteinOccurrences();
+                                iProteinOccurrences.put(proteinKey, occurrences);
+                                iProteinKeyList.add(proteinKey);
+                                iRawProteinMap.put("uid" + proteinKey, uid);
+                                iRawProteinMap.put("expect" + proteinKey, expect);
+                                iRawProteinMap.put("label" + proteinKey, proteinKey);
+                                iRawProteinMap.put("sumI" + proteinKey, sumI);
+                            }
+                            occurrences.add(spectraCounter, protID, uid, group.getDoubleAttribute(EXPECT), group.getDoubleAttribute(SUM_I));
+                        }
+
+                        while (group.nextChild(null)) {
+                            if (!skipDetails && group.isElement(FILE)) {
+                                iRawPeptideMap.put("URL" + "_s" + spectraCounter + "_p" + p_counter, group.getRequiredAttribute(URL));
+                                group.skipElement(null);
+                            } else if (!skipDetails && newProtein && group.isElement(NOTE) && group.attributeEquals(LABEL, DESCRIPTION, true)) {
+                                iRawProteinMap.put("description" + proteinKey, group.readText());
+                            } else if (group.isElement(PEPTIDE)) {
+                                iRawPeptideMap.put("s" + spectraCounter + "_p" + p_counter, protID);
+                                StringBuilder peptideSequence = null;
+                                if (!skipDetails) {
+                                    iRawPeptideMap.put("start" + "_s" + spectraCounter + "_p" + p_counter, group.getRequiredAttribute(START));
+                                    iRawPeptideMap.put("end" + "_s" + spectraCounter + "_p" + p_counter, group.getRequiredAttribute(END));
+                                    peptideSequence = new StringBuilder();
+                                }
+
+                                // Domain counter
+                                int dCount = 1;
+
+                                while (group.nextChild(peptideSequence)) {
+                                    if (!group.isElement(DOMAIN)) {
+                                        group.skipElement(peptideSequence);
+                                        continue;
+                                    }
+                                    domainOrdinal++;
+                                    if (acceptedDomains != null && !acceptedDomains[domainOrdinal - 1]) {
+                                        group.skipElement(peptideSequence);
+                                        continue;
+                                    }
+
+                                    String domainKey = "s" + spectraCounter + "_p" + p_counter + "_d" + dCount;
+
+                                    // verify that the same domain key is not already in use
+                                    while (iRawPeptideMap.containsKey("proteinkey" + "_" + domainKey)) {
+                                        domainKey = "s" + spectraCounter + "_p" + p_counter + "_d" + ++dCount;
+                                    }
+
+                                    iRawPeptideMap.put("domainid" + "_" + domainKey, group.getRequiredAttribute(ID));
+                                    String domainStartValue = group.getRequiredAttribute(START);
+                                    iRawPeptideMap.put("domainstart" + "_" + domainKey, domainStartValue);
+                                    String domainSequence = group.getRequiredAttribute(SEQ);
+
+                                    if (!skipDetails) {
+                                        iRawPeptideMap.put("proteinkey" + "_" + domainKey, proteinKey);
+                                        iProteinHitIndex.addHit(proteinKey, spectraCounter, p_counter, dCount, domainSequence);
+                                        iRawPeptideMap.put("domainend" + "_" + domainKey, group.getRequiredAttribute(END));
+                                        iRawPeptideMap.put("mh" + "_" + domainKey, group.getRequiredAttribute(MH));
+                                        iRawPeptideMap.put("delta" + "_" + domainKey, group.getRequiredAttribute(DELTA));
+                                        iRawPeptideMap.put("hyperscore" + "_" + domainKey, group.getRequiredAttribute(HYPERSCORE));
+                                        iRawPeptideMap.put("nextscore" + "_" + domainKey, group.getRequiredAttribute(NEXTSCORE));
+                                        // the x, y and z scores are given as y scores, the a, b and c scores as b scores
+                                        String[] ionTypes = {"x", "y", "z", "a", "b", "c"};
+                                        for (int ionType = 0; ionType < ionFlags.length; ionType++) {
+                                            if (ionFlags[ionType]) {
+                                                iRawPeptideMap.put(ionTypes[ionType] + "_score" + "_" + domainKey,
+                                                        group.getRequiredAttribute(ionType < 3 ? Y_SCORE : B_SCORE));
+                                                iRawPeptideMap.put(ionTypes[ionType] + "_ions" + "_" + domainKey,
+                                                        group.getRequiredAttribute(ionType < 3 ? Y_IONS : B_IONS));
+                                            }
+                                        }
+                                        iRawPeptideMap.put("pre" + "_" + domainKey, group.getRequiredAttribute(PRE));
+                                        iRawPeptideMap.put("post" + "_" + domainKey, group.getRequiredAttribute(POST));
+                                        iRawPeptideMap.put("missed_cleavages" + "_" + domainKey, group.getRequiredAttribute(MISSED_CLEAVAGES));
+                                    }
+
+                                    iRawPeptideMap.put("expect" + "_" + domainKey, group.getRequiredAttribute(EXPECT));
+                                    iRawPeptideMap.put("domainseq" + "_" + domainKey, domainSequence);
+
+                                    int domainStart = group.getRequiredIntAttribute(START, false);
+                                    int modCounter = 0;
+                                    while (group.nextChild(peptideSequence)) {
+                                        if (!group.isElement(AA)) {
+                                            group.skipElement(peptideSequence);
+                                            continue;
+                                        }
+                                        modCounter++;
+                                        String modificationType = group.getRequiredAttribute(TYPE);
+                                        iRawModMap.put("at" + "_" + domainKey + "_m" + modCounter, group.getRequiredAttribute(AT));
+                                        double modificationMass = group.getRequiredDoubleAttribute(MODIFIED);
+                                        iRawModMap.put("modified" + "_" + domainKey + "_m" + modCounter, group.getRequiredAttribute(MODIFIED));
+                                        if (modCounter > modificationPositions.length) {
+                                            int[] positions = new int[2 * modificationPositions.length];
+                                            double[] masses = new double[2 * modificationMasses.length];
+                                            System.arraycopy(modificationPositions, 0, positions, 0, modificationPositions.length);
+                                            System.arraycopy(modificationMasses, 0, masses, 0, modificationMasses.length);
+                                            modificationPositions = positions;
+                                            modificationMasses = masses;
+                                        }
+                                        modificationPositions[modCounter - 1] = group.getRequiredIntAttribute(AT, false) - domainStart + 1;
+                                        modificationMasses[modCounter - 1] = modificationMass;
+                                        iRawModMap.put("name" + "_" + domainKey + "_m" + modCounter, modificationMass + "@" + modificationType);
+                                        if (group.hasAttribute(PM)) {
+                                            iRawModMap.put("pm" + "_" + domainKey + "_m" + modCounter, group.getAttribute(PM));
+                                        }
+                                        group.skipElement(peptideSequence);
+                                    }
+
+                                    if (!skipDetails) {
+                                        iPeptideIndex.addHit(PeptideIndex.getPeptideKey(domainSequence, modificationPositions, modificationMasses, modCounter),
+                                                spectraCounter, p_counter, dCount);
+                                    }
+                                }
+                                if (!skipDetails) {
+                                    iRawPeptideMap.put("seq" + "_s" + spectraCounter + "_p" + p_counter, peptideSequence.toString());
+                                }
+                            } else {
+                                group.skipElement(null);
+                            }
+                        }
+
+                    } else if (group.isElement(GROUP)) {
+                        String label = group.getRequiredAttribute(LABEL);
+                        if (!skipDetails && label.equalsIgnoreCase("supporting data")) {
+                            readSupportingData(group, spectraCounter, ionFlags);
+                        } else if (label.equalsIgnoreCase("fragment ion mass spectrum")) {
+                            readFragmentIonMassSpectrum(group, spectraCounter, skipDetails);
+                        } else {
+                            group.skipElement(null);
+                        }
+                    } else {
+                        group.skipElement(null);
+                    }
+                }
+            }
+
+            iNumberOfSpectra = spectraCounter;
+            for (ProteinOccurrences occurrences : iProteinOccurrences.values()) {
+                occurrences.trim();
+            }
+            iProteinHitIndex.trim();
+            iPeptideIndex.trim();
+            if (iSupportDataRanges != null) {
+                iSupportDataRanges.trim();
+            }
+            iMappedParse = true;
+            parsed = true;
+            return true;
+
+        } catch (GamlTokenizer.UnsupportedContentException e) {
+            return false;
+        } finally {
+            if (!parsed && iSupportDataRanges != null) {
+                iSupportDataRanges.close();
+                iSupportDataRanges = null;
+            }
+        }
+    }
+
+    /**
+     * Reads a top level group other than a model group. Checks that it holds
+     * no identification, and reads the ion types scored from the input
+     * parameters like parseXTandemFile.
+     *
+     * @param aTokenizer the tokenizer positioned on the group
+     * @param aIonFlags the x, y, z, a, b and c ion flags, set to true for the
+     * ion types scored
+     * @throws GamlTokenizer.UnsupportedContentException if the group is not
+     * supported
+     */
+    private void readParameterGroup(GamlTokenizer aTokenizer, boolean[] aIonFlags) throws GamlTokenizer.UnsupportedContentException {
+        boolean inputParameters = aTokenizer.attributeEquals(TYPE, PARAMETERS, true)
+                && (aTokenizer.attributeEquals(LABEL, INPUT_PARAMETERS, true) || aTokenizer.attributeEquals(LABEL, UNUSED_INPUT_PARAMETERS, true));
+        boolean spectrumPath = false;
+        while (aTokenizer.nextChild(null)) {
+            if (aTokenizer.isElement(PROTEIN) || aTokenizer.isElement(GROUP)) {
+                throw new GamlTokenizer.UnsupportedContentException("Identification outside of a model group.");
+            }
+            if (!inputParameters || spectrumPath) {
+                aTokenizer.skipElement(null);
+                continue;
+            }
+            String label = aTokenizer.getAttribute(LABEL);
+            String value = aTokenizer.readText();
+            if (label == null) {
+                continue;
+            }
+            if (label.equalsIgnoreCase("spectrum, path") && !value.equals("")) {
+                // the standard parser stops reading the group there
+                spectrumPath = true;
+            }
+            String[] ionLabels = {"scoring, x ions", "scoring, y ions", "scoring, z ions", "scoring, a ions", "scoring, b ions", "scoring, c ions"};
+            for (int i = 0; i < ionLabels.length; i++) {
+                if (label.equalsIgnoreCase(ionLabels[i]) && value.equals("yes")) {
+                    aIonFlags[i] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the supporting data group of a model group like parseXTandemFile.
+     *
+     * @param aTokenizer the tokenizer positioned on the group
+     * @param aSpectrumNumber the spectrum number
+     * @param aIonFlags the x, y, z, a, b and c ion flags
+     * @throws GamlTokenizer.UnsupportedContentException if the group is not
+     * supported
+     */
+    private void readSupportingData(GamlTokenizer aTokenizer, int aSpectrumNumber, boolean[] aIonFlags) throws GamlTokenizer.UnsupportedContentException {
+
+        // the prefixes of the label, x values and y values keys per ion type, a, b and c ions use the b ion histogram
+        String[][] ionKeys = {{"X_IONLABEL", "XVAL_XIONS", "YVAL_XIONS"}, {"Y_IONLABEL", "XVAL_YIONS", "YVAL_YIONS"},
+            {"Z_IONLABEL", "XVAL_ZIONS", "YVAL_ZIONS"}, {"A_IONLABEL", "XVAL_AIONS", "YVAL_AIONS"},
+            {"B_IONLABEL", "XVAL_BIONS", "YVAL_BIONS"}, {"C_IONLABEL", "XVAL_CIONS", "YVAL_CIONS"}};
+
+        while (aTokenizer.nextChild(null)) {
+            if (!aTokenizer.isElement(GAML_TRACE)) {
+                aTokenizer.skipElement(null);
+                continue;
+            }
+            String type = aTokenizer.getRequiredAttribute(TYPE);
+            ArrayList<String[]> keys = new ArrayList<String[]>(2);
+            boolean hyperscore = type.equalsIgnoreCase("hyperscore expectation function");
+            if (hyperscore) {
+                keys.add(new String[]{"HYPERLABEL", "XVAL_HYPER", "YVAL_HYPER"});
+            }
+            if (type.equalsIgnoreCase("convolution survival function")) {
+                keys.add(new String[]{"CONVOLLABEL", "XVAL_CONVOL", "YVAL_CONVOL"});
+            }
+            for (int i = 0; i < aIonFlags.length; i++) {
+                if (aIonFlags[i] && (i < 3 ? type.equals("y ion histogram") : type.equalsIgnoreCase("b ion histogram"))) {
+                    keys.add(ionKeys[i]);
+                }
+            }
+            if (keys.isEmpty()) {
+                aTokenizer.skipElement(null);
+                continue;
+            }
+            String label = aTokenizer.getRequiredAttribute(LABEL);
+            for (String[] key : keys) {
+                iSupportDataMap.put(key[0] + "_s" + aSpectrumNumber, label);
+            }
+            while (aTokenizer.nextChild(null)) {
+                if (hyperscore && aTokenizer.isElement(GAML_ATTRIBUTE)) {
+                    String attributeType = aTokenizer.getRequiredAttribute(TYPE);
+                    String value = aTokenizer.readText();
+                    if (attributeType.equalsIgnoreCase("a0")) {
+                        iSupportDataMap.put("HYPER_A0" + "_s" + aSpectrumNumber, value);
+                    }
+                    if (attributeType.equalsIgnoreCase("a1")) {
+                        iSupportDataMap.put("HYPER_A1" + "_s" + aSpectrumNumber, value);
+                    }
+                } else if (aTokenizer.isElement(GAML_XDATA) || aTokenizer.isElement(GAML_YDATA)) {
+                    int keyIndex = aTokenizer.isElement(GAML_XDATA) ? 1 : 2;
+                    while (aTokenizer.nextChild(null)) {
+                        if (aTokenizer.isElement(GAML_VALUES)) {
+                            String[] prefixes = new String[keys.size()];
+                            for (int i = 0; i < prefixes.length; i++) {
+                                prefixes[i] = keys.get(i)[keyIndex];
+                            }
+                            readValues(aTokenizer, prefixes, aSpectrumNumber);
+                        } else {
+                            aTokenizer.skipElement(null);
+                        }
+                    }
+                } else {
+                    aTokenizer.skipElement(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the fragment ion mass spectrum group of a model group like
+     * parseXTandemFile.
+     *
+     * @param aTokenizer the tokenizer positioned on the group
+     * @param aSpectrumNumber the spectrum number
+     * @param skipDetails if true only the spectrum title is read
+     * @throws GamlTokenizer.UnsupportedContentException if the group is not
+     * supported
+     */
+    private void readFragmentIonMassSpectrum(GamlTokenizer aTokenizer, int aSpectrumNumber, boolean skipDetails) throws GamlTokenizer.UnsupportedContentException {
+        while (aTokenizer.nextChild(null)) {
+            if (aTokenizer.isElement(NOTE)) {
+                String title = aTokenizer.readText().trim();
+                idToSpectrumMap.put(aSpectrumNumber, title);
+                if (!skipDetails) {
+                    iSupportDataMap.put("FRAGIONSPECDESC" + "_s" + aSpectrumNumber, title);
+                    iTitle2SpectrumIDMap.put(title, aSpectrumNumber);
+                } else {
+                    aTokenizer.skipElement(null);
+                    return;
+                }
+            } else if (!skipDetails && aTokenizer.isElement(GAML_TRACE)
+                    && aTokenizer.getRequiredAttribute(TYPE).equalsIgnoreCase("tandem mass spectrum")) {
+                iSupportDataMap.put("SPECTRUMLABEL" + "_s" + aSpectrumNumber, aTokenizer.getRequiredAttribute(LABEL));
+                while (aTokenizer.nextChild(null)) {
+                    if (aTokenizer.isElement(GAML_ATTRIBUTE)) {
+                        String attributeType = aTokenizer.getRequiredAttribute(TYPE);
+                        String value = aTokenizer.readText();
+                        if (attributeType.equalsIgnoreCase("M+H")) {
+                            iSupportDataMap.put("FRAGIONMZ" + "_s" + aSpectrumNumber, value);
+                        }
+                        if (attributeType.equalsIgnoreCase("charge")) {
+                            iSupportDataMap.put("FRAGIONCHARGE" + "_s" + aSpectrumNumber, value);
+                        }
+                    } else if (aTokenizer.isElement(GAML_XDATA) || aTokenizer.isElement(GAML_YDATA)) {
+                        String key = aTokenizer.isElement(GAML_XDATA) ? "XVAL_FRAGIONMZ" : "YVAL_FRAGIONMZ";
+                        while (aTokenizer.nextChild(null)) {
+                            if (aTokenizer.isElement(GAML_VALUES)) {
+                                readValues(aTokenizer, new String[]{key}, aSpectrumNumber);
+                            } else {
+                                aTokenizer.skipElement(null);
+                            }
+                        }
+                    } else {
+                        aTokenizer.skipElement(null);
+                    }
+                }
+            } else {
+                aTokenizer.skipElement(null);
+            }
+        }
+    }
+
+    /**
+     * Reads the content of a GAML:values element. If the support data is read
+     * lazily and the content is plain text, only its range in the file is
+     * recorded, otherwise the text is put in the support data map.
+     *
+     * @param aTokenizer the tokenizer positioned on the element
+     * @param aPrefixes the prefixes of the support data keys of the values
+     * @param aSpectrumNumber the spectrum number
+     * @throws GamlTokenizer.UnsupportedContentException if the element is not
+     * supported
+     */
+    private void readValues(GamlTokenizer aTokenizer, String[] aPrefixes, int aSpectrumNumber) throws GamlTokenizer.UnsupportedContentException {
+        int start = aTokenizer.getPosition();
+        int end = iSupportDataRanges == null ? -1 : aTokenizer.skipPlainText();
+        if (end >= 0) {
+            for (String prefix : aPrefixes) {
+                iSupportDataMap.remove(prefix + "_s" + aSpectrumNumber);
+                iSupportDataRanges.add(prefix, aSpectrumNumber, start, end - start);
+            }
+        } else {
+            String values = aTokenizer.readText();
+            for (String prefix : aPrefixes) {
+                iSupportDataMap.put(prefix + "_s" + aSpectrumNumber, values);
+                if (iSupportDataRanges != null) {
+                    iSupportDataRanges.remove(prefix, aSpectrumNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the domains of the model group passing the domain criteria of
+     * the filter, like getAcceptedDomains for the standard parser. The
+     * domains are numbered in order of appearance in the proteins and
+     * peptides of the group.
+     *
+     * @param aTokenizer the tokenizer positioned on the model group
+     * @param aFilter the filter
+     * @param aProteinDomains the list the number of domains of every protein
+     * of the group is added to
+     * @return the acceptance of the domains, indexed by domain number
+     * @throws GamlTokenizer.UnsupportedContentException if the group is not
+     * supported
+     */
+    private boolean[] getAcceptedDomains(GamlTokenizer aTokenizer, XTandemFilter aFilter, ArrayList<Integer> aProteinDomains)
+            throws GamlTokenizer.UnsupportedContentException {
+
+        boolean[] accepted = new boolean[16];
+        double[] expects = new double[16];
+        int numberOfDomains = 0;
+        ArrayList<Double> acceptedExpects = new ArrayList<Double>();
+
+        while (aTokenizer.nextChild(null)) {
+            if (!aTokenizer.isElement(PROTEIN)) {
+                aTokenizer.skipElement(null);
+                continue;
+            }
+            String proteinLabel = aTokenizer.getAttribute(LABEL);
+            int proteinDomains = 0;
+            while (aTokenizer.nextChild(null)) {
+                if (!aTokenizer.isElement(PEPTIDE)) {
+                    aTokenizer.skipElement(null);
+                    continue;
+                }
+                while (aTokenizer.nextChild(null)) {
+                    if (aTokenizer.isElement(DOMAIN)) {
+                        if (numberOfDomains == accepted.length) {
+                            boolean[] newAccepted = new boolean[2 * accepted.length];
+                            double[] newExpects = new double[2 * expects.length];
+                            System.arraycopy(accepted, 0, newAccepted, 0, numberOfDomains);
+                            System.arraycopy(expects, 0, newExpects, 0, numberOfDomains);
+                            accepted = newAccepted;
+                            expects = newExpects;
+                        }
+                        double expect = aTokenizer.getDoubleAttribute(EXPECT);
+                        int missedCleavages = 0;
+                        if (aTokenizer.hasAttribute(MISSED_CLEAVAGES)) {
+                            missedCleavages = aTokenizer.getRequiredIntAttribute(MISSED_CLEAVAGES, true);
+                        }
+                        accepted[numberOfDomains] = aFilter.acceptDomain(expect, aTokenizer.getDoubleAttribute(HYPERSCORE),
+                                aTokenizer.getDoubleAttribute(DELTA), missedCleavages, proteinLabel);
+                        expects[numberOfDomains] = expect;
+                        if (accepted[numberOfDomains]) {
+                            acceptedExpects.add(expect);
+                        }
+                        numberOfDomains++;
+                        proteinDomains++;
+                    }
+                    aTokenizer.skipElement(null);
+                }
+            }
+            aProteinDomains.add(proteinDomains);
+        }
+
+        // Keep the domains of the best ranks, equal expectation values share a rank
+        double maxExpect = Double.POSITIVE_INFINITY;
+        if (aFilter.getMaxDomainRank() > 0) {
+            TreeSet<Double> distinctExpects = new TreeSet<Double>(acceptedExpects);
+            int rank = 0;
+            for (Double expect : distinctExpects) {
+                if (++rank == aFilter.getMaxDomainRank()) {
+                    maxExpect = expect;
+                    break;
+                }
+            }
+        }
+
+        boolean[] acceptedDomains = new boolean[numberOfDomains];
+        for (int d = 0; d < numberOfDomains; d++) {
+            acceptedDomains[d] = accepted[d] && !(expects[d] > maxExpect);
+        }
+        return acceptedDomains;
+    }
+
+    /**
+     * Returns true if one of the given domains is accepted.
+     *
+     * @param aAcceptedDomains the acceptance of the domains, indexed by domain
+     * number
+     * @param aStart the number of the first domain
+     * @param aEnd the number after the last domain
+     * @return true if one of the domains is accepted
+     */
+    private boolean hasAcceptedDomain(boolean[] aAcceptedDomains, int aStart, int aEnd) {
+        for (int d = aStart; d < aEnd; d++) {
+            if (aAcceptedDomains[d]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts the value of the given attribute into the given map, if the
+     * attribute is given.
+     *
+     * @param aTokenizer the tokenizer positioned on the element
+     * @param aName the attribute name
+     * @param aMap the map
+     * @param aKey the key
+     * @throws GamlTokenizer.UnsupportedContentException if the value is not
+     * supported
+     */
+    private void putAttribute(GamlTokenizer aTokenizer, byte[] aName, HashMap<String, String> aMap, String aKey) throws GamlTokenizer.UnsupportedContentException {
+        String value = aTokenizer.getAttribute(aName);
+        if (value != null) {
+            aMap.put(aKey, value);
+        }
+    }
 
-                                            yIonNodes = supportDataNodes.item(a).getChildNodes();
-                                            // Iterate over the y ion nodes
-                                            for (int b = 0; b < yIonNodes.getLength(); b++) {
-                                                // Get the Xdata
-                                                if (yIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Xdata")) {
-                                                    xDataNodes = yIonNodes.item(b).getChildNodes();
-                                                    for (int d = 0; d < xDataNodes.getLength(); d++) {
-                                                        if (xDataNodes.item(d).getNodeName().equalsIgnoreCase("GAML:values")) {
-                                                            iSupportDataMap.put("XVAL_YIONS" + "_s"
-                                                                    + spectraCounter, xDataNodes.item(d).getTextContent());
-                                                        }
-                                                    }
-                                                }
-                                                // Get the Ydata
-                                                if (yIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Ydata")) {
-                                                    yDataNodes = yIonNodes.item(b).getChildNodes();
-                                                    for (int e = 0; e < yDataNodes.getLength(); e++) {
-                                                        if (yDataNodes.item(e).getNodeName().equalsIgnoreCase("GAML:values")) {
-                                                            iSupportDataMap.put("YVAL_YIONS" + "_s"
-                                                                    + spectraCounter, yDataNodes.item(e).getTextContent());
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
+    /**
+     * Returns the given ASCII string as bytes.
+     *
+     * @param aString the string
+     * @return the bytes
+     */
+    private static byte[] toBytes(String aString) {
+        byte[] bytes = new byte[aString.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) aString.charAt(i);
+        }
+        return bytes;
+    }
 
-                                    if (zIonFlag) {
-                                        // Parse the x ion histogram values
-                                        if (supportDataNodes.item(a).getAttributes().getNamedItem("type").getNodeValue().equals("y ion histogram")) {
-                                            iSupportDataMap.put("Z_IONLABEL" + "_s" + spectraCounter,
-                                                    supportDataNodes.item(a).getAttributes().getNamedItem("label").getNodeValue());
-                                            supportDataNodes.item(a).getChildNodes();
+    /**
+     * Returns true if the given node is a model group.
+     *
+     * @param aNode the node
+     * @return true if the node is a model group
+     */
+    static boolean isModelGroup(Node aNode) {
+        return aNode.getAttributes() != null && aNode.getAttributes().getNamedItem("type") != null
+                && aNode.getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("model");
+    }
 
-                                            zIonNodes = supportDataNodes.item(a).getChildNodes();
-                                            // Iterate over the y ion nodes
-                                            for (int b = 0; b < zIonNodes.getLength(); b++) {
-                                                // Get the Xdata
-                                                if (zIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Xdata")) {
-                                                    xDataNodes = zIonNodes.item(b).getChildNodes();
-                                                    for (int d = 0; d < xDataNodes.getLength(); d++) {
-                                                        if (xDataNodes.item(d).getNodeName().equalsIgnoreCase("GAML:values")) {
-                                                            iSupportDataMap.put("XVAL_ZIONS" + "_s"
-                                                                    + spectraCounter, xDataNodes.item(d).getTextContent());
-                                                        }
-                                                    }
-                                                }
-                                                // Get the Ydata
-                                                if (zIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Ydata")) {
-                                                    yDataNodes = zIonNodes.item(b).getChildNodes();
-                                                    for (int e = 0; e < yDataNodes.getLength(); e++) {
-                                                        if (yDataNodes.item(e).getNodeName().equalsIgnoreCase("GAML:values")) {
-                                                            iSupportDataMap.put("YVAL_ZIONS" + "_s"
-                                                                    + spectraCounter, yDataNodes.item(e).getTextContent());
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
+    /**
+     * Returns true if the given model group passes the spectrum criteria of
+     * the filter.
+     *
+     * @param aGroupNode the model group
+     * @param aFilter the filter
+     * @return true if the model group passes the spectrum criteria
+     */
+    static boolean acceptSpectrum(Node aGroupNode, XTandemFilter aFilter) {
+        NamedNodeMap attributes = aGroupNode.getAttributes();
+        int charge = 0;
+        if (attributes.getNamedItem("z") != null) {
+            charge = Integer.parseInt(attributes.getNamedItem("z").getNodeValue().trim());
+        }
+        return aFilter.acceptSpectrum(getDoubleAttribute(attributes, "expect"), charge);
+    }
+
+    /**
+     * Returns the domains of the given model group passing the domain
+     * criteria of the filter, or null if the filter has no domain criteria.
+     *
+     * @param aGroupNode the model group
+     * @param aFilter the filter
+     * @return the accepted domain nodes, null if all domains are accepted
+     */
+    static IdentityHashMap<Node, Node> getAcceptedDomains(Node aGroupNode, XTandemFilter aFilter) {
+
+        if (!aFilter.hasDomainCriteria()) {
+            return null;
+        }
+
+        ArrayList<Node> domains = new ArrayList<Node>();
+        ArrayList<Double> expects = new ArrayList<Double>();
+        NodeList groupChildren = aGroupNode.getChildNodes();
+
+        for (int j = 0; j < groupChildren.getLength(); j++) {
+            if (groupChildren.item(j).getNodeName().equalsIgnoreCase("protein")) {
+                String proteinLabel = null;
+                if (groupChildren.item(j).getAttributes().getNamedItem("label") != null) {
+                    proteinLabel = groupChildren.item(j).getAttributes().getNamedItem("label").getNodeValue();
+                }
+                NodeList proteinChildren = groupChildren.item(j).getChildNodes();
+                for (int k = 0; k < proteinChildren.getLength(); k++) {
+                    if (proteinChildren.item(k).getNodeName().equalsIgnoreCase("peptide")) {
+                        NodeList peptideChildren = proteinChildren.item(k).getChildNodes();
+                        for (int m = 0; m < peptideChildren.getLength(); m++) {
+                            if (peptideChildren.item(m).getNodeName().equalsIgnoreCase("domain")) {
+                                NamedNodeMap attributes = peptideChildren.item(m).getAttributes();
+                                double expect = getDoubleAttribute(attributes, "expect");
+                                int missedCleavages = 0;
+                                if (attributes.getNamedItem("missed_cleavages") != null) {
+                                    missedCleavages = Integer.parseInt(attributes.getNamedItem("missed_cleavages").getNodeValue().trim());
+                                }
+                                if (aFilter.acceptDomain(expect, getDoubleAttribute(attributes, "hyperscore"),
+                                        getDoubleAttribute(attributes, "delta"), missedCleavages, proteinLabel)) {
+                                    domains.add(peptideChildren.item(m));
+                                    expects.add(expect);
                                 }
                             }
                         }
                     }
-                    if (idNodes.item(j).getAttributes().getNamedItem("label").getNodeValue().equalsIgnoreCase("fragment ion mass spectrum")) {
+                }
+            }
+        }
 
-                        supportDataNodes = idNodes.item(j).getChildNodes();
-                        // Iterate over all the support data nodes
-                        for (int a = 0; a < supportDataNodes.getLength(); a++) {
-                            if (supportDataNodes.item(a).getNodeName().equalsIgnoreCase("note")) {
-                                String title = supportDataNodes.item(a).getTextContent().trim();
-                                idToSpectrumMap.put(spectraCounter, title);
-                                if (!skipDetails) {
-                                    iSupportDataMap.put("FRAGIONSPECDESC" + "_s" + spectraCounter, title);
-                                    iTitle2SpectrumIDMap.put(title, spectraCounter);
-                                } else {
-                                    break;
-                                }
-                            }
-                            if (!skipDetails) {
-                                if (supportDataNodes.item(a).getNodeName().equalsIgnoreCase("GAML:trace")) {
-                                    // Parse the tandem mass spectrum values
-                                    if (supportDataNodes.item(a).getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("tandem mass spectrum")) {
-                                        iSupportDataMap.put("SPECTRUMLABEL" + "_s" + spectraCounter,
-                                                supportDataNodes.item(a).getAttributes().getNamedItem("label").getNodeValue());
-                                        supportDataNodes.item(a).getChildNodes();
+        // Keep the domains of the best ranks, equal expectation values share a rank
+        double maxExpect = Double.POSITIVE_INFINITY;
+        if (aFilter.getMaxDomainRank() > 0) {
+            TreeSet<Double> distinctExpects = new TreeSet<Double>(expects);
+            int rank = 0;
+            for (Double expect : distinctExpects) {
+                if (++rank == aFilter.getMaxDomainRank()) {
+                    maxExpect = expect;
+                    break;
+                }
+            }
+        }
 
-                                        fragIonNodes = supportDataNodes.item(a).getChildNodes();
-                                        // Iterate over the fragment ion nodes
-                                        for (int b = 0; b < fragIonNodes.getLength(); b++) {
-                                            if (fragIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:attribute")) {
-                                                // Get the a0 value
-                                                if (fragIonNodes.item(b).getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("M+H")) {
-                                                    iSupportDataMap.put("FRAGIONMZ" + "_s"
-                                                            + spectraCounter, fragIonNodes.item(b).getTextContent());
-                                                }
-                                                // Get the a1 value
-                                                if (fragIonNodes.item(b).getAttributes().getNamedItem("type").getNodeValue().equalsIgnoreCase("charge")) {
-                                                    iSupportDataMap.put("FRAGIONCHARGE" + "_s"
-                                                            + spectraCounter, fragIonNodes.item(b).getTextContent());
-                                                }
-                                            }
-                                            // Get the Xdata
-                                            if (fragIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Xdata")) {
-                                                xDataNodes = fragIonNodes.item(b).getChildNodes();
-                                                for (int d = 0; d < xDataNodes.getLength(); d++) {
-                                                    if (xDataNodes.item(d).getNodeName().equalsIgnoreCase("GAML:values")) {
-                                                        iSupportDataMap.put("XVAL_FRAGIONMZ" + "_s"
-                                                                + spectraCounter, xDataNodes.item(d).getTextContent());
-                                                    }
-                                                }
-                                            }
-                                            // Get the Ydata
-                                            if (fragIonNodes.item(b).getNodeName().equalsIgnoreCase("GAML:Ydata")) {
-                                                yDataNodes = fragIonNodes.item(b).getChildNodes();
-                                                for (int e = 0; e < yDataNodes.getLength(); e++) {
-                                                    if (yDataNodes.item(e).getNodeName().equalsIgnoreCase("GAML:values")) {
-                                                        iSupportDataMap.put("YVAL_FRAGIONMZ" + "_s"
-                                                                + spectraCounter, yDataNodes.item(e).getTextContent());
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
+        IdentityHashMap<Node, Node> acceptedDomains = new IdentityHashMap<Node, Node>();
+        for (int d = 0; d < domains.size(); d++) {
+            if (!(expects.get(d) > maxExpect)) {
+                acceptedDomains.put(domains.get(d), domains.get(d));
+            }
+        }
+        return acceptedDomains;
+    }
+
+    /**
+     * Returns true if the given protein node contains an accepted domain.
+     *
+     * @param aProteinNode the protein node
+     * @param aAcceptedDomains the accepted domain nodes
+     * @return true if the protein contains an accepted domain
+     */
+    private boolean hasAcceptedDomain(Node aProteinNode, IdentityHashMap<Node, Node> aAcceptedDomains) {
+        NodeList proteinChildren = aProteinNode.getChildNodes();
+        for (int k = 0; k < proteinChildren.getLength(); k++) {
+            if (proteinChildren.item(k).getNodeName().equalsIgnoreCase("peptide")) {
+                NodeList peptideChildren = proteinChildren.item(k).getChildNodes();
+                for (int m = 0; m < peptideChildren.getLength(); m++) {
+                    if (aAcceptedDomains.containsKey(peptideChildren.item(m))) {
+                        return true;
                     }
                 }
             }
         }
+        return false;
+    }
+
+    /**
+     * Returns the value of the given attribute as double.
+     *
+     * @param aAttributes the attributes
+     * @param aName the name of the attribute
+     * @return the value of the attribute, NaN if the attribute is not given or
+     * not a number
+     */
+    private static double getDoubleAttribute(NamedNodeMap aAttributes, String aName) {
+        if (aAttributes.getNamedItem(aName) == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(aAttributes.getNamedItem(aName).getNodeValue().trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns true if the file was parsed with the byte level tokenizer, false
+     * if it was parsed with the standard parser.
+     *
+     * @return true if the file was parsed with the byte level tokenizer
+     */
+    public boolean isMappedParse() {
+        return iMappedParse;
+    }
+
+    /**
+     * Returns the report of the parsing in salvage mode, telling whether the
+     * file was complete, and otherwise where and why the parsing stopped.
+     *
+     * @return the salvage report, null if the file was not parsed in salvage
+     * mode
+     */
+    public SalvageReport getSalvageReport() {
+        return iSalvageReport;
     }
 
     /**
@@ -1490,7 +2914,7 @@ public class XTandemParser implements Serializable {
     /**
      * Returns the raw spectrum map.
      *
-     * @return iRawSpectrumMap
+     * @return iRawSpectrumMap, null if released by releaseRawMaps
      */
     public HashMap<String, String> getRawSpectrumMap() {
         return iRawSpectrumMap;
@@ -1499,7 +2923,7 @@ public class XTandemParser implements Serializable {
     /**
      * Returns the raw peptide map.
      *
-     * @return iRawPeptideMap
+     * @return iRawPeptideMap, null if released by releaseRawMaps
      */
     public HashMap<String, String> getRawPeptideMap() {
         return iRawPeptideMap;
@@ -1508,16 +2932,18 @@ public class XTandemParser implements Serializable {
     /**
      * Returns the raw protein map.
      *
-     * @return iRawProteinMap
+     * @return iRawProteinMap, null if released by releaseRawMaps
      */
     public HashMap<String, String> getRawProteinMap() {
         return iRawProteinMap;
     }
 
     /**
-     * Returns the protein id list.
+     * Returns the protein id list, holding every protein key once in order of
+     * appearance.
      *
-     * @return iProteinIDList ArrayList with the protein keys
+     * @return iProteinIDList ArrayList with the protein keys, null if released
+     * by releaseRawMaps
      */
     public ArrayList<String> getProteinIDList() {
         return iProteinKeyList;
@@ -1526,12 +2952,32 @@ public class XTandemParser implements Serializable {
     /**
      * Returns the raw modification map.
      *
-     * @return iRawModMap
+     * @return iRawModMap, null if released by releaseRawMaps
      */
     public HashMap<String, String> getRawModMap() {
         return iRawModMap;
     }
 
+    /**
+     * Releases the raw peptide, protein and modification maps and the protein
+     * key list, and optionally the raw spectrum map, once the object model has
+     * been built from them. The getters of the released maps return null
+     * afterwards. The parameter maps, the support data, the spectrum title
+     * maps and the indexes are kept.
+     *
+     * @param aReleaseSpectrumMap if true the raw spectrum map is released too
+     */
+    public void releaseRawMaps(boolean aReleaseSpectrumMap) {
+        iRawModMap = null;
+        iRawProteinMap = null;
+        iRawPeptideMap = null;
+        iProteinKeyList = null;
+        iProteinOccurrences = null;
+        if (aReleaseSpectrumMap) {
+            iRawSpectrumMap = null;
+        }
+    }
+
     /**
      * Returns the performance parameters map.
      *
@@ -1551,7 +2997,8 @@ public class XTandemParser implements Serializable {
     }
 
     /**
-     * Returns the support data map
+     * Returns the support data map. The GAML values read lazily are not in
+     * the map but in the support data ranges.
      *
      * @return iSupportDataMap
      */
@@ -1559,6 +3006,29 @@ public class XTandemParser implements Serializable {
         return iSupportDataMap;
     }
 
+    /**
+     * Returns the ranges of the support data values read lazily from the
+     * file.
+     *
+     * @return the support data ranges, null if all the values are in the
+     * support data map
+     */
+    public SupportDataRanges getSupportDataRanges() {
+        return iSupportDataRanges;
+    }
+
+    /**
+     * Closes the file the support data values are read from, if any. The
+     * values not read yet can no longer be read afterwards.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    public void close() throws IOException {
+        if (iSupportDataRanges != null) {
+            iSupportDataRanges.close();
+        }
+    }
+
     /**
      * Returns the title2spectrum id map.
      *
@@ -1576,4 +3046,173 @@ public class XTandemParser implements Serializable {
     public HashMap<Integer, String> getIdToSpectrumMap() {
         return idToSpectrumMap;
     }
+
+    /**
+     * Returns the occurrences of the proteins in the model groups, indexed by
+     * protein key.
+     *
+     * @return iProteinOccurrences, null if released by releaseRawMaps
+     */
+    public HashMap<String, ProteinOccurrences> getProteinOccurrences() {
+        return iProteinOccurrences;
+    }
+
+    /**
+     * Returns the index from the protein keys to the hits of the proteins.
+     *
+     * @return the protein hit index
+     */
+    public ProteinHitIndex getProteinHitIndex() {
+        return iProteinHitIndex;
+    }
+
+    /**
+     * Moves the fragment ion peaks of all the spectra from the support data
+     * map to the given store, which is sealed afterwards. The peaks are then
+     * read through SupportData from the store only.
+     *
+     * @param aPeakStore an empty peak store
+     * @throws IOException if the peaks could not be written to the store
+     */
+    public void storePeaks(PeakStore aPeakStore) throws IOException {
+        if (iPeakStore != null) {
+            throw new IllegalStateException("The peaks are already in a peak store.");
+        }
+        for (int i = 1; i <= iNumberOfSpectra; i++) {
+            String mzKey = "XVAL_FRAGIONMZ" + "_s" + i;
+            String intensityKey = "YVAL_FRAGIONMZ" + "_s" + i;
+            String mzValues = iSupportDataMap.get(mzKey);
+            String intensities = iSupportDataMap.get(intensityKey);
+            if (iSupportDataRanges != null) {
+                if (mzValues == null) {
+                    mzValues = iSupportDataRanges.getValues("XVAL_FRAGIONMZ", i);
+                }
+                if (intensities == null) {
+                    intensities = iSupportDataRanges.getValues("YVAL_FRAGIONMZ", i);
+                }
+            }
+            if (mzValues != null && intensities != null) {
+                aPeakStore.add(i, mzValues, intensities);
+                iSupportDataMap.remove(mzKey);
+                iSupportDataMap.remove(intensityKey);
+                if (iSupportDataRanges != null) {
+                    iSupportDataRanges.remove("XVAL_FRAGIONMZ", i);
+                    iSupportDataRanges.remove("YVAL_FRAGIONMZ", i);
+                }
+            }
+        }
+        aPeakStore.seal();
+        iPeakStore = aPeakStore;
+    }
+
+    /**
+     * Returns the store holding the fragment ion peaks.
+     *
+     * @return the peak store, null if the peaks are in the support data map
+     */
+    public PeakStore getPeakStore() {
+        return iPeakStore;
+    }
+
+    /**
+     * Returns the index from the peptide keys to the hits of the peptides.
+     *
+     * @return the peptide index
+     */
+    public PeptideIndex getPeptideIndex() {
+        return iPeptideIndex;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        CompactOutput output = new CompactOutput(out);
+        writeCompact(output);
+        output.flush();
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        readCompact(new CompactInput(in));
+    }
+
+    /**
+     * Writes the parsed content in compact form. The support data values read
+     * lazily are read from the file and written with the support data map.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the content could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeVarInt(CompactOutput.VERSION);
+        aOutput.writeVarInt(iNumberOfSpectra);
+        aOutput.writeStringMap(iInputParamMap);
+        aOutput.writeStringMap(iPerformParamMap);
+        aOutput.writeStringMap(iRawModMap);
+        aOutput.writeStringMap(iRawSpectrumMap);
+        aOutput.writeStringMap(iRawProteinMap);
+        aOutput.writeStringMap(iRawPeptideMap);
+        if (iSupportDataRanges != null) {
+            HashMap<String, String> supportDataMap = new HashMap<String, String>(iSupportDataMap);
+            iSupportDataRanges.putValues(supportDataMap);
+            aOutput.writeStringMap(supportDataMap);
+        } else {
+            aOutput.writeStringMap(iSupportDataMap);
+        }
+        aOutput.writeStrings(iProteinKeyList);
+        aOutput.writeStringIntegerMap(iTitle2SpectrumIDMap);
+        aOutput.writeIntegerStringMap(idToSpectrumMap);
+        aOutput.writeBoolean(iProteinHitIndex != null);
+        if (iProteinHitIndex != null) {
+            iProteinHitIndex.writeCompact(aOutput);
+        }
+        aOutput.writeBoolean(iPeptideIndex != null);
+        if (iPeptideIndex != null) {
+            iPeptideIndex.writeCompact(aOutput);
+        }
+        aOutput.writeBoolean(iPeakStore != null);
+        if (iPeakStore != null) {
+            iPeakStore.writeCompact(aOutput);
+        }
+        aOutput.writeBoolean(iProteinOccurrences != null && iProteinKeyList != null);
+        if (iProteinOccurrences != null && iProteinKeyList != null) {
+            for (String proteinKey : iProteinKeyList) {
+                iProteinOccurrences.get(proteinKey).writeCompact(aOutput);
+            }
+        }
+    }
+
+    /**
+     * Reads the parsed content written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @throws IOException if the content could not be read
+     */
+    public void readCompact(CompactInput aInput) throws IOException {
+        int version = aInput.readVarInt();
+        if (version != CompactOutput.VERSION) {
+            throw new InvalidClassException(XTandemParser.class.getName(), "Unsupported compact form version " + version + ".");
+        }
+        iNumberOfSpectra = aInput.readVarInt();
+        iInputParamMap = aInput.readStringMap();
+        iPerformParamMap = aInput.readStringMap();
+        iRawModMap = aInput.readStringMap();
+        iRawSpectrumMap = aInput.readStringMap();
+        iRawProteinMap = aInput.readStringMap();
+        iRawPeptideMap = aInput.readStringMap();
+        iSupportDataMap = aInput.readStringMap();
+        iProteinKeyList = aInput.readStrings();
+        iTitle2SpectrumIDMap = aInput.readStringIntegerMap();
+        idToSpectrumMap = aInput.readIntegerStringMap();
+        iProteinHitIndex = aInput.readBoolean() ? ProteinHitIndex.readCompact(aInput) : null;
+        iPeptideIndex = aInput.readBoolean() ? PeptideIndex.readCompact(aInput) : null;
+        iPeakStore = aInput.readBoolean() ? PeakStore.readCompact(aInput) : null;
+        if (aInput.readBoolean()) {
+            iProteinOccurrences = new HashMap<String, ProteinOccurrences>();
+            for (String proteinKey : iProteinKeyList) {
+                iProteinOccurrences.put(proteinKey, ProteinOccurrences.readCompact(aInput));
+            }
+        } else {
+            iProteinOccurrences = null;
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package de.proteinms.xtandemparser.parser;
+
+import java.io.Serializable;
+
+/**
+ * This class holds the options of the parsing of an X!Tandem file, given to
+ * the XTandemParser and XTandemFile constructors, so that the options are
+ * named instead of passed as a row of booleans. The options are off by
+ * default. The options of the memory mapped parsing only apply to files, a
+ * stream is always parsed with the standard parser.
+ */
+public class XTandemParserOptions implements Serializable {
+
+    /**
+     * If true only the spectrum identifiers, the peptides sequences,
+     * modifications and matches e-values are loaded.
+     */
+    private boolean iSkipDetails = false;
+    /**
+     * The filter applied while parsing, null to keep everything.
+     */
+    private XTandemFilter iFilter = null;
+    /**
+     * If true the files are memory mapped and read with the byte level
+     * tokenizer.
+     */
+    private boolean iMapped = false;
+    /**
+     * If true the GAML values of a mapped file are read when first needed.
+     */
+    private boolean iLazySupportData = false;
+    /**
+     * If true the complete groups of a truncated file are kept.
+     */
+    private boolean iSalvage = false;
+    /**
+     * If true the XTandemFile builds its object model at once and releases
+     * the raw maps of the parser.
+     */
+    private boolean iCompact = false;
+
+    /**
+     * Constructor for the default options: all the details are loaded, nothing
+     * is filtered, and the other options are off.
+     */
+    public XTandemParserOptions() {
+    }
+
+    /**
+     * Constructor for the options with the given detail level and filter, the
+     * other options being off.
+     *
+     * @param aSkipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied while parsing, null to keep everything
+     */
+    public XTandemParserOptions(boolean aSkipDetails, XTandemFilter aFilter) {
+        iSkipDetails = aSkipDetails;
+        iFilter = aFilter;
+    }
+
+    /**
+     * Returns true if only the spectrum identifiers, the peptides sequences,
+     * modifications and matches e-values are loaded, plus the input and
+     * performance parameters.
+     *
+     * @return true if the details are skipped
+     */
+    public boolean isSkipDetails() {
+        return iSkipDetails;
+    }
+
+    /**
+     * Sets whether only the spectrum identifiers, the peptides sequences,
+     * modifications and matches e-values are loaded, plus the input and
+     * performance parameters.
+     *
+     * @param aSkipDetails true to skip the details
+     */
+    public void setSkipDetails(boolean aSkipDetails) {
+        iSkipDetails = aSkipDetails;
+    }
+
+    /**
+     * Returns the filter applied while parsing.
+     *
+     * @return the filter, null to keep everything
+     */
+    public XTandemFilter getFilter() {
+        return iFilter;
+    }
+
+    /**
+     * Sets the filter applied while parsing, see XTandemFilter.
+     *
+     * @param aFilter the filter, null to keep everything
+     */
+    public void setFilter(XTandemFilter aFilter) {
+        iFilter = aFilter;
+    }
+
+    /**
+     * Returns true if the files are memory mapped and read with the byte level
+     * tokenizer.
+     *
+     * @return true if the files are mapped
+     */
+    public boolean isMapped() {
+        return iMapped;
+    }
+
+    /**
+     * Sets whether the files are memory mapped and their model groups read by
+     * a byte level tokenizer, without building the DOM. Files the tokenizer
+     * does not support, e.g. using CDATA sections or entities defined in the
+     * document type, are parsed with the standard parser. So are the files
+     * larger than 2 GB, which cannot be mapped in a single buffer: they are
+     * then read with the memory use and speed of the standard parser.
+     *
+     * @param aMapped true to map the files
+     */
+    public void setMapped(boolean aMapped) {
+        iMapped = aMapped;
+    }
+
+    /**
+     * Returns true if the GAML values of a mapped file are read when first
+     * needed.
+     *
+     * @return true if the support data is read lazily
+     */
+    public boolean isLazySupportData() {
+        return iLazySupportData;
+    }
+
+    /**
+     * Sets whether only the positions of the GAML values of a mapped file,
+     * i.e. the spectrum peaks and the score histograms, are recorded while
+     * parsing, the values being read from the file when first needed. The
+     * file then stays open until the parser is closed. Ignored if the file is
+     * not mapped.
+     *
+     * @param aLazySupportData true to read the support data lazily
+     */
+    public void setLazySupportData(boolean aLazySupportData) {
+        iLazySupportData = aLazySupportData;
+    }
+
+    /**
+     * Returns true if the complete groups of a truncated file are kept.
+     *
+     * @return true in salvage mode
+     */
+    public boolean isSalvage() {
+        return iSalvage;
+    }
+
+    /**
+     * Sets the salvage mode: a file truncated or not well-formed, e.g. written
+     * by a search interrupted by a node failure or a full disk, is parsed up
+     * to the error, the complete top level groups read before are kept, and
+     * the parsing is reported by getSalvageReport(). A file parsed in salvage
+     * mode is not mapped.
+     *
+     * @param aSalvage true for the salvage mode
+     */
+    public void setSalvage(boolean aSalvage) {
+        iSalvage = aSalvage;
+    }
+
+    /**
+     * Returns true if the XTandemFile builds its object model at once and
+     * releases the raw maps of the parser.
+     *
+     * @return true in compact mode
+     */
+    public boolean isCompact() {
+        return iCompact;
+    }
+
+    /**
+     * Sets whether the XTandemFile builds its object model at once and
+     * releases the raw maps of the parser, see XTandemFile.trim(). Not used by
+     * the parser itself.
+     *
+     * @param aCompact true for the compact mode
+     */
+    public void setCompact(boolean aCompact) {
+        iCompact = aCompact;
+    }
+}
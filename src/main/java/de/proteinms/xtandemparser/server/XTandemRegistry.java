@@ -0,0 +1,627 @@
+package de.proteinms.xtandemparser.server;
+
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.FragmentLadderCache;
+import de.proteinms.xtandemparser.xtandem.HitList;
+import de.proteinms.xtandemparser.xtandem.PeakStore;
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/**
+ * This class keeps parsed X!Tandem files in memory under a name, within a
+ * memory budget. When a new file does not fit in the budget, the least
+ * recently used files are evicted. The files are fully initialized before
+ * they are registered and never modified afterwards, and the registered files
+ * are held in an immutable map replaced on every change: the lookups are
+ * therefore done without locks, only loading and unloading files is
+ * synchronized.
+ */
+public class XTandemRegistry {
+
+    /**
+     * One megabyte.
+     */
+    private static final long MEGABYTE = 1024 * 1024;
+    /**
+     * The default estimate of the heap retained per byte of X!Tandem file
+     * once the file is parsed and trimmed.
+     */
+    public static final double DEFAULT_HEAP_PER_FILE_BYTE = 2;
+    /**
+     * The registered files by name. The map is never modified, it is replaced
+     * by a new map when a file is loaded or unloaded.
+     */
+    private volatile Map<String, Entry> iEntries = Collections.emptyMap();
+    /**
+     * The names of the files being loaded.
+     */
+    private final HashSet<String> iLoading = new HashSet<String>();
+    /**
+     * The memory budget in bytes.
+     */
+    private final long iMemoryBudget;
+    /**
+     * The estimated heap retained per byte of X!Tandem file.
+     */
+    private volatile double iHeapPerFileByte = DEFAULT_HEAP_PER_FILE_BYTE;
+    /**
+     * True if the fragment ion peaks of the files loaded are moved out of the
+     * heap.
+     */
+    private volatile boolean iOffHeapPeaks = false;
+    /**
+     * The directory of the files the peaks are spilled to, null to keep the
+     * peaks in direct memory.
+     */
+    private volatile File iSpillDirectory = null;
+    /**
+     * True if the peaks moved out of the heap are stored in reduced
+     * precision.
+     */
+    private volatile boolean iReducedPrecisionPeaks = false;
+    /**
+     * True if the files are memory mapped and read by the byte level
+     * tokenizer of the parser.
+     */
+    private volatile boolean iMappedParsing = false;
+    /**
+     * True if the support data of the memory mapped files is read from the
+     * files when first needed.
+     */
+    private volatile boolean iLazySupportData = false;
+    /**
+     * The cache of the theoretical fragment ladders shared by the files
+     * loaded, null if the ladders are not cached.
+     */
+    private volatile FragmentLadderCache iLadderCache = new FragmentLadderCache();
+
+    /**
+     * A file kept in the registry.
+     */
+    public static class Entry {
+
+        /**
+         * The name of the file in the registry.
+         */
+        private final String iName;
+        /**
+         * The X!Tandem file on disk.
+         */
+        private final File iFile;
+        /**
+         * The parsed file.
+         */
+        private final XTandemFile iXTandemFile;
+        /**
+         * The estimated heap used by the parsed file.
+         */
+        private final long iSize;
+        /**
+         * This map has as key the spectrum title and as value the spectrum
+         * number.
+         */
+        private final HashMap<String, Integer> iTitleMap;
+        /**
+         * The time of the last lookup, in nanoseconds.
+         */
+        private volatile long iLastAccess = System.nanoTime();
+
+        /**
+         * Constructor for a registry entry.
+         *
+         * @param aName the name of the file in the registry
+         * @param aFile the X!Tandem file on disk
+         * @param aXTandemFile the parsed file
+         * @param aSize the estimated heap used by the parsed file
+         */
+        private Entry(String aName, File aFile, XTandemFile aXTandemFile, long aSize) {
+            iName = aName;
+            iFile = aFile;
+            iXTandemFile = aXTandemFile;
+            iSize = aSize;
+
+            // build all the lazily created structures now, so that the file
+            // is only read afterwards, and release the raw maps
+            aXTandemFile.getSpectraList();
+            aXTandemFile.trim();
+
+            int numberOfSpectra = aXTandemFile.getXTandemParser().getNumberOfSpectra();
+            iTitleMap = new HashMap<String, Integer>(2 * numberOfSpectra);
+            for (int i = 1; i <= numberOfSpectra; i++) {
+                String title = aXTandemFile.getSupportData(i).getFragIonSpectrumDescription();
+                if (title != null && !iTitleMap.containsKey(title.trim())) {
+                    iTitleMap.put(title.trim(), i);
+                }
+            }
+        }
+
+        /**
+         * Releases the spill file of the peaks, if any, and closes the file
+         * the support data is read from, if read lazily, once the entry is
+         * removed from the registry. The lookups still running on the entry
+         * are not affected, except for the support data values not read yet.
+         */
+        private void close() {
+            PeakStore peakStore = iXTandemFile.getXTandemParser().getPeakStore();
+            if (peakStore != null) {
+                try {
+                    peakStore.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                iXTandemFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Returns the name of the file in the registry.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return iName;
+        }
+
+        /**
+         * Returns the X!Tandem file on disk.
+         *
+         * @return the X!Tandem file
+         */
+        public File getFile() {
+            return iFile;
+        }
+
+        /**
+         * Returns the parsed file.
+         *
+         * @return the parsed file
+         */
+        public XTandemFile getXTandemFile() {
+            return iXTandemFile;
+        }
+
+        /**
+         * Returns the estimated heap used by the parsed file.
+         *
+         * @return the estimated size in bytes
+         */
+        public long getSize() {
+            return iSize;
+        }
+
+        /**
+         * Returns the number of the spectrum with the given title.
+         *
+         * @param aTitle the spectrum title
+         * @return the spectrum number, -1 if no spectrum has this title
+         */
+        public int getSpectrumNumber(String aTitle) {
+            Integer spectrumNumber = iTitleMap.get(aTitle.trim());
+            return spectrumNumber == null ? -1 : spectrumNumber;
+        }
+
+        /**
+         * Returns the domain with the given key.
+         *
+         * @param aDomainKey the domain key, e.g. s3_p2_d1
+         * @return the domain, null if the file has no such domain
+         */
+        public Domain getDomain(String aDomainKey) {
+            String[] parts = aDomainKey.split("_");
+            if (parts.length != 3 || !parts[0].startsWith("s") || !parts[1].startsWith("p") || !parts[2].startsWith("d")) {
+                throw new IllegalArgumentException("Invalid domain key: " + aDomainKey);
+            }
+            try {
+                return getDomain(Integer.parseInt(parts[0].substring(1)), Integer.parseInt(parts[1].substring(1)),
+                        Integer.parseInt(parts[2].substring(1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid domain key: " + aDomainKey);
+            }
+        }
+
+        /**
+         * Returns the domains of the given hits.
+         *
+         * @param aHits the hits
+         * @return the domains of the hits
+         */
+        public ArrayList<Domain> getDomains(HitList aHits) {
+            ArrayList<Domain> domains = new ArrayList<Domain>(aHits.size());
+            for (int i = 0; i < aHits.size(); i++) {
+                Domain domain = getDomain(aHits.getSpectrumNumber(i), aHits.getPeptideIndex(i), aHits.getDomainIndex(i));
+                if (domain != null) {
+                    domains.add(domain);
+                }
+            }
+            return domains;
+        }
+
+        /**
+         * Returns the domains of the given spectrum.
+         *
+         * @param aSpectrumNumber the spectrum number
+         * @return the domains of the spectrum
+         */
+        public ArrayList<Domain> getDomains(int aSpectrumNumber) {
+            ArrayList<Domain> domains = new ArrayList<Domain>();
+            if (aSpectrumNumber >= 1 && aSpectrumNumber <= iXTandemFile.getXTandemParser().getNumberOfSpectra()) {
+                for (Peptide peptide : iXTandemFile.getPeptideMap().getAllPeptides(aSpectrumNumber)) {
+                    domains.addAll(peptide.getDomains());
+                }
+            }
+            return domains;
+        }
+
+        /**
+         * Returns the domain of the given hit.
+         *
+         * @param aSpectrumNumber the spectrum number
+         * @param aPeptideIndex the index of the peptide in the spectrum
+         * @param aDomainIndex the index of the domain in the peptide
+         * @return the domain, null if the file has no such domain
+         */
+        private Domain getDomain(int aSpectrumNumber, int aPeptideIndex, int aDomainIndex) {
+            if (aSpectrumNumber < 1 || aSpectrumNumber > iXTandemFile.getXTandemParser().getNumberOfSpectra()) {
+                return null;
+            }
+            Peptide peptide = iXTandemFile.getPeptideMap().getPeptideByIndex(aSpectrumNumber, aPeptideIndex);
+            if (peptide == null || aDomainIndex < 1 || aDomainIndex > peptide.getDomains().size()) {
+                return null;
+            }
+            return peptide.getDomains().get(aDomainIndex - 1);
+        }
+    }
+
+    /**
+     * Constructor for a registry using half of the maximum heap as memory
+     * budget.
+     */
+    public XTandemRegistry() {
+        this(Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Constructor for a registry.
+     *
+     * @param aMemoryBudget the memory budget in bytes shared by all the files
+     */
+    public XTandemRegistry(long aMemoryBudget) {
+        if (aMemoryBudget < MEGABYTE) {
+            throw new IllegalArgumentException("The memory budget must be at least 1 MB.");
+        }
+        iMemoryBudget = aMemoryBudget;
+    }
+
+    /**
+     * Returns the file registered under the given name. This method does not
+     * lock and can be called from any thread.
+     *
+     * @param aName the name of the file
+     * @return the file, null if no file is registered under this name
+     */
+    public Entry get(String aName) {
+        Entry entry = iEntries.get(aName);
+        if (entry != null) {
+            entry.iLastAccess = System.nanoTime();
+        }
+        return entry;
+    }
+
+    /**
+     * Parses the given file and registers it under the given name, replacing
+     * the file registered under this name if any. The least recently used
+     * files are evicted until the new file fits in the memory budget, a file
+     * larger than the whole budget is kept alone. The file is parsed without
+     * lock, the lookups are not blocked while it is loaded.
+     *
+     * @param aName the name of the file
+     * @param aFile the X!Tandem file
+     * @return the registered file
+     * @throws IOException if the file could not be read
+     * @throws SAXException if the file could not be parsed
+     * @throws ParserConfigurationException if the XML parser could not be
+     * configured
+     * @throws IllegalStateException if a file is already being loaded under
+     * this name
+     */
+    public Entry load(String aName, File aFile) throws IOException, SAXException, ParserConfigurationException {
+
+        synchronized (iLoading) {
+            if (!iLoading.add(aName)) {
+                throw new IllegalStateException("The file " + aName + " is already being loaded.");
+            }
+        }
+
+        try {
+            XTandemFile xTandemFile;
+            if (iMappedParsing) {
+                XTandemParserOptions options = new XTandemParserOptions();
+                options.setMapped(true);
+                options.setLazySupportData(iLazySupportData);
+                xTandemFile = new XTandemFile(aFile, options);
+            } else {
+                InputStream inputStream = new BufferedInputStream(new FileInputStream(aFile));
+                try {
+                    xTandemFile = new XTandemFile(inputStream, aFile.getPath());
+                } finally {
+                    inputStream.close();
+                }
+            }
+            PeakStore peakStore = null;
+            Entry entry = null;
+            try {
+                if (iOffHeapPeaks) {
+                    peakStore = iSpillDirectory == null ? new PeakStore(iReducedPrecisionPeaks)
+                            : new PeakStore(iSpillDirectory, iReducedPrecisionPeaks);
+                    xTandemFile.storePeaks(peakStore);
+                }
+                xTandemFile.setFragmentLadderCache(iLadderCache);
+                entry = new Entry(aName, aFile, xTandemFile, (long) (aFile.length() * iHeapPerFileByte));
+            } finally {
+                if (entry == null) {
+                    // release the spill file and the lazily read file
+                    if (peakStore != null) {
+                        try {
+                            peakStore.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    try {
+                        xTandemFile.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            synchronized (this) {
+                HashMap<String, Entry> entries = new HashMap<String, Entry>(iEntries);
+                Entry replaced = entries.remove(aName);
+                if (replaced != null) {
+                    replaced.close();
+                }
+                long used = entry.getSize();
+                for (Entry other : entries.values()) {
+                    used += other.getSize();
+                }
+                while (used > iMemoryBudget && !entries.isEmpty()) {
+                    Entry leastRecentlyUsed = null;
+                    for (Entry other : entries.values()) {
+                        if (leastRecentlyUsed == null || other.iLastAccess - leastRecentlyUsed.iLastAccess < 0) {
+                            leastRecentlyUsed = other;
+                        }
+                    }
+                    entries.remove(leastRecentlyUsed.getName());
+                    leastRecentlyUsed.close();
+                    used -= leastRecentlyUsed.getSize();
+                }
+                entries.put(aName, entry);
+                iEntries = Collections.unmodifiableMap(entries);
+            }
+            return entry;
+
+        } finally {
+            synchronized (iLoading) {
+                iLoading.remove(aName);
+            }
+        }
+    }
+
+    /**
+     * Removes the file registered under the given name.
+     *
+     * @param aName the name of the file
+     * @return true if a file was registered under this name
+     */
+    public synchronized boolean unload(String aName) {
+        if (!iEntries.containsKey(aName)) {
+            return false;
+        }
+        HashMap<String, Entry> entries = new HashMap<String, Entry>(iEntries);
+        entries.remove(aName).close();
+        iEntries = Collections.unmodifiableMap(entries);
+        return true;
+    }
+
+    /**
+     * Returns the registered files.
+     *
+     * @return the registered files
+     */
+    public Collection<Entry> getEntries() {
+        return iEntries.values();
+    }
+
+    /**
+     * Returns the estimated heap used by the registered files.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getUsedMemory() {
+        long used = 0;
+        for (Entry entry : iEntries.values()) {
+            used += entry.getSize();
+        }
+        return used;
+    }
+
+    /**
+     * Returns the memory budget.
+     *
+     * @return the memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        return iMemoryBudget;
+    }
+
+    /**
+     * Returns the estimated heap retained per byte of X!Tandem file.
+     *
+     * @return the estimated heap per byte of file
+     */
+    public double getHeapPerFileByte() {
+        return iHeapPerFileByte;
+    }
+
+    /**
+     * Sets the estimated heap retained per byte of X!Tandem file, used to
+     * estimate the size of the files loaded afterwards.
+     *
+     * @param aHeapPerFileByte the estimated heap per byte of file
+     */
+    public void setHeapPerFileByte(double aHeapPerFileByte) {
+        iHeapPerFileByte = aHeapPerFileByte;
+    }
+
+    /**
+     * Returns true if the fragment ion peaks of the files loaded are moved out
+     * of the heap.
+     *
+     * @return true if the peaks are moved out of the heap
+     */
+    public boolean isOffHeapPeaks() {
+        return iOffHeapPeaks;
+    }
+
+    /**
+     * Returns the directory of the files the peaks are spilled to.
+     *
+     * @return the spill directory, null if the peaks are kept in direct memory
+     */
+    public File getSpillDirectory() {
+        return iSpillDirectory;
+    }
+
+    /**
+     * Sets whether the fragment ion peaks of the files loaded afterwards are
+     * moved out of the heap, to a PeakStore in direct memory or in a file
+     * mapped in memory. The peaks are not counted in the estimated heap of
+     * the files, the heap per byte of file can be lowered accordingly.
+     *
+     * @param aOffHeapPeaks true to move the peaks out of the heap
+     * @param aSpillDirectory the directory of the files the peaks are spilled
+     * to, null to keep the peaks in direct memory
+     */
+    public void setOffHeapPeaks(boolean aOffHeapPeaks, File aSpillDirectory) {
+        iOffHeapPeaks = aOffHeapPeaks;
+        iSpillDirectory = aSpillDirectory;
+    }
+
+    /**
+     * Returns the cache of the theoretical fragment ladders shared by the
+     * files loaded.
+     *
+     * @return the ladder cache, null if the ladders are not cached
+     */
+    public FragmentLadderCache getFragmentLadderCache() {
+        return iLadderCache;
+    }
+
+    /**
+     * Sets the cache of the theoretical fragment ladders shared by the files
+     * loaded afterwards, see XTandemFile.setFragmentLadderCache().
+     *
+     * @param aLadderCache the ladder cache, null to compute the ladders for
+     * every request
+     */
+    public void setFragmentLadderCache(FragmentLadderCache aLadderCache) {
+        iLadderCache = aLadderCache;
+    }
+
+    /**
+     * Returns true if the peaks moved out of the heap are stored in reduced
+     * precision.
+     *
+     * @return true if the peaks are stored in reduced precision
+     */
+    public boolean isReducedPrecisionPeaks() {
+        return iReducedPrecisionPeaks;
+    }
+
+    /**
+     * Sets whether the peaks moved out of the heap are stored in reduced
+     * precision, see PeakStore. Only used when the peaks are moved out of the
+     * heap, see setOffHeapPeaks().
+     *
+     * @param aReducedPrecisionPeaks true to store the peaks in reduced
+     * precision
+     */
+    public void setReducedPrecisionPeaks(boolean aReducedPrecisionPeaks) {
+        iReducedPrecisionPeaks = aReducedPrecisionPeaks;
+    }
+
+    /**
+     * Returns true if the files are memory mapped and read by the byte level
+     * tokenizer of the parser.
+     *
+     * @return true if the files are parsed with the byte level tokenizer
+     */
+    public boolean isMappedParsing() {
+        return iMappedParsing;
+    }
+
+    /**
+     * Sets whether the files loaded afterwards are memory mapped and read by
+     * the byte level tokenizer of the parser, see XTandemParser. Files not
+     * supported by the tokenizer, or larger than 2 GB, are parsed with the
+     * standard parser.
+     *
+     * @param aMappedParsing true to parse the files with the byte level
+     * tokenizer
+     */
+    public void setMappedParsing(boolean aMappedParsing) {
+        iMappedParsing = aMappedParsing;
+    }
+
+    /**
+     * Returns true if the support data of the memory mapped files is read
+     * from the files when first needed.
+     *
+     * @return true if the support data is read lazily
+     */
+    public boolean isLazySupportData() {
+        return iLazySupportData;
+    }
+
+    /**
+     * Sets whether the support data of the files loaded afterwards is read
+     * from the files when first needed rather than kept in the heap, see
+     * XTandemParser. Only used when the files are memory mapped, see
+     * setMappedParsing(). The files then stay open until their entry is
+     * removed from the registry.
+     *
+     * @param aLazySupportData true to read the support data lazily
+     */
+    public void setLazySupportData(boolean aLazySupportData) {
+        iLazySupportData = aLazySupportData;
+    }
+
+    /**
+     * Returns the names of the registered files.
+     *
+     * @return the names of the registered files
+     */
+    public List<String> getNames() {
+        return new ArrayList<String>(iEntries.keySet());
+    }
+}
@@ -0,0 +1,736 @@
+package de.proteinms.xtandemparser.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.proteinms.xtandemparser.cli.XTandemExporter;
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.FragmentIon;
+import de.proteinms.xtandemparser.xtandem.FragmentLadderCache;
+import de.proteinms.xtandemparser.xtandem.PeptideIndex;
+import de.proteinms.xtandemparser.xtandem.Spectrum;
+import de.proteinms.xtandemparser.xtandem.SupportData;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP service answering queries on X!Tandem files kept in memory by an
+ * XTandemRegistry, so that tools querying the same files do not parse them
+ * again. The service only listens on the loopback interface, and only answers
+ * the requests whose Host header names the loopback interface and whose
+ * Origin header, if any, is a page of the loopback interface, so that web
+ * pages cannot query it through their browser. All the answers are tab
+ * delimited text, the PSMs use the table format of XTandemExporter. The
+ * requests are:
+ * <pre>
+ * /files                                           the registered files
+ * POST /load?name=NAME&amp;path=PATH                   parses and registers a file
+ * POST /unload?name=NAME                           removes a file
+ * /psms?file=NAME&amp;spectrum=NUMBER                  the PSMs of a spectrum
+ * /psms?file=NAME&amp;title=TITLE                      the PSMs of a spectrum
+ * /psms?file=NAME&amp;protein=LABEL                    the PSMs of a protein
+ * /psms?file=NAME&amp;peptide=SEQUENCE_OR_KEY          the PSMs of a peptide
+ * /support?file=NAME&amp;spectrum=NUMBER               the peaks of a spectrum
+ * /fragments?file=NAME&amp;domain=KEY[&amp;accuracy=DA]    the matched fragment ions
+ * /cache                                           the fragment ladder cache statistics
+ * </pre>
+ * The parameters of the POST requests can also be sent form encoded in the
+ * request body. Files can only be loaded through the service from the load
+ * directory given by setLoadDirectory(), the paths are relative to it, and
+ * loading is disabled if no load directory is given. The errors of the
+ * service are logged, the clients only get a generic message.
+ */
+public class XTandemServer {
+
+    /**
+     * The default port.
+     */
+    public static final int DEFAULT_PORT = 8765;
+    /**
+     * The default fragment ion accuracy in Dalton.
+     */
+    public static final double DEFAULT_FRAGMENT_ION_ACCURACY = 0.5;
+    /**
+     * The usage of the service.
+     */
+    private static final String USAGE = "Usage: java -cp xtandem-parser.jar de.proteinms.xtandemparser.server.XTandemServer [options] [[name=]file]...\n"
+            + "\n"
+            + "Options:\n"
+            + "  -p, --port <port>            the port on the loopback interface, default " + DEFAULT_PORT + "\n"
+            + "  -t, --threads <number>       the number of requests answered in parallel,\n"
+            + "                               default the number of processors\n"
+            + "  -m, --memory <megabytes>     the memory budget of the loaded files,\n"
+            + "                               default half of the maximum heap\n"
+            + "  --direct-peaks               keep the fragment ion peaks in direct memory\n"
+            + "  --spill-peaks <directory>    keep the fragment ion peaks in files mapped in\n"
+            + "                               memory, in the given directory\n"
+            + "  --compact-peaks              keep the fragment ion peaks out of the heap in\n"
+            + "                               reduced precision, in direct memory if no\n"
+            + "                               spill directory is given\n"
+            + "  --mapped                     memory map the files and read them with the\n"
+            + "                               byte level tokenizer, faster on large files\n"
+            + "                               up to 2 GB, larger files being read with the\n"
+            + "                               standard parser\n"
+            + "  --lazy-support-data          with --mapped, read the spectra and score\n"
+            + "                               histograms from the files when first needed\n"
+            + "  --ladder-cache <number>      the number of theoretical fragment ladders\n"
+            + "                               cached, 0 to disable the cache, default "
+            + FragmentLadderCache.DEFAULT_MAX_SIZE + "\n"
+            + "  --load-directory <directory> allow POST /load requests for the files in the\n"
+            + "                               given directory, disabled by default\n"
+            + "\n"
+            + "The given files are loaded at startup, under their file name if no name is given.";
+    /**
+     * The host names of the loopback interface accepted in the Host and Origin
+     * headers.
+     */
+    private static final String[] LOOPBACK_HOSTS = {"127.0.0.1", "localhost", "[::1]"};
+    /**
+     * The registry of the loaded files.
+     */
+    private final XTandemRegistry iRegistry;
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer iHttpServer;
+    /**
+     * The threads answering the requests.
+     */
+    private final ExecutorService iExecutor;
+    /**
+     * The canonical directory the files loaded by the clients must be in, null
+     * if the clients cannot load files.
+     */
+    private File iLoadDirectory = null;
+
+    /**
+     * Constructor for a service on the given port of the loopback interface.
+     * The service is started with start().
+     *
+     * @param aRegistry the registry of the loaded files
+     * @param aPort the port, 0 for any free port
+     * @param aNumberOfThreads the number of requests answered in parallel
+     * @throws IOException if the port could not be bound
+     */
+    public XTandemServer(XTandemRegistry aRegistry, int aPort, int aNumberOfThreads) throws IOException {
+        iRegistry = aRegistry;
+        iHttpServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), aPort), 0);
+        iExecutor = Executors.newFixedThreadPool(aNumberOfThreads);
+        iHttpServer.setExecutor(iExecutor);
+        iHttpServer.createContext("/", new QueryHandler());
+    }
+
+    /**
+     * Starts the service.
+     */
+    public void start() {
+        iHttpServer.start();
+    }
+
+    /**
+     * Stops the service, waiting at most the given number of seconds for the
+     * requests being answered.
+     *
+     * @param aDelay the maximal delay in seconds
+     */
+    public void stop(int aDelay) {
+        iHttpServer.stop(aDelay);
+        iExecutor.shutdown();
+    }
+
+    /**
+     * Returns the port the service listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return iHttpServer.getAddress().getPort();
+    }
+
+    /**
+     * Returns the registry of the loaded files.
+     *
+     * @return the registry
+     */
+    public XTandemRegistry getRegistry() {
+        return iRegistry;
+    }
+
+    /**
+     * Returns the directory the files loaded by the clients must be in.
+     *
+     * @return the canonical load directory, null if the clients cannot load
+     * files
+     */
+    public File getLoadDirectory() {
+        return iLoadDirectory;
+    }
+
+    /**
+     * Sets the directory the files loaded by the clients must be in, the paths
+     * of the load requests being relative to it.
+     *
+     * @param aLoadDirectory the load directory, null to forbid the clients to
+     * load files
+     * @throws IOException if the directory does not exist or its canonical
+     * path could not be resolved
+     */
+    public void setLoadDirectory(File aLoadDirectory) throws IOException {
+        if (aLoadDirectory == null) {
+            iLoadDirectory = null;
+        } else if (!aLoadDirectory.isDirectory()) {
+            throw new IOException("Not a directory: " + aLoadDirectory + ".");
+        } else {
+            iLoadDirectory = aLoadDirectory.getCanonicalFile();
+        }
+    }
+
+    /**
+     * Starts the service.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+
+        int port = DEFAULT_PORT;
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+        long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+        boolean offHeapPeaks = false;
+        File spillDirectory = null;
+        boolean reducedPrecisionPeaks = false;
+        boolean mappedParsing = false;
+        boolean lazySupportData = false;
+        int ladderCacheSize = FragmentLadderCache.DEFAULT_MAX_SIZE;
+        FragmentLadderCache ladderCache = null;
+        File loadDirectory = null;
+        ArrayList<String> files = new ArrayList<String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-h") || arg.equals("--help")) {
+                    System.out.println(USAGE);
+                    return;
+                } else if (arg.equals("-p") || arg.equals("--port")) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-t") || arg.equals("--threads")) {
+                    numberOfThreads = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-m") || arg.equals("--memory")) {
+                    memoryBudget = Long.parseLong(args[++i]) * 1024 * 1024;
+                } else if (arg.equals("--direct-peaks")) {
+                    offHeapPeaks = true;
+                } else if (arg.equals("--compact-peaks")) {
+                    offHeapPeaks = true;
+                    reducedPrecisionPeaks = true;
+                } else if (arg.equals("--spill-peaks")) {
+                    offHeapPeaks = true;
+                    spillDirectory = new File(args[++i]);
+                    if (!spillDirectory.isDirectory()) {
+                        throw new IllegalArgumentException("Not a directory: " + spillDirectory + ".");
+                    }
+                } else if (arg.equals("--mapped")) {
+                    mappedParsing = true;
+                } else if (arg.equals("--lazy-support-data")) {
+                    lazySupportData = true;
+                } else if (arg.equals("--ladder-cache")) {
+                    ladderCacheSize = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--load-directory")) {
+                    loadDirectory = new File(args[++i]);
+                    if (!loadDirectory.isDirectory()) {
+                        throw new IllegalArgumentException("Not a directory: " + loadDirectory + ".");
+                    }
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else {
+                    files.add(arg);
+                }
+            }
+            if (numberOfThreads < 1) {
+                throw new IllegalArgumentException("The number of threads must be at least 1.");
+            }
+            if (ladderCacheSize > 0) {
+                ladderCache = new FragmentLadderCache(ladderCacheSize);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Missing option value.");
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            XTandemRegistry registry = new XTandemRegistry(memoryBudget);
+            registry.setOffHeapPeaks(offHeapPeaks, spillDirectory);
+            registry.setReducedPrecisionPeaks(reducedPrecisionPeaks);
+            registry.setMappedParsing(mappedParsing);
+            registry.setLazySupportData(lazySupportData);
+            registry.setFragmentLadderCache(ladderCache);
+            for (String file : files) {
+                int separator = file.indexOf('=');
+                File path = new File(separator == -1 ? file : file.substring(separator + 1));
+                String name = separator == -1 ? path.getName() : file.substring(0, separator);
+                long start = System.currentTimeMillis();
+                registry.load(name, path);
+                System.out.println("Loaded " + name + " in " + (System.currentTimeMillis() - start) + " ms.");
+            }
+            XTandemServer server = new XTandemServer(registry, port, numberOfThreads);
+            server.setLoadDirectory(loadDirectory);
+            server.start();
+            System.out.println("Listening on http://127.0.0.1:" + server.getPort() + "/");
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Exception for the requests on unknown files, spectra or domains.
+     */
+    private static class NotFoundException extends Exception {
+
+        /**
+         * Constructor for a not found exception.
+         *
+         * @param aMessage the message
+         */
+        public NotFoundException(String aMessage) {
+            super(aMessage);
+        }
+    }
+
+    /**
+     * Exception for the requests refused to the client.
+     */
+    private static class ForbiddenException extends Exception {
+
+        /**
+         * Constructor for a forbidden exception.
+         *
+         * @param aMessage the message
+         */
+        public ForbiddenException(String aMessage) {
+            super(aMessage);
+        }
+    }
+
+    /**
+     * Exception for the requests changing the registry which are not sent
+     * with the POST method.
+     */
+    private static class MethodNotAllowedException extends Exception {
+
+        /**
+         * Constructor for a method not allowed exception.
+         *
+         * @param aMessage the message
+         */
+        public MethodNotAllowedException(String aMessage) {
+            super(aMessage);
+        }
+    }
+
+    /**
+     * Handler answering all the requests.
+     */
+    private class QueryHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange aExchange) throws IOException {
+            int status = 200;
+            String response;
+            try {
+                checkOrigin(aExchange);
+                HashMap<String, String> parameters = getParameters(aExchange.getRequestURI().getRawQuery());
+                String path = aExchange.getRequestURI().getPath();
+                if (path.equals("/load") || path.equals("/unload")) {
+                    if (!aExchange.getRequestMethod().equals("POST")) {
+                        throw new MethodNotAllowedException(path + " requires the POST method.");
+                    }
+                    parameters.putAll(getParameters(readBody(aExchange.getRequestBody())));
+                }
+                if (path.equals("/files")) {
+                    response = getFiles();
+                } else if (path.equals("/load")) {
+                    response = load(parameters);
+                } else if (path.equals("/unload")) {
+                    String name = getParameter(parameters, "name");
+                    if (!iRegistry.unload(name)) {
+                        throw new NotFoundException("No file registered under " + name + ".");
+                    }
+                    response = "Unloaded " + name + "\n";
+                } else if (path.equals("/psms")) {
+                    response = getPsms(parameters);
+                } else if (path.equals("/support")) {
+                    response = getSupportData(parameters);
+                } else if (path.equals("/fragments")) {
+                    response = getFragments(parameters);
+                } else if (path.equals("/cache")) {
+                    response = getCacheStatistics();
+                } else {
+                    throw new NotFoundException("Unknown request: " + path);
+                }
+            } catch (NotFoundException e) {
+                status = 404;
+                response = e.getMessage() + "\n";
+            } catch (ForbiddenException e) {
+                status = 403;
+                response = e.getMessage() + "\n";
+            } catch (MethodNotAllowedException e) {
+                status = 405;
+                response = e.getMessage() + "\n";
+                aExchange.getResponseHeaders().set("Allow", "POST");
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = e.getMessage() + "\n";
+            } catch (IllegalStateException e) {
+                status = 409;
+                response = e.getMessage() + "\n";
+            } catch (Exception e) {
+                e.printStackTrace();
+                status = 500;
+                response = "Internal error, see the log of the service.\n";
+            } catch (OutOfMemoryError e) {
+                status = 503;
+                response = "Out of memory, unload files or increase the heap.\n";
+            }
+
+            byte[] bytes = response.getBytes("UTF-8");
+            aExchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            aExchange.sendResponseHeaders(status, bytes.length);
+            OutputStream outputStream = aExchange.getResponseBody();
+            try {
+                outputStream.write(bytes);
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Checks that the request is sent to the loopback interface by a client of
+     * the loopback interface: its Host header must name the loopback
+     * interface, which rejects the pages of other hosts resolved to it, and
+     * its Origin header, if any, must be a page of the loopback interface,
+     * which rejects the requests sent by the browser for the pages of other
+     * hosts.
+     *
+     * @param aExchange the request
+     * @throws ForbiddenException if the request is not sent by a client of the
+     * loopback interface
+     */
+    private static void checkOrigin(HttpExchange aExchange) throws ForbiddenException {
+        String host = aExchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !isLoopbackHost(host)) {
+            throw new ForbiddenException("The Host header must name the loopback interface.");
+        }
+        String origin = aExchange.getRequestHeaders().getFirst("Origin");
+        if (origin != null) {
+            int separator = origin.indexOf("://");
+            if (separator == -1 || !isLoopbackHost(origin.substring(separator + 3))) {
+                throw new ForbiddenException("Requests from " + origin + " are not allowed.");
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given host, optionally followed by a port, is the
+     * loopback interface.
+     *
+     * @param aHost the host and optional port
+     * @return true if the host is the loopback interface
+     */
+    private static boolean isLoopbackHost(String aHost) {
+        String host = aHost.trim().toLowerCase();
+        int portSeparator = host.lastIndexOf(':');
+        if (portSeparator > host.lastIndexOf(']')) {
+            host = host.substring(0, portSeparator);
+        }
+        for (String loopbackHost : LOOPBACK_HOSTS) {
+            if (host.equals(loopbackHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the table of the registered files.
+     *
+     * @return the table of the registered files
+     */
+    private String getFiles() {
+        StringBuilder response = new StringBuilder("Name\tPath\tSpectra\tEstimated Size (MB)\n");
+        for (XTandemRegistry.Entry entry : iRegistry.getEntries()) {
+            response.append(entry.getName()).append('\t');
+            response.append(entry.getFile().getPath()).append('\t');
+            response.append(entry.getXTandemFile().getXTandemParser().getNumberOfSpectra()).append('\t');
+            response.append(entry.getSize() / (1024 * 1024)).append('\n');
+        }
+        return response.toString();
+    }
+
+    /**
+     * Loads a file.
+     *
+     * @param aParameters the request parameters
+     * @return the response
+     * @throws Exception if the file could not be loaded
+     */
+    private String load(HashMap<String, String> aParameters) throws Exception {
+        File loadDirectory = iLoadDirectory;
+        if (loadDirectory == null) {
+            throw new ForbiddenException("Loading files is disabled, see the --load-directory option.");
+        }
+        String path = getParameter(aParameters, "path");
+        File file = new File(loadDirectory, path).getCanonicalFile();
+        if (!file.getPath().startsWith(loadDirectory.getPath() + File.separator)) {
+            throw new ForbiddenException("The file " + path + " is not in the load directory.");
+        }
+        if (!file.isFile()) {
+            throw new NotFoundException("The file " + path + " does not exist.");
+        }
+        String name = aParameters.containsKey("name") ? aParameters.get("name") : file.getName();
+        long start = System.currentTimeMillis();
+        iRegistry.load(name, file);
+        return "Loaded " + name + " in " + (System.currentTimeMillis() - start) + " ms\n";
+    }
+
+    /**
+     * Returns the PSM table for a spectrum, a protein or a peptide.
+     *
+     * @param aParameters the request parameters
+     * @return the PSM table
+     * @throws Exception if the table could not be written
+     */
+    private String getPsms(HashMap<String, String> aParameters) throws Exception {
+        XTandemRegistry.Entry entry = getEntry(aParameters);
+        XTandemFile xTandemFile = entry.getXTandemFile();
+        List<Domain> domains;
+        if (aParameters.containsKey("spectrum") || aParameters.containsKey("title")) {
+            domains = entry.getDomains(getSpectrumNumber(entry, aParameters));
+        } else if (aParameters.containsKey("protein")) {
+            domains = xTandemFile.getDomainsForProtein(aParameters.get("protein"));
+        } else if (aParameters.containsKey("peptide")) {
+            String peptide = aParameters.get("peptide");
+            PeptideIndex peptideIndex = xTandemFile.getPeptideIndex();
+            domains = new ArrayList<Domain>();
+            if (peptide.indexOf(PeptideIndex.MODIFICATION_START) != -1) {
+                domains.addAll(entry.getDomains(peptideIndex.getHits(peptide)));
+            } else {
+                for (String key : peptideIndex.getKeysForSequence(peptide)) {
+                    domains.addAll(entry.getDomains(peptideIndex.getHits(key)));
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("One of the parameters spectrum, title, protein or peptide is required.");
+        }
+        StringWriter writer = new StringWriter();
+        new XTandemExporter(xTandemFile, entry.getName(), true).writePsms(writer, domains);
+        return writer.toString();
+    }
+
+    /**
+     * Returns the support data of a spectrum: its title, precursor and peaks.
+     *
+     * @param aParameters the request parameters
+     * @return the support data
+     * @throws Exception if the spectrum is not found
+     */
+    private String getSupportData(HashMap<String, String> aParameters) throws Exception {
+        XTandemRegistry.Entry entry = getEntry(aParameters);
+        int spectrumNumber = getSpectrumNumber(entry, aParameters);
+        Spectrum spectrum = entry.getXTandemFile().getSpectrum(spectrumNumber);
+        SupportData supportData = entry.getXTandemFile().getSupportData(spectrumNumber);
+        StringBuilder response = new StringBuilder();
+        response.append("Spectrum\t").append(spectrumNumber).append('\n');
+        response.append("Title\t").append(supportData.getFragIonSpectrumDescription() == null ? "" : supportData.getFragIonSpectrumDescription().trim()).append('\n');
+        response.append("Charge\t").append(spectrum.getPrecursorCharge()).append('\n');
+        response.append("Precursor MH\t").append(spectrum.getPrecursorMh()).append('\n');
+        response.append("Retention Time\t").append(spectrum.getPrecursorRetentionTime() == null ? "" : spectrum.getPrecursorRetentionTime()).append('\n');
+        response.append('\n').append("m/z\tIntensity\n");
+        DoubleBuffer mzValues = supportData.getFragIonMzBuffer();
+        FloatBuffer intensities = supportData.getFragIonIntensityBuffer();
+        if (mzValues != null && intensities != null) {
+            for (int i = 0; i < mzValues.limit(); i++) {
+                response.append(mzValues.get(i)).append('\t').append((double) intensities.get(i)).append('\n');
+            }
+        }
+        return response.toString();
+    }
+
+    /**
+     * Returns the fragment ions of a domain matched in its spectrum.
+     *
+     * @param aParameters the request parameters
+     * @return the table of the matched fragment ions
+     * @throws Exception if the domain is not found
+     */
+    private String getFragments(HashMap<String, String> aParameters) throws Exception {
+        XTandemRegistry.Entry entry = getEntry(aParameters);
+        String domainKey = getParameter(aParameters, "domain");
+        Domain domain = entry.getDomain(domainKey);
+        if (domain == null) {
+            throw new NotFoundException("No domain " + domainKey + " in " + entry.getName() + ".");
+        }
+        double accuracy = DEFAULT_FRAGMENT_ION_ACCURACY;
+        if (aParameters.containsKey("accuracy")) {
+            try {
+                accuracy = Double.parseDouble(aParameters.get("accuracy"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid accuracy: " + aParameters.get("accuracy"));
+            }
+        }
+        int spectrumNumber = XTandemExporter.getSpectrumNumber(domain);
+        int peptideIndex = Integer.parseInt(domainKey.substring(domainKey.indexOf("_p") + 2, domainKey.lastIndexOf("_d")));
+        XTandemFile xTandemFile = entry.getXTandemFile();
+        Vector ions = xTandemFile.getFragmentIonsForPeptide(xTandemFile.getPeptideMap().getPeptideByIndex(spectrumNumber, peptideIndex), domain, accuracy);
+
+        StringBuilder response = new StringBuilder("Ion\tNumber\tCharge\tm/z\tIntensity\tError\n");
+        for (int i = 0; i < ions.size(); i++) {
+            for (FragmentIon ion : (FragmentIon[]) ions.get(i)) {
+                response.append(ion.getLetter()).append('\t');
+                response.append(ion.getNumber()).append('\t');
+                response.append((int) ion.getCharge()).append('\t');
+                response.append(ion.getMZ()).append('\t');
+                response.append(ion.getIntensity()).append('\t');
+                response.append(ion.getTheoreticalExperimentalMassError()).append('\n');
+            }
+        }
+        return response.toString();
+    }
+
+    /**
+     * Returns the statistics of the fragment ladder cache of the registry.
+     *
+     * @return the table of the cache statistics
+     */
+    private String getCacheStatistics() {
+        FragmentLadderCache ladderCache = iRegistry.getFragmentLadderCache();
+        if (ladderCache == null) {
+            return "The fragment ladder cache is disabled.\n";
+        }
+        StringBuilder response = new StringBuilder("Size\tMax Size\tHits\tMisses\tEvictions\tHit Ratio\n");
+        response.append(ladderCache.size()).append('\t');
+        response.append(ladderCache.getMaxSize()).append('\t');
+        response.append(ladderCache.getHits()).append('\t');
+        response.append(ladderCache.getMisses()).append('\t');
+        response.append(ladderCache.getEvictions()).append('\t');
+        response.append(ladderCache.getHitRatio()).append('\n');
+        return response.toString();
+    }
+
+    /**
+     * Returns the registered file given by the file parameter.
+     *
+     * @param aParameters the request parameters
+     * @return the registered file
+     * @throws NotFoundException if no file is registered under this name
+     */
+    private XTandemRegistry.Entry getEntry(HashMap<String, String> aParameters) throws NotFoundException {
+        String name = getParameter(aParameters, "file");
+        XTandemRegistry.Entry entry = iRegistry.get(name);
+        if (entry == null) {
+            throw new NotFoundException("No file registered under " + name + ".");
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the spectrum number given by the spectrum or title parameter.
+     *
+     * @param aEntry the registered file
+     * @param aParameters the request parameters
+     * @return the spectrum number
+     * @throws NotFoundException if the file has no such spectrum
+     */
+    private int getSpectrumNumber(XTandemRegistry.Entry aEntry, HashMap<String, String> aParameters) throws NotFoundException {
+        int spectrumNumber;
+        if (aParameters.containsKey("title")) {
+            spectrumNumber = aEntry.getSpectrumNumber(aParameters.get("title"));
+        } else {
+            String value = getParameter(aParameters, "spectrum");
+            try {
+                spectrumNumber = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid spectrum number: " + value);
+            }
+        }
+        if (spectrumNumber < 1 || spectrumNumber > aEntry.getXTandemFile().getXTandemParser().getNumberOfSpectra()) {
+            throw new NotFoundException("No such spectrum in " + aEntry.getName() + ".");
+        }
+        return spectrumNumber;
+    }
+
+    /**
+     * Returns a required request parameter.
+     *
+     * @param aParameters the request parameters
+     * @param aName the name of the parameter
+     * @return the value of the parameter
+     * @throws IllegalArgumentException if the parameter is missing
+     */
+    private static String getParameter(HashMap<String, String> aParameters, String aName) {
+        String value = aParameters.get(aName);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + aName);
+        }
+        return value;
+    }
+
+    /**
+     * Reads the body of a request as text.
+     *
+     * @param aInputStream the request body
+     * @return the body
+     * @throws IOException if the body could not be read
+     */
+    private static String readBody(InputStream aInputStream) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = aInputStream.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+
+    /**
+     * Decodes the parameters of a query string.
+     *
+     * @param aQuery the raw query string, can be null
+     * @return the parameters
+     * @throws IOException if the parameters could not be decoded
+     */
+    private static HashMap<String, String> getParameters(String aQuery) throws IOException {
+        HashMap<String, String> parameters = new HashMap<String, String>();
+        if (aQuery != null) {
+            for (String parameter : aQuery.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+}
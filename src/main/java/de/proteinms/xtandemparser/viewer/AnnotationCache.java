@@ -0,0 +1,186 @@
+package de.proteinms.xtandemparser.viewer;
+
+import de.proteinms.xtandemparser.xtandem.FragmentIon;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class holds the matched fragment ions of the domains displayed in the
+ * viewer windows. The cache is shared by all the windows and its memory use
+ * is bounded by a budget: the least recently used entries of any window are
+ * removed when the budget is exceeded, or when the heap gets nearly full.
+ */
+public class AnnotationCache {
+
+    /**
+     * The estimated size in bytes of a cache entry without the fragment ions.
+     */
+    private static final int ENTRY_SIZE = 200;
+    /**
+     * The estimated size in bytes of a fragment ion, including its reference.
+     */
+    private static final int ION_SIZE = 72;
+    /**
+     * The fraction of the maximum heap above which the cache is halved.
+     */
+    private static final double HEAP_PRESSURE = 0.85;
+    /**
+     * The memory budget in bytes.
+     */
+    private final long iBudget;
+    /**
+     * The estimated memory used by the entries in bytes.
+     */
+    private long iSize = 0;
+    /**
+     * The cached fragment ions in least recently used order.
+     */
+    private final LinkedHashMap<Key, FragmentIon[][]> iEntries = new LinkedHashMap<Key, FragmentIon[][]>(16, 0.75f, true);
+
+    /**
+     * Constructor for a cache with the given memory budget.
+     *
+     * @param aBudget the memory budget in bytes
+     */
+    public AnnotationCache(long aBudget) {
+        if (aBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive.");
+        }
+        iBudget = aBudget;
+    }
+
+    /**
+     * Returns the fragment ions of the given domain.
+     *
+     * @param aOwner the window the domain belongs to
+     * @param aDomainKey the domain key
+     * @return the fragment ions, null if not cached
+     */
+    public synchronized FragmentIon[][] get(Object aOwner, String aDomainKey) {
+        return iEntries.get(new Key(aOwner, aDomainKey));
+    }
+
+    /**
+     * Adds the fragment ions of the given domain and removes the least
+     * recently used entries exceeding the budget.
+     *
+     * @param aOwner the window the domain belongs to
+     * @param aDomainKey the domain key
+     * @param aFragmentIons the fragment ions
+     */
+    public synchronized void put(Object aOwner, String aDomainKey, FragmentIon[][] aFragmentIons) {
+        FragmentIon[][] previous = iEntries.put(new Key(aOwner, aDomainKey), aFragmentIons);
+        if (previous != null) {
+            iSize -= getSize(previous);
+        }
+        iSize += getSize(aFragmentIons);
+
+        long limit = iBudget;
+        Runtime runtime = Runtime.getRuntime();
+        if (runtime.totalMemory() - runtime.freeMemory() > HEAP_PRESSURE * runtime.maxMemory()) {
+            limit = Math.min(limit, iSize / 2);
+        }
+        Iterator<FragmentIon[][]> iterator = iEntries.values().iterator();
+        while (iSize > limit && iterator.hasNext()) {
+            iSize -= getSize(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes the entries of the given window.
+     *
+     * @param aOwner the window
+     */
+    public synchronized void clear(Object aOwner) {
+        Iterator<Map.Entry<Key, FragmentIon[][]>> iterator = iEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, FragmentIon[][]> entry = iterator.next();
+            if (entry.getKey().iOwner == aOwner) {
+                iSize -= getSize(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clearAll() {
+        iEntries.clear();
+        iSize = 0;
+    }
+
+    /**
+     * Returns the estimated memory used by the cache in bytes.
+     *
+     * @return the estimated memory used in bytes
+     */
+    public synchronized long getSize() {
+        return iSize;
+    }
+
+    /**
+     * Returns the memory budget in bytes.
+     *
+     * @return the memory budget in bytes
+     */
+    public long getBudget() {
+        return iBudget;
+    }
+
+    /**
+     * Returns the estimated size in bytes of an entry.
+     *
+     * @param aFragmentIons the fragment ions of the entry
+     * @return the estimated size in bytes
+     */
+    private static long getSize(FragmentIon[][] aFragmentIons) {
+        long size = ENTRY_SIZE;
+        for (FragmentIon[] ions : aFragmentIons) {
+            size += 16 + ION_SIZE * ions.length;
+        }
+        return size;
+    }
+
+    /**
+     * The key of a cache entry: a window and a domain key.
+     */
+    private static class Key {
+
+        /**
+         * The window the domain belongs to.
+         */
+        private final Object iOwner;
+        /**
+         * The domain key.
+         */
+        private final String iDomainKey;
+
+        /**
+         * Constructor for a key.
+         *
+         * @param aOwner the window the domain belongs to
+         * @param aDomainKey the domain key
+         */
+        public Key(Object aOwner, String aDomainKey) {
+            iOwner = aOwner;
+            iDomainKey = aDomainKey;
+        }
+
+        @Override
+        public boolean equals(Object aObject) {
+            if (!(aObject instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) aObject;
+            return iOwner == key.iOwner && iDomainKey.equals(key.iDomainKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(iOwner) + iDomainKey.hashCode();
+        }
+    }
+}
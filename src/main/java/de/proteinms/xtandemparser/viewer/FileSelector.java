@@ -44,6 +44,10 @@ public class FileSelector extends JFrame {
     private JButton cancelBtn = null;
     private JPanel centerPanel = null;
     private JFrame iParent = null;
+    /**
+     * If true, the file is opened in a new window and the parent stays open.
+     */
+    private boolean iNewWindow = false;
 
     /**
      * FileSelector sets up the X!Tandem Viewer application.
@@ -52,11 +56,24 @@ public class FileSelector extends JFrame {
      * @param title title of the application
      */
     public FileSelector(JFrame aParent, String title) {
+        this(aParent, title, false);
+    }
+
+    /**
+     * FileSelector opening the selected file either in place of the parent
+     * viewer or in a new window next to it.
+     *
+     * @param aParent parent frame
+     * @param title title of the application
+     * @param aNewWindow if true, the parent viewer stays open
+     */
+    public FileSelector(JFrame aParent, String title, boolean aNewWindow) {
 
         // Initialize frame.
         super(title);
 
         iParent = aParent;
+        iNewWindow = aNewWindow;
 
         // GUI construction
         this.constructScreen();
@@ -172,7 +189,7 @@ public class FileSelector extends JFrame {
     private void okButtonActionPerformed() {
         this.setVisible(false);
         new XTandemViewer(xmlSourceField.getText(), "user.home");
-        if (iParent != null) {
+        if (iParent != null && !iNewWindow) {
             iParent.dispose();
         }
         this.dispose();
@@ -0,0 +1,130 @@
+package de.proteinms.xtandemparser.viewer;
+
+import de.proteinms.xtandemparser.xtandem.Domain;
+import java.util.ArrayList;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the identifications of the selected spectrum. The values
+ * are read from the domains of the parsed file, only the formatted modified
+ * sequence and the parsed protein header are stored per row.
+ */
+public class IdentificationTableModel extends AbstractTableModel {
+
+    /**
+     * The names of the columns.
+     */
+    private static final String[] COLUMN_NAMES = new String[]{
+        " ", "Sequence", "Modified Sequence", "Start", "End", "Exp. Mass", "Theo. Mass", "E-value", "Accession", "Description"
+    };
+    /**
+     * The classes of the columns.
+     */
+    private static final Class[] COLUMN_CLASSES = new Class[]{
+        Integer.class, String.class, String.class, Integer.class, Integer.class, Double.class, Double.class, Float.class, String.class, String.class
+    };
+    /**
+     * The number of the spectrum the identifications belong to.
+     */
+    private int iSpectrumNumber = 0;
+    /**
+     * The domains.
+     */
+    private ArrayList<Domain> iDomains = new ArrayList<Domain>();
+    /**
+     * The modified sequences of the domains.
+     */
+    private ArrayList<String> iModifiedSequences = new ArrayList<String>();
+    /**
+     * The protein accessions of the domains.
+     */
+    private ArrayList<String> iAccessions = new ArrayList<String>();
+    /**
+     * The protein descriptions of the domains.
+     */
+    private ArrayList<String> iDescriptions = new ArrayList<String>();
+
+    /**
+     * Removes all the rows and sets the spectrum of the next identifications.
+     *
+     * @param aSpectrumNumber the spectrum number
+     */
+    public void clear(int aSpectrumNumber) {
+        iSpectrumNumber = aSpectrumNumber;
+        iDomains.clear();
+        iModifiedSequences.clear();
+        iAccessions.clear();
+        iDescriptions.clear();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Adds an identification.
+     *
+     * @param aDomain the domain
+     * @param aModifiedSequence the formatted modified sequence
+     * @param aAccession the protein accession
+     * @param aDescription the protein description
+     */
+    public void addIdentification(Domain aDomain, String aModifiedSequence, String aAccession, String aDescription) {
+        iDomains.add(aDomain);
+        iModifiedSequences.add(aModifiedSequence);
+        iAccessions.add(aAccession);
+        iDescriptions.add(aDescription);
+        fireTableRowsInserted(iDomains.size() - 1, iDomains.size() - 1);
+    }
+
+    /**
+     * Returns the domain of the given row of the model.
+     *
+     * @param aRow the row of the model
+     * @return the domain
+     */
+    public Domain getDomain(int aRow) {
+        return iDomains.get(aRow);
+    }
+
+    public int getRowCount() {
+        return iDomains.size();
+    }
+
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int aColumn) {
+        return COLUMN_NAMES[aColumn];
+    }
+
+    @Override
+    public Class getColumnClass(int aColumn) {
+        return COLUMN_CLASSES[aColumn];
+    }
+
+    public Object getValueAt(int aRow, int aColumn) {
+        Domain domain = iDomains.get(aRow);
+        switch (aColumn) {
+            case 0:
+                return Integer.valueOf(iSpectrumNumber);
+            case 1:
+                return domain.getDomainSequence();
+            case 2:
+                return iModifiedSequences.get(aRow);
+            case 3:
+                return Integer.valueOf(domain.getDomainStart());
+            case 4:
+                return Integer.valueOf(domain.getDomainEnd());
+            case 5:
+                return Double.valueOf(domain.getDomainMh());
+            case 6:
+                return Double.valueOf(domain.getDomainMh() + domain.getDomainDeltaMh());
+            case 7:
+                return new Float(domain.getDomainExpect());
+            case 8:
+                return iAccessions.get(aRow);
+            default:
+                return iDescriptions.get(aRow);
+        }
+    }
+}
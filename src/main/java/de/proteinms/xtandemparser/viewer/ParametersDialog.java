@@ -81,7 +81,7 @@ public class ParametersDialog extends JDialog {
      */
     private void okButtonActionPerformed() {
         parent.setFragmentIonMassAccuracy(Double.valueOf(fragmentIonMassAccuracyTtf.getText()));
-        parent.insertFiles(parent.getXTandemFile(), "user.home");
+        parent.updateAnnotations();
         this.setVisible(false);
         this.dispose();
     }
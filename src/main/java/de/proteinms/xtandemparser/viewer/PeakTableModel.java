@@ -0,0 +1,79 @@
+package de.proteinms.xtandemparser.viewer;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the peaks of the selected spectrum. The model reads the
+ * m/z and intensity arrays given to the spectrum panel, the values are only
+ * boxed when a cell is displayed.
+ */
+public class PeakTableModel extends AbstractTableModel {
+
+    /**
+     * The names of the columns.
+     */
+    private static final String[] COLUMN_NAMES = new String[]{" ", "m/z", "Intensity"};
+    /**
+     * The classes of the columns.
+     */
+    private static final Class[] COLUMN_CLASSES = new Class[]{Integer.class, Double.class, Double.class};
+    /**
+     * The m/z values.
+     */
+    private double[] iMzValues = new double[0];
+    /**
+     * The intensity values.
+     */
+    private double[] iIntensityValues = new double[0];
+
+    /**
+     * Sets the peaks shown in the table. The arrays are not copied.
+     *
+     * @param aMzValues the m/z values
+     * @param aIntensityValues the intensity values
+     */
+    public void setPeaks(double[] aMzValues, double[] aIntensityValues) {
+        if (aMzValues.length != aIntensityValues.length) {
+            throw new IllegalArgumentException("The number of m/z values and intensity values differ.");
+        }
+        iMzValues = aMzValues;
+        iIntensityValues = aIntensityValues;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Removes all the rows.
+     */
+    public void clear() {
+        setPeaks(new double[0], new double[0]);
+    }
+
+    public int getRowCount() {
+        return iMzValues.length;
+    }
+
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int aColumn) {
+        return COLUMN_NAMES[aColumn];
+    }
+
+    @Override
+    public Class getColumnClass(int aColumn) {
+        return COLUMN_CLASSES[aColumn];
+    }
+
+    public Object getValueAt(int aRow, int aColumn) {
+        switch (aColumn) {
+            case 0:
+                return Integer.valueOf(aRow + 1);
+            case 1:
+                return Double.valueOf(iMzValues[aRow]);
+            default:
+                return Double.valueOf(iIntensityValues[aRow]);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package de.proteinms.xtandemparser.viewer;
 
 import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
+import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
 import javax.swing.JProgressBar;
@@ -21,6 +24,15 @@ public class ProgressDialog extends JDialog {
      * Holds an instance of the progress bar.
      */
     private JProgressBar progressBar;
+    /**
+     * The button canceling the task.
+     */
+    private JButton cancelButton;
+    /**
+     * The action run when the task is canceled, null if the task cannot be
+     * canceled.
+     */
+    private Runnable cancelAction;
 
     /**
      * Constructor for a progress dialog with a frame as parent.
@@ -39,6 +51,14 @@ public class ProgressDialog extends JDialog {
     private void initComponents() {
         // Init the progress bar.
         progressBar = new JProgressBar();
+        cancelButton = new JButton("Cancel");
+        cancelButton.setVisible(false);
+        cancelButton.addActionListener(new ActionListener() {
+
+            public void actionPerformed(ActionEvent evt) {
+                cancel();
+            }
+        });
         setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         setTitle("Please Wait...");
         setResizable(false);
@@ -57,9 +77,9 @@ public class ProgressDialog extends JDialog {
         org.jdesktop.layout.GroupLayout layout = new org.jdesktop.layout.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
-                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().addContainerGap().add(progressBar, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, 285, Short.MAX_VALUE).addContainerGap()));
+                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().addContainerGap().add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.TRAILING).add(progressBar, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, 285, Short.MAX_VALUE).add(cancelButton)).addContainerGap()));
         layout.setVerticalGroup(
-                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(org.jdesktop.layout.GroupLayout.TRAILING, layout.createSequentialGroup().addContainerGap(org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(progressBar, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 19, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).addContainerGap()));
+                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(org.jdesktop.layout.GroupLayout.TRAILING, layout.createSequentialGroup().addContainerGap(org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(progressBar, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 19, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(cancelButton).addContainerGap()));
         pack();
     }
 
@@ -125,6 +145,47 @@ public class ProgressDialog extends JDialog {
         });
     }
 
+    /**
+     * Sets the string shown in the progress bar, e.g. the amount of data
+     * processed.
+     *
+     * @param string the string, null to show the percentage
+     */
+    public void setString(final String string) {
+
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                progressBar.setString(string);
+            }
+        });
+    }
+
+    /**
+     * Sets the action run when the user cancels the task, either with the
+     * cancel button or by closing the dialog. Without cancel action, closing
+     * the dialog closes XTandem Viewer.
+     *
+     * @param cancelAction the cancel action, null if the task cannot be
+     * canceled
+     */
+    public void setCancelAction(Runnable cancelAction) {
+        this.cancelAction = cancelAction;
+        cancelButton.setVisible(cancelAction != null);
+        pack();
+    }
+
+    /**
+     * Cancels the task and closes the dialog.
+     */
+    private void cancel() {
+        if (cancelAction != null) {
+            cancelButton.setEnabled(false);
+            progressBar.setString("Canceling...");
+            cancelAction.run();
+        }
+    }
+
     /**
      * This method closes the dialog, if possible.
      *
@@ -132,6 +193,11 @@ public class ProgressDialog extends JDialog {
      */
     private void closeDialog(WindowEvent event) {
 
+        if (cancelAction != null) {
+            cancel();
+            return;
+        }
+
         int option = JOptionPane.showConfirmDialog(this.getParent(),
                 "Closing the progress bar will close XTandem Viewer.\n" + "Do you still want to close the progress bar?",
                 "Close XTandem Viewer?", JOptionPane.YES_NO_OPTION);
@@ -0,0 +1,154 @@
+package de.proteinms.xtandemparser.viewer;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the spectra table of the viewer. The values are stored in
+ * primitive column arrays and are only boxed when a cell is displayed, and the
+ * rows are added without firing an event per row. Sorting and filtering are
+ * done by the table on an index mapping, the rows are never copied.
+ */
+public class SpectraTableModel extends AbstractTableModel {
+
+    /**
+     * The names of the columns.
+     */
+    private static final String[] COLUMN_NAMES = new String[]{" ", "Filename", "m/z", "Charge", "Identified"};
+    /**
+     * The classes of the columns.
+     */
+    private static final Class[] COLUMN_CLASSES = new Class[]{Integer.class, String.class, Double.class, Integer.class, Boolean.class};
+    /**
+     * The number of rows shown in the table.
+     */
+    private int iRowCount = 0;
+    /**
+     * The number of rows added, including the rows not yet shown.
+     */
+    private int iSize = 0;
+    /**
+     * The spectrum numbers.
+     */
+    private int[] iSpectrumNumbers = new int[16];
+    /**
+     * The spectrum labels.
+     */
+    private String[] iLabels = new String[16];
+    /**
+     * The precursor masses.
+     */
+    private double[] iPrecursorMasses = new double[16];
+    /**
+     * The precursor charges.
+     */
+    private int[] iCharges = new int[16];
+    /**
+     * True for the identified spectra.
+     */
+    private boolean[] iIdentified = new boolean[16];
+
+    /**
+     * Adds a spectrum to the model. The spectrum is only shown after a call to
+     * showAddedRows.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aLabel the spectrum label
+     * @param aPrecursorMass the precursor mass
+     * @param aCharge the precursor charge
+     * @param aIdentified true if the spectrum is identified
+     */
+    public void addSpectrum(int aSpectrumNumber, String aLabel, double aPrecursorMass, int aCharge, boolean aIdentified) {
+        if (iSize == iSpectrumNumbers.length) {
+            int capacity = 2 * iSize;
+            int[] spectrumNumbers = new int[capacity];
+            System.arraycopy(iSpectrumNumbers, 0, spectrumNumbers, 0, iSize);
+            String[] labels = new String[capacity];
+            System.arraycopy(iLabels, 0, labels, 0, iSize);
+            double[] precursorMasses = new double[capacity];
+            System.arraycopy(iPrecursorMasses, 0, precursorMasses, 0, iSize);
+            int[] charges = new int[capacity];
+            System.arraycopy(iCharges, 0, charges, 0, iSize);
+            boolean[] identified = new boolean[capacity];
+            System.arraycopy(iIdentified, 0, identified, 0, iSize);
+            iSpectrumNumbers = spectrumNumbers;
+            iLabels = labels;
+            iPrecursorMasses = precursorMasses;
+            iCharges = charges;
+            iIdentified = identified;
+        }
+        iSpectrumNumbers[iSize] = aSpectrumNumber;
+        iLabels[iSize] = aLabel;
+        iPrecursorMasses[iSize] = aPrecursorMass;
+        iCharges[iSize] = aCharge;
+        iIdentified[iSize] = aIdentified;
+        iSize++;
+    }
+
+    /**
+     * Shows the rows added since the last call, firing a single event.
+     */
+    public void showAddedRows() {
+        if (iSize > iRowCount) {
+            int firstRow = iRowCount;
+            iRowCount = iSize;
+            fireTableRowsInserted(firstRow, iRowCount - 1);
+        }
+    }
+
+    /**
+     * Removes all the rows.
+     */
+    public void clear() {
+        iRowCount = 0;
+        iSize = 0;
+        iSpectrumNumbers = new int[16];
+        iLabels = new String[16];
+        iPrecursorMasses = new double[16];
+        iCharges = new int[16];
+        iIdentified = new boolean[16];
+        fireTableDataChanged();
+    }
+
+    /**
+     * Returns the spectrum number of the given row of the model.
+     *
+     * @param aRow the row of the model
+     * @return the spectrum number
+     */
+    public int getSpectrumNumber(int aRow) {
+        return iSpectrumNumbers[aRow];
+    }
+
+    public int getRowCount() {
+        return iRowCount;
+    }
+
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int aColumn) {
+        return COLUMN_NAMES[aColumn];
+    }
+
+    @Override
+    public Class getColumnClass(int aColumn) {
+        return COLUMN_CLASSES[aColumn];
+    }
+
+    public Object getValueAt(int aRow, int aColumn) {
+        switch (aColumn) {
+            case 0:
+                return Integer.valueOf(iSpectrumNumbers[aRow]);
+            case 1:
+                return iLabels[aRow];
+            case 2:
+                return Double.valueOf(iPrecursorMasses[aRow]);
+            case 3:
+                return Integer.valueOf(iCharges[aRow]);
+            default:
+                return Boolean.valueOf(iIdentified[aRow]);
+        }
+    }
+}
@@ -14,7 +14,6 @@ import org.jdesktop.swingx.JXTableHeader;
 import org.xml.sax.SAXException;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -24,6 +23,7 @@ import java.io.*;
 import java.util.*;
 import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * This class provides a basic viewer for the spectra.
@@ -43,10 +43,41 @@ public class XTandemViewer extends JFrame {
     private SpectrumPanel spectrumPanel;
     private String xTandemFile;
     private HashMap<Integer, ArrayList<Peptide>> peptideMap;
-    private HashMap<String, String> proteinLabelMap;
-    private HashMap<Integer, ArrayList<Double>> allMzValues, allIntensityValues;
-    private HashMap<String, ArrayList<Modification>> allFixMods, allVarMods;
-    private HashMap<String, FragmentIon[]> ionsMap;
+    /**
+     * The matched fragment ions of the recently displayed domains of all the
+     * viewer windows, sharing one memory budget of an eighth of the heap.
+     */
+    private final static AnnotationCache annotationCache = new AnnotationCache(Runtime.getRuntime().maxMemory() / 8);
+    /**
+     * The number of open viewer windows, the application exits when the last
+     * one is closed.
+     */
+    private static int openViewers = 0;
+    /**
+     * The number of rows above and below the selected spectrum for which the
+     * fragment ions are matched in the background.
+     */
+    private final static int PREFETCH_ROWS = 5;
+    /**
+     * The label showing the memory use.
+     */
+    private JLabel heapStatusLabel;
+    /**
+     * The timer updating the memory use.
+     */
+    private javax.swing.Timer heapStatusTimer;
+    /**
+     * The thread matching the fragment ions of the neighbouring spectra.
+     */
+    private Thread prefetchThread;
+    /**
+     * The generation of the matched fragment ions of this window, increased
+     * whenever they are dropped, i.e. when another file is opened, the
+     * accuracy changes or the window is closed. It is part of the cache keys,
+     * so that the ions matched by a prefetch still running for an older
+     * generation are never used.
+     */
+    private volatile int annotationGeneration = 0;
     private HashMap<Integer, String> accMap;
     private Vector spectraTableColToolTips, spectrumTableColToolTips, spectrumJXTableColToolTips,
             identificationsJXTableColumnToolTips;
@@ -64,6 +95,10 @@ public class XTandemViewer extends JFrame {
     private JMenuItem openMenuItem, exitMenuItem, aboutMenuItem, helpMenuItem, exportSpectraTableMenuItem,
             exportAllIdentificationsMenuItem, exportAllSpectraMenuItem, exportSelectedSpectrumMenuItem;
     private XTandemFile iXTandemFile;
+    /**
+     * The worker loading the current file, null if no file is being loaded.
+     */
+    private ParserWorker parserWorker;
     private JMenuItem fragmentIonMassAccuracyMenuItem;
 
     /**
@@ -323,6 +358,17 @@ public class XTandemViewer extends JFrame {
         });
         fileMenu.add(openMenuItem);
 
+        JMenuItem openInNewWindowMenuItem = new JMenuItem();
+        openInNewWindowMenuItem.setMnemonic('N');
+        openInNewWindowMenuItem.setText("Open in New Window");
+        openInNewWindowMenuItem.setToolTipText("Open an X!Tandem XML File Next to the Current One");
+        openInNewWindowMenuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                new FileSelector(XTandemViewer.this, APPTITLE, true);
+            }
+        });
+        fileMenu.add(openInNewWindowMenuItem);
+
         exitMenuItem.setMnemonic('x');
         exitMenuItem.setText("Exit");
         exitMenuItem.setToolTipText("Exit XTandem Viewer");
@@ -451,30 +497,28 @@ public class XTandemViewer extends JFrame {
             }
         };
 
-        setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
-
-        jPanel1.setBorder(javax.swing.BorderFactory.createTitledBorder("Spectra Files"));
-
-        spectraTable.setModel(new javax.swing.table.DefaultTableModel(
-                new Object[][]{},
-                new String[]{" ", "Filename", "m/z", "Charge", "Identified"}) {
-            Class[] types = new Class[]{
-                Integer.class, String.class, Double.class, Integer.class, Boolean.class
-            };
-            boolean[] canEdit = new boolean[]{
-                false, false, false, false, false
-            };
-
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
-            public Class getColumnClass(int columnIndex) {
-                return types[columnIndex];
+            public void windowClosed(java.awt.event.WindowEvent evt) {
+                viewerClosed();
             }
+        });
 
-            @Override
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit[columnIndex];
+        heapStatusLabel = new JLabel();
+        heapStatusLabel.setFont(heapStatusLabel.getFont().deriveFont((heapStatusLabel.getFont().getStyle() | java.awt.Font.PLAIN)));
+        heapStatusTimer = new javax.swing.Timer(1000, new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                updateHeapStatus();
             }
         });
+        heapStatusTimer.start();
+        openViewers++;
+        updateHeapStatus();
+
+        jPanel1.setBorder(javax.swing.BorderFactory.createTitledBorder("Spectra Files"));
+
+        spectraTable.setModel(new SpectraTableModel());
         spectraTable.setOpaque(false);
         spectraTable.addKeyListener(new java.awt.event.KeyAdapter() {
             @Override
@@ -505,28 +549,7 @@ public class XTandemViewer extends JFrame {
         jLabel1.setFont(jLabel1.getFont().deriveFont((jLabel1.getFont().getStyle() | java.awt.Font.PLAIN)));
         jLabel1.setText("Legend:   ");
 
-        identificationsTable.setModel(new javax.swing.table.DefaultTableModel(
-                new Object[][]{},
-                new String[]{
-            " ", "Sequence", "Modified Sequence", "Start", "End", "Exp. Mass", "Theo. Mass", "E-value", "Accession", "Description"
-        }) {
-            Class[] types = new Class[]{
-                Integer.class, String.class, String.class, Integer.class, Integer.class, Double.class, Double.class, Float.class, Float.class, String.class, String.class, String.class
-            };
-            boolean[] canEdit = new boolean[]{
-                false, false, false, false, false, false, false, false, false, false, false, false
-            };
-
-            @Override
-            public Class getColumnClass(int columnIndex) {
-                return types[columnIndex];
-            }
-
-            @Override
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit[columnIndex];
-            }
-        });
+        identificationsTable.setModel(new IdentificationTableModel());
         identificationsTable.setOpaque(false);
 
         jScrollPane4.setViewportView(identificationsTable);
@@ -656,28 +679,7 @@ public class XTandemViewer extends JFrame {
         jPanel4Layout.setVerticalGroup(
                 jPanel4Layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(jPanel4Layout.createSequentialGroup().addContainerGap().add(aIonsJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(bIonsJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, 24, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(cIonsJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, 24, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.UNRELATED).add(jSeparator1, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).add(13, 13, 13).add(xIonsJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, 24, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(yIonsJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, 24, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(zIonsJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(12, 12, 12).add(jSeparator2, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, 8, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(chargeOneJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(chargeTwoJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(chargeOverTwoJCheckBox, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(13, 13, 13)));
 
-        spectrumJXTable.setModel(new javax.swing.table.DefaultTableModel(
-                new Object[][]{},
-                new String[]{
-            " ", "m/z", "Intensity"
-        }) {
-            Class[] types = new Class[]{
-                java.lang.Integer.class, java.lang.Integer.class, java.lang.Integer.class
-            };
-            boolean[] canEdit = new boolean[]{
-                false, false, false
-            };
-
-            @Override
-            public Class getColumnClass(int columnIndex) {
-                return types[columnIndex];
-            }
-
-            @Override
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return canEdit[columnIndex];
-            }
-        });
+        spectrumJXTable.setModel(new PeakTableModel());
         spectrumJXTable.setOpaque(false);
 
         jScrollPane1.setViewportView(spectrumJXTable);
@@ -693,20 +695,26 @@ public class XTandemViewer extends JFrame {
         org.jdesktop.layout.GroupLayout layout = new org.jdesktop.layout.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
-                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().addContainerGap().add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().add(jPanel1, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).add(18, 18, 18).add(jPanel3, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)).add(jPanel2, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)).addContainerGap()));
+                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().addContainerGap().add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().add(jPanel1, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).add(18, 18, 18).add(jPanel3, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)).add(jPanel2, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(heapStatusLabel)).addContainerGap()));
         layout.setVerticalGroup(
-                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().addContainerGap().add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(jPanel3, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(jPanel1, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(jPanel2, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).addContainerGap()));
+                layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(layout.createSequentialGroup().addContainerGap().add(layout.createParallelGroup(org.jdesktop.layout.GroupLayout.LEADING).add(jPanel3, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE).add(jPanel1, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(jPanel2, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE, org.jdesktop.layout.GroupLayout.DEFAULT_SIZE, org.jdesktop.layout.GroupLayout.PREFERRED_SIZE).addPreferredGap(org.jdesktop.layout.LayoutStyle.RELATED).add(heapStatusLabel).addContainerGap()));
         pack();
     }
 
     /**
-     * ToDo: JavaDoc missing...
+     * Loads the given X!Tandem file in the background. The spectra table is
+     * filled in batches while the spectra are read, and the loading can be
+     * canceled from the progress dialog.
      *
-     * @param aXTandemFile
-     * @param lastSelectedFolder
+     * @param aXTandemFile the path to the X!Tandem file
+     * @param lastSelectedFolder the last selected folder
      */
     void insertFiles(String aXTandemFile, String lastSelectedFolder) {
 
+        if (parserWorker != null) {
+            parserWorker.cancel(true);
+        }
+
         xTandemFile = aXTandemFile;
         progressDialog = new ProgressDialog(this);
 
@@ -716,187 +724,253 @@ public class XTandemViewer extends JFrame {
         // Set the title of the application
         setTitle(APPTITLE + " " + new Properties().getVersion() + "  ---  " + new File(xTandemFile).getPath());
 
-        // Thread for the progress dialog.
-        final Thread t = new Thread(new Runnable() {
+        clearTables();
+        spectraTable.setSortable(false);
+        iXTandemFile = null;
+        peptideMap = new HashMap<Integer, ArrayList<Peptide>>();
+        accMap = new HashMap<Integer, String>();
+        if (prefetchThread != null) {
+            prefetchThread.interrupt();
+        }
+        annotationGeneration++;
+        annotationCache.clear(this);
+
+        final ParserWorker worker = new ParserWorker(new File(xTandemFile), progressDialog);
+        parserWorker = worker;
+
+        progressDialog.setTitle("Parsing XML File. Please Wait...");
+        progressDialog.setCancelAction(new Runnable() {
             public void run() {
-                progressDialog.setTitle("Parsing XML File. Please Wait...");
-                progressDialog.setIndeterminate(true);
-                progressDialog.setVisible(true);
+                worker.cancel(true);
             }
-        }, "ProgressDialog");
+        });
+        progressDialog.setVisible(true);
 
-        t.start();
+        worker.execute();
+    }
 
-        // Thread for the parsing of the XTandem xml file.
-        new Thread("ParserThread") {
-            @Override
-            public void run() {
+    /**
+     * Removes the content of the tables, the spectrum panel and the
+     * modification details.
+     */
+    private void clearTables() {
 
-                spectraTable.setSortable(false);
-                while (spectraTable.getModel().getRowCount() > 0) {
-                    ((DefaultTableModel) spectraTable.getModel()).removeRow(0);
-                }
+        ((SpectraTableModel) spectraTable.getModel()).clear();
+        ((PeakTableModel) spectrumJXTable.getModel()).clear();
+        ((IdentificationTableModel) identificationsTable.getModel()).clear(0);
 
-                while (spectrumJXTable.getModel().getRowCount() > 0) {
-                    ((DefaultTableModel) spectrumJXTable.getModel()).removeRow(0);
-                }
+        modificationDetailsJLabel.setText("");
 
-                while (identificationsTable.getModel().getRowCount() > 0) {
-                    ((DefaultTableModel) identificationsTable.getModel()).removeRow(0);
-                }
+        while (spectrumJPanel.getComponents().length > 0) {
+            spectrumJPanel.remove(0);
+        }
 
-                modificationDetailsJLabel.setText("");
+        spectrumJPanel.validate();
+        spectrumJPanel.repaint();
+    }
 
-                while (spectrumJPanel.getComponents().length > 0) {
-                    spectrumJPanel.remove(0);
-                }
+    /**
+     * This worker parses an X!Tandem file and publishes its spectra, which are
+     * added to the spectra table in batches on the event dispatch thread. The
+     * progress is given in bytes while the file is read and in spectra while
+     * the table is filled.
+     */
+    private class ParserWorker extends SwingWorker<XTandemFile, Spectrum> {
+
+        /**
+         * The X!Tandem file.
+         */
+        private final File file;
+        /**
+         * The dialog showing the progress.
+         */
+        private final ProgressDialog dialog;
+        /**
+         * The parsed file, handed to the event dispatch thread with the first
+         * spectra.
+         */
+        private volatile XTandemFile parsedFile;
+        /**
+         * The number of spectra added to the table.
+         */
+        private int spectrumCounter = 0;
+        /**
+         * The number of spectra in the file.
+         */
+        private int numberOfSpectra = 0;
+
+        /**
+         * Constructor for a worker parsing the given file.
+         *
+         * @param file the X!Tandem file
+         * @param dialog the dialog showing the progress
+         */
+        public ParserWorker(File file, ProgressDialog dialog) {
+            this.file = file;
+            this.dialog = dialog;
+        }
 
-                spectrumJPanel.validate();
-                spectrumJPanel.repaint();
+        @Override
+        protected XTandemFile doInBackground() throws Exception {
 
-                // Parse the X!Tandem file.
-                try {
-                    iXTandemFile = new XTandemFile(xTandemFile);
+            final long fileSize = file.length();
+            final int kiloBytes = (int) Math.max(1, fileSize / 1024);
+            dialog.setIndeterminate(false);
+            dialog.setMaxValue(kiloBytes);
 
-                } catch (OutOfMemoryError error) {
-                    Runtime.getRuntime().gc();
-                    JOptionPane.showMessageDialog(null,
-                            "The task used up all the available memory and had to be stopped.\n"
-                            + "Memory boundaries are set in ../Properties/JavaOptions.txt.",
-                            "Out of Memory Error",
-                            JOptionPane.ERROR_MESSAGE);
-                    error.printStackTrace();
-                    System.exit(0);
-                } catch (SAXException saxException) {
-                    saxException.getMessage();
-                    JOptionPane.showMessageDialog(null,
-                            "Error during parsing the xml file!\n"
-                            + saxException.getMessage() + "\n"
-                            + "Please verify the file format.",
-                            "Parser error",
-                            JOptionPane.ERROR_MESSAGE);
-                    System.exit(0);
-                } catch (ParserConfigurationException parserConfigurationException) {
-                    parserConfigurationException.getMessage();
-                    JOptionPane.showMessageDialog(null,
-                            "Error during parsing the xml file!\n"
-                            + parserConfigurationException.getMessage() + "\n"
-                            + "Please verify the file format.",
-                            "Parser error",
-                            JOptionPane.ERROR_MESSAGE);
-                    System.exit(0);
+            // the stream reports the bytes read and stops the parsing when the
+            // worker is canceled
+            InputStream inputStream = new BufferedInputStream(new FileInputStream(file)) {
+                private long bytesRead = 0;
+                private long lastUpdate = 0;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (isCancelled()) {
+                        throw new InterruptedIOException("The loading of " + file.getName() + " was canceled.");
+                    }
+                    int read = super.read(b, off, len);
+                    if (read > 0) {
+                        bytesRead += read;
+                        if (bytesRead - lastUpdate > 1024 * 1024) {
+                            lastUpdate = bytesRead;
+                            dialog.setValue((int) (bytesRead / 1024));
+                            dialog.setString("Reading: " + (bytesRead / (1024 * 1024)) + " of " + (fileSize / (1024 * 1024)) + " MB");
+                        }
+                    }
+                    return read;
                 }
+            };
 
-                // Set up the hash maps
-                peptideMap = new HashMap<Integer, ArrayList<Peptide>>();
-                proteinLabelMap = new HashMap<String, String>();
-                accMap = new HashMap<Integer, String>();
-                allMzValues = new HashMap<Integer, ArrayList<Double>>();
-                allIntensityValues = new HashMap<Integer, ArrayList<Double>>();
-                allFixMods = new HashMap<String, ArrayList<Modification>>();
-                allVarMods = new HashMap<String, ArrayList<Modification>>();
-                ionsMap = new HashMap<String, FragmentIon[]>();
+            XTandemFile result;
+            try {
+                result = new XTandemFile(inputStream, file.getPath());
+            } finally {
+                inputStream.close();
+            }
 
-                // Iterate over all the spectra
-                Iterator<Spectrum> iter = iXTandemFile.getSpectraIterator();
+            // build the object model before the spectra are shown, the raw
+            // maps are not needed afterwards
+            dialog.setIndeterminate(true);
+            dialog.setString("Building the identifications...");
+            result.trim();
+
+            Iterator<Spectrum> iter = result.getSpectraIterator();
+            numberOfSpectra = result.getSpectraNumber();
+            dialog.setIndeterminate(false);
+            dialog.setMaxValue(Math.max(1, numberOfSpectra));
+
+            // the file is handed to the event dispatch thread with the first spectra
+            parsedFile = result;
+            while (iter.hasNext()) {
+                if (isCancelled()) {
+                    return null;
+                }
+                publish(iter.next());
+            }
 
-                // Prepare everything for the peptides.
-                PeptideMap pepMap = iXTandemFile.getPeptideMap();
+            return result;
+        }
 
-                // Prepare everything for the proteins.
-                ProteinMap protMap = iXTandemFile.getProteinMap();
+        @Override
+        protected void process(List<Spectrum> spectra) {
 
-                while (iter.hasNext()) {
+            if (isCancelled()) {
+                return;
+            }
 
-                    // Get the next spectrum.
-                    Spectrum spectrum = iter.next();
-                    int spectrumNumber = spectrum.getSpectrumNumber();
+            if (iXTandemFile == null) {
+                iXTandemFile = parsedFile;
+            }
 
-                    // Get the peptide hits.
-                    ArrayList<Peptide> pepList = pepMap.getAllPeptides(spectrumNumber);
-                    for (Peptide peptide : pepList) {
-                        List<Domain> domainList = peptide.getDomains();
-                        for (Domain domain : domainList) {
-                            Protein protein = protMap.getProtein(domain.getProteinKey());
-                            if (protein != null) {
-                                String protAccession;
-                                if (protein.getDescription() != null) {
-                                    protAccession = protein.getDescription();
-                                } else {
-                                    protAccession = protein.getLabel();
-                                }
-                                proteinLabelMap.put(domain.getDomainKey(), protAccession);
-                            }
+            PeptideMap pepMap = iXTandemFile.getPeptideMap();
+            SpectraTableModel model = (SpectraTableModel) spectraTable.getModel();
 
-                            // Do the modifications
-                            ArrayList<Modification> fixModList = iXTandemFile.getModificationMap().getFixedModifications(domain.getDomainKey());
-                            ArrayList<Modification> varModList = iXTandemFile.getModificationMap().getVariableModifications(domain.getDomainKey());
-                            allFixMods.put(domain.getDomainKey(), fixModList);
-                            allVarMods.put(domain.getDomainKey(), varModList);
+            for (Spectrum spectrum : spectra) {
 
-                            // Get the fragment ions
-                            Vector IonVector = iXTandemFile.getFragmentIonsForPeptide(peptide, domain, fragmentIonMassAccuracy);
+                int spectrumNumber = spectrum.getSpectrumNumber();
 
-                            // Get all the ion types from the vector
-                            for (int i = 0; i < IonVector.size(); i++) {
-                                FragmentIon[] ions = (FragmentIon[]) IonVector.get(i);
-                                ionsMap.put(domain.getDomainKey() + "_" + i, ions);
-                            }
-                        }
-                    }
+                // Fill the peptide map: for each spectrum get the corressponding peptide list.
+                // The fragment ions are matched when the spectrum is selected.
+                ArrayList<Peptide> pepList = pepMap.getAllPeptides(spectrumNumber);
+                peptideMap.put(spectrumNumber, pepList);
+                accMap.put(spectrumNumber, spectrum.getLabel());
 
-                    // Get the support data for each spectrum.
-                    SupportData supportData = iXTandemFile.getSupportData(spectrumNumber);
+                // Add the values to the table (model).
+                String label = iXTandemFile.getSupportData(spectrumNumber).getFragIonSpectrumDescription();
+                model.addSpectrum(spectrumNumber, label, spectrum.getPrecursorMh(), spectrum.getPrecursorCharge(), !pepList.isEmpty());
+            }
+            model.showAddedRows();
 
-                    // Fill the peptide map: for each spectrum get the corressponding peptide list.
-                    peptideMap.put(spectrumNumber, pepList);
+            spectrumCounter += spectra.size();
+            dialog.setValue(spectrumCounter);
+            dialog.setString("Spectra: " + spectrumCounter + " of " + numberOfSpectra);
 
+            // select the first row as soon as it is there
+            if (spectraTable.getSelectedRow() == -1 && spectraTable.getRowCount() > 0) {
+                spectraTable.setRowSelectionInterval(0, 0);
+                spectraJXTableMouseClicked(null);
+            }
+        }
 
-                    //int spectrumID = spectrum.getSpectrumId();
-                    String label = supportData.getFragIonSpectrumDescription();
-                    int precursorCharge = spectrum.getPrecursorCharge();
-                    double precursorMh = spectrum.getPrecursorMh();
-                    String accession = spectrum.getLabel();
-                    boolean identified;
-                    if (pepList.isEmpty()) {
-                        identified = false;
-                    } else {
-                        identified = true;
-                    }
-                    accMap.put(spectrumNumber, accession);
-                    // Add the values to the table (model).
-                    ((DefaultTableModel) spectraTable.getModel()).addRow(new Object[]{
-                        spectrumNumber,
-                        label,
-                        precursorMh,
-                        precursorCharge,
-                        identified
-                    });
-
-                    // Initialize the array lists
-                    ArrayList<Double> mzValues;
-                    ArrayList<Double> intensityValues;
-
-                    // Get the spectrum fragment mz and intensity values
-                    mzValues = supportData.getXValuesFragIonMass2Charge();
-
-                    intensityValues = supportData.getYValuesFragIonMass2Charge();
-
-                    // Fill the maps
-                    allMzValues.put(Integer.valueOf(spectrumNumber), mzValues);
-                    allIntensityValues.put(Integer.valueOf(spectrumNumber), intensityValues);
+        @Override
+        protected void done() {
+
+            if (parserWorker == this) {
+                parserWorker = null;
+            }
+
+            dialog.setVisible(false);
+            dialog.dispose();
+
+            if (isCancelled()) {
+                if (parserWorker == null) {
+                    clearTables();
+                    iXTandemFile = null;
+                    setTitle(APPTITLE + " " + new Properties().getVersion());
                 }
-                spectraTable.setSortable(true);
-                progressDialog.setVisible(false);
-                progressDialog.dispose();
-
-                // select the first row in the spectra files table
-                if (spectraTable.getRowCount() > 0) {
-                    spectraTable.setRowSelectionInterval(0, 0);
-                    spectraJXTableMouseClicked(null);
+                return;
+            }
+
+            try {
+                get();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                // only this window is cleared, the files of the other windows stay loaded
+                clearTables();
+                iXTandemFile = null;
+                setTitle(APPTITLE + " " + new Properties().getVersion());
+                if (cause instanceof OutOfMemoryError) {
+                    annotationCache.clearAll();
+                    Runtime.getRuntime().gc();
+                    JOptionPane.showMessageDialog(XTandemViewer.this,
+                            "There is not enough memory to load " + file.getName() + ".\n"
+                            + "Close other files or increase the memory boundaries\n"
+                            + "set in ../Properties/JavaOptions.txt.",
+                            "Out of Memory Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
+                } else if (cause instanceof SAXException || cause instanceof ParserConfigurationException) {
+                    JOptionPane.showMessageDialog(XTandemViewer.this,
+                            "Error during parsing the xml file!\n"
+                            + cause.getMessage() + "\n"
+                            + "Please verify the file format.",
+                            "Parser error",
+                            JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(XTandemViewer.this,
+                            "Error during reading the xml file!\n"
+                            + cause.getMessage(),
+                            "Parser error",
+                            JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
                 }
             }
-        }.start();
+
+            spectraTable.setSortable(true);
+        }
     }
 
     /**
@@ -1077,13 +1151,9 @@ public class XTandemViewer extends JFrame {
 
         // Condition if one row is selected.
         if (row != -1) {
-            List<Double> mzValues = allMzValues.get((Integer) spectraTable.getValueAt(row, 0));
-            List<Double> intensityValues = allIntensityValues.get((Integer) spectraTable.getValueAt(row, 0));
-
-            // Empty the spectrum table.
-            while (spectrumJXTable.getRowCount() > 0) {
-                ((DefaultTableModel) spectrumJXTable.getModel()).removeRow(0);
-            }
+            SupportData supportData = iXTandemFile.getSupportData((Integer) spectraTable.getValueAt(row, 0));
+            List<Double> mzValues = supportData.getXValuesFragIonMass2Charge();
+            List<Double> intensityValues = supportData.getYValuesFragIonMass2Charge();
 
             spectrumJXTable.scrollRectToVisible(spectrumJXTable.getCellRect(0, 0, false));
 
@@ -1095,18 +1165,13 @@ public class XTandemViewer extends JFrame {
             double[] mzValuesAsDouble = new double[mzValues.size()];
             double[] intensityValuesAsDouble = new double[mzValues.size()];
 
-            // Insert the spectrum details into the table
             for (int i = 0; i < mzValues.size(); i++) {
-
-                ((DefaultTableModel) spectrumJXTable.getModel()).addRow(new Object[]{
-                    Integer.valueOf(i + 1),
-                    mzValues.get(i),
-                    intensityValues.get(i)
-                });
-
                 mzValuesAsDouble[i] = mzValues.get(i);
                 intensityValuesAsDouble[i] = intensityValues.get(i);
             }
+
+            // Insert the spectrum details into the table
+            ((PeakTableModel) spectrumJXTable.getModel()).setPeaks(mzValuesAsDouble, intensityValuesAsDouble);
             exportSelectedSpectrumMenuItem.setEnabled(true);
 
             // Updating the spectrum panel
@@ -1123,9 +1188,7 @@ public class XTandemViewer extends JFrame {
             spectrumJPanel.repaint();
 
             // Empty the identifications tables
-            while (identificationsTable.getRowCount() > 0) {
-                ((DefaultTableModel) identificationsTable.getModel()).removeRow(0);
-            }
+            ((IdentificationTableModel) identificationsTable.getModel()).clear((Integer) spectraTable.getValueAt(row, 0));
 
             allAnnotations = new HashMap();
 
@@ -1155,8 +1218,8 @@ public class XTandemViewer extends JFrame {
                         String nTerminal = "";
                         String cTerminal = "";
 
-                        ArrayList<Modification> fixedModList = allFixMods.get(domain.getDomainKey());
-                        ArrayList<Modification> varModList = allVarMods.get(domain.getDomainKey());
+                        ArrayList<Modification> fixedModList = iXTandemFile.getModificationMap().getFixedModifications(domain.getDomainKey());
+                        ArrayList<Modification> varModList = iXTandemFile.getModificationMap().getVariableModifications(domain.getDomainKey());
 
                         // Handle fixed modifications
                         if (fixedModList != null) {
@@ -1252,8 +1315,9 @@ public class XTandemViewer extends JFrame {
                         int[][] ionCoverage = new int[sequence.length() + 1][12];
 
                         Vector<SpectrumAnnotation> currentAnnotations = new Vector();
+                        FragmentIon[][] fragmentIons = getFragmentIons(peptide, domain);
                         for (int i = 0; i < 12; i++) {
-                            FragmentIon[] ions = ionsMap.get(domain.getDomainKey() + "_" + i);
+                            FragmentIon[] ions = fragmentIons[i];
                             for (FragmentIon ion : ions) {
                                 int ionNumber = ion.getNumber();
                                 int ionType = ion.getType();
@@ -1432,25 +1496,13 @@ public class XTandemViewer extends JFrame {
                         }
                         modifiedSequenceColorCoded += "</html>";
 
-                        // Calculate the theoretical mass of the domain
-                        double theoMass = (domain.getDomainMh() + domain.getDomainDeltaMh());
-
                         // parse the header
-                        Header header = Header.parseFromFASTA(proteinLabelMap.get(domain.getDomainKey()));
+                        Header header = Header.parseFromFASTA(getProteinAccession(domain));
                         String accession = header.getAccession();
                         String description = header.getDescription();
 
-                        ((DefaultTableModel) identificationsTable.getModel()).addRow(new Object[]{
-                            (Integer) spectraTable.getValueAt(row, 0),
-                            sequence,
-                            modifiedSequenceColorCoded,
-                            domain.getDomainStart(),
-                            domain.getDomainEnd(),
-                            new Double(domain.getDomainMh()),
-                            new Double(theoMass),
-                            new Float(domain.getDomainExpect()),
-                            accession,
-                            description});
+                        ((IdentificationTableModel) identificationsTable.getModel()).addIdentification(
+                                domain, modifiedSequenceColorCoded, accession, description);
                     }
                 }
 
@@ -1466,10 +1518,154 @@ public class XTandemViewer extends JFrame {
             }
         }
 
+        // Match the fragment ions of the neighbouring spectra in the background.
+        if (row != -1) {
+            prefetchFragmentIons(row);
+        }
+
         // At the end set the cursor back to default.
         this.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
     }
 
+    /**
+     * Returns the matched fragment ions of the given domain of the current
+     * file with the current accuracy, see getFragmentIons(XTandemFile,
+     * Peptide, Domain, double, int). To be called on the event dispatch
+     * thread.
+     *
+     * @param peptide the peptide of the domain
+     * @param domain the domain
+     * @return the matched fragment ions per ion type
+     */
+    private FragmentIon[][] getFragmentIons(Peptide peptide, Domain domain) {
+        return getFragmentIons(iXTandemFile, peptide, domain, fragmentIonMassAccuracy, annotationGeneration);
+    }
+
+    /**
+     * Returns the matched fragment ions of the given domain, one array per ion
+     * type as given by XTandemFile.getFragmentIonsForPeptide. The ions are
+     * matched on first use and kept in the fragment ion cache, once for all
+     * the domains of the spectrum with the same peptide and modifications.
+     * The ions matched for an older generation are not cached.
+     *
+     * @param xTandemFile the file of the domain
+     * @param peptide the peptide of the domain
+     * @param domain the domain
+     * @param accuracy the fragment ion mass accuracy
+     * @param generation the generation of the matched fragment ions the file
+     * and the accuracy belong to
+     * @return the matched fragment ions per ion type
+     */
+    private FragmentIon[][] getFragmentIons(XTandemFile xTandemFile, Peptide peptide, Domain domain, double accuracy, int generation) {
+        String cacheKey = generation + "_s" + peptide.getSpectrumNumber() + "_" + PeptideIndex.getPeptideKey(domain, xTandemFile.getModificationMap());
+        FragmentIon[][] fragmentIons = annotationCache.get(this, cacheKey);
+        if (fragmentIons == null) {
+            Vector ionVector = xTandemFile.getFragmentIonsForPeptide(peptide, domain, accuracy);
+            fragmentIons = new FragmentIon[ionVector.size()][];
+            for (int i = 0; i < ionVector.size(); i++) {
+                fragmentIons[i] = (FragmentIon[]) ionVector.get(i);
+            }
+            // the file or the accuracy may have been changed in the meantime
+            if (generation == annotationGeneration) {
+                annotationCache.put(this, cacheKey, fragmentIons);
+            }
+        }
+        return fragmentIons;
+    }
+
+    /**
+     * Matches the fragment ions of the spectra around the given row of the
+     * spectra table in a background thread, so that they are ready when the
+     * user moves through the table. A running prefetch is stopped first.
+     *
+     * @param row the selected row of the spectra table
+     */
+    private void prefetchFragmentIons(int row) {
+
+        if (prefetchThread != null) {
+            prefetchThread.interrupt();
+        }
+        if (iXTandemFile == null) {
+            return;
+        }
+
+        // the spectrum numbers are read on the event dispatch thread
+        final ArrayList<Integer> spectrumNumbers = new ArrayList<Integer>();
+        for (int i = 1; i <= PREFETCH_ROWS; i++) {
+            if (row + i < spectraTable.getRowCount()) {
+                spectrumNumbers.add((Integer) spectraTable.getValueAt(row + i, 0));
+            }
+            if (row - i >= 0) {
+                spectrumNumbers.add((Integer) spectraTable.getValueAt(row - i, 0));
+            }
+        }
+
+        // the file, the accuracy and the generation are read on the event
+        // dispatch thread as well, the thread only uses these values
+        final XTandemFile currentFile = iXTandemFile;
+        final double accuracy = fragmentIonMassAccuracy;
+        final int generation = annotationGeneration;
+        prefetchThread = new Thread("PrefetchThread") {
+            @Override
+            public void run() {
+                for (Integer spectrumNumber : spectrumNumbers) {
+                    ArrayList<Peptide> pepList = currentFile.getPeptideMap().getAllPeptides(spectrumNumber);
+                    for (Peptide peptide : pepList) {
+                        for (Domain domain : peptide.getDomains()) {
+                            if (isInterrupted() || generation != annotationGeneration) {
+                                return;
+                            }
+                            getFragmentIons(currentFile, peptide, domain, accuracy, generation);
+                        }
+                    }
+                }
+            }
+        };
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    /**
+     * Updates the memory use shown at the bottom of the window.
+     */
+    private void updateHeapStatus() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long max = runtime.maxMemory();
+        heapStatusLabel.setText("Memory: " + (used / (1024 * 1024)) + " of " + (max / (1024 * 1024)) + " MB"
+                + "  |  Annotation cache: " + (annotationCache.getSize() / (1024 * 1024)) + " of "
+                + (annotationCache.getBudget() / (1024 * 1024)) + " MB"
+                + "  |  Open files: " + openViewers);
+        if (used > 0.9 * max) {
+            heapStatusLabel.setForeground(Color.RED);
+        } else {
+            heapStatusLabel.setForeground(Color.BLACK);
+        }
+    }
+
+    /**
+     * Releases the resources of a closed window, and exits the application
+     * when the last window is closed.
+     */
+    private void viewerClosed() {
+
+        if (parserWorker != null) {
+            parserWorker.cancel(true);
+        }
+        if (prefetchThread != null) {
+            prefetchThread.interrupt();
+        }
+        heapStatusTimer.stop();
+        annotationGeneration++;
+        annotationCache.clear(this);
+        iXTandemFile = null;
+
+        openViewers--;
+        if (openViewers == 0) {
+            System.exit(0);
+        }
+    }
+
     /**
      * Method for exporting the contents of the spectra files table.
      *
@@ -1676,8 +1872,8 @@ public class XTandemViewer extends JFrame {
                             String nTerminal = "";
                             String cTerminal = "";
 
-                            ArrayList<Modification> fixedModList = allFixMods.get(domain.getDomainKey());
-                            ArrayList<Modification> varModList = allVarMods.get(domain.getDomainKey());
+                            ArrayList<Modification> fixedModList = iXTandemFile.getModificationMap().getFixedModifications(domain.getDomainKey());
+                            ArrayList<Modification> varModList = iXTandemFile.getModificationMap().getVariableModifications(domain.getDomainKey());
 
                             // Handle fixed modifications
                             if (fixedModList != null) {
@@ -1753,8 +1949,9 @@ public class XTandemViewer extends JFrame {
                             // add ion coverage to peptide sequence
                             int[][] ionCoverage = new int[sequence.length() + 1][12];
 
+                            FragmentIon[][] fragmentIons = getFragmentIons(peptide, domain);
                             for (int i = 0; i < 12; i++) {
-                                FragmentIon[] ions = ionsMap.get(domain.getDomainKey() + "_" + i);
+                                FragmentIon[] ions = fragmentIons[i];
                                 for (FragmentIon ion : ions) {
                                     int ionNumber = ion.getNumber();
                                     int ionType = ion.getType();
@@ -1926,7 +2123,7 @@ public class XTandemViewer extends JFrame {
                             modifiedSequence = nTerminal + modifiedSequence + cTerminal;
 
                             double theoMass = (domain.getDomainMh() + domain.getDomainDeltaMh());
-                            String accession = proteinLabelMap.get(domain.getDomainKey());
+                            String accession = getProteinAccession(domain);
 
                             f.write(peptide.getSpectrumNumber() + "\t"
                                     + sequence + "\t"
@@ -2083,8 +2280,9 @@ public class XTandemViewer extends JFrame {
 
             for (int j = 0; j < spectraTable.getRowCount(); j++) {
 
-                List<Double> mzValues = allMzValues.get((Integer) spectraTable.getValueAt(j, 0));
-                List<Double> intensityValues = allIntensityValues.get((Integer) spectraTable.getValueAt(j, 0));
+                SupportData supportData = iXTandemFile.getSupportData((Integer) spectraTable.getValueAt(j, 0));
+                List<Double> mzValues = supportData.getXValuesFragIonMass2Charge();
+                List<Double> intensityValues = supportData.getYValuesFragIonMass2Charge();
                 File currentFile;
                 String spectrum = spectraTable.getValueAt(j, 1).toString();
                 if (spectrum.contains(".")) {
@@ -2133,6 +2331,24 @@ public class XTandemViewer extends JFrame {
         }
     }
 
+    /**
+     * Returns the FASTA header of the protein matched by the given domain,
+     * i.e. the protein description, or the label if no description is given.
+     *
+     * @param domain the domain
+     * @return the FASTA header of the protein, null if the protein is unknown
+     */
+    private String getProteinAccession(Domain domain) {
+        Protein protein = iXTandemFile.getProteinMap().getProtein(domain.getProteinKey());
+        if (protein == null) {
+            return null;
+        } else if (protein.getDescription() != null) {
+            return protein.getDescription();
+        } else {
+            return protein.getLabel();
+        }
+    }
+
     /**
      * Returns the fragment ion mass accuracy.
      *
@@ -2151,6 +2367,33 @@ public class XTandemViewer extends JFrame {
         this.fragmentIonMassAccuracy = fragmentIonMassAccuracy;
     }
 
+    /**
+     * Matches the fragment ions again using the current fragment ion mass
+     * accuracy. The loaded file and the tables are kept, only the cached
+     * matches are dropped and the selected spectrum is annotated again. The
+     * other spectra are annotated when they are selected.
+     */
+    public void updateAnnotations() {
+
+        if (prefetchThread != null) {
+            prefetchThread.interrupt();
+        }
+        annotationGeneration++;
+        annotationCache.clear(this);
+
+        if (iXTandemFile != null && spectraTable.getSelectedRow() != -1) {
+
+            // keep the selected identification
+            int selectedIdentification = identificationsTable.getSelectedRow();
+            spectraJXTableMouseClicked(null);
+
+            if (selectedIdentification != -1 && selectedIdentification < identificationsTable.getRowCount()) {
+                identificationsTable.setRowSelectionInterval(selectedIdentification, selectedIdentification);
+                aIonsJCheckBoxActionPerformed(null);
+            }
+        }
+    }
+
     /**
      * Returns the X!TandemFile string.
      * 
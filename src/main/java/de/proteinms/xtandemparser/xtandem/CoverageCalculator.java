@@ -0,0 +1,250 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class computes the sequence coverage of the proteins from the
+ * positions of their peptide hits. The hits are collected in one pass, in
+ * primitive arrays, and grouped per protein when the coverage is requested:
+ * the intervals of every protein are then sorted and merged, and the spectral
+ * counts of the residues are accumulated from the interval boundaries. No
+ * object is created per hit, millions of hits can therefore be collected. The
+ * hits added, e.g. the domains of a whole file or of a filtered subset, are
+ * chosen by the caller, see XTandemFile.getProteinCoverage().
+ */
+public class CoverageCalculator {
+
+    /**
+     * This map has as key the protein key and as value the protein ordinal.
+     */
+    private HashMap<String, Integer> iProteinOrdinals = new HashMap<String, Integer>();
+    /**
+     * The protein keys in order of appearance.
+     */
+    private ArrayList<String> iProteinKeys = new ArrayList<String>();
+    /**
+     * The lengths of the proteins, indexed by protein ordinal, 0 if unknown.
+     */
+    private int[] iProteinLengths = new int[16];
+    /**
+     * The protein ordinals of the hits.
+     */
+    private int[] iHitProteins = new int[1024];
+    /**
+     * The start positions of the hits.
+     */
+    private int[] iHitStarts = new int[1024];
+    /**
+     * The end positions of the hits.
+     */
+    private int[] iHitEnds = new int[1024];
+    /**
+     * The number of hits.
+     */
+    private int iNumberOfHits = 0;
+    /**
+     * The offsets of the hits of every protein in iSortedHits, indexed by
+     * protein ordinal, null if the hits have not been grouped since the last
+     * hit was added.
+     */
+    private int[] iProteinOffsets = null;
+    /**
+     * The indexes of the hits, grouped by protein ordinal.
+     */
+    private int[] iSortedHits = null;
+
+    /**
+     * Adds a peptide hit covering the given positions of a protein.
+     *
+     * @param aProteinKey the protein key
+     * @param aStart the 1-based start position
+     * @param aEnd the 1-based inclusive end position
+     */
+    public void addHit(String aProteinKey, int aStart, int aEnd) {
+        if (aStart < 1 || aEnd < aStart) {
+            throw new IllegalArgumentException("Invalid positions " + aStart + "-" + aEnd + " for protein " + aProteinKey + ".");
+        }
+        int proteinOrdinal = getProteinOrdinal(aProteinKey);
+        if (iNumberOfHits == iHitProteins.length) {
+            int length = 2 * iHitProteins.length;
+            iHitProteins = Arrays.copyOf(iHitProteins, length);
+            iHitStarts = Arrays.copyOf(iHitStarts, length);
+            iHitEnds = Arrays.copyOf(iHitEnds, length);
+        }
+        iHitProteins[iNumberOfHits] = proteinOrdinal;
+        iHitStarts[iNumberOfHits] = aStart;
+        iHitEnds[iNumberOfHits] = aEnd;
+        iNumberOfHits++;
+        iProteinOffsets = null;
+    }
+
+    /**
+     * Adds the positions of the given domain to the coverage of its protein.
+     * Domains without protein key or positions are ignored.
+     *
+     * @param aDomain the domain
+     */
+    public void addDomain(Domain aDomain) {
+        if (aDomain.getProteinKey() != null && aDomain.getDomainStart() >= 1 && aDomain.getDomainEnd() >= aDomain.getDomainStart()) {
+            addHit(aDomain.getProteinKey(), aDomain.getDomainStart(), aDomain.getDomainEnd());
+        }
+    }
+
+    /**
+     * Sets the length of a protein, e.g. the end of its peptide segment or the
+     * length of its sequence in the FASTA file. The largest length given is
+     * kept, and the length of a protein is never shorter than the furthest end
+     * of its hits.
+     *
+     * @param aProteinKey the protein key
+     * @param aLength the length of the protein
+     */
+    public void setProteinLength(String aProteinKey, int aLength) {
+        int proteinOrdinal = getProteinOrdinal(aProteinKey);
+        iProteinLengths[proteinOrdinal] = Math.max(iProteinLengths[proteinOrdinal], aLength);
+    }
+
+    /**
+     * Returns the keys of the proteins, in order of appearance.
+     *
+     * @return the protein keys
+     */
+    public ArrayList<String> getProteinKeys() {
+        return iProteinKeys;
+    }
+
+    /**
+     * Returns the number of hits added.
+     *
+     * @return the number of hits
+     */
+    public int getNumberOfHits() {
+        return iNumberOfHits;
+    }
+
+    /**
+     * Returns the coverage of the given protein.
+     *
+     * @param aProteinKey the protein key
+     * @return the coverage of the protein, null if the protein is unknown
+     */
+    public ProteinCoverage getCoverage(String aProteinKey) {
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            return null;
+        }
+        groupHits();
+        return getCoverage(proteinOrdinal, new long[0]);
+    }
+
+    /**
+     * Returns the coverage of all the proteins, in order of appearance.
+     *
+     * @return the protein coverages
+     */
+    public ArrayList<ProteinCoverage> getCoverages() {
+        groupHits();
+        ArrayList<ProteinCoverage> coverages = new ArrayList<ProteinCoverage>(iProteinKeys.size());
+        int maxHits = 0;
+        for (int i = 0; i < iProteinKeys.size(); i++) {
+            maxHits = Math.max(maxHits, iProteinOffsets[i + 1] - iProteinOffsets[i]);
+        }
+        long[] buffer = new long[maxHits];
+        for (int i = 0; i < iProteinKeys.size(); i++) {
+            coverages.add(getCoverage(i, buffer));
+        }
+        return coverages;
+    }
+
+    /**
+     * Returns the ordinal of the given protein, adding the protein if new.
+     *
+     * @param aProteinKey the protein key
+     * @return the protein ordinal
+     */
+    private int getProteinOrdinal(String aProteinKey) {
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            proteinOrdinal = iProteinKeys.size();
+            iProteinOrdinals.put(aProteinKey, proteinOrdinal);
+            iProteinKeys.add(aProteinKey);
+            if (proteinOrdinal == iProteinLengths.length) {
+                iProteinLengths = Arrays.copyOf(iProteinLengths, 2 * iProteinLengths.length);
+            }
+            iProteinOffsets = null;
+        }
+        return proteinOrdinal;
+    }
+
+    /**
+     * Groups the hits by protein ordinal, with a counting sort, unless done
+     * since the last hit was added.
+     */
+    private void groupHits() {
+        if (iProteinOffsets != null) {
+            return;
+        }
+        int[] offsets = new int[iProteinKeys.size() + 1];
+        for (int i = 0; i < iNumberOfHits; i++) {
+            offsets[iHitProteins[i] + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] positions = Arrays.copyOf(offsets, offsets.length - 1);
+        iSortedHits = new int[iNumberOfHits];
+        for (int i = 0; i < iNumberOfHits; i++) {
+            iSortedHits[positions[iHitProteins[i]]++] = i;
+        }
+        iProteinOffsets = offsets;
+    }
+
+    /**
+     * Computes the coverage of a protein from its grouped hits.
+     *
+     * @param aProteinOrdinal the protein ordinal
+     * @param aBuffer a buffer for the packed intervals, not used if too small
+     * @return the coverage of the protein
+     */
+    private ProteinCoverage getCoverage(int aProteinOrdinal, long[] aBuffer) {
+        int from = iProteinOffsets[aProteinOrdinal];
+        int numberOfHits = iProteinOffsets[aProteinOrdinal + 1] - from;
+
+        // the intervals are packed as start << 32 | end, sorting them sorts by start then end
+        long[] intervals = aBuffer.length >= numberOfHits ? aBuffer : new long[numberOfHits];
+        int length = iProteinLengths[aProteinOrdinal];
+        for (int i = 0; i < numberOfHits; i++) {
+            int hit = iSortedHits[from + i];
+            intervals[i] = ((long) iHitStarts[hit] << 32) | iHitEnds[hit];
+            length = Math.max(length, iHitEnds[hit]);
+        }
+        Arrays.sort(intervals, 0, numberOfHits);
+
+        // merge the overlapping and adjacent intervals, and mark the boundaries for the spectral counts
+        int[] starts = new int[numberOfHits];
+        int[] ends = new int[numberOfHits];
+        int numberOfIntervals = 0;
+        int[] counts = new int[length + 1];
+        for (int i = 0; i < numberOfHits; i++) {
+            int start = (int) (intervals[i] >>> 32);
+            int end = (int) intervals[i];
+            counts[start - 1]++;
+            counts[end]--;
+            if (numberOfIntervals > 0 && start <= ends[numberOfIntervals - 1] + 1) {
+                ends[numberOfIntervals - 1] = Math.max(ends[numberOfIntervals - 1], end);
+            } else {
+                starts[numberOfIntervals] = start;
+                ends[numberOfIntervals] = end;
+                numberOfIntervals++;
+            }
+        }
+        for (int i = 1; i < length; i++) {
+            counts[i] += counts[i - 1];
+        }
+
+        return new ProteinCoverage(iProteinKeys.get(aProteinOrdinal), length, numberOfHits, Arrays.copyOf(starts, numberOfIntervals),
+                Arrays.copyOf(ends, numberOfIntervals), Arrays.copyOf(counts, length));
+    }
+}
@@ -1,69 +1,73 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import java.io.Serializable;
+
 /**
- * Domain object.
+ * Domain object. A domain is a view on one occurrence of a PeptideHit: the
+ * sequence, masses and scores are those of the hit, shared by all the domains
+ * of the same spectrum with the same peptide and modifications, while the
+ * protein key, positions and flanking sequences are those of the occurrence.
+ * Setting a shared value copies the hit first if other occurrences share it,
+ * the domain then views its own copy and the other domains are not changed.
  *
  * @author Thilo Muth
  */
-public class Domain {
+public class Domain implements Serializable {
 
     /**
      * This String contains the domain identifier (spectrum#).(i#).(domain#) as
      * present in the X!Tandem file. <b>Note: This might not be unique!</b>
      */
     private String iDomainID = null;
-    /**
-     * The protein key
-     */
-    private String proteinKey;
     /**
      * The domain key (unique)
      */
     private String domainKey;
     /**
-     * Contains the domain start position == first residue of the domain
-     */
-    private int iDomainStart = 0;
-    /**
-     * Contains the domain end position == last residue of the domain
-     */
-    private int iDomainEnd = 0;
-    /**
-     * This double holds the expectation value for the peptide identification
+     * The peptide-spectrum hit holding the values of the domain.
      */
-    private double iDomainExpect = 0;
+    private PeptideHit iHit;
     /**
-     * This double holds the calculated peptide mass + a proton
+     * The index of the occurrence of the hit viewed by the domain.
      */
-    private double iDomainMz = 0;
-    /**
-     * This double holds the spectrum mh minus the calculated mh
-     */
-    private double iDomainDeltaMz = 0;
-    /**
-     * This double hold Tandem's score for the identification
-     */
-    private double iDomainHyperScore = 0;
-    /**
-     * This double holds the next score of the domain
-     */
-    private double iDomainNextScore = 0;
+    private int iOccurrence;
+
     /**
-     * This String holds the upstream flanking sequence
+     * Constructor for a domain with its own hit.
      */
-    private String iUpFlankSequence = null;
+    public Domain() {
+        iHit = new PeptideHit();
+        iOccurrence = iHit.addOccurrence(null, 0, 0, null, null);
+    }
+
     /**
-     * This String holds the downstream flanking sequence
+     * Constructor for a domain viewing an occurrence of the given hit.
+     *
+     * @param aHit the peptide-spectrum hit
+     * @param aOccurrence the index of the occurrence
      */
-    private String iDownFlankSequence = null;
+    public Domain(PeptideHit aHit, int aOccurrence) {
+        iHit = aHit;
+        iOccurrence = aOccurrence;
+    }
+
     /**
-     * This String presents the sequence of the domain
+     * Returns the peptide-spectrum hit holding the values of the domain.
+     *
+     * @return the peptide-spectrum hit
      */
-    private String iDomainSequence = null;
+    public PeptideHit getPeptideHit() {
+        return iHit;
+    }
+
     /**
-     * Contains the total of missed cleavages
+     * Returns the index of the occurrence of the hit viewed by the domain.
+     *
+     * @return the index of the occurrence
      */
-    private int iMissedCleavages = 0;
+    public int getOccurrence() {
+        return iOccurrence;
+    }
 
     /**
      * Returns the domain id of the peptide.
@@ -104,10 +108,10 @@ public class Domain {
     /**
      * Returns the domains start location.
      *
-     * @return iDomainStart the domain start
+     * @return the domain start
      */
     public int getDomainStart() {
-        return iDomainStart;
+        return iHit.getStart(iOccurrence);
     }
 
     /**
@@ -116,16 +120,16 @@ public class Domain {
      * @param domainStart the domain start
      */
     public void setDomainStart(int domainStart) {
-        iDomainStart = domainStart;
+        iHit.setStart(iOccurrence, domainStart);
     }
 
     /**
      * Returns the domain end location.
      *
-     * @return iDomainEnd the domain end
+     * @return the domain end
      */
     public int getDomainEnd() {
-        return iDomainEnd;
+        return iHit.getEnd(iOccurrence);
     }
 
     /**
@@ -134,16 +138,16 @@ public class Domain {
      * @param domainEnd the domain end
      */
     public void setDomainEnd(int domainEnd) {
-        iDomainEnd = domainEnd;
+        iHit.setEnd(iOccurrence, domainEnd);
     }
 
     /**
      * Returns the domain expect value.
      *
-     * @return iDomainExpect the domain expect
+     * @return the domain expect
      */
     public double getDomainExpect() {
-        return iDomainExpect;
+        return iHit.getExpect();
     }
 
     /**
@@ -152,16 +156,17 @@ public class Domain {
      * @param domainExpect the domain expect
      */
     public void setDomainExpect(double domainExpect) {
-        iDomainExpect = domainExpect;
+        detach();
+        iHit.setExpect(domainExpect);
     }
 
     /**
      * Returns the domain mh/mz of the peptide.
      *
-     * @return iDomainMz the domain mh/mz
+     * @return the domain mh/mz
      */
     public double getDomainMh() {
-        return iDomainMz;
+        return iHit.getMh();
     }
 
     /**
@@ -170,16 +175,17 @@ public class Domain {
      * @param domainMh the domain mh/mz
      */
     public void setDomainMh(double domainMh) {
-        this.iDomainMz = domainMh;
+        detach();
+        iHit.setMh(domainMh);
     }
 
     /**
      * Returns the domain delta mh/mz.
      *
-     * @return iDomainDeltaMz the domain delta mz
+     * @return the domain delta mz
      */
     public double getDomainDeltaMh() {
-        return iDomainDeltaMz;
+        return iHit.getDeltaMh();
     }
 
     /**
@@ -188,16 +194,17 @@ public class Domain {
      * @param domainDeltaMh the domain delta mh/mz
      */
     public void setDomainDeltaMh(double domainDeltaMh) {
-        this.iDomainDeltaMz = domainDeltaMh;
+        detach();
+        iHit.setDeltaMh(domainDeltaMh);
     }
 
     /**
      * Returns the domain hyper score.
      *
-     * @return iDomainHyperScore the domain hyper score
+     * @return the domain hyper score
      */
     public double getDomainHyperScore() {
-        return iDomainHyperScore;
+        return iHit.getHyperScore();
     }
 
     /**
@@ -206,16 +213,17 @@ public class Domain {
      * @param domainHyperScore the domain hyper score
      */
     public void setDomainHyperScore(double domainHyperScore) {
-        this.iDomainHyperScore = domainHyperScore;
+        detach();
+        iHit.setHyperScore(domainHyperScore);
     }
 
     /**
      * Returns the domain next score.
      *
-     * @return iDomainNextScore the domain next score
+     * @return the domain next score
      */
     public double getDomainNextScore() {
-        return iDomainNextScore;
+        return iHit.getNextScore();
     }
 
     /**
@@ -224,16 +232,17 @@ public class Domain {
      * @param domainNextScore the domain next score
      */
     public void setDomainNextScore(double domainNextScore) {
-        this.iDomainNextScore = domainNextScore;
+        detach();
+        iHit.setNextScore(domainNextScore);
     }
 
     /**
      * Returns the upstream flanking sequence of the peptide.
      *
-     * @return iUpFlankSequence the upstream flanking sequence
+     * @return the upstream flanking sequence
      */
     public String getUpFlankSequence() {
-        return iUpFlankSequence;
+        return iHit.getUpFlank(iOccurrence);
     }
 
     /**
@@ -242,16 +251,16 @@ public class Domain {
      * @param aUpFlankSequence the upstream flanking sequence
      */
     public void setUpFlankSequence(String aUpFlankSequence) {
-        this.iUpFlankSequence = aUpFlankSequence;
+        iHit.setUpFlank(iOccurrence, aUpFlankSequence);
     }
 
     /**
      * Returns the downstream flanking sequence of the peptide.
      *
-     * @return iDownFlankSequence the downstream flanking sequence
+     * @return the downstream flanking sequence
      */
     public String getDownFlankSequence() {
-        return iDownFlankSequence;
+        return iHit.getDownFlank(iOccurrence);
     }
 
     /**
@@ -260,16 +269,16 @@ public class Domain {
      * @param aDownFlankSequence the downstream flanking sequence
      */
     public void setDownFlankSequence(String aDownFlankSequence) {
-        this.iDownFlankSequence = aDownFlankSequence;
+        iHit.setDownFlank(iOccurrence, aDownFlankSequence);
     }
 
     /**
      * Returns the domain sequence as a string.
      *
-     * @return iDomainSequence the domain sequence
+     * @return the domain sequence
      */
     public String getDomainSequence() {
-        return iDomainSequence;
+        return iHit.getSequence();
     }
 
     /**
@@ -278,16 +287,17 @@ public class Domain {
      * @param aDomainSequence the domain sequence
      */
     public void setDomainSequence(String aDomainSequence) {
-        this.iDomainSequence = aDomainSequence;
+        detach();
+        iHit.setSequence(aDomainSequence);
     }
 
     /**
      * Returns the number of missed cleavages.
      *
-     * @return iMissedCleavages the number of missed cleavages
+     * @return the number of missed cleavages
      */
     public int getMissedCleavages() {
-        return iMissedCleavages;
+        return iHit.getMissedCleavages();
     }
 
     /**
@@ -296,7 +306,8 @@ public class Domain {
      * @param aMissedCleavages the number of missed cleavages
      */
     public void setMissedCleavages(int aMissedCleavages) {
-        this.iMissedCleavages = aMissedCleavages;
+        detach();
+        iHit.setMissedCleavages(aMissedCleavages);
     }
 
     /**
@@ -305,7 +316,7 @@ public class Domain {
      * @param proteinKey the protein key
      */
     public void setProteinKey(String proteinKey) {
-        this.proteinKey = proteinKey;
+        iHit.setProteinKey(iOccurrence, proteinKey);
     }
 
     /**
@@ -314,6 +325,17 @@ public class Domain {
      * @return the protein key
      */
     public String getProteinKey() {
-        return proteinKey;
+        return iHit.getProteinKey(iOccurrence);
+    }
+
+    /**
+     * Makes the domain view its own copy of the hit before a shared value is
+     * set, if other occurrences share the hit.
+     */
+    private void detach() {
+        if (iHit.getNumberOfOccurrences() > 1) {
+            iHit = iHit.copyOccurrence(iOccurrence);
+            iOccurrence = 0;
+        }
     }
 }
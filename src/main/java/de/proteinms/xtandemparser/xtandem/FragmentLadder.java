@@ -0,0 +1,165 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.interfaces.Peak;
+import java.util.Vector;
+
+/**
+ * This class holds the theoretical fragment ions of a peptide with given
+ * modifications and charge, as computed by the InSilicoDigester, in primitive
+ * arrays indexed by ion type. A ladder is immutable and can be shared by all
+ * the spectra identifying the same peptide, see FragmentLadderCache: only the
+ * matching of the experimental peaks is done per spectrum, and it returns new
+ * fragment ion objects.
+ */
+public class FragmentLadder {
+
+    /**
+     * The number of ion types, see the constants of the Ion interface.
+     */
+    private static final int NUMBER_OF_ION_TYPES = 15;
+    /**
+     * The m/z values of the ions, indexed by ion type.
+     */
+    private final double[][] iMzValues = new double[NUMBER_OF_ION_TYPES][];
+    /**
+     * The numbers of the ions, indexed by ion type.
+     */
+    private final int[][] iNumbers = new int[NUMBER_OF_ION_TYPES][];
+    /**
+     * The charges of the ions, indexed by ion type.
+     */
+    private final int[][] iCharges = new int[NUMBER_OF_ION_TYPES][];
+    /**
+     * The fragment mass error tolerance.
+     */
+    private final double iFragmentMassError;
+    /**
+     * The number of ions of all types.
+     */
+    private final int iNumberOfIons;
+
+    /**
+     * Creates the ladder of the ions computed by the given digester.
+     *
+     * @param aDigester the digester of the peptide
+     * @param aFragmentMassError the fragment mass error tolerance of the
+     * digester
+     */
+    public FragmentLadder(InSilicoDigester aDigester, double aFragmentMassError) {
+        iFragmentMassError = aFragmentMassError;
+        int numberOfIons = 0;
+        for (int type = 0; type < NUMBER_OF_ION_TYPES; type++) {
+            FragmentIon[] ions = aDigester.getTheoreticIons(type);
+            int count = 0;
+            for (FragmentIon ion : ions) {
+                if (ion != null) {
+                    count++;
+                }
+            }
+            iMzValues[type] = new double[count];
+            iNumbers[type] = new int[count];
+            iCharges[type] = new int[count];
+            count = 0;
+            for (FragmentIon ion : ions) {
+                if (ion != null) {
+                    iMzValues[type][count] = ion.getMZ();
+                    iNumbers[type][count] = ion.getNumber();
+                    iCharges[type][count] = (int) ion.getCharge();
+                    count++;
+                }
+            }
+            numberOfIons += count;
+        }
+        iNumberOfIons = numberOfIons;
+    }
+
+    /**
+     * Matches the theoretical ions of the given type with the experimental
+     * peaks, as InSilicoDigester.getMatchedIons(): an ion matches the first
+     * peak within the fragment mass error tolerance. When the peaks are sorted
+     * by m/z, the first peak is found by binary search.
+     *
+     * @param aIonType the ion type
+     * @param aPeaks the experimental peaks
+     * @return new fragment ions for the matched ions, with the intensity of
+     * their peak
+     */
+    public Vector<FragmentIon> getMatchedIons(int aIonType, Peak[] aPeaks) {
+        Vector<FragmentIon> matchedIons = new Vector<FragmentIon>();
+        double[] mzValues = iMzValues[aIonType];
+        boolean sorted = true;
+        for (int i = 1; i < aPeaks.length && sorted; i++) {
+            sorted = aPeaks[i - 1].getMZ() <= aPeaks[i].getMZ();
+        }
+        for (int i = 0; i < mzValues.length; i++) {
+            int index = sorted ? findSortedPeak(aPeaks, mzValues[i]) : findPeak(aPeaks, mzValues[i]);
+            if (index >= 0) {
+                FragmentIon ion = new FragmentIon(mzValues[i], aIonType, iNumbers[aIonType][i], iCharges[aIonType][i], iFragmentMassError);
+                ion.isMatch(new Peak[]{aPeaks[index]}, iFragmentMassError);
+                matchedIons.add(ion);
+            }
+        }
+        return matchedIons;
+    }
+
+    /**
+     * Returns the index of the first peak within the fragment mass error
+     * tolerance of the given m/z.
+     *
+     * @param aPeaks the experimental peaks
+     * @param aMz the theoretical m/z
+     * @return the index of the peak, -1 if none
+     */
+    private int findPeak(Peak[] aPeaks, double aMz) {
+        for (int i = 0; i < aPeaks.length; i++) {
+            double error = aPeaks[i].getMZ() - aMz;
+            if (-iFragmentMassError <= error && error <= iFragmentMassError) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first peak within the fragment mass error
+     * tolerance of the given m/z, the peaks being sorted by m/z.
+     *
+     * @param aPeaks the experimental peaks, sorted by m/z
+     * @param aMz the theoretical m/z
+     * @return the index of the peak, -1 if none
+     */
+    private int findSortedPeak(Peak[] aPeaks, double aMz) {
+        int low = 0;
+        int high = aPeaks.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (aPeaks[middle].getMZ() - aMz < -iFragmentMassError) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < aPeaks.length && aPeaks[low].getMZ() - aMz <= iFragmentMassError) {
+            return low;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of ions of all types.
+     *
+     * @return the number of ions
+     */
+    public int getNumberOfIons() {
+        return iNumberOfIons;
+    }
+
+    /**
+     * Returns the fragment mass error tolerance.
+     *
+     * @return the fragment mass error tolerance
+     */
+    public double getFragmentMassError() {
+        return iFragmentMassError;
+    }
+}
@@ -0,0 +1,261 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.interfaces.Modification;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches the theoretical fragment ladders of the peptides, so that
+ * the ladder of a peptide identified in many spectra is computed once. The
+ * ladders are keyed by the peptide sequence, the mass added to every residue
+ * by the modifications, the charge, the peptide mass and the fragment mass
+ * error tolerance, they can therefore be shared by several files. The cache
+ * is bounded: it is split in segments, each locked separately and removing
+ * its least recently used ladders when full, so that many threads can use it
+ * at once. The ladders are computed outside of the locks. The hits and misses
+ * are counted to tune the size of the cache.
+ */
+public class FragmentLadderCache {
+
+    /**
+     * The default maximal number of ladders.
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    /**
+     * The number of segments.
+     */
+    private static final int NUMBER_OF_SEGMENTS = 16;
+    /**
+     * The segments of the cache.
+     */
+    private final Segment[] iSegments = new Segment[NUMBER_OF_SEGMENTS];
+    /**
+     * The maximal number of ladders.
+     */
+    private final int iMaxSize;
+    /**
+     * The number of ladders found in the cache.
+     */
+    private final AtomicLong iHits = new AtomicLong();
+    /**
+     * The number of ladders computed.
+     */
+    private final AtomicLong iMisses = new AtomicLong();
+    /**
+     * The number of ladders removed to respect the maximal size.
+     */
+    private final AtomicLong iEvictions = new AtomicLong();
+
+    /**
+     * Constructor for a cache of DEFAULT_MAX_SIZE ladders.
+     */
+    public FragmentLadderCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor for a cache of the given size.
+     *
+     * @param aMaxSize the maximal number of ladders
+     */
+    public FragmentLadderCache(int aMaxSize) {
+        if (aMaxSize < NUMBER_OF_SEGMENTS) {
+            throw new IllegalArgumentException("The cache must hold at least " + NUMBER_OF_SEGMENTS + " ladders.");
+        }
+        iMaxSize = aMaxSize;
+        for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+            iSegments[i] = new Segment(aMaxSize / NUMBER_OF_SEGMENTS + (i < aMaxSize % NUMBER_OF_SEGMENTS ? 1 : 0));
+        }
+    }
+
+    /**
+     * Returns the ladder of the given domain, from the cache or computed by an
+     * InSilicoDigester.
+     *
+     * @param aPeptide the peptide of the domain
+     * @param aDomain the domain
+     * @param aModMap the modification map of the file of the domain
+     * @param aCharge the charge of the peptide
+     * @param aFragmentMassError the fragment ion annotation accuracy
+     * @return the ladder of the domain
+     */
+    public FragmentLadder getLadder(Peptide aPeptide, Domain aDomain, ModificationMap aModMap, int aCharge, double aFragmentMassError) {
+        String key = getKey(aDomain, aModMap, aCharge, aFragmentMassError);
+        Segment segment = iSegments[(key.hashCode() & Integer.MAX_VALUE) % NUMBER_OF_SEGMENTS];
+        FragmentLadder ladder;
+        synchronized (segment) {
+            ladder = segment.get(key);
+        }
+        if (ladder != null) {
+            iHits.incrementAndGet();
+            return ladder;
+        }
+        iMisses.incrementAndGet();
+        ladder = new FragmentLadder(new InSilicoDigester(aPeptide, aDomain, aModMap, XTandemFile.getMassesMap(), aCharge, aFragmentMassError),
+                aFragmentMassError);
+        synchronized (segment) {
+            segment.put(key, ladder);
+        }
+        return ladder;
+    }
+
+    /**
+     * Returns the number of ladders in the cache.
+     *
+     * @return the number of ladders
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : iSegments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the maximal number of ladders.
+     *
+     * @return the maximal number of ladders
+     */
+    public int getMaxSize() {
+        return iMaxSize;
+    }
+
+    /**
+     * Returns the number of ladders found in the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return iHits.get();
+    }
+
+    /**
+     * Returns the number of ladders computed because they were not in the
+     * cache.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return iMisses.get();
+    }
+
+    /**
+     * Returns the number of ladders removed to respect the maximal size.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return iEvictions.get();
+    }
+
+    /**
+     * Returns the fraction of the ladders found in the cache.
+     *
+     * @return the hit ratio, 0 if no ladder was requested
+     */
+    public double getHitRatio() {
+        long hits = iHits.get();
+        long requests = hits + iMisses.get();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Removes all the ladders and resets the counters.
+     */
+    public void clear() {
+        for (Segment segment : iSegments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        iHits.set(0);
+        iMisses.set(0);
+        iEvictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return size() + "/" + iMaxSize + " ladders, " + getHits() + " hits, " + getMisses() + " misses, "
+                + getEvictions() + " evictions, hit ratio " + Math.round(1000 * getHitRatio()) / 10.0 + "%";
+    }
+
+    /**
+     * Returns the key of the ladder of the given domain. The modifications are
+     * located as in the InSilicoDigester, the masses of the modifications of
+     * the same residue are summed.
+     *
+     * @param aDomain the domain
+     * @param aModMap the modification map of the file of the domain
+     * @param aCharge the charge of the peptide
+     * @param aFragmentMassError the fragment ion annotation accuracy
+     * @return the key of the ladder
+     */
+    static String getKey(Domain aDomain, ModificationMap aModMap, int aCharge, double aFragmentMassError) {
+        String sequence = aDomain.getDomainSequence();
+        HashMap<Integer, Double> modificationMasses = new HashMap<Integer, Double>();
+        addModifications(modificationMasses, aModMap.getFixedModifications(aDomain.getDomainKey()), aDomain.getDomainStart());
+        addModifications(modificationMasses, aModMap.getVariableModifications(aDomain.getDomainKey()), aDomain.getDomainStart());
+        StringBuilder key = new StringBuilder(sequence);
+        for (int i = 0; i < sequence.length(); i++) {
+            Double mass = modificationMasses.get(i);
+            if (mass != null) {
+                key.append(PeptideIndex.MODIFICATION_START).append(i + 1).append(':').append(mass).append(']');
+            }
+        }
+        key.append('/').append(aCharge).append('/').append(aDomain.getDomainMh()).append('/').append(aFragmentMassError);
+        return key.toString();
+    }
+
+    /**
+     * Adds the masses of the given modifications to the masses of their
+     * residues.
+     *
+     * @param aModificationMasses the modification masses by residue index
+     * @param aModifications the modifications
+     * @param aDomainStart the start of the domain in the protein
+     */
+    private static void addModifications(HashMap<Integer, Double> aModificationMasses, List<Modification> aModifications, int aDomainStart) {
+        for (Modification modification : aModifications) {
+            int index = Integer.parseInt(modification.getLocation()) - aDomainStart;
+            Double mass = aModificationMasses.get(index);
+            aModificationMasses.put(index, mass == null ? modification.getMass() : mass + modification.getMass());
+        }
+    }
+
+    /**
+     * A segment of the cache, removing its least recently used ladder when
+     * full.
+     */
+    private class Segment extends LinkedHashMap<String, FragmentLadder> {
+
+        /**
+         * The maximal number of ladders of the segment.
+         */
+        private final int iCapacity;
+
+        /**
+         * Constructor for a segment.
+         *
+         * @param aCapacity the maximal number of ladders
+         */
+        public Segment(int aCapacity) {
+            super(16, 0.75f, true);
+            iCapacity = aCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FragmentLadder> aEldest) {
+            if (size() > iCapacity) {
+                iEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
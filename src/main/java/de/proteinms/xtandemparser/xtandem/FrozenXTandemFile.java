@@ -0,0 +1,295 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.parser.XTandemFilter;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * This class is a read-only view of a loaded xtandem file, returned by
+ * XTandemFile.freeze(). All the parts of the file built lazily by
+ * XTandemFile are built before the view is created and are held in final
+ * fields, the view is therefore safely published to all the threads and its
+ * getters read without locking. The lists and maps returned cannot be
+ * modified, nor can the protein groups, the key lists of the indexes and
+ * the hit lists, which are trimmed by the parser and reject new hits. The
+ * other objects of the model must not be modified either, and neither must
+ * the frozen xtandem file.
+ * <p>
+ * The support data, the fragment ions, the domains of a protein, the protein
+ * sequences and the protein coverage are computed on demand from the frozen
+ * parts of the file, they are new objects for every call and can be
+ * modified by the caller. The fragment ladder cache and the FASTA file are
+ * those of the xtandem file when it was frozen, later calls to its setters
+ * do not change the view.
+ */
+public final class FrozenXTandemFile {
+
+    /**
+     * The frozen xtandem file, used for the values computed on demand.
+     */
+    private final XTandemFile iXTandemFile;
+    /**
+     * The cache of the theoretical fragment ladders, null to compute the
+     * ladders for every call.
+     */
+    private final FragmentLadderCache iLadderCache;
+    /**
+     * The FASTA file the protein sequences are read from, null to use the
+     * FASTA file given for the peptides in the xtandem file.
+     */
+    private final File iFastaFile;
+    /**
+     * The filename of the xtandem xml file.
+     */
+    private final String iFileName;
+    /**
+     * The input parameters.
+     */
+    private final InputParams iInputParams;
+    /**
+     * The perform parameters.
+     */
+    private final PerformParams iPerformParams;
+    /**
+     * The protein map.
+     */
+    private final ProteinMap iProteinMap;
+    /**
+     * The peptide map.
+     */
+    private final PeptideMap iPeptideMap;
+    /**
+     * The modification map.
+     */
+    private final ModificationMap iModMap;
+    /**
+     * The peptide index, null if not available.
+     */
+    private final PeptideIndex iPeptideIndex;
+    /**
+     * The unmodifiable list of the spectra.
+     */
+    private final List<Spectrum> iSpectraList;
+    /**
+     * The unmodifiable map from the spectrum ids to the spectrum numbers.
+     */
+    private final Map<String, Integer> iIdToNumberMap;
+    /**
+     * The unmodifiable list of the protein groups.
+     */
+    private final List<ProteinGroup> iProteinGroups;
+
+    /**
+     * Creates the read-only view of an xtandem file whose lazily built parts
+     * have all been built, see XTandemFile.freeze().
+     *
+     * @param aXTandemFile the xtandem file
+     * @param aIdToNumberMap the map from the spectrum ids to the spectrum
+     * numbers
+     */
+    FrozenXTandemFile(XTandemFile aXTandemFile, HashMap<String, Integer> aIdToNumberMap) {
+        iXTandemFile = aXTandemFile;
+        iLadderCache = aXTandemFile.getFragmentLadderCache();
+        iFastaFile = aXTandemFile.getFastaFile();
+        iFileName = aXTandemFile.getFileName();
+        iInputParams = aXTandemFile.getInputParameters();
+        iPerformParams = aXTandemFile.getPerformParameters();
+        iProteinMap = aXTandemFile.getProteinMap();
+        iPeptideMap = aXTandemFile.getPeptideMap();
+        iModMap = aXTandemFile.getModificationMap();
+        iPeptideIndex = aXTandemFile.getPeptideIndex();
+        iSpectraList = Collections.unmodifiableList(aXTandemFile.getSpectraList());
+        iIdToNumberMap = Collections.unmodifiableMap(aIdToNumberMap);
+        iProteinGroups = iProteinMap.getProteinGroups();
+    }
+
+    /**
+     * Returns the path and the name of the X!Tandem file.
+     *
+     * @return the file name
+     */
+    public String getFileName() {
+        return iFileName;
+    }
+
+    /**
+     * Returns the input parameters.
+     *
+     * @return the input parameters
+     */
+    public InputParams getInputParameters() {
+        return iInputParams;
+    }
+
+    /**
+     * Returns the perform parameters.
+     *
+     * @return the perform parameters
+     */
+    public PerformParams getPerformParameters() {
+        return iPerformParams;
+    }
+
+    /**
+     * Returns the protein map.
+     *
+     * @return the protein map
+     */
+    public ProteinMap getProteinMap() {
+        return iProteinMap;
+    }
+
+    /**
+     * Returns the groups of proteins identified by the same set of peptide
+     * sequences, see ProteinMap.getProteinGroups().
+     *
+     * @return the unmodifiable list of the protein groups
+     */
+    public List<ProteinGroup> getProteinGroups() {
+        return iProteinGroups;
+    }
+
+    /**
+     * Returns the peptide map.
+     *
+     * @return the peptide map
+     */
+    public PeptideMap getPeptideMap() {
+        return iPeptideMap;
+    }
+
+    /**
+     * Returns the modification map.
+     *
+     * @return the modification map
+     */
+    public ModificationMap getModificationMap() {
+        return iModMap;
+    }
+
+    /**
+     * Returns the index from the peptides to their hits, see
+     * XTandemFile.getPeptideIndex().
+     *
+     * @return the peptide index, null if not available
+     */
+    public PeptideIndex getPeptideIndex() {
+        return iPeptideIndex;
+    }
+
+    /**
+     * Returns all the spectra.
+     *
+     * @return the unmodifiable list of the spectra
+     */
+    public List<Spectrum> getSpectraList() {
+        return iSpectraList;
+    }
+
+    /**
+     * Returns an iterator over all the spectra.
+     *
+     * @return the iterator
+     */
+    public Iterator<Spectrum> getSpectraIterator() {
+        return iSpectraList.iterator();
+    }
+
+    /**
+     * Returns the spectrum with the given number.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the spectrum
+     */
+    public Spectrum getSpectrum(int aSpectrumNumber) {
+        return iSpectraList.get(aSpectrumNumber - 1);
+    }
+
+    /**
+     * Returns the spectrum number for the given spectrum id.
+     *
+     * @param aSpectrumID the spectrum id
+     * @return the spectrum number, -1 if the id is unknown
+     */
+    public int getSpectrumNumberForId(String aSpectrumID) {
+        Integer spectrumNumber = iIdToNumberMap.get(aSpectrumID);
+        return spectrumNumber == null ? -1 : spectrumNumber;
+    }
+
+    /**
+     * Returns the total number of spectra.
+     *
+     * @return the number of spectra
+     */
+    public int getSpectraNumber() {
+        return iSpectraList.size();
+    }
+
+    /**
+     * Returns the support data of the given spectrum, read from the support
+     * data of the frozen file, a new object for every call.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the support data
+     */
+    public SupportData getSupportData(int aSpectrumNumber) {
+        return iXTandemFile.getSupportData(aSpectrumNumber);
+    }
+
+    /**
+     * Returns all the domains matching the given protein, see
+     * XTandemFile.getDomainsForProtein().
+     *
+     * @param aProteinID the protein id
+     * @return a new list of the domains matching the protein
+     */
+    public List<Domain> getDomainsForProtein(String aProteinID) {
+        return iXTandemFile.getDomainsForProtein(aProteinID);
+    }
+
+    /**
+     * Returns the fragment ions of the given peptide, see
+     * XTandemFile.getFragmentIonsForPeptide(). The ladder is taken from the
+     * ladder cache of the file when it was frozen, the matched ions are new
+     * objects for every call.
+     *
+     * @param aPeptide the peptide
+     * @param aDomain the domain
+     * @param aFragmentIonAccuracy the fragment ion annotation accuracy
+     * @return the vector containing the b ions and the y ions
+     */
+    public Vector getFragmentIonsForPeptide(Peptide aPeptide, Domain aDomain, double aFragmentIonAccuracy) {
+        return iXTandemFile.getFragmentIonsForPeptide(aPeptide, aDomain, aFragmentIonAccuracy, iLadderCache);
+    }
+
+    /**
+     * Returns the full sequence of the given protein, see
+     * XTandemFile.getProteinSequence(), read from the FASTA file set when the
+     * file was frozen.
+     *
+     * @param aProteinID the protein id
+     * @return the protein sequence, null if unknown
+     * @throws IOException if the FASTA file could not be read or indexed
+     */
+    public String getProteinSequence(String aProteinID) throws IOException {
+        return iXTandemFile.getProteinSequence(aProteinID, iFastaFile);
+    }
+
+    /**
+     * Returns the sequence coverage of the proteins, see
+     * XTandemFile.getProteinCoverage().
+     *
+     * @param aFilter the criteria the spectra and domains have to pass to be
+     * counted, null to count all the domains
+     * @return a new calculator holding the coverage of the proteins
+     */
+    public CoverageCalculator getProteinCoverage(XTandemFilter aFilter) {
+        return iXTandemFile.getProteinCoverage(aFilter);
+    }
+}
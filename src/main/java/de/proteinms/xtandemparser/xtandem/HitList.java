@@ -0,0 +1,185 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * This class holds a list of hits, i.e. (spectrum number, peptide index,
+ * domain index) triples, packed in a single int array. The peptide index and
+ * the domain index are the 1-based counters used in the peptide and domain
+ * keys, the hit (3, 2, 1) is thus the domain with the key s3_p2_d1. Once
+ * trimmed the list cannot be modified anymore, the lists handed out by the
+ * trimmed indexes are thus read-only.
+ */
+public class HitList implements Serializable {
+
+    /**
+     * The packed hits, three ints per hit.
+     */
+    private int[] iHits;
+    /**
+     * The number of hits in the list.
+     */
+    private int iSize = 0;
+    /**
+     * True if the list is trimmed, no hits can be added then.
+     */
+    private boolean iTrimmed = false;
+
+    /**
+     * Constructor for an empty hit list.
+     */
+    public HitList() {
+        iHits = new int[6];
+    }
+
+    /**
+     * Adds a hit to the list.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aPeptideIndex the index of the peptide in the spectrum
+     * @param aDomainIndex the index of the domain in the peptide
+     * @throws IllegalStateException if the list is trimmed
+     */
+    public void add(int aSpectrumNumber, int aPeptideIndex, int aDomainIndex) {
+        if (iTrimmed) {
+            throw new IllegalStateException("No hits can be added to a trimmed hit list.");
+        }
+        if (3 * iSize + 3 > iHits.length) {
+            int[] hits = new int[Math.max(6, 2 * iHits.length)];
+            System.arraycopy(iHits, 0, hits, 0, 3 * iSize);
+            iHits = hits;
+        }
+        iHits[3 * iSize] = aSpectrumNumber;
+        iHits[3 * iSize + 1] = aPeptideIndex;
+        iHits[3 * iSize + 2] = aDomainIndex;
+        iSize++;
+    }
+
+    /**
+     * Shrinks the underlying array to the number of hits. No hits can be
+     * added after this.
+     */
+    public void trim() {
+        iTrimmed = true;
+        if (iHits.length > 3 * iSize) {
+            int[] hits = new int[3 * iSize];
+            System.arraycopy(iHits, 0, hits, 0, 3 * iSize);
+            iHits = hits;
+        }
+    }
+
+    /**
+     * Returns true if the list is trimmed.
+     *
+     * @return true if the list is trimmed
+     */
+    public boolean isTrimmed() {
+        return iTrimmed;
+    }
+
+    /**
+     * Returns the number of hits.
+     *
+     * @return the number of hits
+     */
+    public int size() {
+        return iSize;
+    }
+
+    /**
+     * Returns the spectrum number of the given hit.
+     *
+     * @param aIndex the index of the hit
+     * @return the spectrum number
+     */
+    public int getSpectrumNumber(int aIndex) {
+        checkIndex(aIndex);
+        return iHits[3 * aIndex];
+    }
+
+    /**
+     * Returns the peptide index of the given hit.
+     *
+     * @param aIndex the index of the hit
+     * @return the index of the peptide in the spectrum
+     */
+    public int getPeptideIndex(int aIndex) {
+        checkIndex(aIndex);
+        return iHits[3 * aIndex + 1];
+    }
+
+    /**
+     * Returns the domain index of the given hit.
+     *
+     * @param aIndex the index of the hit
+     * @return the index of the domain in the peptide
+     */
+    public int getDomainIndex(int aIndex) {
+        checkIndex(aIndex);
+        return iHits[3 * aIndex + 2];
+    }
+
+    /**
+     * Returns the domain key of the given hit.
+     *
+     * @param aIndex the index of the hit
+     * @return the domain key
+     */
+    public String getDomainKey(int aIndex) {
+        return "s" + getSpectrumNumber(aIndex) + "_p" + getPeptideIndex(aIndex) + "_d" + getDomainIndex(aIndex);
+    }
+
+    /**
+     * Writes the hits in compact form, the spectrum numbers delta encoded.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the hits could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeVarInt(iSize);
+        int previousSpectrum = 0;
+        for (int i = 0; i < iSize; i++) {
+            aOutput.writeSignedVarInt(iHits[3 * i] - previousSpectrum);
+            aOutput.writeVarInt(iHits[3 * i + 1]);
+            aOutput.writeVarInt(iHits[3 * i + 2]);
+            previousSpectrum = iHits[3 * i];
+        }
+    }
+
+    /**
+     * Reads hits written by writeCompact. The list read is trimmed.
+     *
+     * @param aInput the compact input
+     * @return the hits
+     * @throws IOException if the hits could not be read
+     */
+    public static HitList readCompact(CompactInput aInput) throws IOException {
+        HitList hits = new HitList();
+        int size = aInput.readVarInt();
+        hits.iHits = new int[3 * size];
+        int spectrum = 0;
+        for (int i = 0; i < size; i++) {
+            spectrum += aInput.readSignedVarInt();
+            hits.iHits[3 * i] = spectrum;
+            hits.iHits[3 * i + 1] = aInput.readVarInt();
+            hits.iHits[3 * i + 2] = aInput.readVarInt();
+        }
+        hits.iSize = size;
+        hits.iTrimmed = true;
+        return hits;
+    }
+
+    /**
+     * Checks that the given index is within the list.
+     *
+     * @param aIndex the index of the hit
+     */
+    private void checkIndex(int aIndex) {
+        if (aIndex < 0 || aIndex >= iSize) {
+            throw new IndexOutOfBoundsException("Hit index " + aIndex + " out of bounds for " + iSize + " hits.");
+        }
+    }
+}
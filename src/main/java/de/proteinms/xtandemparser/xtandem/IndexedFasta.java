@@ -0,0 +1,487 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class gives access to the protein sequences of a FASTA file without
+ * reading the whole file. The position of every sequence is stored in a
+ * sidecar index file next to the FASTA file, built once and rebuilt when the
+ * FASTA file changes, and the sequences are read from the FASTA file mapped
+ * in memory. The proteins are found by accession, i.e. the first word of the
+ * description line, so that the labels and descriptions of the X!Tandem
+ * proteins can be given directly. The proteins reversed by X!Tandem, whose
+ * label ends with :reversed, are given the reversed sequence.
+ * <p>
+ * The sequences read are kept in a cache bounded by the number of residues.
+ * The instances returned by getInstance() are shared by all the users of the
+ * same FASTA file, e.g. the X!Tandem files searched against the same
+ * database, which then share the cache. The instances can be read from
+ * several threads at the same time.
+ */
+public class IndexedFasta {
+
+    /**
+     * The extension of the index file, appended to the name of the FASTA
+     * file.
+     */
+    public static final String INDEX_EXTENSION = ".xtidx";
+    /**
+     * The default maximal number of residues kept in the cache.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+    /**
+     * The identifier at the beginning of the index files.
+     */
+    private static final int INDEX_MAGIC = 0x58544958;
+    /**
+     * The version of the index file format.
+     */
+    private static final int INDEX_VERSION = 1;
+    /**
+     * The suffix X!Tandem appends to the label of the reversed proteins.
+     */
+    static final String REVERSED_SUFFIX = ":reversed";
+    /**
+     * The size of the mapped segments of the FASTA file, not counting the
+     * overlap holding the sequences starting at the end of a segment.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    /**
+     * The shared instances, indexed by canonical FASTA file.
+     */
+    private static final HashMap<File, IndexedFasta> INSTANCES = new HashMap<File, IndexedFasta>();
+    /**
+     * The FASTA file.
+     */
+    private final File iFastaFile;
+    /**
+     * The length of the FASTA file when indexed.
+     */
+    private final long iFastaLength;
+    /**
+     * The modification time of the FASTA file when indexed.
+     */
+    private final long iFastaModified;
+    /**
+     * The accessions of the proteins, sorted.
+     */
+    private String[] iAccessions;
+    /**
+     * The position of the sequences in the FASTA file, in order of accession.
+     */
+    private long[] iOffsets;
+    /**
+     * The number of bytes of the sequences, line ends included, in order of
+     * accession.
+     */
+    private int[] iLengths;
+    /**
+     * The segments of the FASTA file mapped in memory.
+     */
+    private ByteBuffer[] iSegments;
+    /**
+     * The sequences read, indexed by accession, in order of access.
+     */
+    private final LinkedHashMap<String, String> iCache = new LinkedHashMap<String, String>(256, 0.75f, true);
+    /**
+     * The number of residues in the cache.
+     */
+    private long iCachedResidues = 0;
+    /**
+     * The maximal number of residues kept in the cache.
+     */
+    private long iCacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * Opens the given FASTA file, reading its index file or building it if
+     * missing or out of date. The index is kept in memory only if the index
+     * file cannot be written.
+     *
+     * @param aFastaFile the FASTA file
+     * @throws IOException if the FASTA file could not be read
+     */
+    public IndexedFasta(File aFastaFile) throws IOException {
+        if (!aFastaFile.isFile()) {
+            throw new IOException("FASTA file " + aFastaFile.getPath() + " not found.");
+        }
+        iFastaFile = aFastaFile;
+        iFastaLength = aFastaFile.length();
+        iFastaModified = aFastaFile.lastModified();
+        File indexFile = getIndexFile();
+        if (!indexFile.isFile() || !readIndex(indexFile)) {
+            buildIndex();
+            try {
+                writeIndex(indexFile);
+            } catch (IOException e) {
+                // the index is kept in memory only
+                indexFile.delete();
+            }
+        }
+        mapSegments();
+    }
+
+    /**
+     * Returns the instance shared by all the users of the given FASTA file.
+     * A new instance is opened if the FASTA file changed since the shared
+     * instance was opened.
+     *
+     * @param aFastaFile the FASTA file
+     * @return the shared instance
+     * @throws IOException if the FASTA file could not be read
+     */
+    public static IndexedFasta getInstance(File aFastaFile) throws IOException {
+        File file = aFastaFile.getCanonicalFile();
+        synchronized (INSTANCES) {
+            IndexedFasta fasta = INSTANCES.get(file);
+            if (fasta == null || fasta.iFastaLength != file.length() || fasta.iFastaModified != file.lastModified()) {
+                fasta = new IndexedFasta(file);
+                INSTANCES.put(file, fasta);
+            }
+            return fasta;
+        }
+    }
+
+    /**
+     * Returns the FASTA file.
+     *
+     * @return the FASTA file
+     */
+    public File getFastaFile() {
+        return iFastaFile;
+    }
+
+    /**
+     * Returns the index file of the FASTA file.
+     *
+     * @return the index file
+     */
+    public File getIndexFile() {
+        return new File(iFastaFile.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Returns the number of proteins of the FASTA file.
+     *
+     * @return the number of proteins
+     */
+    public int size() {
+        return iAccessions.length;
+    }
+
+    /**
+     * Returns true if the FASTA file holds the protein with the given label.
+     *
+     * @param aLabel the label, description or accession of the protein
+     * @return true if the protein is in the FASTA file
+     */
+    public boolean contains(String aLabel) {
+        return Arrays.binarySearch(iAccessions, getForwardAccession(aLabel)) >= 0;
+    }
+
+    /**
+     * Returns the sequence of the protein with the given label, from the
+     * cache or from the FASTA file.
+     *
+     * @param aLabel the label, description or accession of the protein
+     * @return the sequence, null if the protein is not in the FASTA file
+     */
+    public String getSequence(String aLabel) {
+        String accession = getForwardAccession(aLabel);
+        String sequence;
+        synchronized (iCache) {
+            sequence = iCache.get(accession);
+        }
+        if (sequence == null) {
+            int index = Arrays.binarySearch(iAccessions, accession);
+            if (index < 0) {
+                return null;
+            }
+            sequence = readSequence(index);
+            synchronized (iCache) {
+                if (iCache.put(accession, sequence) == null) {
+                    iCachedResidues += sequence.length();
+                }
+                evict();
+            }
+        }
+        if (aLabel.trim().endsWith(REVERSED_SUFFIX)) {
+            return new StringBuilder(sequence).reverse().toString();
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the maximal number of residues kept in the cache.
+     *
+     * @return the cache size in residues
+     */
+    public long getCacheSize() {
+        return iCacheSize;
+    }
+
+    /**
+     * Sets the maximal number of residues kept in the cache, 0 to disable the
+     * cache.
+     *
+     * @param aCacheSize the cache size in residues
+     */
+    public void setCacheSize(long aCacheSize) {
+        synchronized (iCache) {
+            iCacheSize = aCacheSize;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used sequences from the cache until the
+     * cache size is respected. The caller synchronizes on the cache.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, String>> entries = iCache.entrySet().iterator();
+        while (iCachedResidues > iCacheSize && entries.hasNext()) {
+            iCachedResidues -= entries.next().getValue().length();
+            entries.remove();
+        }
+    }
+
+    /**
+     * Returns the accession of a protein, i.e. the first word of the given
+     * label or description line.
+     *
+     * @param aLabel the label, description or accession of the protein
+     * @return the accession
+     */
+    public static String getAccession(String aLabel) {
+        String label = aLabel.trim();
+        if (label.startsWith(">")) {
+            label = label.substring(1);
+        }
+        for (int i = 0; i < label.length(); i++) {
+            if (Character.isWhitespace(label.charAt(i))) {
+                return label.substring(0, i);
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Returns the accession of the forward protein of the given label, i.e.
+     * its accession without the suffix X!Tandem appends to the labels of the
+     * reversed proteins.
+     *
+     * @param aLabel the label, description or accession of the protein
+     * @return the accession of the forward protein
+     */
+    private static String getForwardAccession(String aLabel) {
+        String accession = getAccession(aLabel);
+        if (accession.endsWith(REVERSED_SUFFIX)) {
+            return accession.substring(0, accession.length() - REVERSED_SUFFIX.length());
+        }
+        return accession;
+    }
+
+    /**
+     * Reads the sequence of the given protein from the mapped FASTA file.
+     *
+     * @param aIndex the index of the protein in order of accession
+     * @return the sequence
+     */
+    private String readSequence(int aIndex) {
+        if (iLengths[aIndex] == 0) {
+            return "";
+        }
+        long offset = iOffsets[aIndex];
+        ByteBuffer segment = iSegments[(int) (offset / SEGMENT_SIZE)].duplicate();
+        int position = (int) (offset % SEGMENT_SIZE);
+        char[] residues = new char[iLengths[aIndex]];
+        int count = 0;
+        for (int i = 0; i < iLengths[aIndex]; i++) {
+            int value = segment.get(position + i) & 0xFF;
+            if (value > ' ') {
+                residues[count++] = (char) value;
+            }
+        }
+        return new String(residues, 0, count);
+    }
+
+    /**
+     * Maps the FASTA file in memory, in segments overlapping by the length of
+     * the longest sequence so that every sequence is in a single segment.
+     *
+     * @throws IOException if the FASTA file could not be mapped
+     */
+    private void mapSegments() throws IOException {
+        int overlap = 0;
+        for (int length : iLengths) {
+            overlap = Math.max(overlap, length);
+        }
+        int numberOfSegments = (int) ((iFastaLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        iSegments = new ByteBuffer[numberOfSegments];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(iFastaFile, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            for (int i = 0; i < numberOfSegments; i++) {
+                long start = i * SEGMENT_SIZE;
+                long length = Math.min(iFastaLength - start, SEGMENT_SIZE + overlap);
+                // the mapping stays valid after the channel is closed
+                iSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Builds the index by reading the whole FASTA file.
+     *
+     * @throws IOException if the FASTA file could not be read
+     */
+    private void buildIndex() throws IOException {
+
+        HashMap<String, long[]> entries = new HashMap<String, long[]>();
+        InputStream input = new FileInputStream(iFastaFile);
+        try {
+            byte[] buffer = new byte[1024 * 1024];
+            StringBuilder header = null;
+            String accession = null;
+            long sequenceStart = 0;
+            long position = 0;
+            boolean lineStart = true;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++, position++) {
+                    byte value = buffer[i];
+                    if (lineStart && value == '>') {
+                        addEntry(entries, accession, sequenceStart, position);
+                        accession = null;
+                        header = new StringBuilder();
+                    } else if (header != null) {
+                        if (value == '\n' || value == '\r') {
+                            accession = getAccession(header.toString());
+                            header = null;
+                            sequenceStart = position + 1;
+                        } else {
+                            header.append((char) (value & 0xFF));
+                        }
+                    }
+                    lineStart = value == '\n' || value == '\r';
+                }
+            }
+            if (header != null) {
+                // description line without sequence at the end of the file
+                accession = getAccession(header.toString());
+                sequenceStart = position;
+            }
+            addEntry(entries, accession, sequenceStart, position);
+        } finally {
+            input.close();
+        }
+
+        iAccessions = entries.keySet().toArray(new String[entries.size()]);
+        Arrays.sort(iAccessions);
+        iOffsets = new long[iAccessions.length];
+        iLengths = new int[iAccessions.length];
+        for (int i = 0; i < iAccessions.length; i++) {
+            long[] entry = entries.get(iAccessions[i]);
+            iOffsets[i] = entry[0];
+            iLengths[i] = (int) entry[1];
+        }
+    }
+
+    /**
+     * Adds a protein to the index being built, unless a protein with the same
+     * accession was found before.
+     *
+     * @param aEntries the positions and lengths of the sequences, indexed by
+     * accession
+     * @param aAccession the accession, null if none
+     * @param aStart the position of the sequence
+     * @param aEnd the position after the sequence
+     * @throws IOException if the sequence is too long
+     */
+    private void addEntry(HashMap<String, long[]> aEntries, String aAccession, long aStart, long aEnd) throws IOException {
+        if (aAccession == null || aEntries.containsKey(aAccession)) {
+            return;
+        }
+        if (aEnd - aStart > Integer.MAX_VALUE / 2) {
+            throw new IOException("Sequence " + aAccession + " of " + iFastaFile.getName() + " too long.");
+        }
+        aEntries.put(aAccession, new long[]{aStart, aEnd - aStart});
+    }
+
+    /**
+     * Writes the index file.
+     *
+     * @param aIndexFile the index file
+     * @throws IOException if the index file could not be written
+     */
+    private void writeIndex(File aIndexFile) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(aIndexFile)));
+        try {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(INDEX_VERSION);
+            output.writeLong(iFastaLength);
+            output.writeLong(iFastaModified);
+            output.writeInt(iAccessions.length);
+            for (int i = 0; i < iAccessions.length; i++) {
+                output.writeUTF(iAccessions[i]);
+                output.writeLong(iOffsets[i]);
+                output.writeInt(iLengths[i]);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the index file if it matches the FASTA file.
+     *
+     * @param aIndexFile the index file
+     * @return true if the index was read, false if the index file is out of
+     * date or not valid
+     */
+    private boolean readIndex(File aIndexFile) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(aIndexFile)));
+            try {
+                if (input.readInt() != INDEX_MAGIC || input.readInt() != INDEX_VERSION
+                        || input.readLong() != iFastaLength || input.readLong() != iFastaModified) {
+                    return false;
+                }
+                int size = input.readInt();
+                String[] accessions = new String[size];
+                long[] offsets = new long[size];
+                int[] lengths = new int[size];
+                for (int i = 0; i < size; i++) {
+                    accessions[i] = input.readUTF();
+                    offsets[i] = input.readLong();
+                    lengths[i] = input.readInt();
+                }
+                iAccessions = accessions;
+                iOffsets = offsets;
+                iLengths = lengths;
+                return true;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package de.proteinms.xtandemparser.xtandem;
 
 import de.proteinms.xtandemparser.interfaces.Modification;
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.*;
@@ -47,6 +50,19 @@ public class ModificationMap implements Serializable {
         iPeptideMap = aPeptideMap;
     }
 
+    /**
+     * Constructor for a modification map read by readCompact.
+     *
+     * @param aPeptideMap the peptide map
+     * @param aInputParams the input parameters
+     */
+    private ModificationMap(PeptideMap aPeptideMap, InputParams aInputParams) {
+        iPeptideMap = aPeptideMap;
+        iInputParams = aInputParams;
+        iFixedModificationMap = new HashMap<String, Modification>();
+        iVarModificationMap = new HashMap<String, Modification>();
+    }
+
     /**
      * This method checks for fixed or variable modifications and builds the
      * maps.
@@ -350,6 +366,99 @@ public class ModificationMap implements Serializable {
         return varModList;
     }
 
+    /**
+     * Writes the modifications in compact form, domain by domain in the order
+     * of the peptide map. The peptide map and the input parameters are not
+     * written.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the modifications could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        HashMap<String, HashMap<String, Peptide>> peptides = iPeptideMap.getSpectrumAndPeptideMap();
+        for (int i = 1; i <= peptides.size(); i++) {
+            for (int j = 1; peptides.get("s" + i) != null && j <= iPeptideMap.getNumberOfPeptides(i); j++) {
+                List<Domain> domainList = iPeptideMap.getPeptideByIndex(i, j).getDomains();
+                for (int d = 0; domainList != null && d < domainList.size(); d++) {
+                    String domainKey = domainList.get(d).getDomainKey();
+                    writeModifications(aOutput, getFixedModifications(domainKey));
+                    writeModifications(aOutput, getVariableModifications(domainKey));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the given modifications of a domain in compact form.
+     *
+     * @param aOutput the compact output
+     * @param aModifications the modifications
+     * @throws IOException if the modifications could not be written
+     */
+    private void writeModifications(CompactOutput aOutput, ArrayList<Modification> aModifications) throws IOException {
+        aOutput.writeVarInt(aModifications.size());
+        for (Modification modification : aModifications) {
+            aOutput.writeString(modification.getName());
+            aOutput.writeDouble(modification.getMass());
+            aOutput.writeString(modification.getLocation());
+            aOutput.writeVarInt(modification.getNumber());
+            aOutput.writeBoolean(modification.isSubstitution());
+            aOutput.writeString(modification.getSubstitutedAminoAcid());
+        }
+    }
+
+    /**
+     * Reads modifications written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @param aPeptideMap the peptide map the modifications were written with
+     * @param aInputParams the input parameters
+     * @return the modification map
+     * @throws IOException if the modifications could not be read
+     */
+    public static ModificationMap readCompact(CompactInput aInput, PeptideMap aPeptideMap, InputParams aInputParams) throws IOException {
+        ModificationMap modificationMap = new ModificationMap(aPeptideMap, aInputParams);
+        HashMap<String, HashMap<String, Peptide>> peptides = aPeptideMap.getSpectrumAndPeptideMap();
+        for (int i = 1; i <= peptides.size(); i++) {
+            for (int j = 1; peptides.get("s" + i) != null && j <= aPeptideMap.getNumberOfPeptides(i); j++) {
+                List<Domain> domainList = aPeptideMap.getPeptideByIndex(i, j).getDomains();
+                for (int d = 0; domainList != null && d < domainList.size(); d++) {
+                    String domainKey = domainList.get(d).getDomainKey();
+                    readModifications(aInput, domainKey, true, modificationMap.iFixedModificationMap);
+                    readModifications(aInput, domainKey, false, modificationMap.iVarModificationMap);
+                }
+            }
+        }
+        return modificationMap;
+    }
+
+    /**
+     * Reads the modifications of a domain written by writeModifications.
+     *
+     * @param aInput the compact input
+     * @param aDomainKey the domain key
+     * @param aFixed true for fixed modifications, false for variable ones
+     * @param aModificationMap the map the modifications are added to
+     * @throws IOException if the modifications could not be read
+     */
+    private static void readModifications(CompactInput aInput, String aDomainKey, boolean aFixed,
+            HashMap<String, Modification> aModificationMap) throws IOException {
+        int numberOfModifications = aInput.readVarInt();
+        for (int m = 1; m <= numberOfModifications; m++) {
+            String name = aInput.readString();
+            double mass = aInput.readDouble();
+            String location = aInput.readString();
+            int number = aInput.readVarInt();
+            boolean substitution = aInput.readBoolean();
+            String substitutedAminoAcid = aInput.readString();
+            if (aFixed) {
+                aModificationMap.put(aDomainKey + "_m" + m, new FixedModification(name, mass, location, number, substitution, substitutedAminoAcid));
+            } else {
+                aModificationMap.put(aDomainKey + "_m" + m, new VariableModification(name, mass, location, number, substitution, substitutedAminoAcid));
+            }
+        }
+    }
+
     /**
      * Returns the variable modifications as list.
      *
@@ -0,0 +1,677 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * This class stores the fragment ion peaks of the spectra outside of the Java
+ * heap, either in direct memory or in a memory-mapped spill file, so that the
+ * peaks do not add to the old generation and to the garbage collection pauses
+ * however many spectra are loaded. The peaks are indexed by spectrum number
+ * and read through zero-copy read-only views: the m/z values as doubles and
+ * the intensities as floats, which represent exactly the integer intensities
+ * written by X!Tandem up to 2^24.
+ * <p>
+ * The store is filled first, then sealed, and only read afterwards. Once
+ * sealed it can be read from several threads at the same time.
+ * <p>
+ * In reduced precision mode the m/z values are stored as fixed-point
+ * integers, delta encoded in variable length, with a per spectrum scale: the
+ * smallest power of ten up to 10^MAX_DECIMALS representing all the m/z values
+ * of the spectrum exactly. The values written by X!Tandem, with three
+ * decimals, are thus kept exactly, and the worst-case error of values with
+ * more decimals is 0.5 * 10^-MAX_DECIMALS, i.e. 0.00005 Th or 0.05 ppm at
+ * 1000 Th, far below the fragment ion tolerances. The intensities are kept
+ * as floats and still read without copy, the m/z values are decoded on
+ * access, see getPeaks(). A peak then takes about 7 bytes, against 12 bytes
+ * in full precision and about 60 bytes in the lists of SupportData.
+ */
+public class PeakStore {
+
+    /**
+     * The size of the direct memory segments.
+     */
+    private static final int DIRECT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * The maximal size of the mapped segments of the spill file.
+     */
+    private static final int MAPPED_SEGMENT_SIZE = 256 * 1024 * 1024;
+    /**
+     * The maximal number of decimals of the m/z values in reduced precision
+     * mode.
+     */
+    public static final int MAX_DECIMALS = 4;
+    /**
+     * The powers of ten used as scale of the m/z values.
+     */
+    private static final double[] SCALES = {1, 10, 100, 1000, 10000};
+    /**
+     * True if the m/z values are stored in reduced precision.
+     */
+    private final boolean iReducedPrecision;
+    /**
+     * The buffer used to encode a spectrum in reduced precision.
+     */
+    private ByteBuffer iEncodeBuffer = null;
+    /**
+     * The spill file, null if the peaks are kept in direct memory.
+     */
+    private File iSpillFile = null;
+    /**
+     * The channel to the spill file, only open while the store is filled.
+     */
+    private FileChannel iChannel = null;
+    /**
+     * The buffer used to write a spectrum to the spill file.
+     */
+    private ByteBuffer iWriteBuffer = null;
+    /**
+     * The segments holding the peaks, mapped when the store is sealed for a
+     * spill file.
+     */
+    private ArrayList<ByteBuffer> iSegments = new ArrayList<ByteBuffer>();
+    /**
+     * The position of the segments in the spill file.
+     */
+    private ArrayList<Long> iSegmentStarts = new ArrayList<Long>();
+    /**
+     * The number of bytes used in the last segment.
+     */
+    private int iSegmentFill = 0;
+    /**
+     * The segment of every spectrum, indexed by spectrum number.
+     */
+    private int[] iSegmentIndexes = new int[0];
+    /**
+     * The offset of every spectrum in its segment, indexed by spectrum
+     * number.
+     */
+    private int[] iOffsets = new int[0];
+    /**
+     * The number of peaks of every spectrum plus one, 0 if the spectrum has
+     * no peaks in the store, indexed by spectrum number.
+     */
+    private int[] iCounts = new int[0];
+    /**
+     * The number of bytes stored.
+     */
+    private long iSize = 0;
+    /**
+     * True if the store is sealed.
+     */
+    private boolean iSealed = false;
+
+    /**
+     * Constructor for a store keeping the peaks in direct memory.
+     */
+    public PeakStore() {
+        this(false);
+    }
+
+    /**
+     * Constructor for a store keeping the peaks in direct memory, optionally
+     * in reduced precision.
+     *
+     * @param aReducedPrecision if true the m/z values are stored in reduced
+     * precision
+     */
+    public PeakStore(boolean aReducedPrecision) {
+        iReducedPrecision = aReducedPrecision;
+    }
+
+    /**
+     * Constructor for a store spilling the peaks to a temporary file in the
+     * given directory, mapped in memory when the store is sealed. The file is
+     * deleted when the store is closed, or else when the virtual machine
+     * exits.
+     *
+     * @param aDirectory the directory of the spill file, null for the default
+     * temporary directory
+     * @throws IOException if the spill file could not be created
+     */
+    public PeakStore(File aDirectory) throws IOException {
+        this(aDirectory, false);
+    }
+
+    /**
+     * Constructor for a store spilling the peaks to a temporary file in the
+     * given directory, optionally in reduced precision. The file is mapped in
+     * memory when the store is sealed, and deleted when the store is closed,
+     * or else when the virtual machine exits.
+     *
+     * @param aDirectory the directory of the spill file, null for the default
+     * temporary directory
+     * @param aReducedPrecision if true the m/z values are stored in reduced
+     * precision
+     * @throws IOException if the spill file could not be created
+     */
+    public PeakStore(File aDirectory, boolean aReducedPrecision) throws IOException {
+        iReducedPrecision = aReducedPrecision;
+        iSpillFile = File.createTempFile("xtandem-peaks", ".bin", aDirectory);
+        iSpillFile.deleteOnExit();
+        iChannel = new RandomAccessFile(iSpillFile, "rw").getChannel();
+        iSegmentStarts.add(0L);
+    }
+
+    /**
+     * Adds the peaks of a spectrum given as the whitespace separated values
+     * of the X!Tandem file.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aMzValues the m/z values
+     * @param aIntensities the intensities
+     * @throws IOException if the peaks could not be written to the spill file
+     */
+    public void add(int aSpectrumNumber, String aMzValues, String aIntensities) throws IOException {
+        double[] mzValues = parseValues(aMzValues);
+        double[] intensityValues = parseValues(aIntensities);
+        if (mzValues.length != intensityValues.length) {
+            throw new IllegalArgumentException("Spectrum " + aSpectrumNumber + " has " + mzValues.length
+                    + " m/z values and " + intensityValues.length + " intensities.");
+        }
+        float[] intensities = new float[intensityValues.length];
+        for (int i = 0; i < intensities.length; i++) {
+            intensities[i] = (float) intensityValues[i];
+        }
+        add(aSpectrumNumber, mzValues, intensities, mzValues.length);
+    }
+
+    /**
+     * Adds the peaks of a spectrum.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aMzValues the m/z values
+     * @param aIntensities the intensities
+     * @param aCount the number of peaks
+     * @throws IOException if the peaks could not be written to the spill file
+     */
+    public void add(int aSpectrumNumber, double[] aMzValues, float[] aIntensities, int aCount) throws IOException {
+        if (iSealed) {
+            throw new IllegalStateException("No peaks can be added to a sealed peak store.");
+        }
+        if (aSpectrumNumber < 1) {
+            throw new IllegalArgumentException("Invalid spectrum number: " + aSpectrumNumber + ".");
+        }
+        if (aSpectrumNumber < iCounts.length && iCounts[aSpectrumNumber] > 0) {
+            throw new IllegalArgumentException("The peaks of spectrum " + aSpectrumNumber + " are already stored.");
+        }
+        ByteBuffer record = null;
+        long length;
+        if (iReducedPrecision) {
+            record = encode(aMzValues, aIntensities, aCount);
+            length = record.remaining();
+        } else {
+            length = getRecordLength(aCount);
+        }
+        if (length > MAPPED_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Spectrum " + aSpectrumNumber + " has too many peaks: " + aCount + ".");
+        }
+        int recordLength = (int) length;
+
+        ByteBuffer target;
+        if (iChannel == null) {
+            ByteBuffer segment = iSegments.isEmpty() ? null : iSegments.get(iSegments.size() - 1);
+            if (segment == null || segment.capacity() - iSegmentFill < recordLength) {
+                segment = ByteBuffer.allocateDirect(Math.max(DIRECT_SEGMENT_SIZE, recordLength)).order(ByteOrder.nativeOrder());
+                iSegments.add(segment);
+                iSegmentFill = 0;
+            }
+            target = segment.duplicate().order(ByteOrder.nativeOrder());
+            target.position(iSegmentFill);
+        } else {
+            if (MAPPED_SEGMENT_SIZE - iSegmentFill < recordLength) {
+                iSegmentStarts.add(iSegmentStarts.get(iSegmentStarts.size() - 1) + iSegmentFill);
+                iSegmentFill = 0;
+            }
+            if (iWriteBuffer == null || iWriteBuffer.capacity() < recordLength) {
+                iWriteBuffer = ByteBuffer.allocate(Math.max(64 * 1024, recordLength)).order(ByteOrder.nativeOrder());
+            }
+            target = iWriteBuffer;
+            target.clear();
+        }
+
+        if (record != null) {
+            target.put(record);
+        } else {
+            int start = target.position();
+            for (int i = 0; i < aCount; i++) {
+                target.putDouble(aMzValues[i]);
+            }
+            for (int i = 0; i < aCount; i++) {
+                target.putFloat(aIntensities[i]);
+            }
+            target.position(start + recordLength);
+        }
+
+        if (iChannel != null) {
+            target.flip();
+            long position = iSegmentStarts.get(iSegmentStarts.size() - 1) + iSegmentFill;
+            while (target.hasRemaining()) {
+                position += iChannel.write(target, position);
+            }
+        }
+
+        ensureCapacity(aSpectrumNumber + 1);
+        iSegmentIndexes[aSpectrumNumber] = iChannel == null ? iSegments.size() - 1 : iSegmentStarts.size() - 1;
+        iOffsets[aSpectrumNumber] = iSegmentFill;
+        iCounts[aSpectrumNumber] = aCount + 1;
+        iSegmentFill += recordLength;
+        iSize += recordLength;
+    }
+
+    /**
+     * Seals the store: no peaks can be added afterwards, and the peaks can be
+     * read. The spill file is mapped in memory. Calling this method again has
+     * no effect.
+     *
+     * @throws IOException if the spill file could not be mapped
+     */
+    public void seal() throws IOException {
+        if (iSealed) {
+            return;
+        }
+        if (iChannel != null) {
+            try {
+                for (int i = 0; i < iSegmentStarts.size(); i++) {
+                    long start = iSegmentStarts.get(i);
+                    long length = i < iSegmentStarts.size() - 1 ? iSegmentStarts.get(i + 1) - start : iSegmentFill;
+                    iSegments.add(iChannel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.nativeOrder()));
+                }
+            } finally {
+                iChannel.close();
+                iChannel = null;
+                iWriteBuffer = null;
+            }
+        } else if (!iSegments.isEmpty()) {
+            // shrink the last segment to its content
+            ByteBuffer last = iSegments.get(iSegments.size() - 1);
+            if (last.capacity() > iSegmentFill) {
+                ByteBuffer source = last.duplicate();
+                source.position(0).limit(iSegmentFill);
+                ByteBuffer shrunk = ByteBuffer.allocateDirect(iSegmentFill).order(ByteOrder.nativeOrder());
+                shrunk.put(source);
+                iSegments.set(iSegments.size() - 1, shrunk);
+            }
+        }
+        iSealed = true;
+    }
+
+    /**
+     * Deletes the spill file, if any. The peaks already mapped stay readable,
+     * the memory is released when the store is garbage collected. If the file
+     * cannot be deleted while it is mapped, e.g. on Windows, it is deleted
+     * when the virtual machine exits.
+     *
+     * @throws IOException if the spill file could not be closed
+     */
+    public void close() throws IOException {
+        if (iChannel != null) {
+            iChannel.close();
+            iChannel = null;
+        }
+        if (iSpillFile != null) {
+            iSpillFile.delete();
+        }
+    }
+
+    /**
+     * Returns true if the peaks of the given spectrum are in the store.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return true if the peaks of the spectrum are in the store
+     */
+    public boolean contains(int aSpectrumNumber) {
+        return aSpectrumNumber > 0 && aSpectrumNumber < iCounts.length && iCounts[aSpectrumNumber] > 0;
+    }
+
+    /**
+     * Returns the number of peaks of the given spectrum.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the number of peaks, 0 if the spectrum is not in the store
+     */
+    public int getNumberOfPeaks(int aSpectrumNumber) {
+        return contains(aSpectrumNumber) ? iCounts[aSpectrumNumber] - 1 : 0;
+    }
+
+    /**
+     * Returns a read-only view of the m/z values of the given spectrum. In
+     * reduced precision mode the values are decoded in a new buffer.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the m/z values, null if the spectrum is not in the store
+     */
+    public DoubleBuffer getMzValues(int aSpectrumNumber) {
+        ByteBuffer record = getRecord(aSpectrumNumber);
+        if (record == null) {
+            return null;
+        }
+        int count = getNumberOfPeaks(aSpectrumNumber);
+        if (iReducedPrecision) {
+            double[] mzValues = new double[count];
+            decodeMzValues(record, count, mzValues);
+            return DoubleBuffer.wrap(mzValues).asReadOnlyBuffer();
+        }
+        record.limit(8 * count);
+        return record.slice().order(ByteOrder.nativeOrder()).asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the intensities of the given spectrum.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the intensities, null if the spectrum is not in the store
+     */
+    public FloatBuffer getIntensities(int aSpectrumNumber) {
+        ByteBuffer record = getRecord(aSpectrumNumber);
+        if (record == null) {
+            return null;
+        }
+        int count = getNumberOfPeaks(aSpectrumNumber);
+        if (!iReducedPrecision) {
+            record.position(8 * count);
+        }
+        record.limit(record.position() + 4 * count);
+        return record.slice().order(ByteOrder.nativeOrder()).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the peaks of the given spectrum to the given arrays, decoding
+     * the m/z values in reduced precision mode. The arrays can be reused from
+     * one spectrum to the other to avoid allocations.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aMzValues the array receiving the m/z values, at least as long
+     * as the number of peaks
+     * @param aIntensities the array receiving the intensities, at least as
+     * long as the number of peaks
+     * @return the number of peaks copied, 0 if the spectrum is not in the
+     * store
+     */
+    public int getPeaks(int aSpectrumNumber, double[] aMzValues, float[] aIntensities) {
+        ByteBuffer record = getRecord(aSpectrumNumber);
+        if (record == null) {
+            return 0;
+        }
+        int count = getNumberOfPeaks(aSpectrumNumber);
+        if (aMzValues.length < count || aIntensities.length < count) {
+            throw new IllegalArgumentException("Spectrum " + aSpectrumNumber + " has " + count + " peaks, the arrays are too short.");
+        }
+        if (iReducedPrecision) {
+            record.order(ByteOrder.nativeOrder()).asFloatBuffer().get(aIntensities, 0, count);
+            decodeMzValues(record, count, aMzValues);
+        } else {
+            record.order(ByteOrder.nativeOrder()).asDoubleBuffer().get(aMzValues, 0, count);
+            record.position(8 * count);
+            record.slice().order(ByteOrder.nativeOrder()).asFloatBuffer().get(aIntensities, 0, count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes stored.
+     *
+     * @return the number of bytes stored
+     */
+    public long getSize() {
+        return iSize;
+    }
+
+    /**
+     * Returns true if the peaks are spilled to a mapped file, false if they
+     * are kept in direct memory.
+     *
+     * @return true if the peaks are spilled to a file
+     */
+    public boolean isMapped() {
+        return iSpillFile != null;
+    }
+
+    /**
+     * Returns true if the m/z values are stored in reduced precision.
+     *
+     * @return true if the m/z values are stored in reduced precision
+     */
+    public boolean isReducedPrecision() {
+        return iReducedPrecision;
+    }
+
+    /**
+     * Returns true if the store is sealed.
+     *
+     * @return true if the store is sealed
+     */
+    public boolean isSealed() {
+        return iSealed;
+    }
+
+    /**
+     * Writes the peaks in compact form. The store must be sealed.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the peaks could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        checkSealed();
+        aOutput.writeBoolean(iReducedPrecision);
+        aOutput.writeVarInt(iCounts.length);
+        for (int i = 1; i < iCounts.length; i++) {
+            aOutput.writeVarInt(iCounts[i]);
+            if (iCounts[i] > 0) {
+                DoubleBuffer mzValues = getMzValues(i);
+                FloatBuffer intensities = getIntensities(i);
+                for (int j = 0; j < iCounts[i] - 1; j++) {
+                    aOutput.writeDouble(mzValues.get(j));
+                    aOutput.writeFloat(intensities.get(j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads peaks written by writeCompact into a sealed store in direct
+     * memory, in the precision they were written in.
+     *
+     * @param aInput the compact input
+     * @return the store
+     * @throws IOException if the peaks could not be read
+     */
+    public static PeakStore readCompact(CompactInput aInput) throws IOException {
+        PeakStore store = new PeakStore(aInput.readBoolean());
+        int length = aInput.readVarInt();
+        double[] mzValues = new double[0];
+        float[] intensities = new float[0];
+        for (int i = 1; i < length; i++) {
+            int count = aInput.readVarInt() - 1;
+            if (count >= 0) {
+                if (count > mzValues.length) {
+                    mzValues = new double[count];
+                    intensities = new float[count];
+                }
+                for (int j = 0; j < count; j++) {
+                    mzValues[j] = aInput.readDouble();
+                    intensities[j] = aInput.readFloat();
+                }
+                store.add(i, mzValues, intensities, count);
+            }
+        }
+        store.seal();
+        return store;
+    }
+
+    /**
+     * Returns a buffer positioned at the record of the given spectrum.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @return the buffer, null if the spectrum is not in the store
+     */
+    private ByteBuffer getRecord(int aSpectrumNumber) {
+        checkSealed();
+        if (!contains(aSpectrumNumber)) {
+            return null;
+        }
+        ByteBuffer record = iSegments.get(iSegmentIndexes[aSpectrumNumber]).duplicate();
+        record.position(iOffsets[aSpectrumNumber]);
+        return record.slice();
+    }
+
+    /**
+     * Encodes a spectrum in reduced precision: the intensities as floats,
+     * followed by the number of decimals of the m/z values and by the
+     * fixed-point m/z values, the first one as is and the others as the
+     * difference with the previous one, zigzag and variable length encoded.
+     * The record is padded to a multiple of 4 bytes to keep the intensities
+     * aligned.
+     *
+     * @param aMzValues the m/z values
+     * @param aIntensities the intensities
+     * @param aCount the number of peaks
+     * @return the encoded spectrum, from the position to the limit
+     */
+    private ByteBuffer encode(double[] aMzValues, float[] aIntensities, int aCount) {
+        int maxLength = 14 * aCount + 4;
+        if (iEncodeBuffer == null || iEncodeBuffer.capacity() < maxLength) {
+            iEncodeBuffer = ByteBuffer.allocate(Math.max(64 * 1024, maxLength)).order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer buffer = iEncodeBuffer;
+        buffer.clear();
+        for (int i = 0; i < aCount; i++) {
+            buffer.putFloat(aIntensities[i]);
+        }
+
+        // the smallest scale representing all the values exactly
+        int decimals = 0;
+        for (int i = 0; i < aCount && decimals < MAX_DECIMALS; i++) {
+            while (decimals < MAX_DECIMALS && Math.round(aMzValues[i] * SCALES[decimals]) / SCALES[decimals] != aMzValues[i]) {
+                decimals++;
+            }
+        }
+        buffer.put((byte) decimals);
+
+        long previous = 0;
+        for (int i = 0; i < aCount; i++) {
+            long value = Math.round(aMzValues[i] * SCALES[decimals]);
+            long delta = value - previous;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            buffer.put((byte) zigzag);
+            previous = value;
+        }
+        while ((buffer.position() & 3) != 0) {
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes the m/z values of a spectrum encoded in reduced precision.
+     *
+     * @param aRecord the record of the spectrum, positioned at its start
+     * @param aCount the number of peaks
+     * @param aMzValues the array receiving the m/z values
+     */
+    private static void decodeMzValues(ByteBuffer aRecord, int aCount, double[] aMzValues) {
+        int position = aRecord.position() + 4 * aCount;
+        double scale = SCALES[aRecord.get(position++)];
+        long value = 0;
+        for (int i = 0; i < aCount; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = aRecord.get(position++);
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += (zigzag >>> 1) ^ -(zigzag & 1);
+            aMzValues[i] = value / scale;
+        }
+    }
+
+    /**
+     * Throws an IllegalStateException if the store is not sealed.
+     */
+    private void checkSealed() {
+        if (!iSealed) {
+            throw new IllegalStateException("The peak store has to be sealed before it is read.");
+        }
+    }
+
+    /**
+     * Grows the spectrum arrays to at least the given length.
+     *
+     * @param aLength the minimal length
+     */
+    private void ensureCapacity(int aLength) {
+        if (iCounts.length < aLength) {
+            int length = Math.max(aLength, 2 * iCounts.length);
+            int[] segmentIndexes = new int[length];
+            System.arraycopy(iSegmentIndexes, 0, segmentIndexes, 0, iSegmentIndexes.length);
+            iSegmentIndexes = segmentIndexes;
+            int[] offsets = new int[length];
+            System.arraycopy(iOffsets, 0, offsets, 0, iOffsets.length);
+            iOffsets = offsets;
+            int[] counts = new int[length];
+            System.arraycopy(iCounts, 0, counts, 0, iCounts.length);
+            iCounts = counts;
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by a spectrum with the given number of
+     * peaks, rounded up to a multiple of 8 so that the m/z values stay
+     * aligned.
+     *
+     * @param aCount the number of peaks
+     * @return the number of bytes
+     */
+    private static long getRecordLength(int aCount) {
+        return (12L * aCount + 7) & ~7L;
+    }
+
+    /**
+     * Parses whitespace separated numbers.
+     *
+     * @param aValues the numbers
+     * @return the numbers
+     */
+    private static double[] parseValues(String aValues) {
+        double[] values = new double[16];
+        int count = 0;
+        int length = aValues.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(aValues.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(aValues.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (count == values.length) {
+                    double[] newValues = new double[2 * count];
+                    System.arraycopy(values, 0, newValues, 0, count);
+                    values = newValues;
+                }
+                values[count++] = Double.parseDouble(aValues.substring(start, i));
+            }
+        }
+        double[] result = new double[count];
+        System.arraycopy(values, 0, result, 0, count);
+        return result;
+    }
+}
@@ -0,0 +1,469 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * This class holds a peptide-spectrum hit: the values of a domain which do
+ * not depend on the protein it is found in, i.e. the sequence, the masses and
+ * the scores, and the list of its occurrences in the proteins, each given by
+ * the protein key, the start and end positions and the flanking sequences.
+ * <p>
+ * X!Tandem writes one domain per protein matching a peptide: the domains of a
+ * spectrum with the same peptide, modifications and scores share a single
+ * hit, the Domain objects being views on one of its occurrences.
+ */
+public class PeptideHit implements Serializable {
+
+    /**
+     * The sequence of the peptide.
+     */
+    private String iSequence = null;
+    /**
+     * The expectation value of the hit.
+     */
+    private double iExpect = 0;
+    /**
+     * The calculated peptide mass + a proton.
+     */
+    private double iMh = 0;
+    /**
+     * The spectrum mh minus the calculated mh.
+     */
+    private double iDeltaMh = 0;
+    /**
+     * The hyperscore of the hit.
+     */
+    private double iHyperScore = 0;
+    /**
+     * The next score of the hit.
+     */
+    private double iNextScore = 0;
+    /**
+     * The number of missed cleavages.
+     */
+    private int iMissedCleavages = 0;
+    /**
+     * The number of occurrences.
+     */
+    private int iSize = 0;
+    /**
+     * The protein keys of the occurrences.
+     */
+    private String[] iProteinKeys = new String[1];
+    /**
+     * The start positions of the occurrences.
+     */
+    private int[] iStarts = new int[1];
+    /**
+     * The end positions of the occurrences.
+     */
+    private int[] iEnds = new int[1];
+    /**
+     * The upstream flanking sequences of the occurrences.
+     */
+    private String[] iUpFlanks = new String[1];
+    /**
+     * The downstream flanking sequences of the occurrences.
+     */
+    private String[] iDownFlanks = new String[1];
+
+    /**
+     * Adds an occurrence of the hit.
+     *
+     * @param aProteinKey the protein key
+     * @param aStart the position of the first residue in the protein
+     * @param aEnd the position of the last residue in the protein
+     * @param aUpFlank the upstream flanking sequence
+     * @param aDownFlank the downstream flanking sequence
+     * @return the index of the occurrence
+     */
+    public int addOccurrence(String aProteinKey, int aStart, int aEnd, String aUpFlank, String aDownFlank) {
+        if (iSize == iStarts.length) {
+            resize(Math.max(1, 2 * iSize));
+        }
+        iProteinKeys[iSize] = aProteinKey;
+        iStarts[iSize] = aStart;
+        iEnds[iSize] = aEnd;
+        iUpFlanks[iSize] = aUpFlank;
+        iDownFlanks[iSize] = aDownFlank;
+        return iSize++;
+    }
+
+    /**
+     * Shrinks the occurrence arrays to the number of occurrences.
+     */
+    public void trim() {
+        if (iStarts.length > iSize) {
+            resize(iSize);
+        }
+    }
+
+    /**
+     * Returns the number of occurrences.
+     *
+     * @return the number of occurrences
+     */
+    public int getNumberOfOccurrences() {
+        return iSize;
+    }
+
+    /**
+     * Returns a new hit with the sequence, masses and scores of this hit and
+     * only the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the copy of the hit
+     */
+    public PeptideHit copyOccurrence(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        PeptideHit hit = new PeptideHit();
+        hit.iSequence = iSequence;
+        hit.iExpect = iExpect;
+        hit.iMh = iMh;
+        hit.iDeltaMh = iDeltaMh;
+        hit.iHyperScore = iHyperScore;
+        hit.iNextScore = iNextScore;
+        hit.iMissedCleavages = iMissedCleavages;
+        hit.addOccurrence(iProteinKeys[aOccurrence], iStarts[aOccurrence], iEnds[aOccurrence], iUpFlanks[aOccurrence], iDownFlanks[aOccurrence]);
+        return hit;
+    }
+
+    /**
+     * Returns a domain viewing the given occurrence. The domain key and the
+     * domain id of the returned domain are not set.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the domain
+     */
+    public Domain getDomain(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        return new Domain(this, aOccurrence);
+    }
+
+    /**
+     * Returns the protein key of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the protein key
+     */
+    public String getProteinKey(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        return iProteinKeys[aOccurrence];
+    }
+
+    /**
+     * Sets the protein key of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @param aProteinKey the protein key
+     */
+    public void setProteinKey(int aOccurrence, String aProteinKey) {
+        checkOccurrence(aOccurrence);
+        iProteinKeys[aOccurrence] = aProteinKey;
+    }
+
+    /**
+     * Returns the start position of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the position of the first residue in the protein
+     */
+    public int getStart(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        return iStarts[aOccurrence];
+    }
+
+    /**
+     * Sets the start position of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @param aStart the position of the first residue in the protein
+     */
+    public void setStart(int aOccurrence, int aStart) {
+        checkOccurrence(aOccurrence);
+        iStarts[aOccurrence] = aStart;
+    }
+
+    /**
+     * Returns the end position of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the position of the last residue in the protein
+     */
+    public int getEnd(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        return iEnds[aOccurrence];
+    }
+
+    /**
+     * Sets the end position of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @param aEnd the position of the last residue in the protein
+     */
+    public void setEnd(int aOccurrence, int aEnd) {
+        checkOccurrence(aOccurrence);
+        iEnds[aOccurrence] = aEnd;
+    }
+
+    /**
+     * Returns the upstream flanking sequence of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the upstream flanking sequence
+     */
+    public String getUpFlank(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        return iUpFlanks[aOccurrence];
+    }
+
+    /**
+     * Sets the upstream flanking sequence of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @param aUpFlank the upstream flanking sequence
+     */
+    public void setUpFlank(int aOccurrence, String aUpFlank) {
+        checkOccurrence(aOccurrence);
+        iUpFlanks[aOccurrence] = aUpFlank;
+    }
+
+    /**
+     * Returns the downstream flanking sequence of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @return the downstream flanking sequence
+     */
+    public String getDownFlank(int aOccurrence) {
+        checkOccurrence(aOccurrence);
+        return iDownFlanks[aOccurrence];
+    }
+
+    /**
+     * Sets the downstream flanking sequence of the given occurrence.
+     *
+     * @param aOccurrence the index of the occurrence
+     * @param aDownFlank the downstream flanking sequence
+     */
+    public void setDownFlank(int aOccurrence, String aDownFlank) {
+        checkOccurrence(aOccurrence);
+        iDownFlanks[aOccurrence] = aDownFlank;
+    }
+
+    /**
+     * Returns the sequence of the peptide.
+     *
+     * @return the sequence
+     */
+    public String getSequence() {
+        return iSequence;
+    }
+
+    /**
+     * Sets the sequence of the peptide.
+     *
+     * @param aSequence the sequence
+     */
+    public void setSequence(String aSequence) {
+        iSequence = aSequence;
+    }
+
+    /**
+     * Returns the expectation value of the hit.
+     *
+     * @return the expectation value
+     */
+    public double getExpect() {
+        return iExpect;
+    }
+
+    /**
+     * Sets the expectation value of the hit.
+     *
+     * @param aExpect the expectation value
+     */
+    public void setExpect(double aExpect) {
+        iExpect = aExpect;
+    }
+
+    /**
+     * Returns the calculated peptide mass + a proton.
+     *
+     * @return the calculated mh
+     */
+    public double getMh() {
+        return iMh;
+    }
+
+    /**
+     * Sets the calculated peptide mass + a proton.
+     *
+     * @param aMh the calculated mh
+     */
+    public void setMh(double aMh) {
+        iMh = aMh;
+    }
+
+    /**
+     * Returns the spectrum mh minus the calculated mh.
+     *
+     * @return the mass delta
+     */
+    public double getDeltaMh() {
+        return iDeltaMh;
+    }
+
+    /**
+     * Sets the spectrum mh minus the calculated mh.
+     *
+     * @param aDeltaMh the mass delta
+     */
+    public void setDeltaMh(double aDeltaMh) {
+        iDeltaMh = aDeltaMh;
+    }
+
+    /**
+     * Returns the hyperscore of the hit.
+     *
+     * @return the hyperscore
+     */
+    public double getHyperScore() {
+        return iHyperScore;
+    }
+
+    /**
+     * Sets the hyperscore of the hit.
+     *
+     * @param aHyperScore the hyperscore
+     */
+    public void setHyperScore(double aHyperScore) {
+        iHyperScore = aHyperScore;
+    }
+
+    /**
+     * Returns the next score of the hit.
+     *
+     * @return the next score
+     */
+    public double getNextScore() {
+        return iNextScore;
+    }
+
+    /**
+     * Sets the next score of the hit.
+     *
+     * @param aNextScore the next score
+     */
+    public void setNextScore(double aNextScore) {
+        iNextScore = aNextScore;
+    }
+
+    /**
+     * Returns the number of missed cleavages.
+     *
+     * @return the number of missed cleavages
+     */
+    public int getMissedCleavages() {
+        return iMissedCleavages;
+    }
+
+    /**
+     * Sets the number of missed cleavages.
+     *
+     * @param aMissedCleavages the number of missed cleavages
+     */
+    public void setMissedCleavages(int aMissedCleavages) {
+        iMissedCleavages = aMissedCleavages;
+    }
+
+    /**
+     * Writes the hit in compact form, the end positions written relative to
+     * the start positions.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the hit could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeString(iSequence);
+        aOutput.writeDouble(iExpect);
+        aOutput.writeDouble(iMh);
+        aOutput.writeDouble(iDeltaMh);
+        aOutput.writeDouble(iHyperScore);
+        aOutput.writeDouble(iNextScore);
+        aOutput.writeSignedVarInt(iMissedCleavages);
+        aOutput.writeVarInt(iSize);
+        for (int i = 0; i < iSize; i++) {
+            aOutput.writeString(iProteinKeys[i]);
+            aOutput.writeSignedVarInt(iStarts[i]);
+            aOutput.writeSignedVarInt(iEnds[i] - iStarts[i]);
+            aOutput.writeString(iUpFlanks[i]);
+            aOutput.writeString(iDownFlanks[i]);
+        }
+    }
+
+    /**
+     * Reads a hit written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @return the hit
+     * @throws IOException if the hit could not be read
+     */
+    public static PeptideHit readCompact(CompactInput aInput) throws IOException {
+        PeptideHit hit = new PeptideHit();
+        hit.iSequence = aInput.readString();
+        hit.iExpect = aInput.readDouble();
+        hit.iMh = aInput.readDouble();
+        hit.iDeltaMh = aInput.readDouble();
+        hit.iHyperScore = aInput.readDouble();
+        hit.iNextScore = aInput.readDouble();
+        hit.iMissedCleavages = aInput.readSignedVarInt();
+        int size = aInput.readVarInt();
+        hit.resize(size);
+        for (int i = 0; i < size; i++) {
+            hit.iProteinKeys[i] = aInput.readString();
+            hit.iStarts[i] = aInput.readSignedVarInt();
+            hit.iEnds[i] = hit.iStarts[i] + aInput.readSignedVarInt();
+            hit.iUpFlanks[i] = aInput.readString();
+            hit.iDownFlanks[i] = aInput.readString();
+        }
+        hit.iSize = size;
+        return hit;
+    }
+
+    /**
+     * Resizes the occurrence arrays.
+     *
+     * @param aLength the new length, at least the number of occurrences
+     */
+    private void resize(int aLength) {
+        String[] proteinKeys = new String[aLength];
+        System.arraycopy(iProteinKeys, 0, proteinKeys, 0, iSize);
+        iProteinKeys = proteinKeys;
+        int[] starts = new int[aLength];
+        System.arraycopy(iStarts, 0, starts, 0, iSize);
+        iStarts = starts;
+        int[] ends = new int[aLength];
+        System.arraycopy(iEnds, 0, ends, 0, iSize);
+        iEnds = ends;
+        String[] upFlanks = new String[aLength];
+        System.arraycopy(iUpFlanks, 0, upFlanks, 0, iSize);
+        iUpFlanks = upFlanks;
+        String[] downFlanks = new String[aLength];
+        System.arraycopy(iDownFlanks, 0, downFlanks, 0, iSize);
+        iDownFlanks = downFlanks;
+    }
+
+    /**
+     * Checks that the given occurrence exists.
+     *
+     * @param aOccurrence the index of the occurrence
+     */
+    private void checkOccurrence(int aOccurrence) {
+        if (aOccurrence < 0 || aOccurrence >= iSize) {
+            throw new IndexOutOfBoundsException("Occurrence " + aOccurrence + " out of bounds for " + iSize + " occurrences.");
+        }
+    }
+}
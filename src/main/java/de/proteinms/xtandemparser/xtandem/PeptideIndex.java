@@ -0,0 +1,301 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.interfaces.Modification;
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class is an index from the peptides to their hits across all the
+ * spectra of a file. The peptides are identified by a key made of the
+ * sequence followed by the modifications in order of position, each given as
+ * [position:mass] with the 1-based position in the peptide and the mass with
+ * three decimals, e.g. PEPTMIDEK[5:15.995]. The index is filled by the parser
+ * and trimmed once the file is parsed, it then supports exact and prefix
+ * lookups and is no longer modified, so that it can be read by several
+ * threads at once.
+ */
+public class PeptideIndex implements Serializable {
+
+    /**
+     * The character opening the modifications in a peptide key.
+     */
+    public static final char MODIFICATION_START = '[';
+    /**
+     * This map has as key the peptide key and as value the hits of the
+     * peptide. Only used while the index is filled.
+     */
+    private transient HashMap<String, HitList> iHitMap = new HashMap<String, HitList>();
+    /**
+     * The sorted peptide keys.
+     */
+    private String[] iKeys = null;
+    /**
+     * The hits of the peptides, in the order of the sorted keys.
+     */
+    private HitList[] iHits = null;
+
+    /**
+     * Adds a hit to the index.
+     *
+     * @param aPeptideKey the peptide key
+     * @param aSpectrumNumber the spectrum number
+     * @param aPeptideIndex the index of the peptide in the spectrum
+     * @param aDomainIndex the index of the domain in the peptide
+     * @throws IllegalStateException if the index is trimmed
+     */
+    public void addHit(String aPeptideKey, int aSpectrumNumber, int aPeptideIndex, int aDomainIndex) {
+        if (iHitMap == null) {
+            throw new IllegalStateException("No hits can be added to a trimmed peptide index.");
+        }
+        HitList hits = iHitMap.get(aPeptideKey);
+        if (hits == null) {
+            hits = new HitList();
+            iHitMap.put(aPeptideKey, hits);
+        }
+        hits.add(aSpectrumNumber, aPeptideIndex, aDomainIndex);
+    }
+
+    /**
+     * Sorts the peptide keys for the lookups and releases the structures only
+     * needed while the index is filled. No hits can be added after this.
+     */
+    public void trim() {
+        if (iHitMap != null) {
+            iKeys = iHitMap.keySet().toArray(new String[iHitMap.size()]);
+            Arrays.sort(iKeys);
+            iHits = new HitList[iKeys.length];
+            for (int i = 0; i < iKeys.length; i++) {
+                iHits[i] = iHitMap.get(iKeys[i]);
+                iHits[i].trim();
+            }
+            iHitMap = null;
+        }
+    }
+
+    /**
+     * Throws an IllegalStateException if the index is still being filled,
+     * i.e. not trimmed yet.
+     */
+    private void checkTrimmed() {
+        if (iKeys == null) {
+            throw new IllegalStateException("The peptide index is still being filled.");
+        }
+    }
+
+    /**
+     * Returns the hits of the peptide with the given key.
+     *
+     * @param aPeptideKey the peptide key
+     * @return the hits of the peptide, an empty list if the peptide is unknown
+     * @throws IllegalStateException if the index is not trimmed yet
+     */
+    public HitList getHits(String aPeptideKey) {
+        checkTrimmed();
+        int index = Arrays.binarySearch(iKeys, aPeptideKey);
+        if (index < 0) {
+            return new HitList();
+        }
+        return iHits[index];
+    }
+
+    /**
+     * Returns the number of distinct spectra identifying the peptide with the
+     * given key.
+     *
+     * @param aPeptideKey the peptide key
+     * @return the number of spectra
+     */
+    public int getSpectrumCount(String aPeptideKey) {
+        HitList hits = getHits(aPeptideKey);
+        int count = 0;
+        int lastSpectrum = -1;
+        // the hits are added spectrum per spectrum
+        for (int i = 0; i < hits.size(); i++) {
+            if (hits.getSpectrumNumber(i) != lastSpectrum) {
+                lastSpectrum = hits.getSpectrumNumber(i);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the peptide keys starting with the given prefix, in sorted
+     * order.
+     *
+     * @param aPrefix the prefix
+     * @return the peptide keys starting with the prefix
+     * @throws IllegalStateException if the index is not trimmed yet
+     */
+    public ArrayList<String> getKeysByPrefix(String aPrefix) {
+        checkTrimmed();
+        ArrayList<String> keys = new ArrayList<String>();
+        int index = Arrays.binarySearch(iKeys, aPrefix);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        while (index < iKeys.length && iKeys[index].startsWith(aPrefix)) {
+            keys.add(iKeys[index]);
+            index++;
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the keys of all the modified and unmodified versions of the
+     * given peptide sequence.
+     *
+     * @param aSequence the peptide sequence
+     * @return the peptide keys of the sequence
+     */
+    public ArrayList<String> getKeysForSequence(String aSequence) {
+        ArrayList<String> keys = new ArrayList<String>();
+        for (String key : getKeysByPrefix(aSequence)) {
+            if (key.length() == aSequence.length() || key.charAt(aSequence.length()) == MODIFICATION_START) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the sorted peptide keys.
+     *
+     * @return the peptide keys, a read-only list
+     * @throws IllegalStateException if the index is not trimmed yet
+     */
+    public List<String> getKeys() {
+        checkTrimmed();
+        return Collections.unmodifiableList(Arrays.asList(iKeys));
+    }
+
+    /**
+     * Returns the number of distinct peptide keys.
+     *
+     * @return the number of peptide keys
+     * @throws IllegalStateException if the index is not trimmed yet
+     */
+    public int size() {
+        checkTrimmed();
+        return iKeys.length;
+    }
+
+    /**
+     * Writes the index in compact form. The sorted keys are front coded, i.e.
+     * written as the length of the prefix shared with the previous key
+     * followed by the rest of the key.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the index could not be written
+     * @throws IllegalStateException if the index is not trimmed yet
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        checkTrimmed();
+        aOutput.writeVarInt(iKeys.length);
+        String previous = "";
+        for (int i = 0; i < iKeys.length; i++) {
+            int prefix = 0;
+            int maxPrefix = Math.min(previous.length(), iKeys[i].length());
+            while (prefix < maxPrefix && previous.charAt(prefix) == iKeys[i].charAt(prefix)) {
+                prefix++;
+            }
+            aOutput.writeVarInt(prefix);
+            aOutput.writeString(iKeys[i].substring(prefix));
+            iHits[i].writeCompact(aOutput);
+            previous = iKeys[i];
+        }
+    }
+
+    /**
+     * Reads an index written by writeCompact. The index read is trimmed.
+     *
+     * @param aInput the compact input
+     * @return the index
+     * @throws IOException if the index could not be read
+     */
+    public static PeptideIndex readCompact(CompactInput aInput) throws IOException {
+        PeptideIndex index = new PeptideIndex();
+        int size = aInput.readVarInt();
+        index.iKeys = new String[size];
+        index.iHits = new HitList[size];
+        String previous = "";
+        for (int i = 0; i < size; i++) {
+            int prefix = aInput.readVarInt();
+            index.iKeys[i] = previous.substring(0, prefix) + aInput.readString();
+            index.iHits[i] = HitList.readCompact(aInput);
+            previous = index.iKeys[i];
+        }
+        index.iHitMap = null;
+        return index;
+    }
+
+    /**
+     * Returns the peptide key for the given sequence and modifications.
+     *
+     * @param aSequence the peptide sequence
+     * @param aPositions the 1-based positions of the modifications in the
+     * peptide
+     * @param aMasses the masses of the modifications
+     * @param aCount the number of modifications
+     * @return the peptide key
+     */
+    public static String getPeptideKey(String aSequence, int[] aPositions, double[] aMasses, int aCount) {
+        if (aCount == 0) {
+            return aSequence;
+        }
+        // sort the modifications by position and mass, there are only a few
+        int[] order = new int[aCount];
+        for (int i = 0; i < aCount; i++) {
+            order[i] = i;
+        }
+        for (int i = 1; i < aCount; i++) {
+            for (int j = i; j > 0; j--) {
+                int a = order[j - 1];
+                int b = order[j];
+                if (aPositions[a] > aPositions[b] || (aPositions[a] == aPositions[b] && aMasses[a] > aMasses[b])) {
+                    order[j - 1] = b;
+                    order[j] = a;
+                } else {
+                    break;
+                }
+            }
+        }
+        StringBuilder key = new StringBuilder(aSequence.length() + 12 * aCount);
+        key.append(aSequence);
+        for (int i = 0; i < aCount; i++) {
+            key.append(MODIFICATION_START).append(aPositions[order[i]]).append(':');
+            key.append(BigDecimal.valueOf(aMasses[order[i]]).setScale(3, BigDecimal.ROUND_HALF_UP).toPlainString());
+            key.append(']');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the peptide key of the given domain, using the fixed and
+     * variable modifications of the modification map.
+     *
+     * @param aDomain the domain
+     * @param aModificationMap the modification map
+     * @return the peptide key
+     */
+    public static String getPeptideKey(Domain aDomain, ModificationMap aModificationMap) {
+        ArrayList<Modification> modifications = new ArrayList<Modification>();
+        modifications.addAll(aModificationMap.getFixedModifications(aDomain.getDomainKey()));
+        modifications.addAll(aModificationMap.getVariableModifications(aDomain.getDomainKey()));
+        int[] positions = new int[modifications.size()];
+        double[] masses = new double[modifications.size()];
+        for (int i = 0; i < modifications.size(); i++) {
+            positions[i] = Integer.parseInt(modifications.get(i).getLocation()) - aDomain.getDomainStart() + 1;
+            masses[i] = modifications.get(i).getMass();
+        }
+        return getPeptideKey(aDomain.getDomainSequence(), positions, masses, positions.length);
+    }
+}
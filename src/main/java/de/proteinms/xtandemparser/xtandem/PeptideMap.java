@@ -1,12 +1,19 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 /**
- * This class holds the peptide information in a map.
+ * This class holds the peptide information in a map. When the peptide index
+ * is given, the domains of a spectrum with the same peptide, modifications
+ * and scores, i.e. the same peptide matched in several proteins, share a
+ * single PeptideHit.
  *
  * @author Thilo Muth
  */
@@ -18,6 +25,12 @@ public class PeptideMap implements Serializable {
      */
     private HashMap<String, HashMap<String, Peptide>> iSpectrumAndPeptideMap = null;
 
+    /**
+     * Constructor for a peptide map read by readCompact.
+     */
+    private PeptideMap() {
+    }
+
     /**
      * Builds the peptide map.
      *
@@ -26,7 +39,21 @@ public class PeptideMap implements Serializable {
      * @param aNumberOfSpectra the number of spectra
      */
     public PeptideMap(HashMap aRawPeptideMap, ProteinMap aProteinMap, int aNumberOfSpectra) {
-        buildPeptideMap(aRawPeptideMap, aProteinMap, aNumberOfSpectra);
+        this(aRawPeptideMap, aProteinMap, aNumberOfSpectra, null);
+    }
+
+    /**
+     * Builds the peptide map, sharing the peptide-spectrum hits between the
+     * domains with the same peptide key, see PeptideIndex, and scores.
+     *
+     * @param aRawPeptideMap the raw peptide map
+     * @param aProteinMap the protein map
+     * @param aNumberOfSpectra the number of spectra
+     * @param aPeptideIndex the peptide index, null to give every domain its
+     * own hit
+     */
+    public PeptideMap(HashMap aRawPeptideMap, ProteinMap aProteinMap, int aNumberOfSpectra, PeptideIndex aPeptideIndex) {
+        buildPeptideMap(aRawPeptideMap, aProteinMap, aNumberOfSpectra, aPeptideIndex);
     }
 
     /**
@@ -38,19 +65,36 @@ public class PeptideMap implements Serializable {
      * @param aRawPeptideMap the raw peptide map
      * @param aProteinMap the protein map
      * @param aNumberOfSpectra the number of spectra
+     * @param aPeptideIndex the peptide index, can be null
      * @return the spectrum and peptides map
      */
-    private HashMap buildPeptideMap(HashMap aRawPeptideMap, ProteinMap aProteinMap, int aNumberOfSpectra) {
+    private HashMap buildPeptideMap(HashMap aRawPeptideMap, ProteinMap aProteinMap, int aNumberOfSpectra, PeptideIndex aPeptideIndex) {
 
         // First dimension of the map, which contains the spectra as key and the peptide hash maps as values
         iSpectrumAndPeptideMap = new HashMap(aNumberOfSpectra);
 
         if (aRawPeptideMap != null) {
+
+            // The peptide keys of the domains, to find the domains sharing a hit
+            HashMap<String, String> peptideKeys = null;
+            if (aPeptideIndex != null) {
+                peptideKeys = new HashMap<String, String>();
+                for (String peptideKey : aPeptideIndex.getKeys()) {
+                    HitList hits = aPeptideIndex.getHits(peptideKey);
+                    for (int j = 0; j < hits.size(); j++) {
+                        peptideKeys.put(hits.getDomainKey(j), peptideKey);
+                    }
+                }
+            }
+
             for (int i = 1; i <= aNumberOfSpectra; i++) {
 
                 // Hashmap for the peptide objects
                 HashMap<String, Peptide> lPeptideMap = new HashMap<String, Peptide>();
 
+                // The hits of the spectrum by peptide key and scores
+                HashMap<String, PeptideHit> hitMap = new HashMap<String, PeptideHit>();
+
                 // The counter for the peptides
                 int pCount = 1;
 
@@ -64,7 +108,7 @@ public class PeptideMap implements Serializable {
                     if (input != null) {
                         peptideStart = new Integer(input.toString());
                     }
-                    input = aRawPeptideMap.get("start" + "_s" + i + "_p" + pCount);
+                    input = aRawPeptideMap.get("end" + "_s" + i + "_p" + pCount);
                     if (input != null) {
                         peptideEnd = new Integer(input.toString());
                     }
@@ -89,58 +133,72 @@ public class PeptideMap implements Serializable {
                     // List of the domains
                     List<Domain> domainList = new ArrayList<Domain>();
                     while (aRawPeptideMap.get("domainid" + "_s" + i + "_p" + pCount + "_d" + dCount) != null) {
-                        Domain domain = new Domain();
                         String domainKey = "s" + i + "_p" + pCount + "_d" + dCount;
-                        domain.setDomainKey(domainKey);
-                        domain.setDomainID(aRawPeptideMap.get("domainid" + "_s" + i + "_p" + pCount + "_d" + dCount).toString());
-                        input = aRawPeptideMap.get("proteinkey" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setProteinKey(input.toString());
-                        }
-                        input = aRawPeptideMap.get("domainstart" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainStart(Integer.parseInt(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("domainend" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainEnd(Integer.parseInt(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("expect" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainExpect(Double.parseDouble(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("mh" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainMh(Double.parseDouble(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("delta" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainDeltaMh(Double.parseDouble(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("hyperscore" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainHyperScore(Double.parseDouble(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("nextscore" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDomainNextScore(Double.parseDouble(input.toString()));
-                        }
-                        input = aRawPeptideMap.get("pre" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setUpFlankSequence(input.toString());
+                        String suffix = "_s" + i + "_p" + pCount + "_d" + dCount;
+
+                        // The hit is shared with the previous domains with the same peptide and scores
+                        PeptideHit hit = null;
+                        String hitKey = null;
+                        String peptideKey = peptideKeys == null ? null : peptideKeys.get(domainKey);
+                        if (peptideKey != null) {
+                            hitKey = peptideKey + "|" + aRawPeptideMap.get("expect" + suffix) + "|" + aRawPeptideMap.get("mh" + suffix)
+                                    + "|" + aRawPeptideMap.get("delta" + suffix) + "|" + aRawPeptideMap.get("hyperscore" + suffix)
+                                    + "|" + aRawPeptideMap.get("nextscore" + suffix) + "|" + aRawPeptideMap.get("missed_cleavages" + suffix);
+                            hit = hitMap.get(hitKey);
                         }
-                        input = aRawPeptideMap.get("post" + "_s" + i + "_p" + pCount + "_d" + dCount);
-                        if (input != null) {
-                            domain.setDownFlankSequence(input.toString());
+                        if (hit == null) {
+                            hit = new PeptideHit();
+                            input = aRawPeptideMap.get("expect" + suffix);
+                            if (input != null) {
+                                hit.setExpect(Double.parseDouble(input.toString()));
+                            }
+                            input = aRawPeptideMap.get("mh" + suffix);
+                            if (input != null) {
+                                hit.setMh(Double.parseDouble(input.toString()));
+                            }
+                            input = aRawPeptideMap.get("delta" + suffix);
+                            if (input != null) {
+                                hit.setDeltaMh(Double.parseDouble(input.toString()));
+                            }
+                            input = aRawPeptideMap.get("hyperscore" + suffix);
+                            if (input != null) {
+                                hit.setHyperScore(Double.parseDouble(input.toString()));
+                            }
+                            input = aRawPeptideMap.get("nextscore" + suffix);
+                            if (input != null) {
+                                hit.setNextScore(Double.parseDouble(input.toString()));
+                            }
+                            input = aRawPeptideMap.get("domainseq" + suffix);
+                            if (input != null) {
+                                hit.setSequence(input.toString());
+                            }
+                            input = aRawPeptideMap.get("missed_cleavages" + suffix);
+                            if (input != null) {
+                                hit.setMissedCleavages(Integer.parseInt(input.toString()));
+                            }
+                            if (hitKey != null) {
+                                hitMap.put(hitKey, hit);
+                            }
                         }
-                        input = aRawPeptideMap.get("domainseq" + "_s" + i + "_p" + pCount + "_d" + dCount);
+
+                        int start = 0, end = 0;
+                        input = aRawPeptideMap.get("domainstart" + suffix);
                         if (input != null) {
-                            domain.setDomainSequence(input.toString());
+                            start = Integer.parseInt(input.toString());
                         }
-                        input = aRawPeptideMap.get("missed_cleavages" + "_s" + i + "_p" + pCount + "_d" + dCount);
+                        input = aRawPeptideMap.get("domainend" + suffix);
                         if (input != null) {
-                            domain.setMissedCleavages(Integer.parseInt(input.toString()));
+                            end = Integer.parseInt(input.toString());
                         }
+                        Object proteinKey = aRawPeptideMap.get("proteinkey" + suffix);
+                        Object upFlank = aRawPeptideMap.get("pre" + suffix);
+                        Object downFlank = aRawPeptideMap.get("post" + suffix);
+                        int occurrence = hit.addOccurrence(proteinKey == null ? null : proteinKey.toString(), start, end,
+                                upFlank == null ? null : upFlank.toString(), downFlank == null ? null : downFlank.toString());
+
+                        Domain domain = new Domain(hit, occurrence);
+                        domain.setDomainKey(domainKey);
+                        domain.setDomainID(aRawPeptideMap.get("domainid" + suffix).toString());
                         domainList.add(domain);
                         dCount++;
                     }
@@ -152,6 +210,9 @@ public class PeptideMap implements Serializable {
                     lPeptideMap.put(peptideID, peptide);
                     pCount++;
                 }
+                for (PeptideHit hit : hitMap.values()) {
+                    hit.trim();
+                }
                 iSpectrumAndPeptideMap.put("s" + i, lPeptideMap);
             }
         }
@@ -205,4 +266,113 @@ public class PeptideMap implements Serializable {
     public int getNumberOfPeptides(int aSpectrumNumber) {
         return iSpectrumAndPeptideMap.get("s" + aSpectrumNumber).size();
     }
+
+    /**
+     * Writes the peptides in compact form, spectrum by spectrum and in order
+     * of appearance. The ids and keys following the naming of the parser are
+     * not written, and a hit shared by several domains is written once.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the peptides could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        IdentityHashMap<PeptideHit, Integer> hitNumbers = new IdentityHashMap<PeptideHit, Integer>();
+        aOutput.writeVarInt(iSpectrumAndPeptideMap.size());
+        for (int i = 1; i <= iSpectrumAndPeptideMap.size(); i++) {
+            HashMap<String, Peptide> peptides = iSpectrumAndPeptideMap.get("s" + i);
+            int numberOfPeptides = peptides == null ? 0 : peptides.size();
+            aOutput.writeVarInt(numberOfPeptides);
+            for (int p = 1; p <= numberOfPeptides; p++) {
+                Peptide peptide = peptides.get("s" + i + "_p" + p);
+                if (peptide == null) {
+                    throw new IOException("The peptide " + p + " of the spectrum " + i + " is missing.");
+                }
+                String peptideID = "s" + i + "_p" + p;
+                aOutput.writeString(peptideID.equals(peptide.getPeptideID()) ? null : peptide.getPeptideID());
+                aOutput.writeSignedVarInt(peptide.getStart());
+                aOutput.writeSignedVarInt(peptide.getEnd());
+                aOutput.writeString(peptide.getSequence());
+                aOutput.writeString(peptide.getFastaFilePath());
+                List<Domain> domains = peptide.getDomains();
+                int numberOfDomains = domains == null ? 0 : domains.size();
+                aOutput.writeVarInt(numberOfDomains);
+                for (int d = 1; d <= numberOfDomains; d++) {
+                    Domain domain = domains.get(d - 1);
+                    String domainKey = peptideID + "_d" + d;
+                    aOutput.writeString(domainKey.equals(domain.getDomainKey()) ? null : domain.getDomainKey());
+                    aOutput.writeString(domain.getDomainID());
+
+                    // 0 for a new hit, written next, else the number of the hit
+                    Integer hitNumber = hitNumbers.get(domain.getPeptideHit());
+                    if (hitNumber == null) {
+                        aOutput.writeVarInt(0);
+                        hitNumbers.put(domain.getPeptideHit(), hitNumbers.size() + 1);
+                        domain.getPeptideHit().writeCompact(aOutput);
+                    } else {
+                        aOutput.writeVarInt(hitNumber);
+                    }
+                    aOutput.writeVarInt(domain.getOccurrence());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads peptides written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @return the peptide map
+     * @throws IOException if the peptides could not be read
+     */
+    public static PeptideMap readCompact(CompactInput aInput) throws IOException {
+        ArrayList<PeptideHit> hits = new ArrayList<PeptideHit>();
+        PeptideMap peptideMap = new PeptideMap();
+        int numberOfSpectra = aInput.readVarInt();
+        peptideMap.iSpectrumAndPeptideMap = new HashMap<String, HashMap<String, Peptide>>(2 * numberOfSpectra);
+        for (int i = 1; i <= numberOfSpectra; i++) {
+            int numberOfPeptides = aInput.readVarInt();
+            HashMap<String, Peptide> peptides = new HashMap<String, Peptide>(2 * numberOfPeptides);
+            for (int p = 1; p <= numberOfPeptides; p++) {
+                String peptideID = aInput.readString();
+                if (peptideID == null) {
+                    peptideID = "s" + i + "_p" + p;
+                }
+                int start = aInput.readSignedVarInt();
+                int end = aInput.readSignedVarInt();
+                Peptide peptide = new Peptide(peptideID, start, end, aInput.readString());
+                peptide.setSpectrumNumber(i);
+                String fastaFilePath = aInput.readString();
+                if (fastaFilePath != null) {
+                    peptide.setFastaFilePath(fastaFilePath);
+                }
+                int numberOfDomains = aInput.readVarInt();
+                List<Domain> domains = new ArrayList<Domain>(numberOfDomains);
+                for (int d = 1; d <= numberOfDomains; d++) {
+                    String domainKey = aInput.readString();
+                    if (domainKey == null) {
+                        domainKey = "s" + i + "_p" + p + "_d" + d;
+                    }
+                    String domainID = aInput.readString();
+                    int hitNumber = aInput.readVarInt();
+                    PeptideHit hit;
+                    if (hitNumber == 0) {
+                        hit = PeptideHit.readCompact(aInput);
+                        hits.add(hit);
+                    } else if (hitNumber <= hits.size()) {
+                        hit = hits.get(hitNumber - 1);
+                    } else {
+                        throw new IOException("Unknown peptide hit " + hitNumber + ".");
+                    }
+                    Domain domain = new Domain(hit, aInput.readVarInt());
+                    domain.setDomainKey(domainKey);
+                    domain.setDomainID(domainID);
+                    domains.add(domain);
+                }
+                peptide.setDomains(domains);
+                peptides.put("s" + i + "_p" + p, peptide);
+            }
+            peptideMap.iSpectrumAndPeptideMap.put("s" + i, peptides);
+        }
+        return peptideMap;
+    }
 }
@@ -1,5 +1,6 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import java.io.Serializable;
 import java.util.HashMap;
 
 /**
@@ -7,7 +8,7 @@ import java.util.HashMap;
  *
  * @author Thilo Muth
  */
-public class PerformParams {
+public class PerformParams implements Serializable {
 
     /**
      * Holds the first sequence source.
@@ -1,9 +1,15 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
- * This class contains all the parsed data from a xtandem file protein.
+ * This class contains all the parsed data from a xtandem file protein. A
+ * protein found in several model groups is stored once per label: its id,
+ * uid, expect value and summed score are those of its first occurrence in the
+ * file, the values of all its occurrences are given by getOccurrences().
  *
  * @author Thilo Muth
  * @author Harald Barsnes
@@ -47,6 +53,11 @@ public class Protein implements Serializable {
      * this protein.
      */
     private Double iSummedScore = 0.0;
+    /**
+     * The occurrences of the protein in the model groups of the spectra, null
+     * if not available.
+     */
+    private ProteinOccurrences iOccurrences = null;
 
     /**
      * The constructor get id, uid, label, description, expect value and summed
@@ -182,4 +193,80 @@ public class Protein implements Serializable {
     public void setSummedScore(Double aSummedScore) {
         iSummedScore = aSummedScore;
     }
+
+    /**
+     * Returns the occurrences of the protein in the model groups of the
+     * spectra, each with its own id, uid, expect value and summed score. The
+     * values returned by the other getters are those of the first occurrence.
+     *
+     * @return the occurrences, null if not available
+     */
+    public ProteinOccurrences getOccurrences() {
+        return iOccurrences;
+    }
+
+    /**
+     * Sets the occurrences of the protein.
+     *
+     * @param aOccurrences the occurrences
+     */
+    public void setOccurrences(ProteinOccurrences aOccurrences) {
+        iOccurrences = aOccurrences;
+    }
+
+    /**
+     * Returns the number of occurrences of the protein in the model groups of
+     * the spectra.
+     *
+     * @return the number of occurrences, 0 if not available
+     */
+    public int getNumberOfOccurrences() {
+        return iOccurrences == null ? 0 : iOccurrences.size();
+    }
+
+    /**
+     * Writes the protein and its occurrences in compact form.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the protein could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeString(iID);
+        aOutput.writeString(iUID);
+        aOutput.writeString(iLabel);
+        aOutput.writeString(iDescription);
+        aOutput.writeBoolean(iExpectValue != null);
+        if (iExpectValue != null) {
+            aOutput.writeDouble(iExpectValue);
+        }
+        aOutput.writeBoolean(iSummedScore != null);
+        if (iSummedScore != null) {
+            aOutput.writeDouble(iSummedScore);
+        }
+        aOutput.writeBoolean(iOccurrences != null);
+        if (iOccurrences != null) {
+            iOccurrences.writeCompact(aOutput);
+        }
+    }
+
+    /**
+     * Reads a protein written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @return the protein
+     * @throws IOException if the protein could not be read
+     */
+    public static Protein readCompact(CompactInput aInput) throws IOException {
+        String id = aInput.readString();
+        String uid = aInput.readString();
+        String label = aInput.readString();
+        String description = aInput.readString();
+        Double expectValue = aInput.readBoolean() ? aInput.readDouble() : null;
+        Double summedScore = aInput.readBoolean() ? aInput.readDouble() : null;
+        Protein protein = new Protein(id, uid, label, description, expectValue, summedScore);
+        if (aInput.readBoolean()) {
+            protein.iOccurrences = ProteinOccurrences.readCompact(aInput);
+        }
+        return protein;
+    }
 }
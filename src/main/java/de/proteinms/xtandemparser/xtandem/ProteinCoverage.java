@@ -0,0 +1,188 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class holds the sequence coverage of a protein computed by the
+ * CoverageCalculator: the merged intervals covered by the peptide hits, the
+ * number of covered residues and the number of peptide hits covering every
+ * residue. Positions are 1-based and the interval ends are inclusive, as the
+ * domain start and end positions.
+ */
+public class ProteinCoverage implements Serializable {
+
+    /**
+     * The protein key.
+     */
+    private final String iProteinKey;
+    /**
+     * The length of the protein.
+     */
+    private final int iProteinLength;
+    /**
+     * The number of peptide hits.
+     */
+    private final int iNumberOfHits;
+    /**
+     * The start positions of the merged intervals, in increasing order.
+     */
+    private final int[] iIntervalStarts;
+    /**
+     * The end positions of the merged intervals.
+     */
+    private final int[] iIntervalEnds;
+    /**
+     * The number of covered residues.
+     */
+    private final int iCoveredResidues;
+    /**
+     * The number of peptide hits covering every residue, indexed by position
+     * minus one.
+     */
+    private final int[] iSpectralCounts;
+
+    /**
+     * Creates the coverage of a protein.
+     *
+     * @param aProteinKey the protein key
+     * @param aProteinLength the length of the protein
+     * @param aNumberOfHits the number of peptide hits
+     * @param aIntervalStarts the start positions of the merged intervals
+     * @param aIntervalEnds the end positions of the merged intervals
+     * @param aSpectralCounts the number of peptide hits covering every residue
+     */
+    public ProteinCoverage(String aProteinKey, int aProteinLength, int aNumberOfHits, int[] aIntervalStarts, int[] aIntervalEnds,
+            int[] aSpectralCounts) {
+        if (aIntervalStarts.length != aIntervalEnds.length || aSpectralCounts.length != aProteinLength) {
+            throw new IllegalArgumentException("Inconsistent coverage of protein " + aProteinKey + ".");
+        }
+        iProteinKey = aProteinKey;
+        iProteinLength = aProteinLength;
+        iNumberOfHits = aNumberOfHits;
+        iIntervalStarts = aIntervalStarts;
+        iIntervalEnds = aIntervalEnds;
+        iSpectralCounts = aSpectralCounts;
+        int coveredResidues = 0;
+        for (int i = 0; i < aIntervalStarts.length; i++) {
+            coveredResidues += aIntervalEnds[i] - aIntervalStarts[i] + 1;
+        }
+        iCoveredResidues = coveredResidues;
+    }
+
+    /**
+     * Returns the protein key.
+     *
+     * @return the protein key
+     */
+    public String getProteinKey() {
+        return iProteinKey;
+    }
+
+    /**
+     * Returns the length of the protein, i.e. the length given to the
+     * calculator or, if unknown or shorter, the furthest end of the peptide
+     * hits.
+     *
+     * @return the protein length
+     */
+    public int getProteinLength() {
+        return iProteinLength;
+    }
+
+    /**
+     * Returns the number of peptide hits of the protein.
+     *
+     * @return the number of hits
+     */
+    public int getNumberOfHits() {
+        return iNumberOfHits;
+    }
+
+    /**
+     * Returns the number of merged intervals, i.e. of maximal stretches of
+     * covered residues.
+     *
+     * @return the number of intervals
+     */
+    public int getNumberOfIntervals() {
+        return iIntervalStarts.length;
+    }
+
+    /**
+     * Returns the start position of the given merged interval.
+     *
+     * @param aIndex the index of the interval
+     * @return the 1-based start position
+     */
+    public int getIntervalStart(int aIndex) {
+        return iIntervalStarts[aIndex];
+    }
+
+    /**
+     * Returns the end position of the given merged interval.
+     *
+     * @param aIndex the index of the interval
+     * @return the 1-based inclusive end position
+     */
+    public int getIntervalEnd(int aIndex) {
+        return iIntervalEnds[aIndex];
+    }
+
+    /**
+     * Returns the number of residues covered by at least one peptide hit.
+     *
+     * @return the number of covered residues
+     */
+    public int getCoveredResidues() {
+        return iCoveredResidues;
+    }
+
+    /**
+     * Returns the fraction of the residues covered by at least one peptide
+     * hit.
+     *
+     * @return the coverage, between 0 and 1
+     */
+    public double getCoverage() {
+        return iProteinLength == 0 ? 0 : (double) iCoveredResidues / iProteinLength;
+    }
+
+    /**
+     * Returns true if the given position is covered by a peptide hit.
+     *
+     * @param aPosition the 1-based position
+     * @return true if the position is covered
+     */
+    public boolean isCovered(int aPosition) {
+        int index = Arrays.binarySearch(iIntervalStarts, aPosition);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index >= 0 && aPosition <= iIntervalEnds[index];
+    }
+
+    /**
+     * Returns the number of peptide hits covering the given position.
+     *
+     * @param aPosition the 1-based position
+     * @return the spectral count of the residue, 0 if the position is outside
+     * the protein
+     */
+    public int getSpectralCount(int aPosition) {
+        if (aPosition < 1 || aPosition > iProteinLength) {
+            return 0;
+        }
+        return iSpectralCounts[aPosition - 1];
+    }
+
+    /**
+     * Returns the number of peptide hits covering every residue. The array is
+     * not copied and should not be modified.
+     *
+     * @return the spectral counts, indexed by position minus one
+     */
+    public int[] getSpectralCounts() {
+        return iSpectralCounts;
+    }
+}
@@ -0,0 +1,60 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import java.io.Serializable;
+
+/**
+ * This class holds a group of proteins identified by the same set of peptide
+ * sequences, and which can therefore not be told apart from the search
+ * results.
+ */
+public class ProteinGroup implements Serializable {
+
+    /**
+     * The keys of the proteins of the group, in order of appearance.
+     */
+    private String[] iProteinKeys;
+    /**
+     * The peptide sequences shared by the proteins, sorted.
+     */
+    private String[] iPeptideSequences;
+
+    /**
+     * Creates a protein group.
+     *
+     * @param aProteinKeys the keys of the proteins of the group
+     * @param aPeptideSequences the peptide sequences shared by the proteins
+     */
+    public ProteinGroup(String[] aProteinKeys, String[] aPeptideSequences) {
+        iProteinKeys = aProteinKeys;
+        iPeptideSequences = aPeptideSequences;
+    }
+
+    /**
+     * Returns the keys of the proteins of the group, in order of appearance.
+     * The first key is the representative of the group.
+     *
+     * @return the protein keys
+     */
+    public String[] getProteinKeys() {
+        return iProteinKeys;
+    }
+
+    /**
+     * Returns the number of proteins of the group.
+     *
+     * @return the number of proteins
+     */
+    public int size() {
+        return iProteinKeys.length;
+    }
+
+    /**
+     * Returns the peptide sequences shared by the proteins of the group,
+     * sorted alphabetically.
+     *
+     * @return the peptide sequences
+     */
+    public String[] getPeptideSequences() {
+        return iPeptideSequences;
+    }
+}
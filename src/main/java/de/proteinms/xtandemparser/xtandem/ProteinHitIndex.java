@@ -0,0 +1,261 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class is an inverted index from the protein keys to the hits of the
+ * proteins. It is filled by the parser while reading the domains, and gives
+ * for each protein the (spectrum number, peptide index, domain index) of its
+ * hits and its distinct peptide sequences, without walking all the peptides
+ * of the file. Once trimmed the index and its hit lists cannot be modified
+ * anymore.
+ */
+public class ProteinHitIndex implements Serializable {
+
+    /**
+     * Empty array returned for unknown proteins.
+     */
+    private static final String[] NO_SEQUENCES = new String[0];
+    /**
+     * This map has as key the protein key and as value the protein ordinal.
+     */
+    private HashMap<String, Integer> iProteinOrdinals = new HashMap<String, Integer>();
+    /**
+     * The protein keys in order of appearance.
+     */
+    private ArrayList<String> iProteinKeys = new ArrayList<String>();
+    /**
+     * The hits of every protein, indexed by protein ordinal.
+     */
+    private ArrayList<HitList> iHits = new ArrayList<HitList>();
+    /**
+     * The distinct peptide sequences, indexed by sequence ordinal.
+     */
+    private ArrayList<String> iSequences = new ArrayList<String>();
+    /**
+     * This map has as key the peptide sequence and as value the sequence
+     * ordinal. Only needed while the index is filled.
+     */
+    private transient HashMap<String, Integer> iSequenceOrdinals = new HashMap<String, Integer>();
+    /**
+     * The sequence ordinals of every protein, indexed by protein ordinal.
+     */
+    private ArrayList<int[]> iProteinSequences = new ArrayList<int[]>();
+    /**
+     * The number of sequence ordinals of every protein.
+     */
+    private int[] iProteinSequenceCounts = new int[16];
+    /**
+     * The (protein ordinal, sequence ordinal) pairs already added. Only needed
+     * while the index is filled.
+     */
+    private transient HashSet<Long> iProteinSequencePairs = new HashSet<Long>();
+
+    /**
+     * Adds a hit to the index.
+     *
+     * @param aProteinKey the protein key
+     * @param aSpectrumNumber the spectrum number
+     * @param aPeptideIndex the index of the peptide in the spectrum
+     * @param aDomainIndex the index of the domain in the peptide
+     * @param aSequence the sequence of the domain
+     * @throws IllegalStateException if the index is trimmed
+     */
+    public void addHit(String aProteinKey, int aSpectrumNumber, int aPeptideIndex, int aDomainIndex, String aSequence) {
+
+        if (iSequenceOrdinals == null) {
+            throw new IllegalStateException("No hits can be added to a trimmed protein hit index.");
+        }
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            proteinOrdinal = iProteinKeys.size();
+            iProteinOrdinals.put(aProteinKey, proteinOrdinal);
+            iProteinKeys.add(aProteinKey);
+            iHits.add(new HitList());
+            iProteinSequences.add(new int[2]);
+            if (proteinOrdinal == iProteinSequenceCounts.length) {
+                int[] counts = new int[2 * iProteinSequenceCounts.length];
+                System.arraycopy(iProteinSequenceCounts, 0, counts, 0, iProteinSequenceCounts.length);
+                iProteinSequenceCounts = counts;
+            }
+        }
+        iHits.get(proteinOrdinal).add(aSpectrumNumber, aPeptideIndex, aDomainIndex);
+
+        if (aSequence != null) {
+            Integer sequenceOrdinal = iSequenceOrdinals.get(aSequence);
+            if (sequenceOrdinal == null) {
+                sequenceOrdinal = iSequences.size();
+                iSequenceOrdinals.put(aSequence, sequenceOrdinal);
+                iSequences.add(aSequence);
+            }
+            if (iProteinSequencePairs.add(((long) proteinOrdinal << 32) | sequenceOrdinal)) {
+                int[] sequences = iProteinSequences.get(proteinOrdinal);
+                int count = iProteinSequenceCounts[proteinOrdinal];
+                if (count == sequences.length) {
+                    int[] newSequences = new int[2 * sequences.length];
+                    System.arraycopy(sequences, 0, newSequences, 0, count);
+                    sequences = newSequences;
+                    iProteinSequences.set(proteinOrdinal, sequences);
+                }
+                sequences[count] = sequenceOrdinal;
+                iProteinSequenceCounts[proteinOrdinal] = count + 1;
+            }
+        }
+    }
+
+    /**
+     * Releases the lookup structures only needed while the index is filled and
+     * shrinks the arrays to their content. No hits can be added after this.
+     */
+    public void trim() {
+        iSequenceOrdinals = null;
+        iProteinSequencePairs = null;
+        for (int i = 0; i < iProteinKeys.size(); i++) {
+            iHits.get(i).trim();
+            int[] sequences = iProteinSequences.get(i);
+            if (sequences.length > iProteinSequenceCounts[i]) {
+                int[] newSequences = new int[iProteinSequenceCounts[i]];
+                System.arraycopy(sequences, 0, newSequences, 0, newSequences.length);
+                iProteinSequences.set(i, newSequences);
+            }
+        }
+        iProteinKeys.trimToSize();
+        iHits.trimToSize();
+        iSequences.trimToSize();
+    }
+
+    /**
+     * Returns the hits of the given protein.
+     *
+     * @param aProteinKey the protein key
+     * @return the hits of the protein, an empty list if the protein is unknown
+     */
+    public HitList getHits(String aProteinKey) {
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            return new HitList();
+        }
+        return iHits.get(proteinOrdinal);
+    }
+
+    /**
+     * Returns the number of hits of the given protein.
+     *
+     * @param aProteinKey the protein key
+     * @return the number of hits
+     */
+    public int getNumberOfHits(String aProteinKey) {
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            return 0;
+        }
+        return iHits.get(proteinOrdinal).size();
+    }
+
+    /**
+     * Returns the distinct peptide sequences of the given protein in order of
+     * appearance.
+     *
+     * @param aProteinKey the protein key
+     * @return the distinct peptide sequences
+     */
+    public String[] getPeptideSequences(String aProteinKey) {
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            return NO_SEQUENCES;
+        }
+        int[] sequenceOrdinals = iProteinSequences.get(proteinOrdinal);
+        String[] sequences = new String[iProteinSequenceCounts[proteinOrdinal]];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = iSequences.get(sequenceOrdinals[i]);
+        }
+        return sequences;
+    }
+
+    /**
+     * Returns the number of distinct peptide sequences of the given protein.
+     *
+     * @param aProteinKey the protein key
+     * @return the number of distinct peptide sequences
+     */
+    public int getNumberOfPeptideSequences(String aProteinKey) {
+        Integer proteinOrdinal = iProteinOrdinals.get(aProteinKey);
+        if (proteinOrdinal == null) {
+            return 0;
+        }
+        return iProteinSequenceCounts[proteinOrdinal];
+    }
+
+    /**
+     * Returns the keys of the indexed proteins in order of appearance.
+     *
+     * @return the protein keys, a read-only list
+     */
+    public List<String> getProteinKeys() {
+        return Collections.unmodifiableList(iProteinKeys);
+    }
+
+    /**
+     * Returns true if the given protein has hits.
+     *
+     * @param aProteinKey the protein key
+     * @return true if the protein has hits
+     */
+    public boolean contains(String aProteinKey) {
+        return iProteinOrdinals.containsKey(aProteinKey);
+    }
+
+    /**
+     * Writes the index in compact form. The index is trimmed first.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the index could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        trim();
+        aOutput.writeStrings(iSequences);
+        aOutput.writeVarInt(iProteinKeys.size());
+        for (int i = 0; i < iProteinKeys.size(); i++) {
+            aOutput.writeString(iProteinKeys.get(i));
+            iHits.get(i).writeCompact(aOutput);
+            aOutput.writeInts(iProteinSequences.get(i), iProteinSequenceCounts[i]);
+        }
+    }
+
+    /**
+     * Reads an index written by writeCompact. The index read is trimmed.
+     *
+     * @param aInput the compact input
+     * @return the index
+     * @throws IOException if the index could not be read
+     */
+    public static ProteinHitIndex readCompact(CompactInput aInput) throws IOException {
+        ProteinHitIndex index = new ProteinHitIndex();
+        index.iSequences = aInput.readStrings();
+        int size = aInput.readVarInt();
+        index.iProteinKeys = new ArrayList<String>(size);
+        index.iHits = new ArrayList<HitList>(size);
+        index.iProteinSequences = new ArrayList<int[]>(size);
+        index.iProteinSequenceCounts = new int[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            String proteinKey = aInput.readString();
+            index.iProteinOrdinals.put(proteinKey, i);
+            index.iProteinKeys.add(proteinKey);
+            index.iHits.add(HitList.readCompact(aInput));
+            int[] sequences = aInput.readInts();
+            index.iProteinSequences.add(sequences);
+            index.iProteinSequenceCounts[i] = sequences.length;
+        }
+        index.iSequenceOrdinals = null;
+        index.iProteinSequencePairs = null;
+        return index;
+    }
+}
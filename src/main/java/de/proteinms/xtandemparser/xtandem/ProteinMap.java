@@ -1,9 +1,17 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class holds the protein information in a map.
@@ -16,6 +24,20 @@ public class ProteinMap implements Serializable {
      * This map has as key the proteinID and as value the protein.
      */
     private HashMap<String, Protein> iProteinMap = null;
+    /**
+     * The index from the protein keys to the hits of the proteins.
+     */
+    private ProteinHitIndex iHitIndex = null;
+    /**
+     * The groups of proteins identified by the same peptide sequences, built
+     * on first use.
+     */
+    private ArrayList<ProteinGroup> iProteinGroups = null;
+    /**
+     * This map has as key the protein key and as value the group of the
+     * protein, built on first use.
+     */
+    private HashMap<String, ProteinGroup> iProteinGroupMap = null;
 
     /**
      * The constructor gets a raw protein map from the xtandem parser.
@@ -24,53 +46,92 @@ public class ProteinMap implements Serializable {
      * @param aRawProteinMap the raw protein map
      */
     public ProteinMap(ArrayList<String> aProteinIDList, HashMap aRawProteinMap) {
+        this(aProteinIDList, aRawProteinMap, null);
+    }
+
+    /**
+     * The constructor gets a raw protein map and the protein hit index from
+     * the xtandem parser.
+     *
+     * @param aProteinIDList the protein ID list
+     * @param aRawProteinMap the raw protein map
+     * @param aHitIndex the protein hit index, can be null
+     */
+    public ProteinMap(ArrayList<String> aProteinIDList, HashMap aRawProteinMap, ProteinHitIndex aHitIndex) {
+        this(aProteinIDList, aRawProteinMap, aHitIndex, null);
+    }
+
+    /**
+     * The constructor gets a raw protein map, the protein hit index and the
+     * protein occurrences from the xtandem parser.
+     *
+     * @param aProteinIDList the protein ID list
+     * @param aRawProteinMap the raw protein map
+     * @param aHitIndex the protein hit index, can be null
+     * @param aOccurrences the occurrences of the proteins indexed by protein
+     * key, can be null
+     */
+    public ProteinMap(ArrayList<String> aProteinIDList, HashMap aRawProteinMap, ProteinHitIndex aHitIndex, HashMap<String, ProteinOccurrences> aOccurrences) {
         if (aProteinIDList != null && aRawProteinMap != null) {
-            initMap(aProteinIDList, aRawProteinMap);
+            initMap(aProteinIDList, aRawProteinMap, aOccurrences);
         }
+        iHitIndex = aHitIndex;
     }
 
     /**
-     * This method initializes the protein map from a given raw map.
+     * This method initializes the protein map from a given raw map. A protein
+     * is created once per protein key, keys listed several times are skipped.
      *
      * @param aProteinIDList the protein ID list
      * @param aRawProteinMap the raw protein map
+     * @param aOccurrences the occurrences of the proteins, can be null
      */
-    private void initMap(ArrayList<String> aProteinIDList, HashMap<String, String> aProteinMap) {
-        iProteinMap = new HashMap<String, Protein>();
+    private void initMap(ArrayList<String> aProteinIDList, HashMap<String, String> aProteinMap, HashMap<String, ProteinOccurrences> aOccurrences) {
+        iProteinMap = new HashMap<String, Protein>(2 * aProteinIDList.size());
 
         // Iterate over the protein id list
-        if (aProteinIDList != null) {
-            Iterator iter = aProteinIDList.iterator();
-            while (iter.hasNext()) {
-                // Get the proteinID
-                String proteinID = iter.next().toString();
-
-                // Get the rest of the protein parameters for the protein map.
-                String proteinUID = aProteinMap.get("uid" + proteinID).toString();
-                String proteinLabel = aProteinMap.get("label" + proteinID).toString();
-                String proteinDescription;
-                if (aProteinMap.get("description" + proteinID) != null) {
-                    proteinDescription = aProteinMap.get("description" + proteinID).toString();
-                } else {
-                    proteinDescription = proteinLabel;
-                }
+        Iterator iter = aProteinIDList.iterator();
+        while (iter.hasNext()) {
+            // Get the proteinID
+            String proteinID = iter.next().toString();
+            if (iProteinMap.containsKey(proteinID)) {
+                continue;
+            }
 
-                Double expectValue;
+            // Get the rest of the protein parameters for the protein map.
+            String proteinUID = aProteinMap.get("uid" + proteinID).toString();
+            String proteinLabel = aProteinMap.get("label" + proteinID).toString();
+            String proteinDescription;
+            if (aProteinMap.get("description" + proteinID) != null) {
+                proteinDescription = aProteinMap.get("description" + proteinID).toString();
+            } else {
+                proteinDescription = proteinLabel;
+            }
 
-                try {
-                    expectValue = Double.parseDouble(aProteinMap.get("expect" + proteinID).toString());
-                } catch (NumberFormatException e) {
-                    expectValue = null;
-                }
+            Double expectValue;
 
-                Double summedScore = Double.parseDouble(aProteinMap.get("sumI" + proteinID).toString());
+            try {
+                expectValue = Double.parseDouble(aProteinMap.get("expect" + proteinID).toString());
+            } catch (NumberFormatException e) {
+                expectValue = null;
+            }
+
+            Double summedScore;
 
-                // Create an instance of a protein.
-                Protein protein = new Protein(proteinID, proteinUID, proteinLabel, proteinDescription, expectValue, summedScore);
+            try {
+                summedScore = Double.parseDouble(aProteinMap.get("sumI" + proteinID).toString());
+            } catch (NumberFormatException e) {
+                summedScore = null;
+            }
 
-                // Put the protein into the map, value is the id.
-                iProteinMap.put(proteinID, protein);
+            // Create an instance of a protein.
+            Protein protein = new Protein(proteinID, proteinUID, proteinLabel, proteinDescription, expectValue, summedScore);
+            if (aOccurrences != null) {
+                protein.setOccurrences(aOccurrences.get(proteinID));
             }
+
+            // Put the protein into the map, value is the id.
+            iProteinMap.put(proteinID, protein);
         }
     }
 
@@ -91,9 +152,151 @@ public class ProteinMap implements Serializable {
     /**
      * This method returns an iterator of the keys in the protein map.
      *
-     * @return iProteinMap.keySet().iterator()
+     * @return a read-only iterator of the keys of iProteinMap
      */
     public Iterator getProteinIDIterator() {
-        return iProteinMap.keySet().iterator();
+        return Collections.unmodifiableSet(iProteinMap.keySet()).iterator();
+    }
+
+    /**
+     * Returns the hits of the given protein, as (spectrum number, peptide
+     * index, domain index) triples.
+     *
+     * @param aProteinID the protein id
+     * @return the hits of the protein, an empty list if no index is available
+     */
+    public HitList getHits(String aProteinID) {
+        if (iHitIndex != null) {
+            return iHitIndex.getHits(aProteinID);
+        } else {
+            return new HitList();
+        }
+    }
+
+    /**
+     * Returns the distinct peptide sequences identified for the given protein.
+     *
+     * @param aProteinID the protein id
+     * @return the distinct peptide sequences, empty if no index is available
+     */
+    public String[] getPeptideSequences(String aProteinID) {
+        if (iHitIndex != null) {
+            return iHitIndex.getPeptideSequences(aProteinID);
+        } else {
+            return new String[0];
+        }
+    }
+
+    /**
+     * Returns the index from the protein keys to the hits of the proteins.
+     *
+     * @return the protein hit index, null if not available
+     */
+    public ProteinHitIndex getHitIndex() {
+        return iHitIndex;
+    }
+
+    /**
+     * Returns the groups of proteins identified by the same set of peptide
+     * sequences, in order of appearance of their first protein. Every protein
+     * with hits belongs to exactly one group.
+     *
+     * @return the protein groups, a read-only list, empty if no index is
+     * available
+     */
+    public List<ProteinGroup> getProteinGroups() {
+        if (iProteinGroups == null) {
+            buildProteinGroups();
+        }
+        return Collections.unmodifiableList(iProteinGroups);
+    }
+
+    /**
+     * Returns the group of the given protein.
+     *
+     * @param aProteinID the protein id
+     * @return the group of the protein, null if the protein has no hits or no
+     * index is available
+     */
+    public ProteinGroup getProteinGroup(String aProteinID) {
+        if (iProteinGroups == null) {
+            buildProteinGroups();
+        }
+        return iProteinGroupMap.get(aProteinID);
+    }
+
+    /**
+     * Writes the proteins in compact form. The hit index is not written, it is
+     * part of the compact form of the parser, and the groups are built again
+     * on first use.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the proteins could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeBoolean(iProteinMap != null);
+        if (iProteinMap != null) {
+            aOutput.writeVarInt(iProteinMap.size());
+            for (Map.Entry<String, Protein> entry : iProteinMap.entrySet()) {
+                aOutput.writeString(entry.getKey());
+                entry.getValue().writeCompact(aOutput);
+            }
+        }
+    }
+
+    /**
+     * Reads proteins written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @param aHitIndex the protein hit index, can be null
+     * @return the protein map
+     * @throws IOException if the proteins could not be read
+     */
+    public static ProteinMap readCompact(CompactInput aInput, ProteinHitIndex aHitIndex) throws IOException {
+        ProteinMap proteinMap = new ProteinMap(null, null, aHitIndex);
+        if (aInput.readBoolean()) {
+            int size = aInput.readVarInt();
+            proteinMap.iProteinMap = new HashMap<String, Protein>(2 * size);
+            for (int i = 0; i < size; i++) {
+                String proteinID = aInput.readString();
+                proteinMap.iProteinMap.put(proteinID, Protein.readCompact(aInput));
+            }
+        }
+        return proteinMap;
+    }
+
+    /**
+     * Groups the proteins of the hit index by their sorted peptide sequences.
+     */
+    private void buildProteinGroups() {
+        ArrayList<ProteinGroup> groups = new ArrayList<ProteinGroup>();
+        HashMap<String, ProteinGroup> groupMap = new HashMap<String, ProteinGroup>();
+        if (iHitIndex != null) {
+            LinkedHashMap<List<String>, ArrayList<String>> members = new LinkedHashMap<List<String>, ArrayList<String>>();
+            for (String proteinKey : iHitIndex.getProteinKeys()) {
+                String[] sequences = iHitIndex.getPeptideSequences(proteinKey);
+                Arrays.sort(sequences);
+                List<String> peptideSet = Arrays.asList(sequences);
+                ArrayList<String> proteinKeys = members.get(peptideSet);
+                if (proteinKeys == null) {
+                    proteinKeys = new ArrayList<String>(1);
+                    members.put(peptideSet, proteinKeys);
+                }
+                proteinKeys.add(proteinKey);
+            }
+            for (Map.Entry<List<String>, ArrayList<String>> entry : members.entrySet()) {
+                List<String> peptideSet = entry.getKey();
+                ArrayList<String> proteinKeys = entry.getValue();
+                ProteinGroup group = new ProteinGroup(proteinKeys.toArray(new String[proteinKeys.size()]),
+                        peptideSet.toArray(new String[peptideSet.size()]));
+                groups.add(group);
+                for (String proteinKey : proteinKeys) {
+                    groupMap.put(proteinKey, group);
+                }
+            }
+            groups.trimToSize();
+        }
+        iProteinGroupMap = groupMap;
+        iProteinGroups = groups;
     }
 }
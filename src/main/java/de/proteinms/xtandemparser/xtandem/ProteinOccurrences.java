@@ -0,0 +1,215 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * This class holds the occurrences of a protein in the model groups of the
+ * spectra. X!Tandem writes a protein element per spectrum matching the
+ * protein, each with its own id, uid, expectation value and summed intensity.
+ * The values are kept in parallel arrays, one entry per occurrence in order
+ * of appearance.
+ */
+public class ProteinOccurrences implements Serializable {
+
+    /**
+     * The number of occurrences.
+     */
+    private int iSize = 0;
+    /**
+     * The spectrum numbers of the occurrences.
+     */
+    private int[] iSpectrumNumbers = new int[2];
+    /**
+     * The identifiers of the occurrences, (spectrum#).(id#).
+     */
+    private String[] iIDs = new String[2];
+    /**
+     * The unique numbers calculated by the search engine.
+     */
+    private String[] iUIDs = new String[2];
+    /**
+     * The log10 values of the expectation values, NaN if not estimated.
+     */
+    private double[] iExpectValues = new double[2];
+    /**
+     * The sums of the fragment ion intensities.
+     */
+    private double[] iSummedScores = new double[2];
+
+    /**
+     * Adds an occurrence.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aID the identifier, (spectrum#).(id#)
+     * @param aUID the unique number calculated by the search engine
+     * @param aExpectValue the log10 value of the expectation value, NaN if not
+     * estimated
+     * @param aSummedScore the sum of the fragment ion intensities
+     */
+    public void add(int aSpectrumNumber, String aID, String aUID, double aExpectValue, double aSummedScore) {
+        if (iSize == iSpectrumNumbers.length) {
+            resize(Math.max(2, 2 * iSize));
+        }
+        iSpectrumNumbers[iSize] = aSpectrumNumber;
+        iIDs[iSize] = aID;
+        iUIDs[iSize] = aUID;
+        iExpectValues[iSize] = aExpectValue;
+        iSummedScores[iSize] = aSummedScore;
+        iSize++;
+    }
+
+    /**
+     * Shrinks the arrays to the number of occurrences.
+     */
+    public void trim() {
+        if (iSpectrumNumbers.length > iSize) {
+            resize(iSize);
+        }
+    }
+
+    /**
+     * Returns the number of occurrences.
+     *
+     * @return the number of occurrences
+     */
+    public int size() {
+        return iSize;
+    }
+
+    /**
+     * Returns the spectrum number of the given occurrence.
+     *
+     * @param aIndex the index of the occurrence
+     * @return the spectrum number
+     */
+    public int getSpectrumNumber(int aIndex) {
+        checkIndex(aIndex);
+        return iSpectrumNumbers[aIndex];
+    }
+
+    /**
+     * Returns the identifier of the given occurrence.
+     *
+     * @param aIndex the index of the occurrence
+     * @return the identifier, (spectrum#).(id#)
+     */
+    public String getID(int aIndex) {
+        checkIndex(aIndex);
+        return iIDs[aIndex];
+    }
+
+    /**
+     * Returns the unique number of the given occurrence.
+     *
+     * @param aIndex the index of the occurrence
+     * @return the unique number calculated by the search engine
+     */
+    public String getUID(int aIndex) {
+        checkIndex(aIndex);
+        return iUIDs[aIndex];
+    }
+
+    /**
+     * Returns the log10 value of the expectation value of the given
+     * occurrence.
+     *
+     * @param aIndex the index of the occurrence
+     * @return the expectation value, NaN if not estimated
+     */
+    public double getExpectValue(int aIndex) {
+        checkIndex(aIndex);
+        return iExpectValues[aIndex];
+    }
+
+    /**
+     * Returns the summed score of the given occurrence.
+     *
+     * @param aIndex the index of the occurrence
+     * @return the sum of the fragment ion intensities
+     */
+    public double getSummedScore(int aIndex) {
+        checkIndex(aIndex);
+        return iSummedScores[aIndex];
+    }
+
+    /**
+     * Writes the occurrences in compact form, the spectrum numbers delta
+     * encoded.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the occurrences could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeVarInt(iSize);
+        int previousSpectrum = 0;
+        for (int i = 0; i < iSize; i++) {
+            aOutput.writeSignedVarInt(iSpectrumNumbers[i] - previousSpectrum);
+            aOutput.writeString(iIDs[i]);
+            aOutput.writeString(iUIDs[i]);
+            aOutput.writeDouble(iExpectValues[i]);
+            aOutput.writeDouble(iSummedScores[i]);
+            previousSpectrum = iSpectrumNumbers[i];
+        }
+    }
+
+    /**
+     * Reads occurrences written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @return the occurrences
+     * @throws IOException if the occurrences could not be read
+     */
+    public static ProteinOccurrences readCompact(CompactInput aInput) throws IOException {
+        ProteinOccurrences occurrences = new ProteinOccurrences();
+        int size = aInput.readVarInt();
+        occurrences.resize(size);
+        int spectrum = 0;
+        for (int i = 0; i < size; i++) {
+            spectrum += aInput.readSignedVarInt();
+            occurrences.iSpectrumNumbers[i] = spectrum;
+            occurrences.iIDs[i] = aInput.readString();
+            occurrences.iUIDs[i] = aInput.readString();
+            occurrences.iExpectValues[i] = aInput.readDouble();
+            occurrences.iSummedScores[i] = aInput.readDouble();
+        }
+        occurrences.iSize = size;
+        return occurrences;
+    }
+
+    /**
+     * Resizes the arrays.
+     *
+     * @param aLength the new length, at least the number of occurrences
+     */
+    private void resize(int aLength) {
+        int[] spectrumNumbers = new int[aLength];
+        System.arraycopy(iSpectrumNumbers, 0, spectrumNumbers, 0, iSize);
+        iSpectrumNumbers = spectrumNumbers;
+        String[] ids = new String[aLength];
+        System.arraycopy(iIDs, 0, ids, 0, iSize);
+        iIDs = ids;
+        String[] uids = new String[aLength];
+        System.arraycopy(iUIDs, 0, uids, 0, iSize);
+        iUIDs = uids;
+        double[] expectValues = new double[aLength];
+        System.arraycopy(iExpectValues, 0, expectValues, 0, iSize);
+        iExpectValues = expectValues;
+        double[] summedScores = new double[aLength];
+        System.arraycopy(iSummedScores, 0, summedScores, 0, iSize);
+        iSummedScores = summedScores;
+    }
+
+    /**
+     * Checks that the given index is within the occurrences.
+     *
+     * @param aIndex the index of the occurrence
+     */
+    private void checkIndex(int aIndex) {
+        if (aIndex < 0 || aIndex >= iSize) {
+            throw new IndexOutOfBoundsException("Occurrence index " + aIndex + " out of bounds for " + iSize + " occurrences.");
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -293,4 +296,59 @@ public class Spectrum implements Serializable {
     public void setSpectrumNumber(int aSpectrumNumber) {
         this.iSpectrumNumber = aSpectrumNumber;
     }
+
+    /**
+     * Writes the spectrum in compact form.
+     *
+     * @param aOutput the compact output
+     * @throws IOException if the spectrum could not be written
+     */
+    public void writeCompact(CompactOutput aOutput) throws IOException {
+        aOutput.writeSignedVarInt(iSpectrumId);
+        aOutput.writeDouble(iPrecursorMh);
+        aOutput.writeSignedVarInt(iPrecursorCharge);
+        aOutput.writeString(iPrecursorRetentionTime);
+        aOutput.writeDouble(iExpectValue);
+        aOutput.writeString(iLabel);
+        aOutput.writeDouble(iSummedScore);
+        aOutput.writeDouble(iMaxFragIonIntensity);
+        aOutput.writeDouble(iIntensityMultiplier);
+        aOutput.writeSignedVarInt(iSpectrumNumber);
+        aOutput.writeBoolean(iSpectrumValues != null);
+        if (iSpectrumValues != null) {
+            aOutput.writeVarInt(iSpectrumValues.size());
+            for (Double value : iSpectrumValues) {
+                aOutput.writeDouble(value);
+            }
+        }
+    }
+
+    /**
+     * Reads a spectrum written by writeCompact.
+     *
+     * @param aInput the compact input
+     * @return the spectrum
+     * @throws IOException if the spectrum could not be read
+     */
+    public static Spectrum readCompact(CompactInput aInput) throws IOException {
+        Spectrum spectrum = new Spectrum();
+        spectrum.iSpectrumId = aInput.readSignedVarInt();
+        spectrum.iPrecursorMh = aInput.readDouble();
+        spectrum.iPrecursorCharge = aInput.readSignedVarInt();
+        spectrum.iPrecursorRetentionTime = aInput.readString();
+        spectrum.iExpectValue = aInput.readDouble();
+        spectrum.iLabel = aInput.readString();
+        spectrum.iSummedScore = aInput.readDouble();
+        spectrum.iMaxFragIonIntensity = aInput.readDouble();
+        spectrum.iIntensityMultiplier = aInput.readDouble();
+        spectrum.iSpectrumNumber = aInput.readSignedVarInt();
+        if (aInput.readBoolean()) {
+            int size = aInput.readVarInt();
+            spectrum.iSpectrumValues = new ArrayList<Double>(size);
+            for (int i = 0; i < size; i++) {
+                spectrum.iSpectrumValues.add(aInput.readDouble());
+            }
+        }
+        return spectrum;
+    }
 }
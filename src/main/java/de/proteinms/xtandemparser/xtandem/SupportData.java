@@ -1,6 +1,10 @@
 package de.proteinms.xtandemparser.xtandem;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -8,6 +12,11 @@ import java.util.HashMap;
  * This class holds the information about the supporting data: 1) Hyperscore
  * expectation function 2) Convolution survival function 3) Ion histograms
  * (a,b,c + x,y,z ions) 4) fragment ion mass spectrum: m/z and intensity
+ * <p>
+ * When the peaks are kept in a PeakStore, the fragment ion m/z values and
+ * intensities are views of the store, the lists are only built when asked
+ * for. Likewise, the values recorded in SupportDataRanges are only read from
+ * the X!Tandem file when asked for, which then has to be still open.
  *
  * @author Thilo Muth
  */
@@ -45,6 +54,23 @@ public class SupportData implements Serializable {
     private ArrayList<Integer> iYValueszIons = null;
     private ArrayList<Double> iXValuesFragIonMass2Charge = null;
     private ArrayList<Double> iYValuesFragIonMass2Charge = null;
+    /**
+     * The fragment ion m/z values in the peak store, null if not stored.
+     */
+    private transient DoubleBuffer iFragIonMzBuffer = null;
+    /**
+     * The fragment ion intensities in the peak store, null if not stored.
+     */
+    private transient FloatBuffer iFragIonIntensityBuffer = null;
+    /**
+     * The ranges of the values read from the file when first asked for, null
+     * if all the values are read by the constructor.
+     */
+    private transient SupportDataRanges iSupportDataRanges = null;
+    /**
+     * The spectrum number.
+     */
+    private transient int iSpectrumNumber;
 
     /**
      * Constructor gets the raw support map and the spectrum number.
@@ -151,6 +177,40 @@ public class SupportData implements Serializable {
         }
     }
 
+    /**
+     * Constructor gets the raw support map, the peak store and the spectrum
+     * number. The fragment ion peaks are taken from the store if they are
+     * there, from the map otherwise.
+     *
+     * @param map the raw support map
+     * @param aPeakStore the peak store, can be null
+     * @param spectrumNumber the spectrum number
+     */
+    public SupportData(HashMap map, PeakStore aPeakStore, int spectrumNumber) {
+        this(map, spectrumNumber);
+        if (aPeakStore != null && aPeakStore.contains(spectrumNumber)) {
+            iFragIonMzBuffer = aPeakStore.getMzValues(spectrumNumber);
+            iFragIonIntensityBuffer = aPeakStore.getIntensities(spectrumNumber);
+        }
+    }
+
+    /**
+     * Constructor gets the raw support map, the peak store, the support data
+     * ranges and the spectrum number. The values which are neither in the map
+     * nor in the store are read from the ranges when first asked for, an
+     * IllegalStateException being thrown if they can no longer be read.
+     *
+     * @param map the raw support map
+     * @param aPeakStore the peak store, can be null
+     * @param aSupportDataRanges the support data ranges, can be null
+     * @param spectrumNumber the spectrum number
+     */
+    public SupportData(HashMap map, PeakStore aPeakStore, SupportDataRanges aSupportDataRanges, int spectrumNumber) {
+        this(map, aPeakStore, spectrumNumber);
+        iSupportDataRanges = aSupportDataRanges;
+        iSpectrumNumber = spectrumNumber;
+    }
+
     public String getHyperlabel() {
         return iHyperlabel;
     }
@@ -260,6 +320,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuesHyperscore() {
+        if (iXValuesHyperscore == null) {
+            iXValuesHyperscore = readIntegers("XVAL_HYPER");
+        }
         return iXValuesHyperscore;
     }
 
@@ -268,6 +331,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuesHyperscore() {
+        if (iYValuesHyperscore == null) {
+            iYValuesHyperscore = readIntegers("YVAL_HYPER");
+        }
         return iYValuesHyperscore;
     }
 
@@ -276,6 +342,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuesConvolute() {
+        if (iXValuesConvolute == null) {
+            iXValuesConvolute = readIntegers("XVAL_CONVOL");
+        }
         return iXValuesConvolute;
     }
 
@@ -284,6 +353,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuesConvolute() {
+        if (iYValuesConvolute == null) {
+            iYValuesConvolute = readIntegers("YVAL_CONVOL");
+        }
         return iYValuesConvolute;
     }
 
@@ -292,6 +364,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuesaIons() {
+        if (iXValuesaIons == null) {
+            iXValuesaIons = readIntegers("XVAL_AIONS");
+        }
         return iXValuesaIons;
     }
 
@@ -300,6 +375,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuesaIons() {
+        if (iYValuesaIons == null) {
+            iYValuesaIons = readIntegers("YVAL_AIONS");
+        }
         return iYValuesaIons;
     }
 
@@ -308,6 +386,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuesbIons() {
+        if (iXValuesbIons == null) {
+            iXValuesbIons = readIntegers("XVAL_BIONS");
+        }
         return iXValuesbIons;
     }
 
@@ -316,6 +397,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuesbIons() {
+        if (iYValuesbIons == null) {
+            iYValuesbIons = readIntegers("YVAL_BIONS");
+        }
         return iYValuesbIons;
     }
 
@@ -324,6 +408,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuesyIons() {
+        if (iXValuesyIons == null) {
+            iXValuesyIons = readIntegers("XVAL_YIONS");
+        }
         return iXValuesyIons;
     }
 
@@ -332,6 +419,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuesyIons() {
+        if (iYValuesyIons == null) {
+            iYValuesyIons = readIntegers("YVAL_YIONS");
+        }
         return iYValuesyIons;
     }
 
@@ -340,6 +430,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuescIons() {
+        if (iYValuescIons == null) {
+            iYValuescIons = readIntegers("YVAL_CIONS");
+        }
         return iYValuescIons;
     }
 
@@ -348,6 +441,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuescIons() {
+        if (iXValuescIons == null) {
+            iXValuescIons = readIntegers("XVAL_CIONS");
+        }
         return iXValuescIons;
     }
 
@@ -356,6 +452,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValuesxIons() {
+        if (iXValuesxIons == null) {
+            iXValuesxIons = readIntegers("XVAL_XIONS");
+        }
         return iXValuesxIons;
     }
 
@@ -364,6 +463,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValuesxIons() {
+        if (iYValuesxIons == null) {
+            iYValuesxIons = readIntegers("YVAL_XIONS");
+        }
         return iYValuesxIons;
     }
 
@@ -372,6 +474,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getXValueszIons() {
+        if (iXValueszIons == null) {
+            iXValueszIons = readIntegers("XVAL_ZIONS");
+        }
         return iXValueszIons;
     }
 
@@ -380,6 +485,9 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Integer> getYValueszIons() {
+        if (iYValueszIons == null) {
+            iYValueszIons = readIntegers("YVAL_ZIONS");
+        }
         return iYValueszIons;
     }
 
@@ -388,20 +496,151 @@ public class SupportData implements Serializable {
     }
 
     public ArrayList<Double> getXValuesFragIonMass2Charge() {
+        if (iXValuesFragIonMass2Charge == null && iFragIonMzBuffer != null) {
+            iXValuesFragIonMass2Charge = new ArrayList<Double>(iFragIonMzBuffer.limit());
+            for (int i = 0; i < iFragIonMzBuffer.limit(); i++) {
+                iXValuesFragIonMass2Charge.add(iFragIonMzBuffer.get(i));
+            }
+        }
+        if (iXValuesFragIonMass2Charge == null) {
+            iXValuesFragIonMass2Charge = readDoubles("XVAL_FRAGIONMZ");
+        }
         return iXValuesFragIonMass2Charge;
     }
 
     public void setXValuesFragIonMass2Charge(
             ArrayList<Double> valuesFragIonMass2Charge) {
         iXValuesFragIonMass2Charge = valuesFragIonMass2Charge;
+        iFragIonMzBuffer = null;
     }
 
     public ArrayList<Double> getYValuesFragIonMass2Charge() {
+        if (iYValuesFragIonMass2Charge == null && iFragIonIntensityBuffer != null) {
+            iYValuesFragIonMass2Charge = new ArrayList<Double>(iFragIonIntensityBuffer.limit());
+            for (int i = 0; i < iFragIonIntensityBuffer.limit(); i++) {
+                iYValuesFragIonMass2Charge.add((double) iFragIonIntensityBuffer.get(i));
+            }
+        }
+        if (iYValuesFragIonMass2Charge == null) {
+            iYValuesFragIonMass2Charge = readDoubles("YVAL_FRAGIONMZ");
+        }
         return iYValuesFragIonMass2Charge;
     }
 
     public void setYValuesFragIonMass2Charge(ArrayList<Double> aValuesFragIonMass2Charge) {
         iYValuesFragIonMass2Charge = aValuesFragIonMass2Charge;
+        iFragIonIntensityBuffer = null;
+    }
+
+    /**
+     * Returns the fragment ion m/z values as a buffer: a read-only view of
+     * the peak store without copy if the peaks are stored there, a buffer
+     * filled from the list otherwise.
+     *
+     * @return the fragment ion m/z values, null if not given
+     */
+    public DoubleBuffer getFragIonMzBuffer() {
+        if (iFragIonMzBuffer != null) {
+            return iFragIonMzBuffer.duplicate();
+        }
+        if (getXValuesFragIonMass2Charge() == null) {
+            return null;
+        }
+        double[] values = new double[iXValuesFragIonMass2Charge.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = iXValuesFragIonMass2Charge.get(i);
+        }
+        return DoubleBuffer.wrap(values);
+    }
+
+    /**
+     * Returns the fragment ion intensities as a buffer: a read-only view of
+     * the peak store without copy if the peaks are stored there, a buffer
+     * filled from the list otherwise.
+     *
+     * @return the fragment ion intensities, null if not given
+     */
+    public FloatBuffer getFragIonIntensityBuffer() {
+        if (iFragIonIntensityBuffer != null) {
+            return iFragIonIntensityBuffer.duplicate();
+        }
+        if (getYValuesFragIonMass2Charge() == null) {
+            return null;
+        }
+        float[] values = new float[iYValuesFragIonMass2Charge.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = iYValuesFragIonMass2Charge.get(i).floatValue();
+        }
+        return FloatBuffer.wrap(values);
+    }
+
+    /**
+     * Builds the lists of the peaks from the store and reads the values from
+     * the support data ranges before the default serialization, the views of
+     * the store and the ranges are not serializable.
+     *
+     * @param aOutput the object output stream
+     * @throws IOException if the object could not be written
+     */
+    private void writeObject(ObjectOutputStream aOutput) throws IOException {
+        getXValuesHyperscore();
+        getYValuesHyperscore();
+        getXValuesConvolute();
+        getYValuesConvolute();
+        getXValuesaIons();
+        getYValuesaIons();
+        getXValuesbIons();
+        getYValuesbIons();
+        getXValuescIons();
+        getYValuescIons();
+        getXValuesxIons();
+        getYValuesxIons();
+        getXValuesyIons();
+        getYValuesyIons();
+        getXValueszIons();
+        getYValueszIons();
+        getXValuesFragIonMass2Charge();
+        getYValuesFragIonMass2Charge();
+        aOutput.defaultWriteObject();
+    }
+
+    /**
+     * Reads the given values from the support data ranges.
+     *
+     * @param aPrefix the key prefix of the values
+     * @return the values, null if not in the ranges
+     */
+    private String readValues(String aPrefix) {
+        if (iSupportDataRanges == null) {
+            return null;
+        }
+        try {
+            return iSupportDataRanges.getValues(aPrefix, iSpectrumNumber);
+        } catch (IOException e) {
+            throw new IllegalStateException("The support data of spectrum " + iSpectrumNumber + " could not be read.", e);
+        }
+    }
+
+    /**
+     * Reads the given integer values from the support data ranges.
+     *
+     * @param aPrefix the key prefix of the values
+     * @return the values, null if not in the ranges
+     */
+    private ArrayList<Integer> readIntegers(String aPrefix) {
+        String values = readValues(aPrefix);
+        return values == null ? null : splitStringToIntegerList(values);
+    }
+
+    /**
+     * Reads the given double values from the support data ranges.
+     *
+     * @param aPrefix the key prefix of the values
+     * @return the values, null if not in the ranges
+     */
+    private ArrayList<Double> readDoubles(String aPrefix) {
+        String values = readValues(aPrefix);
+        return values == null ? null : splitStringToDoubleList(values);
     }
 
     /**
@@ -0,0 +1,208 @@
+package de.proteinms.xtandemparser.xtandem;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class holds the positions of the GAML values of the support data in
+ * the X!Tandem file, so that the values are read from the file when they are
+ * first needed rather than kept in memory as strings. The values are indexed
+ * by key prefix, e.g. XVAL_HYPER, and by spectrum number, and only values
+ * written in plain ASCII are recorded, so that the bytes of the file are the
+ * values themselves.
+ * <p>
+ * The file stays open until the ranges are closed, after which the values can
+ * no longer be read. Once filled the ranges can be read from several threads
+ * at the same time.
+ */
+public class SupportDataRanges {
+
+    /**
+     * The charset of the recorded values.
+     */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    /**
+     * The file holding the values.
+     */
+    private final File iFile;
+    /**
+     * The channel to the file, null when closed.
+     */
+    private volatile FileChannel iChannel;
+    /**
+     * The positions of the values in the file, indexed by spectrum number,
+     * per key prefix.
+     */
+    private HashMap<String, long[]> iStarts = new HashMap<String, long[]>();
+    /**
+     * The lengths of the values plus one, 0 if the spectrum has no value,
+     * indexed by spectrum number, per key prefix.
+     */
+    private HashMap<String, int[]> iLengths = new HashMap<String, int[]>();
+
+    /**
+     * Opens the given file for reading.
+     *
+     * @param aFile the X!Tandem file
+     * @throws IOException if the file could not be opened
+     */
+    public SupportDataRanges(File aFile) throws IOException {
+        iFile = aFile;
+        iChannel = new RandomAccessFile(aFile, "r").getChannel();
+    }
+
+    /**
+     * Adds the range of a value, replacing the range recorded before for the
+     * same key prefix and spectrum, if any.
+     *
+     * @param aPrefix the key prefix, e.g. XVAL_HYPER
+     * @param aSpectrumNumber the spectrum number
+     * @param aStart the position of the value in the file
+     * @param aLength the length of the value in bytes
+     */
+    public void add(String aPrefix, int aSpectrumNumber, long aStart, int aLength) {
+        if (aSpectrumNumber < 1) {
+            throw new IllegalArgumentException("Invalid spectrum number: " + aSpectrumNumber + ".");
+        }
+        long[] starts = iStarts.get(aPrefix);
+        int[] lengths = iLengths.get(aPrefix);
+        if (starts == null) {
+            starts = new long[0];
+            lengths = new int[0];
+        }
+        if (lengths.length <= aSpectrumNumber) {
+            int length = Math.max(aSpectrumNumber + 1, 2 * lengths.length);
+            long[] newStarts = new long[length];
+            System.arraycopy(starts, 0, newStarts, 0, starts.length);
+            starts = newStarts;
+            int[] newLengths = new int[length];
+            System.arraycopy(lengths, 0, newLengths, 0, lengths.length);
+            lengths = newLengths;
+        }
+        starts[aSpectrumNumber] = aStart;
+        lengths[aSpectrumNumber] = aLength + 1;
+        iStarts.put(aPrefix, starts);
+        iLengths.put(aPrefix, lengths);
+    }
+
+    /**
+     * Removes the range of a value, if any.
+     *
+     * @param aPrefix the key prefix, e.g. XVAL_HYPER
+     * @param aSpectrumNumber the spectrum number
+     */
+    public void remove(String aPrefix, int aSpectrumNumber) {
+        if (contains(aPrefix, aSpectrumNumber)) {
+            iLengths.get(aPrefix)[aSpectrumNumber] = 0;
+        }
+    }
+
+    /**
+     * Shrinks the arrays to the highest spectrum number recorded.
+     */
+    public void trim() {
+        for (Map.Entry<String, int[]> entry : iLengths.entrySet()) {
+            int[] lengths = entry.getValue();
+            int length = lengths.length;
+            while (length > 0 && lengths[length - 1] == 0) {
+                length--;
+            }
+            if (length < lengths.length) {
+                int[] newLengths = new int[length];
+                System.arraycopy(lengths, 0, newLengths, 0, length);
+                entry.setValue(newLengths);
+                long[] newStarts = new long[length];
+                System.arraycopy(iStarts.get(entry.getKey()), 0, newStarts, 0, length);
+                iStarts.put(entry.getKey(), newStarts);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the range of the given value is recorded.
+     *
+     * @param aPrefix the key prefix, e.g. XVAL_HYPER
+     * @param aSpectrumNumber the spectrum number
+     * @return true if the range of the value is recorded
+     */
+    public boolean contains(String aPrefix, int aSpectrumNumber) {
+        int[] lengths = iLengths.get(aPrefix);
+        return lengths != null && aSpectrumNumber > 0 && aSpectrumNumber < lengths.length && lengths[aSpectrumNumber] > 0;
+    }
+
+    /**
+     * Reads the given value from the file.
+     *
+     * @param aPrefix the key prefix, e.g. XVAL_HYPER
+     * @param aSpectrumNumber the spectrum number
+     * @return the value, null if its range is not recorded
+     * @throws IOException if the value could not be read, e.g. because the
+     * ranges are closed
+     */
+    public String getValues(String aPrefix, int aSpectrumNumber) throws IOException {
+        if (!contains(aPrefix, aSpectrumNumber)) {
+            return null;
+        }
+        FileChannel channel = iChannel;
+        if (channel == null) {
+            throw new IOException("The support data of " + iFile.getName() + " can no longer be read, the file is closed.");
+        }
+        long position = iStarts.get(aPrefix)[aSpectrumNumber];
+        ByteBuffer buffer = ByteBuffer.allocate(iLengths.get(aPrefix)[aSpectrumNumber] - 1);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + iFile.getName() + " at " + position + ".");
+            }
+            position += read;
+        }
+        return new String(buffer.array(), ASCII);
+    }
+
+    /**
+     * Reads all the recorded values and puts them in the given map under the
+     * keys of the support data map, i.e. prefix_s(spectrum#).
+     *
+     * @param aMap the map
+     * @throws IOException if a value could not be read
+     */
+    public void putValues(HashMap<String, String> aMap) throws IOException {
+        for (Map.Entry<String, int[]> entry : iLengths.entrySet()) {
+            int[] lengths = entry.getValue();
+            for (int i = 1; i < lengths.length; i++) {
+                if (lengths[i] > 0) {
+                    aMap.put(entry.getKey() + "_s" + i, getValues(entry.getKey(), i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the file. The values can no longer be read afterwards.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    public void close() throws IOException {
+        FileChannel channel = iChannel;
+        iChannel = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns true if the file is closed.
+     *
+     * @return true if the file is closed
+     */
+    public boolean isClosed() {
+        return iChannel == null;
+    }
+}
@@ -1,14 +1,28 @@
 package de.proteinms.xtandemparser.xtandem;
 
 import de.proteinms.xtandemparser.interfaces.Ion;
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import de.proteinms.xtandemparser.parser.SalvageReport;
+import de.proteinms.xtandemparser.parser.XTandemFilter;
 import de.proteinms.xtandemparser.parser.XTandemParser;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
 
+import java.io.Externalizable;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.TreeSet;
 import java.util.Vector;
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -18,10 +32,21 @@ import org.xml.sax.SAXException;
  * This class represents the xtandem file object as the starting point which
  * provides all the methods to use the information which are parsed by the
  * Xtandem parser.
+ * <p>
+ * The file is serialized in compact form: only the file name and the content
+ * of the parser are written, see XTandemParser, the maps built from them are
+ * built again when needed after deserialization. A trimmed file writes its
+ * object model in compact form as well, as the raw maps it is built from are
+ * no longer there.
+ * <p>
+ * In compact mode, see trim(), the object model is built at once and the raw
+ * maps of the parser are released, which roughly halves the heap retained by
+ * a loaded file. Only the object model, the support data and the indexes are
+ * available afterwards.
  *
  * @author Thilo Muth
  */
-public class XTandemFile implements Serializable {
+public class XTandemFile implements Externalizable {
 
     /**
      * The filename of xtandem xml file.
@@ -63,6 +88,30 @@ public class XTandemFile implements Serializable {
      * This variable holds the number of spectra.
      */
     private int iSpectraNumber = 0;
+    /**
+     * True if the raw maps of the parser have been released.
+     */
+    private boolean iTrimmed = false;
+    /**
+     * The FASTA file the protein sequences are read from, null to use the
+     * FASTA file given for the peptides in the xtandem file.
+     */
+    private File iFastaFile = null;
+    /**
+     * The read-only view returned by freeze(), null if not frozen yet.
+     */
+    private FrozenXTandemFile iFrozenFile = null;
+    /**
+     * The cache of the theoretical fragment ladders, null to compute the
+     * ladders for every call.
+     */
+    private FragmentLadderCache iLadderCache = new FragmentLadderCache();
+
+    /**
+     * Constructor used by the deserialization only.
+     */
+    public XTandemFile() {
+    }
 
     /**
      * Constructor of XTandemFile gets a string to an existing path and filename
@@ -90,12 +139,30 @@ public class XTandemFile implements Serializable {
      * occurs
      */
     public XTandemFile(String aXTandemFile, boolean skipDetails) throws SAXException, ParserConfigurationException {
+        this(aXTandemFile, skipDetails, null);
+    }
+
+    /**
+     * Constructor of XTandemFile gets a string to an existing path and filename
+     * of the xtandem file, and a filter selecting the spectra and domains to
+     * keep. The spectra are numbered consecutively after filtering.
+     *
+     * @param aXTandemFile the given XTandem file.
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied while parsing, null to keep everything
+     * @throws SAXException SAX parsing exception thrown.
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(String aXTandemFile, boolean skipDetails, XTandemFilter aFilter) throws SAXException, ParserConfigurationException {
         try {
             File inputFile = new File(aXTandemFile);
             if (!inputFile.exists()) {
                 throw new IllegalArgumentException("XTandem xml-file " + aXTandemFile + " doesn't exist.");
             }
-            iXTParser = new XTandemParser(inputFile, skipDetails);
+            iXTParser = new XTandemParser(inputFile, skipDetails, aFilter);
             setFileName(aXTandemFile);
             if (!skipDetails) {
                 iSpectraList = getSpectraList();
@@ -105,6 +172,261 @@ public class XTandemFile implements Serializable {
         }
     }
 
+    /**
+     * Constructor of XTandemFile reading the xtandem file from a stream, e.g.
+     * an entry of a zip archive or a download from a remote storage. The
+     * stream is read to the end but not closed.
+     *
+     * @param aInputStream the stream providing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @throws IOException if the stream could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(InputStream aInputStream, String aFileName) throws IOException, SAXException, ParserConfigurationException {
+        this(aInputStream, aFileName, false);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from a stream, e.g.
+     * an entry of a zip archive or a download from a remote storage. The
+     * stream is read to the end but not closed.
+     *
+     * @param aInputStream the stream providing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @throws IOException if the stream could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(InputStream aInputStream, String aFileName, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+        this(aInputStream, aFileName, skipDetails, null);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from a stream, and
+     * keeping only the spectra and domains passing the given filter. The
+     * stream is read to the end but not closed.
+     *
+     * @param aInputStream the stream providing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @param aFilter the filter applied while parsing, null to keep everything
+     * @throws IOException if the stream could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(InputStream aInputStream, String aFileName, boolean skipDetails, XTandemFilter aFilter) throws IOException, SAXException, ParserConfigurationException {
+        this(aInputStream, aFileName, new XTandemParserOptions(skipDetails, aFilter));
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from a stream with
+     * the given options, e.g. in salvage mode: the complete groups of a
+     * truncated file are kept, and the parsing is reported by
+     * getSalvageReport(). In compact mode, the object model is built at once
+     * and the raw maps of the parser are released, see trim(). The stream is
+     * read to the end but not closed.
+     *
+     * @param aInputStream the stream providing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param aOptions the parsing options
+     * @throws IOException if the stream could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(InputStream aInputStream, String aFileName, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        this(new XTandemParser(aInputStream, aOptions), aFileName, aOptions);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from a channel. The
+     * channel is read to the end but not closed.
+     *
+     * @param aChannel the channel providing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @throws IOException if the channel could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(ReadableByteChannel aChannel, String aFileName, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+        this(new XTandemParser(aChannel, skipDetails), aFileName, skipDetails);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from a channel with
+     * the given options, e.g. with a filter, in salvage mode or in compact
+     * mode. The options of the memory mapped parsing do not apply. The
+     * channel is read to the end but not closed.
+     *
+     * @param aChannel the channel providing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param aOptions the parsing options
+     * @throws IOException if the channel could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(ReadableByteChannel aChannel, String aFileName, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        this(new XTandemParser(aChannel, aOptions), aFileName, aOptions);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from memory. The
+     * remaining bytes of the buffer are parsed, the position of the buffer is
+     * not changed.
+     *
+     * @param aBuffer the buffer containing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param skipDetails if true only the spectrum identifiers, the peptides
+     * sequences, modifications and matches e-values will be loaded. Plus the
+     * input and performance parameters.
+     * @throws IOException if an IOException occurs
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(ByteBuffer aBuffer, String aFileName, boolean skipDetails) throws IOException, SAXException, ParserConfigurationException {
+        this(new XTandemParser(aBuffer, skipDetails), aFileName, skipDetails);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file from memory with the
+     * given options, e.g. with a filter, in salvage mode or in compact mode.
+     * The options of the memory mapped parsing do not apply. The remaining
+     * bytes of the buffer are parsed, the position of the buffer is not
+     * changed.
+     *
+     * @param aBuffer the buffer containing the xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param aOptions the parsing options
+     * @throws IOException if an IOException occurs
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(ByteBuffer aBuffer, String aFileName, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        this(new XTandemParser(aBuffer, aOptions), aFileName, aOptions);
+    }
+
+    /**
+     * Constructor of XTandemFile reading the xtandem file with the given
+     * options, e.g. memory mapping the file and reading it with the byte level
+     * tokenizer of the parser, without building the DOM, or in salvage mode.
+     * If the support data of a mapped file is read lazily, the GAML values of
+     * the support data are read from the file when first asked for, and the
+     * file stays open until this XTandemFile is closed. In compact mode, the
+     * object model is built at once and the raw maps of the parser are
+     * released, see trim().
+     *
+     * @param aFile the xtandem file
+     * @param aOptions the parsing options
+     * @throws IOException if the file could not be read
+     * @throws SAXException SAX parsing exception thrown
+     * @throws ParserConfigurationException if a ParserConfigurationException
+     * occurs
+     */
+    public XTandemFile(File aFile, XTandemParserOptions aOptions) throws IOException, SAXException, ParserConfigurationException {
+        this(new XTandemParser(aFile, aOptions), aFile.getPath(), aOptions);
+    }
+
+    /**
+     * Constructor of XTandemFile gets an already parsed xtandem file, and
+     * trims it in compact mode.
+     *
+     * @param aParser the parser holding the parsed xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param aOptions the options the file was parsed with
+     */
+    private XTandemFile(XTandemParser aParser, String aFileName, XTandemParserOptions aOptions) {
+        this(aParser, aFileName, aOptions.isSkipDetails());
+        if (aOptions.isCompact()) {
+            trim();
+        }
+    }
+
+    /**
+     * Constructor of XTandemFile gets an already parsed xtandem file.
+     *
+     * @param aParser the parser holding the parsed xtandem file
+     * @param aFileName the logical name of the file, returned by getFileName()
+     * @param skipDetails if true the spectra list is not built
+     */
+    private XTandemFile(XTandemParser aParser, String aFileName, boolean skipDetails) {
+        iXTParser = aParser;
+        setFileName(aFileName);
+        if (!skipDetails) {
+            iSpectraList = getSpectraList();
+        }
+    }
+
+    /**
+     * Builds the object model, i.e. the protein, peptide and modification maps
+     * and the input and performance parameters, and releases the raw maps of
+     * the parser they are built from. The raw spectrum map is only released
+     * if the spectra list has been built, i.e. if the file was not loaded
+     * with skipDetails, as it is the only source of the spectrum values
+     * otherwise. The support data, the peptide index and the protein hit
+     * index are kept. Calling this method again has no effect.
+     */
+    public void trim() {
+        if (iTrimmed || iXTParser == null) {
+            return;
+        }
+        getInputParameters();
+        getPerformParameters();
+        getModificationMap();
+        iXTParser.releaseRawMaps(iSpectraList != null);
+        iTrimmed = true;
+    }
+
+    /**
+     * Builds all the parts of the file that are otherwise built lazily, and
+     * returns a read-only view of the file that can be queried by many
+     * threads at once without locking, see FrozenXTandemFile. The getters of
+     * this class are not thread-safe, the file should therefore be frozen
+     * before being shared, and not be modified afterwards. The view keeps the
+     * fragment ladder cache and the FASTA file set when it is created, and the
+     * peaks can no longer be moved to a peak store. Calling this method again
+     * returns the same view.
+     *
+     * @return the read-only view of the file
+     */
+    public synchronized FrozenXTandemFile freeze() {
+        if (iFrozenFile == null) {
+            getInputParameters();
+            getPerformParameters();
+            getProteinMap().getProteinGroups();
+            getPeptideMap();
+            getModificationMap();
+            getSpectraList();
+            iFrozenFile = new FrozenXTandemFile(this, iIdToNumberMap == null ? new HashMap<String, Integer>() : iIdToNumberMap);
+        }
+        return iFrozenFile;
+    }
+
+    /**
+     * Returns true if the raw maps of the parser have been released, see
+     * trim().
+     *
+     * @return true if the file is trimmed
+     */
+    public boolean isTrimmed() {
+        return iTrimmed;
+    }
+
     /**
      * Returns the input parameters.
      *
@@ -193,107 +515,127 @@ public class XTandemFile implements Serializable {
      * @return Vector The vector containing b ions and y ions
      */
     public Vector getFragmentIonsForPeptide(Peptide peptide, Domain domain, double fragmentIonAccuracy) {
+        return getFragmentIonsForPeptide(peptide, domain, fragmentIonAccuracy, iLadderCache);
+    }
+
+    /**
+     * Returns a vector with the arrays of the matched ions of every type, see
+     * getFragmentIonsForPeptide(Peptide, Domain, double).
+     *
+     * @param peptide The given peptide
+     * @param domain The domain
+     * @param fragmentIonAccuracy the fragment ion annotation accuracy
+     * @param aLadderCache the ladder cache, null to compute the ladder
+     * @return Vector The vector containing b ions and y ions
+     */
+    Vector getFragmentIonsForPeptide(Peptide peptide, Domain domain, double fragmentIonAccuracy, FragmentLadderCache aLadderCache) {
         Vector<Ion[]> fragIons = new Vector();
         int charge = getSpectrum(peptide.getSpectrumNumber()).getPrecursorCharge();
-        // Get an instance of the InSilicoDigester
-        InSilicoDigester digester = new InSilicoDigester(peptide, domain, this.getModificationMap(), getMassesMap(), charge, fragmentIonAccuracy);
+        // Get the theoretical ions, computed by an InSilicoDigester unless cached
+        FragmentLadder ladder;
+        if (aLadderCache != null) {
+            ladder = aLadderCache.getLadder(peptide, domain, this.getModificationMap(), charge, fragmentIonAccuracy);
+        } else {
+            ladder = new FragmentLadder(new InSilicoDigester(peptide, domain, this.getModificationMap(), getMassesMap(), charge, fragmentIonAccuracy),
+                    fragmentIonAccuracy);
+        }
 
         // The vector should contain two arrays: b ions & y ions
         SupportData supData = this.getSupportData(peptide.getSpectrumNumber());
 
-        ArrayList<Double> mzList = supData.getXValuesFragIonMass2Charge();
-        ArrayList<Double> intList = supData.getYValuesFragIonMass2Charge();
-        SpectrumPeak[] peaks = new SpectrumPeak[mzList.size()];
-        for (int i = 0; i < mzList.size(); i++) {
+        DoubleBuffer mzValues = supData.getFragIonMzBuffer();
+        FloatBuffer intensities = supData.getFragIonIntensityBuffer();
+        SpectrumPeak[] peaks = new SpectrumPeak[mzValues.limit()];
+        for (int i = 0; i < peaks.length; i++) {
             peaks[i] = new SpectrumPeak();
-            peaks[i].setMz(mzList.get(i));
-            peaks[i].setIntensity(intList.get(i));
+            peaks[i].setMz(mzValues.get(i));
+            peaks[i].setIntensity(intensities.get(i));
         }
 
         // Match MH peaks
-        Vector<FragmentIon> matchedMHIons = digester.getMatchedIons(FragmentIon.MH_ION, peaks);
+        Vector<FragmentIon> matchedMHIons = ladder.getMatchedIons(FragmentIon.MH_ION, peaks);
         FragmentIon[] matchMHIons = new FragmentIon[matchedMHIons.size()];
         for (int i = 0; i < matchedMHIons.size(); i++) {
             matchMHIons[i] = matchedMHIons.get(i);
         }
-        Vector<FragmentIon> matchedMHNH3Ions = digester.getMatchedIons(FragmentIon.MHNH3_ION, peaks);
+        Vector<FragmentIon> matchedMHNH3Ions = ladder.getMatchedIons(FragmentIon.MHNH3_ION, peaks);
         FragmentIon[] matchMHNH3Ions = new FragmentIon[matchedMHNH3Ions.size()];
         for (int i = 0; i < matchedMHNH3Ions.size(); i++) {
             matchMHNH3Ions[i] = matchedMHNH3Ions.get(i);
         }
-        Vector<FragmentIon> matchedMHH2OIons = digester.getMatchedIons(FragmentIon.MHH2O_ION, peaks);
+        Vector<FragmentIon> matchedMHH2OIons = ladder.getMatchedIons(FragmentIon.MHH2O_ION, peaks);
         FragmentIon[] matchMHH2OIons = new FragmentIon[matchedMHH2OIons.size()];
         for (int i = 0; i < matchedMHH2OIons.size(); i++) {
             matchMHH2OIons[i] = matchedMHH2OIons.get(i);
         }
 
         // Match the a ions
-        Vector<FragmentIon> matchedAIons = digester.getMatchedIons(FragmentIon.A_ION, peaks);
+        Vector<FragmentIon> matchedAIons = ladder.getMatchedIons(FragmentIon.A_ION, peaks);
         FragmentIon[] matchAIons = new FragmentIon[matchedAIons.size()];
         for (int i = 0; i < matchedAIons.size(); i++) {
             matchAIons[i] = matchedAIons.get(i);
         }
-        Vector<FragmentIon> matchedAH2OIons = digester.getMatchedIons(FragmentIon.AH2O_ION, peaks);
+        Vector<FragmentIon> matchedAH2OIons = ladder.getMatchedIons(FragmentIon.AH2O_ION, peaks);
         FragmentIon[] matchAH2OIons = new FragmentIon[matchedAH2OIons.size()];
         for (int i = 0; i < matchedAH2OIons.size(); i++) {
             matchAH2OIons[i] = matchedAH2OIons.get(i);
         }
-        Vector<FragmentIon> matchedANH3Ions = digester.getMatchedIons(FragmentIon.ANH3_ION, peaks);
+        Vector<FragmentIon> matchedANH3Ions = ladder.getMatchedIons(FragmentIon.ANH3_ION, peaks);
         FragmentIon[] matchANH3Ions = new FragmentIon[matchedANH3Ions.size()];
         for (int i = 0; i < matchedANH3Ions.size(); i++) {
             matchANH3Ions[i] = matchedANH3Ions.get(i);
         }
 
         // Match the b ions
-        Vector<FragmentIon> matchedBIons = digester.getMatchedIons(FragmentIon.B_ION, peaks);
+        Vector<FragmentIon> matchedBIons = ladder.getMatchedIons(FragmentIon.B_ION, peaks);
         FragmentIon[] matchBIons = new FragmentIon[matchedBIons.size()];
         for (int i = 0; i < matchedBIons.size(); i++) {
             matchBIons[i] = matchedBIons.get(i);
         }
-        Vector<FragmentIon> matchedBH2OIons = digester.getMatchedIons(FragmentIon.BH2O_ION, peaks);
+        Vector<FragmentIon> matchedBH2OIons = ladder.getMatchedIons(FragmentIon.BH2O_ION, peaks);
         FragmentIon[] matchBH2OIons = new FragmentIon[matchedBH2OIons.size()];
         for (int i = 0; i < matchedBH2OIons.size(); i++) {
             matchBH2OIons[i] = matchedBH2OIons.get(i);
         }
-        Vector<FragmentIon> matchedBNH3Ions = digester.getMatchedIons(FragmentIon.BNH3_ION, peaks);
+        Vector<FragmentIon> matchedBNH3Ions = ladder.getMatchedIons(FragmentIon.BNH3_ION, peaks);
         FragmentIon[] matchBNH3Ions = new FragmentIon[matchedBNH3Ions.size()];
         for (int i = 0; i < matchedBNH3Ions.size(); i++) {
             matchBNH3Ions[i] = matchedBNH3Ions.get(i);
         }
 
         // Match the c ions
-        Vector<FragmentIon> matchedCIons = digester.getMatchedIons(FragmentIon.C_ION, peaks);
+        Vector<FragmentIon> matchedCIons = ladder.getMatchedIons(FragmentIon.C_ION, peaks);
         FragmentIon[] matchCIons = new FragmentIon[matchedCIons.size()];
         for (int i = 0; i < matchedCIons.size(); i++) {
             matchCIons[i] = matchedCIons.get(i);
         }
 
         // Match the x ions
-        Vector<FragmentIon> matchedXIons = digester.getMatchedIons(FragmentIon.X_ION, peaks);
+        Vector<FragmentIon> matchedXIons = ladder.getMatchedIons(FragmentIon.X_ION, peaks);
         FragmentIon[] matchXIons = new FragmentIon[matchedXIons.size()];
         for (int i = 0; i < matchedXIons.size(); i++) {
             matchXIons[i] = matchedXIons.get(i);
         }
 
         // Match the Y ions
-        Vector<FragmentIon> matchedYIons = digester.getMatchedIons(FragmentIon.Y_ION, peaks);
+        Vector<FragmentIon> matchedYIons = ladder.getMatchedIons(FragmentIon.Y_ION, peaks);
         FragmentIon[] matchYIons = new FragmentIon[matchedYIons.size()];
         for (int i = 0; i < matchedYIons.size(); i++) {
             matchYIons[i] = matchedYIons.get(i);
         }
-        Vector<FragmentIon> matchedYH2OIons = digester.getMatchedIons(FragmentIon.YH2O_ION, peaks);
+        Vector<FragmentIon> matchedYH2OIons = ladder.getMatchedIons(FragmentIon.YH2O_ION, peaks);
         FragmentIon[] matchYH2OIons = new FragmentIon[matchedYH2OIons.size()];
         for (int i = 0; i < matchedYH2OIons.size(); i++) {
             matchYH2OIons[i] = matchedYH2OIons.get(i);
         }
-        Vector<FragmentIon> matchedYNH3Ions = digester.getMatchedIons(FragmentIon.YNH3_ION, peaks);
+        Vector<FragmentIon> matchedYNH3Ions = ladder.getMatchedIons(FragmentIon.YNH3_ION, peaks);
         FragmentIon[] matchYNH3Ions = new FragmentIon[matchedYNH3Ions.size()];
         for (int i = 0; i < matchedYNH3Ions.size(); i++) {
             matchYNH3Ions[i] = matchedYNH3Ions.get(i);
         }
 
         // Match the z ions
-        Vector<FragmentIon> matchedZIons = digester.getMatchedIons(FragmentIon.Z_ION, peaks);
+        Vector<FragmentIon> matchedZIons = ladder.getMatchedIons(FragmentIon.Z_ION, peaks);
         FragmentIon[] matchZIons = new FragmentIon[matchedZIons.size()];
         for (int i = 0; i < matchedZIons.size(); i++) {
             matchZIons[i] = matchedZIons.get(i);
@@ -318,6 +660,28 @@ public class XTandemFile implements Serializable {
         return fragIons;
     }
 
+    /**
+     * Returns the cache of the theoretical fragment ladders used by
+     * getFragmentIonsForPeptide().
+     *
+     * @return the ladder cache, null if the ladders are not cached
+     */
+    public FragmentLadderCache getFragmentLadderCache() {
+        return iLadderCache;
+    }
+
+    /**
+     * Sets the cache of the theoretical fragment ladders used by
+     * getFragmentIonsForPeptide(). The same cache can be shared by several
+     * files.
+     *
+     * @param aLadderCache the ladder cache, null to compute the ladders for
+     * every call
+     */
+    public void setFragmentLadderCache(FragmentLadderCache aLadderCache) {
+        iLadderCache = aLadderCache;
+    }
+
     /**
      * This method returns the 2-dim peptide hash map
      *
@@ -325,7 +689,7 @@ public class XTandemFile implements Serializable {
      */
     public PeptideMap getPeptideMap() {
         if (iPeptideMap == null) {
-            iPeptideMap = new PeptideMap(iXTParser.getRawPeptideMap(), this.getProteinMap(), iXTParser.getNumberOfSpectra());
+            iPeptideMap = new PeptideMap(iXTParser.getRawPeptideMap(), this.getProteinMap(), iXTParser.getNumberOfSpectra(), iXTParser.getPeptideIndex());
         }
         return iPeptideMap;
     }
@@ -430,7 +794,7 @@ public class XTandemFile implements Serializable {
      * @return the support data section
      */
     public SupportData getSupportData(int aSpectrumNumber) {
-        return new SupportData(iXTParser.getSupportDataMap(), aSpectrumNumber);
+        return new SupportData(iXTParser.getSupportDataMap(), iXTParser.getPeakStore(), iXTParser.getSupportDataRanges(), aSpectrumNumber);
 
     }
 
@@ -441,11 +805,234 @@ public class XTandemFile implements Serializable {
      */
     public ProteinMap getProteinMap() {
         if (iProteinMap == null) {
-            iProteinMap = new ProteinMap(iXTParser.getProteinIDList(), iXTParser.getRawProteinMap());
+            iProteinMap = new ProteinMap(iXTParser.getProteinIDList(), iXTParser.getRawProteinMap(), iXTParser.getProteinHitIndex(),
+                    iXTParser.getProteinOccurrences());
         }
         return iProteinMap;
     }
 
+    /**
+     * Returns all the domains matching the given protein, using the protein
+     * hit index instead of walking all the peptides.
+     *
+     * @param aProteinID the protein id
+     * @return the domains matching the protein
+     */
+    public ArrayList<Domain> getDomainsForProtein(String aProteinID) {
+        HitList hits = getProteinMap().getHits(aProteinID);
+        PeptideMap peptideMap = getPeptideMap();
+        ArrayList<Domain> domains = new ArrayList<Domain>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            Peptide peptide = peptideMap.getPeptideByIndex(hits.getSpectrumNumber(i), hits.getPeptideIndex(i));
+            if (peptide != null && hits.getDomainIndex(i) <= peptide.getDomains().size()) {
+                domains.add(peptide.getDomains().get(hits.getDomainIndex(i) - 1));
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Returns the full sequence of the given protein, read on demand from the
+     * FASTA file the protein was identified in, see IndexedFasta. The FASTA
+     * file is indexed once and its sequences are cached across all the
+     * xtandem files searched against it. The sequence of a reversed protein
+     * is the reverse of the sequence of its forward protein.
+     *
+     * @param aProteinID the protein id
+     * @return the protein sequence, null if the protein, its FASTA file or
+     * its accession in the FASTA file is unknown
+     * @throws IOException if the FASTA file could not be read or indexed
+     */
+    public String getProteinSequence(String aProteinID) throws IOException {
+        return getProteinSequence(aProteinID, iFastaFile);
+    }
+
+    /**
+     * Returns the full sequence of the given protein, see
+     * getProteinSequence(String).
+     *
+     * @param aProteinID the protein id
+     * @param aFastaFile the FASTA file, null to use the FASTA file given for
+     * the peptides in the xtandem file
+     * @return the protein sequence, null if unknown
+     * @throws IOException if the FASTA file could not be read or indexed
+     */
+    String getProteinSequence(String aProteinID, File aFastaFile) throws IOException {
+        Protein protein = getProteinMap().getProtein(aProteinID);
+        if (protein == null) {
+            return null;
+        }
+        File fastaFile = aFastaFile;
+        if (fastaFile == null) {
+            HitList hits = getProteinMap().getHits(aProteinID);
+            if (hits.size() > 0) {
+                Peptide peptide = getPeptideMap().getPeptideByIndex(hits.getSpectrumNumber(0), hits.getPeptideIndex(0));
+                if (peptide != null && peptide.getFastaFilePath() != null) {
+                    fastaFile = new File(peptide.getFastaFilePath());
+                }
+            }
+        }
+        if (fastaFile == null || !fastaFile.isFile()) {
+            return null;
+        }
+        String label = protein.getDescription();
+        if (label == null || label.trim().length() == 0) {
+            label = protein.getLabel();
+        } else if (protein.getLabel() != null && protein.getLabel().trim().endsWith(IndexedFasta.REVERSED_SUFFIX)
+                && !label.trim().endsWith(IndexedFasta.REVERSED_SUFFIX)) {
+            label = label.trim() + IndexedFasta.REVERSED_SUFFIX;
+        }
+        if (label == null) {
+            return null;
+        }
+        return IndexedFasta.getInstance(fastaFile).getSequence(label);
+    }
+
+    /**
+     * Returns the sequence coverage of the proteins, computed in one pass over
+     * the domains of the file, see CoverageCalculator. The length of a protein
+     * is the end of its peptide segment, i.e. the length of the protein unless
+     * X!Tandem only reported a part of it.
+     *
+     * @param aFilter the criteria the spectra and domains have to pass to be
+     * counted, null to count all the domains. As while parsing, the maximal
+     * domain rank is applied per spectrum to the domains passing the other
+     * domain criteria.
+     * @return the calculator holding the coverage of the proteins
+     */
+    public CoverageCalculator getProteinCoverage(XTandemFilter aFilter) {
+        CoverageCalculator calculator = new CoverageCalculator();
+        PeptideMap peptideMap = getPeptideMap();
+        ProteinMap proteinMap = getProteinMap();
+        ArrayList<Domain> domains = new ArrayList<Domain>();
+        ArrayList<Integer> proteinLengths = new ArrayList<Integer>();
+        for (int i = 1; i <= getSpectraNumber(); i++) {
+            if (aFilter != null) {
+                Spectrum spectrum = getSpectrum(i);
+                if (spectrum == null || !aFilter.acceptSpectrum(spectrum.getExpectValue(), spectrum.getPrecursorCharge())) {
+                    continue;
+                }
+            }
+            domains.clear();
+            proteinLengths.clear();
+            for (Peptide peptide : peptideMap.getAllPeptides(i)) {
+                if (peptide.getDomains() == null) {
+                    continue;
+                }
+                for (Domain domain : peptide.getDomains()) {
+                    String proteinKey = domain.getProteinKey();
+                    if (proteinKey == null) {
+                        continue;
+                    }
+                    if (aFilter != null) {
+                        Protein protein = proteinMap.getProtein(proteinKey);
+                        if (!aFilter.acceptDomain(domain.getDomainExpect(), domain.getDomainHyperScore(), domain.getDomainDeltaMh(),
+                                domain.getMissedCleavages(), protein == null ? null : protein.getLabel())) {
+                            continue;
+                        }
+                    }
+                    domains.add(domain);
+                    proteinLengths.add(peptide.getEnd());
+                }
+            }
+
+            // Keep the domains of the best ranks, equal expectation values share a rank
+            double maxExpect = Double.POSITIVE_INFINITY;
+            if (aFilter != null && aFilter.getMaxDomainRank() > 0) {
+                TreeSet<Double> distinctExpects = new TreeSet<Double>();
+                for (Domain domain : domains) {
+                    distinctExpects.add(domain.getDomainExpect());
+                }
+                int rank = 0;
+                for (Double expect : distinctExpects) {
+                    if (++rank == aFilter.getMaxDomainRank()) {
+                        maxExpect = expect;
+                        break;
+                    }
+                }
+            }
+            for (int d = 0; d < domains.size(); d++) {
+                Domain domain = domains.get(d);
+                if (!(domain.getDomainExpect() > maxExpect)) {
+                    calculator.addDomain(domain);
+                    calculator.setProteinLength(domain.getProteinKey(), proteinLengths.get(d));
+                }
+            }
+        }
+        return calculator;
+    }
+
+    /**
+     * Sets the FASTA file the protein sequences are read from, e.g. when the
+     * database was moved since the search.
+     *
+     * @param aFastaFile the FASTA file, null to use the FASTA file given for
+     * the peptides in the xtandem file
+     */
+    public void setFastaFile(File aFastaFile) {
+        iFastaFile = aFastaFile;
+    }
+
+    /**
+     * Returns the FASTA file the protein sequences are read from.
+     *
+     * @return the FASTA file, null if the FASTA file given for the peptides
+     * in the xtandem file is used
+     */
+    public File getFastaFile() {
+        return iFastaFile;
+    }
+
+    /**
+     * Returns the index from the peptides, with their modifications, to their
+     * hits across all the spectra. See PeptideIndex for the format of the
+     * peptide keys.
+     *
+     * @return the peptide index
+     */
+    public PeptideIndex getPeptideIndex() {
+        return iXTParser.getPeptideIndex();
+    }
+
+    /**
+     * Moves the fragment ion peaks of all the spectra out of the heap, to the
+     * given store, see XTandemParser.storePeaks(). The store is owned by the
+     * caller, who closes it when the file is no longer used. The peaks must
+     * be stored before the file is frozen, as the support data read by the
+     * frozen view are modified.
+     *
+     * @param aPeakStore an empty peak store
+     * @throws IOException if the peaks could not be written to the store
+     */
+    public synchronized void storePeaks(PeakStore aPeakStore) throws IOException {
+        if (iFrozenFile != null) {
+            throw new IllegalStateException("The peaks of " + getFileName() + " cannot be stored once the file is frozen.");
+        }
+        iXTParser.storePeaks(aPeakStore);
+    }
+
+    /**
+     * Returns the report of the parsing in salvage mode, see
+     * XTandemParser.getSalvageReport().
+     *
+     * @return the salvage report, null if the file was not parsed in salvage
+     * mode
+     */
+    public SalvageReport getSalvageReport() {
+        return iXTParser.getSalvageReport();
+    }
+
+    /**
+     * Closes the xtandem file if the support data is read lazily from it, see
+     * XTandemParser.close(). The support data values not read yet can no
+     * longer be read afterwards.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    public void close() throws IOException {
+        iXTParser.close();
+    }
+
     /**
      * Returns the path and the name of the X!Tandem file.
      *
@@ -485,4 +1072,66 @@ public class XTandemFile implements Serializable {
     public int getSpectraNumber() {
         return iSpectraNumber;
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        CompactOutput output = new CompactOutput(out);
+        output.writeVarInt(CompactOutput.VERSION);
+        output.writeString(iFileName);
+        output.writeBoolean(iSpectraList != null);
+        output.writeBoolean(iXTParser != null);
+        if (iXTParser != null) {
+            iXTParser.writeCompact(output);
+        }
+        output.writeBoolean(iTrimmed);
+        if (iTrimmed) {
+            // the raw maps are gone, the object model is written instead, the
+            // parameters are built again from the parameter maps of the parser
+            output.writeVarInt(iSpectraNumber);
+            output.writeBoolean(iSpectraList != null);
+            if (iSpectraList != null) {
+                output.writeVarInt(iSpectraList.size());
+                for (Spectrum spectrum : iSpectraList) {
+                    spectrum.writeCompact(output);
+                }
+                output.writeStringIntegerMap(iIdToNumberMap);
+            }
+            iProteinMap.writeCompact(output);
+            iPeptideMap.writeCompact(output);
+            iModMap.writeCompact(output);
+        }
+        output.flush();
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        CompactInput input = new CompactInput(in);
+        int version = input.readVarInt();
+        if (version != CompactOutput.VERSION) {
+            throw new InvalidClassException(XTandemFile.class.getName(), "Unsupported compact form version " + version + ".");
+        }
+        iFileName = input.readString();
+        boolean spectraList = input.readBoolean();
+        if (input.readBoolean()) {
+            iXTParser = new XTandemParser();
+            iXTParser.readCompact(input);
+        }
+        iTrimmed = input.readBoolean();
+        if (iTrimmed) {
+            iSpectraNumber = input.readVarInt();
+            if (input.readBoolean()) {
+                int numberOfSpectra = input.readVarInt();
+                iSpectraList = new ArrayList<Spectrum>(numberOfSpectra);
+                for (int i = 0; i < numberOfSpectra; i++) {
+                    iSpectraList.add(Spectrum.readCompact(input));
+                }
+                iIdToNumberMap = input.readStringIntegerMap();
+            }
+            iProteinMap = ProteinMap.readCompact(input, iXTParser.getProteinHitIndex());
+            iPeptideMap = PeptideMap.readCompact(input);
+            iModMap = ModificationMap.readCompact(input, iPeptideMap, getInputParameters());
+        } else if (spectraList && iXTParser != null) {
+            iSpectraList = getSpectraList();
+        }
+    }
 }
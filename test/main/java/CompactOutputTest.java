@@ -0,0 +1,72 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+public class CompactOutputTest extends TestCase {
+
+    /**
+     * Test that the string maps are restored exactly, including the values
+     * looking like number lists that cannot be written as such.
+     */
+    public void testStringMapRoundTrip() throws IOException {
+        HashMap<String, String> map = new HashMap<String, String>();
+        map.put("XVAL_FRAGIONMZ_s1", "\n101.895 122.901 125.513 126.137 127.531\n\n");
+        map.put("YVAL_FRAGIONMZ_s1", "38 3 54 72 83 13 24");
+        map.put("YVAL_FRAGIONMZ_s2", "-0.5 0.0 0 10.25 -3");
+        map.put("leading_zero_s3", "1 01 2 3 4");
+        map.put("negative_zero_s4", "1 -0 2 3 4");
+        map.put("double_space_s5", "1 2  3 4 5");
+        map.put("no_decimals_s6", "1. 2 3 4 5");
+        map.put("exponent_s7", "1e-5 2 3 4 5");
+        map.put("long_s8", "12345678901234567890 1 2 3");
+        map.put("descriptionsp|P00001|PROT1_HUMAN Protein 1", "sp|P00001|PROT1_HUMAN Protein 1");
+        map.put("id007", "7");
+        map.put("id2147483648", "8");
+        map.put("empty_s9", "");
+        map.put("null_s10", null);
+        for (int i = 1; i < 500; i++) {
+            map.put("delta_s" + i + "_p" + (i % 3 + 1) + "_d1", Integer.toString(i % 7));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactOutput output = new CompactOutput(new DataOutputStream(bytes));
+        output.writeStringMap(map);
+        output.writeStringMap(null);
+        output.writeString("delta");
+        output.flush();
+
+        CompactInput input = new CompactInput(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(map, input.readStringMap());
+        assertNull(input.readStringMap());
+        assertEquals("delta", input.readString());
+    }
+
+    /**
+     * Test the variable length integers.
+     */
+    public void testVarInts() throws IOException {
+        long[] values = {0, 1, -1, 127, 128, -129, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactOutput output = new CompactOutput(new DataOutputStream(bytes));
+        for (long value : values) {
+            output.writeSignedVarLong(value);
+        }
+        output.writeVarInt(Integer.MAX_VALUE);
+        output.flush();
+
+        CompactInput input = new CompactInput(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        for (long value : values) {
+            assertEquals(value, input.readSignedVarLong());
+        }
+        assertEquals(Integer.MAX_VALUE, input.readVarInt());
+    }
+}
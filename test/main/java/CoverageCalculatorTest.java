@@ -0,0 +1,121 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.XTandemFilter;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.CoverageCalculator;
+import de.proteinms.xtandemparser.xtandem.ProteinCoverage;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+
+public class CoverageCalculatorTest extends TestCase {
+
+    /**
+     * A protein with one domain, the values being the protein id, label,
+     * domain expect value, domain sequence, domain start and domain end.
+     */
+    private static final String PROTEIN = "<protein expect=\"-3.0\" id=\"%1$s\" uid=\"1\" label=\"%2$s\" sumI=\"4.0\">\n"
+            + "<note label=\"description\">%2$s</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"100\">%4$s\n"
+            + "<domain id=\"%1$s.1\" start=\"%5$d\" end=\"%6$d\" expect=\"%3$s\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"%4$s\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n";
+
+    /**
+     * Test that overlapping and adjacent hits are merged and that the hits
+     * covering every residue are counted.
+     */
+    public void testCoverage() {
+        CoverageCalculator calculator = new CoverageCalculator();
+        calculator.addHit("P1", 11, 20);
+        calculator.addHit("P2", 1, 5);
+        calculator.addHit("P1", 1, 5);
+        calculator.addHit("P1", 3, 8);
+        calculator.addHit("P1", 9, 10);
+        calculator.addHit("P1", 31, 40);
+        calculator.setProteinLength("P1", 100);
+
+        ProteinCoverage coverage = calculator.getCoverage("P1");
+        assertEquals(100, coverage.getProteinLength());
+        assertEquals(5, coverage.getNumberOfHits());
+        assertEquals(2, coverage.getNumberOfIntervals());
+        assertEquals(1, coverage.getIntervalStart(0));
+        assertEquals(20, coverage.getIntervalEnd(0));
+        assertEquals(31, coverage.getIntervalStart(1));
+        assertEquals(30, coverage.getCoveredResidues());
+        assertEquals(0.3, coverage.getCoverage(), 1e-9);
+        assertEquals(2, coverage.getSpectralCount(4));
+        assertEquals(1, coverage.getSpectralCount(8));
+        assertEquals(0, coverage.getSpectralCount(25));
+        assertTrue(coverage.isCovered(40));
+        assertFalse(coverage.isCovered(41));
+
+        assertEquals(5, calculator.getCoverage("P2").getProteinLength());
+        assertEquals(1.0, calculator.getCoverage("P2").getCoverage(), 1e-9);
+        assertEquals(2, calculator.getCoverages().size());
+        assertNull(calculator.getCoverage("P3"));
+    }
+
+    /**
+     * Test that the coverage of a file with a filter counts the domains of
+     * the best ranks only, as the same filter applied while parsing.
+     */
+    public void testFileCoverageWithFilter() throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                + "<group id=\"1\" mh=\"900.5\" z=\"2\" rt=\"1.0\" expect=\"1e-5\" label=\"sp|A|A\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+                + String.format(PROTEIN, "1.1", "sp|A|A", "1e-5", "PEPTIDEK", 1, 8)
+                + String.format(PROTEIN, "1.2", "sp|B|B", "1e-3", "ELVISK", 11, 16)
+                + String.format(PROTEIN, "1.3", "sp|A|A", "1e-3", "NESTEDK", 21, 27)
+                + String.format(PROTEIN, "1.4", "sp|C|C", "1e-1", "SAMPLEK", 31, 37)
+                + "</group>\n"
+                + "</bioml>\n";
+        XTandemFile xTandemFile = new XTandemFile(new ByteArrayInputStream(content.getBytes("UTF-8")), "test.xml");
+
+        CoverageCalculator calculator = xTandemFile.getProteinCoverage(null);
+        assertEquals(3, calculator.getCoverages().size());
+        assertEquals(15, calculator.getCoverage("sp|A|A").getCoveredResidues());
+        assertEquals(100, calculator.getCoverage("sp|A|A").getProteinLength());
+
+        XTandemFilter filter = new XTandemFilter();
+        filter.setMaxDomainRank(1);
+        calculator = xTandemFile.getProteinCoverage(filter);
+        assertEquals(1, calculator.getCoverages().size());
+        assertEquals(8, calculator.getCoverage("sp|A|A").getCoveredResidues());
+        assertNull(calculator.getCoverage("sp|B|B"));
+        assertCoverageEquals(calculator, content, filter);
+
+        // the rank applies to the domains passing the other criteria
+        filter.setMaxDomainRank(2);
+        filter.setMaxDomainExpect(1e-2);
+        calculator = xTandemFile.getProteinCoverage(filter);
+        assertEquals(2, calculator.getCoverages().size());
+        assertEquals(15, calculator.getCoverage("sp|A|A").getCoveredResidues());
+        assertEquals(6, calculator.getCoverage("sp|B|B").getCoveredResidues());
+        assertNull(calculator.getCoverage("sp|C|C"));
+        assertCoverageEquals(calculator, content, filter);
+    }
+
+    /**
+     * Checks that the given coverage equals the coverage of the file parsed
+     * with the given filter.
+     *
+     * @param aCalculator the coverage
+     * @param aContent the file content
+     * @param aFilter the filter
+     * @throws Exception if the file could not be parsed
+     */
+    private void assertCoverageEquals(CoverageCalculator aCalculator, String aContent, XTandemFilter aFilter) throws Exception {
+        XTandemFile filteredFile = new XTandemFile(new ByteArrayInputStream(aContent.getBytes("UTF-8")), "test.xml",
+                new XTandemParserOptions(false, aFilter));
+        CoverageCalculator filtered = filteredFile.getProteinCoverage(null);
+        assertEquals(filtered.getCoverages().size(), aCalculator.getCoverages().size());
+        for (ProteinCoverage coverage : filtered.getCoverages()) {
+            ProteinCoverage other = aCalculator.getCoverage(coverage.getProteinKey());
+            assertEquals(coverage.getCoveredResidues(), other.getCoveredResidues());
+            assertEquals(coverage.getNumberOfHits(), other.getNumberOfHits());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package main.java;
+
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.PeptideHit;
+import junit.framework.TestCase;
+
+public class DomainTest extends TestCase {
+
+    /**
+     * Test that the domains of the occurrences of a hit share its values, and
+     * that setting a shared value on a domain does not change the other
+     * domains.
+     */
+    public void testSharedValues() {
+        PeptideHit hit = new PeptideHit();
+        hit.setSequence("PEPTIDEK");
+        hit.setExpect(0.01);
+        hit.setMh(900.5);
+        hit.setMissedCleavages(1);
+        Domain first = hit.getDomain(hit.addOccurrence("P1", 11, 18, "K", "A"));
+        Domain second = hit.getDomain(hit.addOccurrence("P2", 21, 28, "R", "G"));
+        assertSame(first.getPeptideHit(), second.getPeptideHit());
+
+        first.setDomainExpect(0.5);
+        assertEquals(0.5, first.getDomainExpect(), 0);
+        assertEquals(0.01, second.getDomainExpect(), 0);
+        assertEquals(0.01, hit.getExpect(), 0);
+        assertNotSame(first.getPeptideHit(), second.getPeptideHit());
+        assertEquals("PEPTIDEK", first.getDomainSequence());
+        assertEquals(900.5, first.getDomainMh(), 0);
+        assertEquals(1, first.getMissedCleavages());
+        assertEquals("P1", first.getProteinKey());
+        assertEquals(11, first.getDomainStart());
+        assertEquals(18, first.getDomainEnd());
+        assertEquals("K", first.getUpFlankSequence());
+        assertEquals("A", first.getDownFlankSequence());
+
+        second.setDomainSequence("PEPTIDER");
+        second.setMissedCleavages(0);
+        second.setDomainHyperScore(42);
+        assertEquals("PEPTIDER", second.getDomainSequence());
+        assertEquals("PEPTIDEK", hit.getSequence());
+        assertEquals(0, second.getMissedCleavages());
+        assertEquals(1, hit.getMissedCleavages());
+        assertEquals(42, second.getDomainHyperScore(), 0);
+        assertEquals("P2", second.getProteinKey());
+        assertEquals(21, second.getDomainStart());
+    }
+
+    /**
+     * Test that the values of an occurrence are set on the shared hit, and
+     * that a hit with a single occurrence is not copied.
+     */
+    public void testOccurrenceValues() {
+        PeptideHit hit = new PeptideHit();
+        Domain first = hit.getDomain(hit.addOccurrence("P1", 1, 8, null, null));
+        Domain second = hit.getDomain(hit.addOccurrence("P2", 5, 12, null, null));
+        second.setDomainStart(6);
+        second.setProteinKey("P3");
+        assertSame(hit, second.getPeptideHit());
+        assertEquals(6, hit.getStart(1));
+        assertEquals("P3", hit.getProteinKey(1));
+        assertEquals(1, first.getDomainStart());
+
+        Domain single = new Domain();
+        PeptideHit singleHit = single.getPeptideHit();
+        single.setDomainNextScore(3.5);
+        assertSame(singleHit, single.getPeptideHit());
+        assertEquals(3.5, singleHit.getNextScore(), 0);
+    }
+}
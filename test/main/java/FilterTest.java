@@ -0,0 +1,213 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.XTandemFilter;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+public class FilterTest extends TestCase {
+
+    /**
+     * A model group, the values being the group id, charge and expectation
+     * value, followed by the proteins.
+     */
+    private static final String GROUP = "<group id=\"%d\" mh=\"1000.5\" z=\"%d\" rt=\"1.0\" expect=\"%s\" label=\"%s\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "%s"
+            + "</group>\n";
+    /**
+     * A protein, the values being the protein id, label and domains.
+     */
+    private static final String PROTEIN = "<protein expect=\"-5.0\" id=\"%1$s\" uid=\"1\" label=\"%2$s\" sumI=\"5.1\">\n"
+            + "<note label=\"description\">%2$s</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"30\">MKACDEFGHIKSSACDEFGHIKSSACDEFG\n"
+            + "%3$s"
+            + "</peptide>\n"
+            + "</protein>\n";
+    /**
+     * A domain, the values being the domain id, expectation value,
+     * hyperscore, mass delta and number of missed cleavages.
+     */
+    private static final String DOMAIN = "<domain id=\"%s\" start=\"3\" end=\"11\" expect=\"%s\" mh=\"1000.5\" delta=\"%s\" hyperscore=\"%s\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"MK\" post=\"SS\" seq=\"ACDEFGHIK\" missed_cleavages=\"%d\">\n"
+            + "</domain>\n";
+
+    /**
+     * The test file: the spectrum 1 has three domains of expectation value
+     * 1e-5 in two proteins, one of them in a TrEMBL protein, and a fourth
+     * domain of expectation value 1e-3; the spectrum 2 has charge 3 and a
+     * high expectation value; the spectrum 3 has a large mass delta and a
+     * TrEMBL protein only.
+     */
+    private File iFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        String group1 = String.format(GROUP, 1, 2, "1e-5", "sp|P1|A",
+                String.format(PROTEIN, "1.1", "sp|P1|A",
+                String.format(DOMAIN, "1.1.1", "1e-5", "0.01", "30.0", 0)
+                + String.format(DOMAIN, "1.1.2", "1e-5", "0.5", "28.0", 1)
+                + String.format(DOMAIN, "1.1.3", "1e-3", "0.02", "20.0", 2))
+                + String.format(PROTEIN, "1.2", "tr|P2|B",
+                String.format(DOMAIN, "1.2.1", "1e-5", "0.01", "30.0", 0)));
+        String group2 = String.format(GROUP, 2, 3, "0.5", "sp|P3|C",
+                String.format(PROTEIN, "2.1", "sp|P3|C", String.format(DOMAIN, "2.1.1", "0.5", "0.1", "10.0", 0)));
+        String group3 = String.format(GROUP, 3, 2, "1e-2", "tr|P4|D",
+                String.format(PROTEIN, "3.1", "tr|P4|D", String.format(DOMAIN, "3.1.1", "1e-2", "-0.8", "15.0", 0)));
+        iFile = File.createTempFile("filter", ".xml");
+        OutputStream outputStream = new FileOutputStream(iFile);
+        try {
+            outputStream.write(("<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                    + group1 + group2 + group3 + "</bioml>\n").getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        iFile.delete();
+    }
+
+    /**
+     * Test that without filter all the spectra and domains are kept.
+     */
+    public void testNoFilter() throws Exception {
+        assertFiltered(new XTandemFilter(), "1:1.1.1,1.1.2,1.1.3,1.2.1", "2:2.1.1", "3:3.1.1");
+    }
+
+    /**
+     * Test the criteria on the spectra, and that the kept spectra are
+     * numbered consecutively.
+     */
+    public void testSpectrumCriteria() throws Exception {
+        XTandemFilter filter = new XTandemFilter();
+        filter.setMaxSpectrumExpect(0.1);
+        assertFiltered(filter, "1:1.1.1,1.1.2,1.1.3,1.2.1", "3:3.1.1");
+
+        filter = new XTandemFilter();
+        filter.setCharges(3);
+        assertFiltered(filter, "2:2.1.1");
+    }
+
+    /**
+     * Test every criterion on the domains, the spectra without accepted
+     * domain being skipped.
+     */
+    public void testDomainCriteria() throws Exception {
+        XTandemFilter filter = new XTandemFilter();
+        filter.setMaxDomainExpect(1e-4);
+        assertFiltered(filter, "1:1.1.1,1.1.2,1.2.1");
+
+        filter = new XTandemFilter();
+        filter.setMinHyperscore(25.0);
+        assertFiltered(filter, "1:1.1.1,1.1.2,1.2.1");
+
+        filter = new XTandemFilter();
+        filter.setMaxAbsoluteDelta(0.1);
+        assertFiltered(filter, "1:1.1.1,1.1.3,1.2.1", "2:2.1.1");
+
+        filter = new XTandemFilter();
+        filter.setMaxMissedCleavages(0);
+        assertFiltered(filter, "1:1.1.1,1.2.1", "2:2.1.1", "3:3.1.1");
+
+        filter = new XTandemFilter();
+        filter.setProteinLabelPattern(Pattern.compile("^sp\\|"));
+        assertFiltered(filter, "1:1.1.1,1.1.2,1.1.3", "2:2.1.1");
+    }
+
+    /**
+     * Test that the domains with the same expectation value share a rank, and
+     * that the ranks are counted among the domains passing the other
+     * criteria.
+     */
+    public void testDomainRank() throws Exception {
+        XTandemFilter filter = new XTandemFilter();
+        filter.setMaxDomainRank(1);
+        assertFiltered(filter, "1:1.1.1,1.1.2,1.2.1", "2:2.1.1", "3:3.1.1");
+
+        filter.setMaxDomainRank(2);
+        assertFiltered(filter, "1:1.1.1,1.1.2,1.1.3,1.2.1", "2:2.1.1", "3:3.1.1");
+
+        filter.setMaxDomainRank(1);
+        filter.setMaxSpectrumExpect(0.1);
+        filter.setMinHyperscore(29.0);
+        assertFiltered(filter, "1:1.1.1,1.2.1");
+
+        filter = new XTandemFilter();
+        filter.setMaxDomainRank(1);
+        filter.setMaxMissedCleavages(1);
+        filter.setMaxAbsoluteDelta(0.1);
+        filter.setProteinLabelPattern(Pattern.compile("^sp\\|"));
+        assertFiltered(filter, "1:1.1.1", "2:2.1.1");
+    }
+
+    /**
+     * Parses the test file with the given filter, with the standard parser
+     * and with the byte level tokenizer, and verifies the kept spectra and
+     * domains.
+     *
+     * @param aFilter the filter
+     * @param aExpected the expected spectra, in order, each given as the
+     * spectrum id, a colon and the sorted ids of its domains
+     * @throws Exception if the file could not be parsed
+     */
+    private void assertFiltered(XTandemFilter aFilter, String... aExpected) throws Exception {
+        XTandemParserOptions options = new XTandemParserOptions(false, aFilter);
+        XTandemFile standard = new XTandemFile(iFile, options);
+        assertFalse(standard.getXTandemParser().isMappedParse());
+        assertEquals(toList(aExpected), getSpectra(standard));
+
+        options.setMapped(true);
+        XTandemFile mapped = new XTandemFile(iFile, options);
+        assertTrue(mapped.getXTandemParser().isMappedParse());
+        assertEquals(toList(aExpected), getSpectra(mapped));
+    }
+
+    /**
+     * Returns the kept spectra and domains of the given file, see
+     * assertFiltered().
+     *
+     * @param aXTandemFile the xtandem file
+     * @return the spectra and their domains
+     */
+    private ArrayList<String> getSpectra(XTandemFile aXTandemFile) {
+        ArrayList<String> spectra = new ArrayList<String>();
+        for (int i = 1; i <= aXTandemFile.getSpectraNumber(); i++) {
+            ArrayList<String> domainIds = new ArrayList<String>();
+            for (Peptide peptide : aXTandemFile.getPeptideMap().getAllPeptides(i)) {
+                for (Domain domain : peptide.getDomains()) {
+                    domainIds.add(domain.getDomainID());
+                }
+            }
+            Collections.sort(domainIds);
+            StringBuilder spectrum = new StringBuilder().append(aXTandemFile.getSpectrum(i).getSpectrumId()).append(':');
+            for (int j = 0; j < domainIds.size(); j++) {
+                spectrum.append(j == 0 ? "" : ",").append(domainIds.get(j));
+            }
+            spectra.add(spectrum.toString());
+        }
+        return spectra;
+    }
+
+    /**
+     * Returns the given values as a list.
+     *
+     * @param aValues the values
+     * @return the list of the values
+     */
+    private ArrayList<String> toList(String... aValues) {
+        ArrayList<String> list = new ArrayList<String>();
+        Collections.addAll(list, aValues);
+        return list;
+    }
+}
@@ -0,0 +1,217 @@
+package main.java;
+
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.FragmentIon;
+import de.proteinms.xtandemparser.xtandem.FragmentLadderCache;
+import de.proteinms.xtandemparser.xtandem.InSilicoDigester;
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.SpectrumPeak;
+import de.proteinms.xtandemparser.xtandem.SupportData;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Vector;
+
+public class FragmentLadderCacheTest extends TestCase {
+
+    /**
+     * The fragment ion annotation accuracy.
+     */
+    private static final double ACCURACY = 0.4;
+    /**
+     * The number of ion types, see the constants of the Ion interface.
+     */
+    private static final int NUMBER_OF_ION_TYPES = 15;
+    /**
+     * A model group identifying ACDEFGHIK, the values being the group id, the
+     * modifications of the domain and the peaks of the spectrum. All the
+     * groups have the same charge and mass, so that the ladders differ by the
+     * modifications only.
+     */
+    private static final String GROUP = "<group id=\"%1$d\" mh=\"1000.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"sp|P1|A\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "<protein expect=\"-3.0\" id=\"%1$d.1\" uid=\"1\" label=\"sp|P1|A\" sumI=\"4.0\">\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"30\">MKLPEPTMIDEKLRACDEFGHIKSSKRLLN\n"
+            + "<domain id=\"%1$d.1.1\" start=\"11\" end=\"19\" expect=\"1e-3\" mh=\"1000.5\" delta=\"0.026\" hyperscore=\"22.8\" nextscore=\"20.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"MK\" post=\"SS\" seq=\"ACDEFGHIK\" missed_cleavages=\"0\">\n"
+            + "%2$s"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "<group label=\"fragment ion mass spectrum\" type=\"support\">\n"
+            + "<GAML:trace id=\"%1$d\" label=\"%1$d.spectrum\" type=\"tandem mass spectrum\">\n"
+            + "<GAML:attribute type=\"M+H\">1000.5</GAML:attribute>\n"
+            + "<GAML:attribute type=\"charge\">2</GAML:attribute>\n"
+            + "<GAML:Xdata label=\"%1$d.spectrum\" units=\"MASSTOCHARGERATIO\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"%3$d\">\n%4$s\n</GAML:values></GAML:Xdata>\n"
+            + "<GAML:Ydata label=\"%1$d.spectrum\" units=\"UNKNOWN\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"%3$d\">\n%5$s\n</GAML:values></GAML:Ydata>\n"
+            + "</GAML:trace>\n"
+            + "</group>\n"
+            + "</group>\n";
+    /**
+     * The modification of the cysteine.
+     */
+    private static final String MODIFICATION = "<aa type=\"C\" at=\"12\" modified=\"57.021\" />\n";
+
+    /**
+     * Test that the ions matched with the cached ladders are those matched
+     * without the cache, and those matched by the InSilicoDigester, for the
+     * same peptide with and without a modification.
+     */
+    public void testCachedIonsEqualUncachedIons() throws Exception {
+        XTandemFile cachedFile = parse();
+        XTandemFile uncachedFile = parse();
+        uncachedFile.setFragmentLadderCache(null);
+        for (int spectrumNumber = 1; spectrumNumber <= 3; spectrumNumber++) {
+            Vector cachedIons = getFragmentIons(cachedFile, spectrumNumber);
+            Vector uncachedIons = getFragmentIons(uncachedFile, spectrumNumber);
+            assertEquals(uncachedIons.size(), cachedIons.size());
+            for (int i = 0; i < cachedIons.size(); i++) {
+                assertEqualIons((FragmentIon[]) uncachedIons.get(i), (FragmentIon[]) cachedIons.get(i));
+            }
+            assertEqualToDigester(uncachedFile, spectrumNumber, cachedIons);
+        }
+    }
+
+    /**
+     * Test that the same peptide with and without a modification gets two
+     * ladders, and that the ladder of a peptide found again is taken from the
+     * cache.
+     */
+    public void testModificationsAreKeyed() throws Exception {
+        XTandemFile xTandemFile = parse();
+        FragmentLadderCache cache = new FragmentLadderCache();
+        xTandemFile.setFragmentLadderCache(cache);
+
+        Vector modifiedIons = getFragmentIons(xTandemFile, 1);
+        Vector unmodifiedIons = getFragmentIons(xTandemFile, 2);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+
+        getFragmentIons(xTandemFile, 3);
+        getFragmentIons(xTandemFile, 1);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        // The y ions do not contain the cysteine but the last one, the b ions
+        // contain it but the first one
+        FragmentIon[] modifiedBIons = getIons(modifiedIons, FragmentIon.B_ION);
+        FragmentIon[] unmodifiedBIons = getIons(unmodifiedIons, FragmentIon.B_ION);
+        assertTrue(modifiedBIons.length > 1);
+        assertEquals(modifiedBIons[0].getMZ(), unmodifiedBIons[0].getMZ(), 1e-9);
+        assertEquals(modifiedBIons[1].getMZ() - 57.021, unmodifiedBIons[1].getMZ(), 1e-6);
+    }
+
+    /**
+     * Parses the test file: the first spectrum identifies ACDEFGHIK with a
+     * modified cysteine, the second and the third ACDEFGHIK unmodified.
+     *
+     * @return the parsed file
+     * @throws Exception if the file could not be parsed
+     */
+    private XTandemFile parse() throws Exception {
+        StringBuilder mzValues = new StringBuilder();
+        StringBuilder intensities = new StringBuilder();
+        int numberOfPeaks = 0;
+        for (double mz = 50; mz < 1100; mz += 0.7) {
+            mzValues.append(numberOfPeaks == 0 ? "" : " ").append(String.format(Locale.US, "%.3f", mz));
+            intensities.append(numberOfPeaks == 0 ? "" : " ").append(numberOfPeaks % 97 + 1);
+            numberOfPeaks++;
+        }
+        String content = "<?xml version=\"1.0\"?>\n"
+                + "<bioml xmlns:GAML=\"http://www.bioml.com/gaml/\" label=\"models from 'test.mgf'\">\n"
+                + String.format(GROUP, 1, MODIFICATION, numberOfPeaks, mzValues, intensities)
+                + String.format(GROUP, 2, "", numberOfPeaks, mzValues, intensities)
+                + String.format(GROUP, 3, "", numberOfPeaks, mzValues, intensities)
+                + "</bioml>\n";
+        return new XTandemFile(new ByteArrayInputStream(content.getBytes("UTF-8")), "test.xml");
+    }
+
+    /**
+     * Returns the fragment ions matched for the domain of the given spectrum.
+     *
+     * @param aXTandemFile the xtandem file
+     * @param aSpectrumNumber the spectrum number
+     * @return the vector of the fragment ion arrays
+     */
+    private Vector getFragmentIons(XTandemFile aXTandemFile, int aSpectrumNumber) {
+        Peptide peptide = aXTandemFile.getPeptideMap().getAllPeptides(aSpectrumNumber).get(0);
+        Domain domain = peptide.getDomains().get(0);
+        return aXTandemFile.getFragmentIonsForPeptide(peptide, domain, ACCURACY);
+    }
+
+    /**
+     * Returns the fragment ions of the given type.
+     *
+     * @param aFragmentIons the vector of the fragment ion arrays
+     * @param aIonType the ion type
+     * @return the ions of the type, empty if none
+     */
+    private FragmentIon[] getIons(Vector aFragmentIons, int aIonType) {
+        for (Object ions : aFragmentIons) {
+            FragmentIon[] fragmentIons = (FragmentIon[]) ions;
+            if (fragmentIons.length > 0 && fragmentIons[0].getType() == aIonType) {
+                return fragmentIons;
+            }
+        }
+        return new FragmentIon[0];
+    }
+
+    /**
+     * Checks that the fragment ions are those matched by an InSilicoDigester
+     * with the peaks of the spectrum.
+     *
+     * @param aXTandemFile the xtandem file
+     * @param aSpectrumNumber the spectrum number
+     * @param aFragmentIons the vector of the fragment ion arrays
+     */
+    private void assertEqualToDigester(XTandemFile aXTandemFile, int aSpectrumNumber, Vector aFragmentIons) {
+        Peptide peptide = aXTandemFile.getPeptideMap().getAllPeptides(aSpectrumNumber).get(0);
+        Domain domain = peptide.getDomains().get(0);
+        InSilicoDigester digester = new InSilicoDigester(peptide, domain, aXTandemFile.getModificationMap(), XTandemFile.getMassesMap(),
+                aXTandemFile.getSpectrum(aSpectrumNumber).getPrecursorCharge(), ACCURACY);
+        SupportData supportData = aXTandemFile.getSupportData(aSpectrumNumber);
+        DoubleBuffer mzValues = supportData.getFragIonMzBuffer();
+        FloatBuffer intensities = supportData.getFragIonIntensityBuffer();
+        SpectrumPeak[] peaks = new SpectrumPeak[mzValues.limit()];
+        for (int i = 0; i < peaks.length; i++) {
+            peaks[i] = new SpectrumPeak(mzValues.get(i), intensities.get(i), 1);
+        }
+        HashSet<Integer> matchedTypes = new HashSet<Integer>();
+        for (int type = 0; type < NUMBER_OF_ION_TYPES; type++) {
+            Vector matchedIons = digester.getMatchedIons(type, peaks);
+            FragmentIon[] ions = getIons(aFragmentIons, type);
+            assertEquals(matchedIons.size(), ions.length);
+            assertEqualIons((FragmentIon[]) matchedIons.toArray(new FragmentIon[matchedIons.size()]), ions);
+            if (ions.length > 0) {
+                matchedTypes.add(type);
+            }
+        }
+        assertTrue(matchedTypes.contains(FragmentIon.B_ION));
+        assertTrue(matchedTypes.contains(FragmentIon.Y_ION));
+    }
+
+    /**
+     * Checks that the two arrays hold the same ions.
+     *
+     * @param aExpected the ions of reference
+     * @param aActual the ions checked
+     */
+    private void assertEqualIons(FragmentIon[] aExpected, FragmentIon[] aActual) {
+        assertEquals(aExpected.length, aActual.length);
+        for (int i = 0; i < aExpected.length; i++) {
+            assertEquals(aExpected[i].getType(), aActual[i].getType());
+            assertEquals(aExpected[i].getNumber(), aActual[i].getNumber());
+            assertEquals(aExpected[i].getCharge(), aActual[i].getCharge(), 0);
+            assertEquals(aExpected[i].getMZ(), aActual[i].getMZ(), 0);
+            assertEquals(aExpected[i].getIntensity(), aActual[i].getIntensity(), 0);
+            assertEquals(aExpected[i].getTheoreticalExperimentalMassError(), aActual[i].getTheoreticalExperimentalMassError(), 0);
+            assertEquals(aExpected[i].getErrorMargin(), aActual[i].getErrorMargin(), 0);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package main.java;
+
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.FragmentIon;
+import de.proteinms.xtandemparser.xtandem.FragmentLadderCache;
+import de.proteinms.xtandemparser.xtandem.FrozenXTandemFile;
+import de.proteinms.xtandemparser.xtandem.HitList;
+import de.proteinms.xtandemparser.xtandem.IndexedFasta;
+import de.proteinms.xtandemparser.xtandem.PeakStore;
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.SupportData;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Vector;
+
+public class FrozenXTandemFileTest extends TestCase {
+
+    /**
+     * The test file: one spectrum identifying PEPTIDEK in the protein A.
+     */
+    private static final String CONTENT = "<?xml version=\"1.0\"?>\n"
+            + "<bioml xmlns:GAML=\"http://www.bioml.com/gaml/\" label=\"models from 'test.mgf'\">\n"
+            + "<group id=\"1\" mh=\"900.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"sp|A|A\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "<protein expect=\"-3.0\" id=\"1.1\" uid=\"1\" label=\"sp|A|A\" sumI=\"4.0\">\n"
+            + "<note label=\"description\">sp|A|A</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"8\">PEPTIDEK\n"
+            + "<domain id=\"1.1.1\" start=\"1\" end=\"8\" expect=\"1e-3\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"PEPTIDEK\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "<group label=\"fragment ion mass spectrum\" type=\"support\">\n"
+            + "<GAML:trace id=\"1\" label=\"1.spectrum\" type=\"tandem mass spectrum\">\n"
+            + "<GAML:attribute type=\"M+H\">900.5</GAML:attribute>\n"
+            + "<GAML:attribute type=\"charge\">2</GAML:attribute>\n"
+            + "<GAML:Xdata label=\"1.spectrum\" units=\"MASSTOCHARGERATIO\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"4\">\n"
+            + "98.060 147.113 227.103 244.166\n</GAML:values></GAML:Xdata>\n"
+            + "<GAML:Ydata label=\"1.spectrum\" units=\"UNKNOWN\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"4\">\n"
+            + "10 20 30 40\n</GAML:values></GAML:Ydata>\n"
+            + "</GAML:trace>\n"
+            + "</group>\n"
+            + "</group>\n"
+            + "</bioml>\n";
+
+    /**
+     * The parsed test file.
+     */
+    private XTandemFile iXTandemFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        iXTandemFile = new XTandemFile(new ByteArrayInputStream(CONTENT.getBytes("UTF-8")), "test.xml");
+    }
+
+    /**
+     * Test that the values computed on demand are new objects for every call.
+     */
+    public void testComputedValuesAreNewObjects() throws Exception {
+        FrozenXTandemFile frozenFile = iXTandemFile.freeze();
+        assertSame(frozenFile, iXTandemFile.freeze());
+
+        SupportData supportData = frozenFile.getSupportData(1);
+        assertNotSame(supportData, frozenFile.getSupportData(1));
+        assertEquals(4, supportData.getFragIonMzBuffer().limit());
+        assertEquals(227.103, supportData.getFragIonMzBuffer().get(2), 1e-9);
+
+        Peptide peptide = frozenFile.getPeptideMap().getAllPeptides(1).get(0);
+        Domain domain = peptide.getDomains().get(0);
+        Vector ions = frozenFile.getFragmentIonsForPeptide(peptide, domain, 0.05);
+        Vector otherIons = frozenFile.getFragmentIonsForPeptide(peptide, domain, 0.05);
+        assertEquals(ions.size(), otherIons.size());
+        int numberOfIons = 0;
+        for (int i = 0; i < ions.size(); i++) {
+            FragmentIon[] fragmentIons = (FragmentIon[]) ions.get(i);
+            for (int j = 0; j < fragmentIons.length; j++) {
+                assertNotSame(fragmentIons[j], ((FragmentIon[]) otherIons.get(i))[j]);
+                numberOfIons++;
+            }
+        }
+        assertTrue(numberOfIons > 0);
+
+        assertNotSame(frozenFile.getDomainsForProtein("sp|A|A"), frozenFile.getDomainsForProtein("sp|A|A"));
+        assertSame(domain, frozenFile.getDomainsForProtein("sp|A|A").get(0));
+        assertNotSame(frozenFile.getProteinCoverage(null), frozenFile.getProteinCoverage(null));
+    }
+
+    /**
+     * Test that the view keeps the ladder cache and the FASTA file of the file
+     * when it was frozen.
+     */
+    public void testSettersDoNotChangeTheView() throws Exception {
+        File fasta = writeFasta("PEPTIDEK");
+        File otherFasta = writeFasta("PEPTIDEKAAAA");
+        try {
+            FragmentLadderCache cache = new FragmentLadderCache();
+            iXTandemFile.setFragmentLadderCache(cache);
+            iXTandemFile.setFastaFile(fasta);
+            FrozenXTandemFile frozenFile = iXTandemFile.freeze();
+
+            FragmentLadderCache otherCache = new FragmentLadderCache();
+            iXTandemFile.setFragmentLadderCache(otherCache);
+            iXTandemFile.setFastaFile(otherFasta);
+
+            Peptide peptide = frozenFile.getPeptideMap().getAllPeptides(1).get(0);
+            frozenFile.getFragmentIonsForPeptide(peptide, peptide.getDomains().get(0), 0.05);
+            assertEquals(1, cache.getMisses());
+            assertEquals(0, otherCache.getMisses());
+            assertEquals("PEPTIDEK", frozenFile.getProteinSequence("sp|A|A"));
+            assertEquals("PEPTIDEKAAAA", iXTandemFile.getProteinSequence("sp|A|A"));
+        } finally {
+            delete(fasta);
+            delete(otherFasta);
+        }
+    }
+
+    /**
+     * Test that the peaks cannot be moved to a peak store once the file is
+     * frozen.
+     */
+    public void testNoPeakStoreOnceFrozen() throws Exception {
+        FrozenXTandemFile frozenFile = iXTandemFile.freeze();
+        try {
+            iXTandemFile.storePeaks(new PeakStore());
+            fail("The peaks of a frozen file were stored.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(4, frozenFile.getSupportData(1).getFragIonMzBuffer().limit());
+    }
+
+    /**
+     * Test that the hit lists, the indexes and the protein groups handed out
+     * by the view cannot be modified.
+     */
+    public void testIndexesAreReadOnly() throws Exception {
+        FrozenXTandemFile frozenFile = iXTandemFile.freeze();
+        HitList[] hitLists = {frozenFile.getProteinMap().getHits("sp|A|A"), frozenFile.getPeptideIndex().getHits("PEPTIDEK")};
+        for (HitList hits : hitLists) {
+            assertTrue(hits.isTrimmed());
+            try {
+                hits.add(2, 1, 1);
+                fail("A hit was added to a trimmed hit list.");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertEquals(1, hits.size());
+        }
+        try {
+            frozenFile.getProteinMap().getHitIndex().addHit("sp|B|B", 2, 1, 1, "ELVISK");
+            fail("A hit was added to a trimmed protein hit index.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            frozenFile.getPeptideIndex().addHit("ELVISK", 2, 1, 1);
+            fail("A hit was added to a trimmed peptide index.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertFalse(frozenFile.getProteinMap().getHitIndex().contains("sp|B|B"));
+
+        try {
+            frozenFile.getProteinMap().getHitIndex().getProteinKeys().clear();
+            fail("The protein keys were modified.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            frozenFile.getPeptideIndex().getKeys().set(0, "ELVISK");
+            fail("The peptide keys were modified.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            frozenFile.getProteinMap().getProteinGroups().clear();
+            fail("The protein groups were modified.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        Iterator proteinIDs = frozenFile.getProteinMap().getProteinIDIterator();
+        proteinIDs.next();
+        try {
+            proteinIDs.remove();
+            fail("A protein was removed.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals("PEPTIDEK", frozenFile.getPeptideIndex().getKeys().get(0));
+        assertEquals(1, frozenFile.getProteinGroups().size());
+        assertNotNull(frozenFile.getProteinMap().getProtein("sp|A|A"));
+    }
+
+    /**
+     * Writes a FASTA file with the protein A.
+     *
+     * @param aSequence the sequence of the protein
+     * @return the FASTA file
+     * @throws IOException if the file could not be written
+     */
+    private File writeFasta(String aSequence) throws IOException {
+        File fasta = File.createTempFile("frozen", ".fasta");
+        FileOutputStream output = new FileOutputStream(fasta);
+        try {
+            output.write((">sp|A|A\n" + aSequence + "\n").getBytes("US-ASCII"));
+        } finally {
+            output.close();
+        }
+        return fasta;
+    }
+
+    /**
+     * Deletes the given FASTA file and its index.
+     *
+     * @param aFasta the FASTA file
+     */
+    private void delete(File aFasta) {
+        new File(aFasta.getPath() + IndexedFasta.INDEX_EXTENSION).delete();
+        aFasta.delete();
+    }
+}
@@ -0,0 +1,38 @@
+package main.java;
+
+import de.proteinms.xtandemparser.xtandem.IndexedFasta;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+public class IndexedFastaTest extends TestCase {
+
+    /**
+     * Test that the sequences are read from the FASTA file whatever its line
+     * ends and widths, and that the index file is written next to it.
+     */
+    public void testSequences() throws Exception {
+        File fasta = File.createTempFile("indexed", ".fasta");
+        File index = new File(fasta.getPath() + IndexedFasta.INDEX_EXTENSION);
+        try {
+            FileOutputStream output = new FileOutputStream(fasta);
+            output.write(">sp|P1|A_HUMAN Alpha\r\nMKVLA\r\nAGGT\r\nK\r\n>sp|P2|B_HUMAN Beta\nPEPTIDEKRR\nQQ\n>sp|P3|C\nWWYY".getBytes("US-ASCII"));
+            output.close();
+
+            IndexedFasta indexedFasta = new IndexedFasta(fasta);
+            assertTrue(index.isFile());
+            assertEquals(3, indexedFasta.size());
+            assertEquals("MKVLAAGGTK", indexedFasta.getSequence("sp|P1|A_HUMAN Alpha"));
+            assertEquals("PEPTIDEKRRQQ", indexedFasta.getSequence(">sp|P2|B_HUMAN"));
+            assertEquals("QQRRKEDITPEP", indexedFasta.getSequence("sp|P2|B_HUMAN Beta:reversed"));
+            assertNull(indexedFasta.getSequence("sp|P4|D"));
+
+            indexedFasta = new IndexedFasta(fasta);
+            assertEquals("WWYY", indexedFasta.getSequence("sp|P3|C"));
+        } finally {
+            fasta.delete();
+            index.delete();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.XTandemFilter;
+import de.proteinms.xtandemparser.parser.XTandemParser;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.SupportData;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.TreeMap;
+
+public class MappedParserTest extends TestCase {
+
+    /**
+     * The model groups of the test file, %s being replaced by the content of
+     * the first peptide.
+     */
+    private static final String MODELS = "<group id=\"1\" mh=\"1000.5\" z=\"2\" rt=\"1.0\" expect=\"1.1e-06\" label=\"sp|P1|A Prot&amp;ein \u00e91\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\r\n"
+            + "<protein expect=\"-12.0\" id=\"1.1\" uid=\"11\" label=\"sp|P1|A Prot&amp;ein \u00e91\" sumI=\"5.1\">\n"
+            + "<note label=\"description\">sp|P1|A Prot&amp;ein \u00e91</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"30\">%s\n"
+            + "<domain id=\"1.1.1\" start=\"11\" end=\"19\" expect=\"1.7e-07\" mh=\"1000.5\" delta=\"0.026\" hyperscore=\"22.8\" nextscore=\"20.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"MK\" post=\"SS\" seq=\"ACDEFGHIK\" missed_cleavages=\"1\">\n"
+            + "<!-- comment --><aa type=\"C\" at=\"12\" modified=\"57.021\" />\n"
+            + "</domain>\n"
+            + "<domain id=\"1.1.2\" start=\"11\" end=\"19\" expect=\"3.0e-02\" mh=\"1000.5\" delta=\"0.5\" hyperscore=\"12.8\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"MK\" post=\"SS\" seq=\"ACDEFGHIK\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "<group label=\"fragment ion mass spectrum\" type=\"support\">\n"
+            + "<note label=\"Description\">spectrum 1 </note>\n"
+            + "<GAML:trace id=\"1\" label=\"1.spectrum\" type=\"tandem mass spectrum\">\n"
+            + "<GAML:attribute type=\"M+H\">1000.5</GAML:attribute>\n"
+            + "<GAML:attribute type=\"charge\">2</GAML:attribute>\n"
+            + "<GAML:Xdata label=\"1.spectrum\" units=\"MASSTOCHARGERATIO\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"3\">\n101.5 202.25 303.125\n</GAML:values></GAML:Xdata>\n"
+            + "<GAML:Ydata label=\"1.spectrum\" units=\"UNKNOWN\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"3\">\n3 54 72\n</GAML:values></GAML:Ydata>\n"
+            + "</GAML:trace>\n"
+            + "</group>\n"
+            + "</group>\n"
+            + "<group id=\"2\" mh=\"900.5\" z=\"3\" expect=\"8.4e-02\" label=\"sp|P2|B\" type=\"model\">\n"
+            + "<protein expect=\"-2.0\" id=\"2.1\" uid=\"12\" label=\"sp|P2|B\" sumI=\"4.1\">\n"
+            + "<peptide start=\"1\" end=\"20\">PEPTIDEK\n"
+            + "<domain id=\"2.1.1\" start=\"1\" end=\"8\" expect=\"8.4e-02\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"PEPTIDEK\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "</group>\n";
+    /**
+     * The parameter groups of the test file.
+     */
+    private static final String PARAMETERS = "<group label=\"input parameters\" type=\"parameters\">\n"
+            + "<note type=\"input\" label=\"scoring, b ions\">yes</note>\n"
+            + "<note type=\"input\" label=\"scoring, y ions\">yes</note>\n"
+            + "<note type=\"input\" label=\"spectrum, path\">test.mgf</note>\n"
+            + "</group>\n"
+            + "<group label=\"performance parameters\" type=\"parameters\">\n"
+            + "<note label=\"process, version\">x! tandem</note>\n"
+            + "</group>\n";
+
+    /**
+     * Test that the byte level tokenizer gives the same result as the
+     * standard parser, with and without filter.
+     */
+    public void testMappedParse() throws Exception {
+        File file = writeFile("ACDEFGHIK");
+        try {
+            XTandemParser standard = new XTandemParser(file, false, null);
+            XTandemParser mapped = new XTandemParser(file, getMappedOptions(false, null, false));
+            assertFalse(standard.isMappedParse());
+            assertTrue(mapped.isMappedParse());
+            assertEquals(2, mapped.getNumberOfSpectra());
+            assertEquals("sp|P1|A Prot&ein \u00e91", mapped.getRawProteinMap().get("descriptionsp|P1|A Prot&ein \u00e91"));
+            assertEqualParses(standard, mapped);
+
+            XTandemFilter filter = new XTandemFilter();
+            filter.setMaxDomainExpect(1e-3);
+            standard = new XTandemParser(file, true, filter);
+            mapped = new XTandemParser(file, getMappedOptions(true, filter, false));
+            assertTrue(mapped.isMappedParse());
+            assertEquals(1, mapped.getNumberOfSpectra());
+            assertEqualParses(standard, mapped);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that a file the tokenizer does not support is parsed with the
+     * standard parser.
+     */
+    public void testFallback() throws Exception {
+        File file = writeFile("<![CDATA[ACDEFGHIK]]>");
+        try {
+            XTandemParser standard = new XTandemParser(file, false, null);
+            XTandemParser mapped = new XTandemParser(file, getMappedOptions(false, null, false));
+            assertFalse(mapped.isMappedParse());
+            assertEqualParses(standard, mapped);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that the support data read lazily from the file equals the support
+     * data of the standard parser, and can no longer be read once the parser
+     * is closed.
+     */
+    public void testLazySupportData() throws Exception {
+        File file = writeFile("ACDEFGHIK");
+        try {
+            XTandemParser standard = new XTandemParser(file, false, null);
+            XTandemParser lazy = new XTandemParser(file, getMappedOptions(false, null, true));
+            assertNotNull(lazy.getSupportDataRanges());
+            assertFalse(lazy.getSupportDataMap().containsKey("XVAL_FRAGIONMZ_s1"));
+            assertEquals(standard.getSupportDataMap().get("XVAL_FRAGIONMZ_s1"), lazy.getSupportDataRanges().getValues("XVAL_FRAGIONMZ", 1));
+
+            SupportData expected = new SupportData(standard.getSupportDataMap(), 1);
+            SupportData actual = new SupportData(lazy.getSupportDataMap(), null, lazy.getSupportDataRanges(), 1);
+            assertEquals(expected.getXValuesFragIonMass2Charge(), actual.getXValuesFragIonMass2Charge());
+            assertEquals(expected.getYValuesFragIonMass2Charge(), actual.getYValuesFragIonMass2Charge());
+            assertEquals(expected.getFragIonSpectrumDescription(), actual.getFragIonSpectrumDescription());
+
+            lazy.close();
+            try {
+                new SupportData(lazy.getSupportDataMap(), null, lazy.getSupportDataRanges(), 1).getYValuesFragIonMass2Charge();
+                fail("The support data was read from a closed file.");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns the options of a mapped parse.
+     *
+     * @param aSkipDetails if true the details are skipped
+     * @param aFilter the filter, null to keep everything
+     * @param aLazySupportData if true the support data is read lazily
+     * @return the parsing options
+     */
+    private XTandemParserOptions getMappedOptions(boolean aSkipDetails, XTandemFilter aFilter, boolean aLazySupportData) {
+        XTandemParserOptions options = new XTandemParserOptions(aSkipDetails, aFilter);
+        options.setMapped(true);
+        options.setLazySupportData(aLazySupportData);
+        return options;
+    }
+
+    /**
+     * Writes a test file, the parameters following the model groups as in
+     * the X!Tandem output.
+     *
+     * @param aPeptideContent the content of the first peptide
+     * @return the file
+     * @throws IOException if the file could not be written
+     */
+    private File writeFile(String aPeptideContent) throws IOException {
+        File file = File.createTempFile("mapped", ".xml");
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<bioml xmlns:GAML=\"http://www.bioml.com/gaml/\" label=\"models from 'test.mgf'\">\n"
+                    + String.format(MODELS, aPeptideContent) + PARAMETERS + "</bioml>\n").getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    /**
+     * Checks that the two parsers hold the same values.
+     *
+     * @param aExpected the parser of reference
+     * @param aActual the parser checked
+     */
+    private void assertEqualParses(XTandemParser aExpected, XTandemParser aActual) {
+        assertEquals(aExpected.getNumberOfSpectra(), aActual.getNumberOfSpectra());
+        assertEquals(new TreeMap<String, String>(aExpected.getInputParamMap()), new TreeMap<String, String>(aActual.getInputParamMap()));
+        assertEquals(new TreeMap<String, String>(aExpected.getPerformParamMap()), new TreeMap<String, String>(aActual.getPerformParamMap()));
+        assertEquals(new TreeMap<String, String>(aExpected.getRawSpectrumMap()), new TreeMap<String, String>(aActual.getRawSpectrumMap()));
+        assertEquals(new TreeMap<String, String>(aExpected.getRawPeptideMap()), new TreeMap<String, String>(aActual.getRawPeptideMap()));
+        assertEquals(new TreeMap<String, String>(aExpected.getRawProteinMap()), new TreeMap<String, String>(aActual.getRawProteinMap()));
+        assertEquals(new TreeMap<String, String>(aExpected.getRawModMap()), new TreeMap<String, String>(aActual.getRawModMap()));
+        assertEquals(new TreeMap<String, String>(aExpected.getSupportDataMap()), new TreeMap<String, String>(aActual.getSupportDataMap()));
+        assertEquals(aExpected.getIdToSpectrumMap(), aActual.getIdToSpectrumMap());
+        assertEquals(aExpected.getProteinIDList(), aActual.getProteinIDList());
+    }
+}
@@ -0,0 +1,343 @@
+package main.java;
+
+import de.proteinms.xtandemparser.xtandem.PeakStore;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.Random;
+
+public class PeakStoreTest extends TestCase {
+
+    /**
+     * The number of peaks of the spectra added, spectrum 3 not being in the
+     * stores: the second spectrum does not fit in the 4 MB direct memory
+     * segment of the first one, and the fourth one is larger than a segment.
+     */
+    private static final int[] COUNTS = {300000, 100000, -1, 400000, 5};
+    /**
+     * The directory of the spill files.
+     */
+    private File iDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        iDirectory = File.createTempFile("peaks", "");
+        iDirectory.delete();
+        iDirectory.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : iDirectory.listFiles()) {
+            file.delete();
+        }
+        iDirectory.delete();
+    }
+
+    /**
+     * Test that the peaks kept in direct memory are read back exactly,
+     * including the records starting a new segment or larger than a segment.
+     */
+    public void testDirectStore() throws Exception {
+        PeakStore store = new PeakStore();
+        assertFalse(store.isMapped());
+        fill(store);
+        // 3.6 MB, 1.2 MB, 4.8 MB and the last spectrum in a new segment
+        assertEquals(4, getNumberOfSegments(store));
+        checkPeaks(store);
+    }
+
+    /**
+     * Test that the peaks spilled to a file are read back exactly once the
+     * file is mapped, and that the file is deleted when the store is closed.
+     */
+    public void testSpillStore() throws Exception {
+        PeakStore store = new PeakStore(iDirectory);
+        assertTrue(store.isMapped());
+        assertEquals(1, iDirectory.listFiles().length);
+        fill(store);
+        File spillFile = iDirectory.listFiles()[0];
+        assertEquals(store.getSize(), spillFile.length());
+        assertEquals(1, getNumberOfSegments(store));
+        checkPeaks(store);
+        store.close();
+        assertEquals(0, iDirectory.listFiles().length);
+        assertEquals(getMzValue(5, 4), store.getMzValues(5).get(4), 0);
+    }
+
+    /**
+     * Test that the store is only filled before it is sealed and only read
+     * afterwards, and that every spectrum is added once.
+     */
+    public void testSeal() throws Exception {
+        PeakStore store = new PeakStore();
+        store.add(1, "100.5 200.25", "10 20");
+        try {
+            store.getMzValues(1);
+            fail("An unsealed store was read.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            store.add(1, "300.5", "30");
+            fail("A spectrum was added twice.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            store.add(2, "300.5 400.5", "30");
+            fail("A spectrum with more m/z values than intensities was added.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        store.seal();
+        store.seal();
+        assertTrue(store.isSealed());
+        try {
+            store.add(2, "300.5", "30");
+            fail("A spectrum was added to a sealed store.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(2, store.getNumberOfPeaks(1));
+        assertEquals(200.25, store.getMzValues(1).get(1), 0);
+        assertEquals(20f, store.getIntensities(1).get(1), 0);
+        assertFalse(store.contains(2));
+        assertNull(store.getMzValues(2));
+        assertNull(store.getIntensities(0));
+    }
+
+    /**
+     * Test that the m/z values with at most three decimals, as written by
+     * X!Tandem, are kept exactly in reduced precision, in direct memory and
+     * in a spill file.
+     */
+    public void testReducedPrecisionExact() throws Exception {
+        String[] spectra = {
+            "101.895 122.901 125.513 126.137 127.531 1999.999",
+            // unsorted m/z values, giving negative deltas
+            "500.1 120.05 1500.123 0.001 499.999 3000",
+            // integer m/z values
+            "100 200 150 4000",
+            // no peaks
+            ""};
+        for (PeakStore store : new PeakStore[]{new PeakStore(true), new PeakStore(iDirectory, true)}) {
+            assertTrue(store.isReducedPrecision());
+            for (int i = 0; i < spectra.length; i++) {
+                store.add(i + 1, spectra[i], getIntensities(spectra[i]));
+            }
+            store.seal();
+            for (int i = 0; i < spectra.length; i++) {
+                String[] values = spectra[i].isEmpty() ? new String[0] : spectra[i].split(" ");
+                assertTrue(store.contains(i + 1));
+                assertEquals(values.length, store.getNumberOfPeaks(i + 1));
+                DoubleBuffer mzValues = store.getMzValues(i + 1);
+                FloatBuffer intensities = store.getIntensities(i + 1);
+                assertTrue(mzValues.isReadOnly());
+                assertEquals(values.length, mzValues.remaining());
+                assertEquals(values.length, intensities.remaining());
+                for (int j = 0; j < values.length; j++) {
+                    assertEquals(Double.parseDouble(values[j]), mzValues.get(j), 0);
+                    assertEquals(j + 1f, intensities.get(j), 0);
+                }
+            }
+            store.close();
+        }
+    }
+
+    /**
+     * Test that the error on the m/z values with more decimals is at most
+     * 0.5 * 10^-MAX_DECIMALS in reduced precision, that the intensities are
+     * kept exactly, and that the full precision keeps the values exactly.
+     */
+    public void testReducedPrecisionError() throws Exception {
+        Random random = new Random(42);
+        int count = 2000;
+        double[] mzValues = new double[count];
+        float[] intensities = new float[count];
+        for (int i = 0; i < count; i++) {
+            mzValues[i] = 50 + 4950 * random.nextDouble();
+            intensities[i] = random.nextInt(1 << 24);
+        }
+        PeakStore reducedStore = new PeakStore(true);
+        PeakStore fullStore = new PeakStore(false);
+        for (PeakStore store : new PeakStore[]{reducedStore, fullStore}) {
+            store.add(1, mzValues, intensities, count);
+            store.add(2, mzValues, intensities, 0);
+            store.seal();
+        }
+        assertTrue(reducedStore.getSize() < fullStore.getSize());
+
+        double maxError = 0.5 * Math.pow(10, -PeakStore.MAX_DECIMALS);
+        DoubleBuffer reducedMzValues = reducedStore.getMzValues(1);
+        DoubleBuffer fullMzValues = fullStore.getMzValues(1);
+        for (int i = 0; i < count; i++) {
+            assertEquals(mzValues[i], reducedMzValues.get(i), maxError + 1e-9);
+            assertEquals(mzValues[i], fullMzValues.get(i), 0);
+            assertEquals(intensities[i], reducedStore.getIntensities(1).get(i), 0);
+        }
+        assertEquals(0, reducedStore.getNumberOfPeaks(2));
+        assertEquals(0, reducedStore.getMzValues(2).remaining());
+        assertEquals(0, reducedStore.getIntensities(2).remaining());
+    }
+
+    /**
+     * Test that the peaks are copied to reused arrays longer than the
+     * spectra, whatever the precision.
+     */
+    public void testGetPeaksReusedArrays() throws Exception {
+        String[] spectra = {"100.125 90.5 300.75", "", "1000.001", "2.5 3.5"};
+        for (boolean reducedPrecision : new boolean[]{true, false}) {
+            PeakStore store = new PeakStore(reducedPrecision);
+            for (int i = 0; i < spectra.length; i++) {
+                store.add(i + 1, spectra[i], getIntensities(spectra[i]));
+            }
+            store.seal();
+            double[] mzValues = new double[8];
+            float[] intensities = new float[8];
+            for (int i = 0; i < spectra.length; i++) {
+                String[] values = spectra[i].isEmpty() ? new String[0] : spectra[i].split(" ");
+                assertEquals(values.length, store.getPeaks(i + 1, mzValues, intensities));
+                for (int j = 0; j < values.length; j++) {
+                    assertEquals(Double.parseDouble(values[j]), mzValues[j], 0);
+                    assertEquals(j + 1f, intensities[j], 0);
+                }
+            }
+            assertEquals(0, store.getPeaks(spectra.length + 1, mzValues, intensities));
+        }
+    }
+
+    /**
+     * Returns the intensities 1, 2, ... for the given m/z values.
+     *
+     * @param aMzValues the whitespace separated m/z values
+     * @return the whitespace separated intensities
+     */
+    private static String getIntensities(String aMzValues) {
+        StringBuilder intensities = new StringBuilder();
+        int count = aMzValues.trim().isEmpty() ? 0 : aMzValues.trim().split("\\s+").length;
+        for (int i = 1; i <= count; i++) {
+            intensities.append(i).append(' ');
+        }
+        return intensities.toString();
+    }
+
+    /**
+     * Adds the test spectra to the given store and seals it.
+     *
+     * @param aStore the store
+     * @throws IOException if the peaks could not be written to the spill file
+     */
+    private void fill(PeakStore aStore) throws IOException {
+        long size = 0;
+        for (int i = 0; i < COUNTS.length; i++) {
+            int spectrumNumber = i + 1;
+            if (COUNTS[i] >= 0) {
+                double[] mzValues = new double[COUNTS[i]];
+                float[] intensities = new float[COUNTS[i]];
+                for (int j = 0; j < COUNTS[i]; j++) {
+                    mzValues[j] = getMzValue(spectrumNumber, j);
+                    intensities[j] = getIntensity(spectrumNumber, j);
+                }
+                aStore.add(spectrumNumber, mzValues, intensities, COUNTS[i]);
+                // the records are 8 bytes aligned
+                size += (12L * COUNTS[i] + 7) / 8 * 8;
+            }
+        }
+        aStore.seal();
+        assertEquals(size, aStore.getSize());
+    }
+
+    /**
+     * Checks the peaks of the test spectra in the given store, through the
+     * views and through copies.
+     *
+     * @param aStore the store
+     */
+    private void checkPeaks(PeakStore aStore) {
+        assertFalse(aStore.contains(0));
+        assertFalse(aStore.contains(3));
+        assertFalse(aStore.contains(COUNTS.length + 1));
+        double[] mzValues = new double[0];
+        float[] intensities = new float[0];
+        for (int i = 0; i < COUNTS.length; i++) {
+            int spectrumNumber = i + 1;
+            if (COUNTS[i] < 0) {
+                assertEquals(0, aStore.getNumberOfPeaks(spectrumNumber));
+                assertEquals(0, aStore.getPeaks(spectrumNumber, mzValues, intensities));
+                continue;
+            }
+            assertEquals(COUNTS[i], aStore.getNumberOfPeaks(spectrumNumber));
+
+            // zero-copy read-only views of the stored bytes
+            DoubleBuffer mzView = aStore.getMzValues(spectrumNumber);
+            FloatBuffer intensityView = aStore.getIntensities(spectrumNumber);
+            assertTrue(mzView.isDirect());
+            assertTrue(mzView.isReadOnly());
+            assertTrue(intensityView.isDirect());
+            assertTrue(intensityView.isReadOnly());
+            assertEquals(COUNTS[i], mzView.remaining());
+            assertEquals(COUNTS[i], intensityView.remaining());
+            for (int j = 0; j < COUNTS[i]; j++) {
+                assertEquals(getMzValue(spectrumNumber, j), mzView.get(j), 0);
+                assertEquals(getIntensity(spectrumNumber, j), intensityView.get(j), 0);
+            }
+
+            if (mzValues.length < COUNTS[i]) {
+                mzValues = new double[COUNTS[i]];
+                intensities = new float[COUNTS[i]];
+            }
+            assertEquals(COUNTS[i], aStore.getPeaks(spectrumNumber, mzValues, intensities));
+            for (int j = 0; j < COUNTS[i]; j++) {
+                assertEquals(getMzValue(spectrumNumber, j), mzValues[j], 0);
+                assertEquals(getIntensity(spectrumNumber, j), intensities[j], 0);
+            }
+        }
+        try {
+            aStore.getPeaks(1, new double[1], new float[1]);
+            fail("The peaks were copied to too short arrays.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Returns the number of memory segments of the given store.
+     *
+     * @param aStore the store
+     * @return the number of segments
+     * @throws Exception if the segments could not be accessed
+     */
+    private static int getNumberOfSegments(PeakStore aStore) throws Exception {
+        Field segments = PeakStore.class.getDeclaredField("iSegments");
+        segments.setAccessible(true);
+        return ((List<?>) segments.get(aStore)).size();
+    }
+
+    /**
+     * Returns the m/z value of the given peak of a test spectrum.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aPeak the index of the peak
+     * @return the m/z value
+     */
+    private static double getMzValue(int aSpectrumNumber, int aPeak) {
+        return 100 + aSpectrumNumber + aPeak * 0.0123456789;
+    }
+
+    /**
+     * Returns the intensity of the given peak of a test spectrum.
+     *
+     * @param aSpectrumNumber the spectrum number
+     * @param aPeak the index of the peak
+     * @return the intensity
+     */
+    private static float getIntensity(int aSpectrumNumber, int aPeak) {
+        return (aSpectrumNumber * 7919 + aPeak) % 100000;
+    }
+}
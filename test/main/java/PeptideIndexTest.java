@@ -0,0 +1,205 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.HitList;
+import de.proteinms.xtandemparser.xtandem.PeptideIndex;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class PeptideIndexTest extends TestCase {
+
+    /**
+     * A model group, the values being the group id and the proteins.
+     */
+    private static final String GROUP = "<group id=\"%1$d\" mh=\"1000.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"x\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "%2$s"
+            + "</group>\n";
+    /**
+     * A protein with one domain, the values being the protein id, label,
+     * peptide sequence and modifications of the domain.
+     */
+    private static final String PROTEIN = "<protein expect=\"-3.0\" id=\"%1$s\" uid=\"1\" label=\"%2$s\" sumI=\"4.0\">\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"20\">%3$s\n"
+            + "<domain id=\"%1$s.1\" start=\"1\" end=\"%5$d\" expect=\"1e-3\" mh=\"1000.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"%3$s\" missed_cleavages=\"0\">\n"
+            + "%4$s"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n";
+    /**
+     * The oxidation of the methionine of PEPTMIDEK.
+     */
+    private static final String OXIDATION = "<aa type=\"M\" at=\"5\" modified=\"15.995\" />\n";
+
+    /**
+     * The test file: PEPTMIDEK oxidized is identified in spectrum 1 in the
+     * proteins A and B, PEPTMIDEK unmodified in spectra 2 and 4 in A, and
+     * ELVISK in spectrum 3 in B.
+     */
+    private File iFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        iFile = File.createTempFile("index", ".xml");
+        OutputStream outputStream = new FileOutputStream(iFile);
+        try {
+            outputStream.write(("<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                    + String.format(GROUP, 1, getProtein("1.1", "sp|A|A", "PEPTMIDEK", OXIDATION) + getProtein("1.2", "sp|B|B", "PEPTMIDEK", OXIDATION))
+                    + String.format(GROUP, 2, getProtein("2.1", "sp|A|A", "PEPTMIDEK", ""))
+                    + String.format(GROUP, 3, getProtein("3.1", "sp|B|B", "ELVISK", ""))
+                    + String.format(GROUP, 4, getProtein("4.1", "sp|A|A", "PEPTMIDEK", ""))
+                    + "</bioml>\n").getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        iFile.delete();
+    }
+
+    /**
+     * Test the keys of the index, the same sequence with and without a
+     * modification having two keys.
+     */
+    public void testKeys() throws Exception {
+        for (PeptideIndex index : getIndexes()) {
+            assertEquals(Arrays.asList("ELVISK", "PEPTMIDEK", "PEPTMIDEK[5:15.995]"), index.getKeys());
+            assertEquals(3, index.size());
+            assertEquals(Arrays.asList("PEPTMIDEK", "PEPTMIDEK[5:15.995]"), index.getKeysForSequence("PEPTMIDEK"));
+            assertEquals(Arrays.asList("ELVISK"), index.getKeysForSequence("ELVISK"));
+            assertTrue(index.getKeysForSequence("PEPT").isEmpty());
+            assertEquals(Arrays.asList("PEPTMIDEK", "PEPTMIDEK[5:15.995]"), index.getKeysByPrefix("PEPT"));
+            assertTrue(index.getKeysByPrefix("Z").isEmpty());
+        }
+    }
+
+    /**
+     * Test the hits of the modified and unmodified peptides.
+     */
+    public void testHits() throws Exception {
+        for (PeptideIndex index : getIndexes()) {
+            assertEquals(toList(1, 1, 1, 1, 2, 1), getHits(index, "PEPTMIDEK[5:15.995]"));
+            assertEquals(1, index.getSpectrumCount("PEPTMIDEK[5:15.995]"));
+            assertEquals(toList(2, 1, 1, 4, 1, 1), getHits(index, "PEPTMIDEK"));
+            assertEquals(2, index.getSpectrumCount("PEPTMIDEK"));
+            assertEquals(toList(3, 1, 1), getHits(index, "ELVISK"));
+            assertEquals("s3_p1_d1", index.getHits("ELVISK").getDomainKey(0));
+
+            assertEquals(0, index.getHits("PEPTMIDEK[5:16.000]").size());
+            assertEquals(0, index.getHits("PEPT").size());
+            assertEquals(0, index.getSpectrumCount("UNKNOWN"));
+        }
+    }
+
+    /**
+     * Test that an index is only read once trimmed, and no longer filled
+     * afterwards.
+     */
+    public void testTrim() {
+        PeptideIndex index = new PeptideIndex();
+        index.addHit("ELVISK", 1, 1, 1);
+        try {
+            index.getHits("ELVISK");
+            fail("An index still being filled was read.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        index.trim();
+        assertEquals(Arrays.asList("ELVISK"), index.getKeys());
+        try {
+            index.addHit("ELVISK", 2, 1, 1);
+            fail("A hit was added to a trimmed index.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, index.getHits("ELVISK").size());
+    }
+
+    /**
+     * Test the peptide keys built from the modifications, sorted by position
+     * and mass and rounded to three decimals.
+     */
+    public void testPeptideKey() {
+        assertEquals("PEPTMIDEK", PeptideIndex.getPeptideKey("PEPTMIDEK", new int[0], new double[0], 0));
+        assertEquals("PEPTMIDEK[1:42.011][5:15.995][5:79.966]",
+                PeptideIndex.getPeptideKey("PEPTMIDEK", new int[]{5, 1, 5}, new double[]{79.96633, 42.010565, 15.994915}, 3));
+    }
+
+    /**
+     * Returns the index of the standard parse, of the mapped parse and the
+     * index read back from its compact form.
+     *
+     * @return the peptide indexes
+     * @throws Exception if the file could not be parsed
+     */
+    private ArrayList<PeptideIndex> getIndexes() throws Exception {
+        ArrayList<PeptideIndex> indexes = new ArrayList<PeptideIndex>();
+        XTandemParserOptions options = new XTandemParserOptions();
+        indexes.add(new XTandemFile(iFile, options).getPeptideIndex());
+        options.setMapped(true);
+        indexes.add(new XTandemFile(iFile, options).getPeptideIndex());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactOutput output = new CompactOutput(new DataOutputStream(bytes));
+        indexes.get(0).writeCompact(output);
+        output.flush();
+        indexes.add(PeptideIndex.readCompact(new CompactInput(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))));
+        return indexes;
+    }
+
+    /**
+     * Returns the hits of the given peptide as a list of (spectrum number,
+     * peptide index, domain index) triples.
+     *
+     * @param aIndex the peptide index
+     * @param aPeptideKey the peptide key
+     * @return the hits
+     */
+    private ArrayList<Integer> getHits(PeptideIndex aIndex, String aPeptideKey) {
+        HitList hits = aIndex.getHits(aPeptideKey);
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < hits.size(); i++) {
+            values.add(hits.getSpectrumNumber(i));
+            values.add(hits.getPeptideIndex(i));
+            values.add(hits.getDomainIndex(i));
+        }
+        return values;
+    }
+
+    /**
+     * Returns the given values as a list.
+     *
+     * @param aValues the values
+     * @return the list of the values
+     */
+    private ArrayList<Integer> toList(Integer... aValues) {
+        return new ArrayList<Integer>(Arrays.asList(aValues));
+    }
+
+    /**
+     * Returns a protein element with one domain.
+     *
+     * @param aId the protein id
+     * @param aLabel the protein label
+     * @param aSequence the sequence of the domain
+     * @param aModifications the modifications of the domain
+     * @return the protein element
+     */
+    private String getProtein(String aId, String aLabel, String aSequence, String aModifications) {
+        return String.format(PROTEIN, aId, aLabel, aSequence, aModifications, aSequence.length());
+    }
+}
@@ -0,0 +1,62 @@
+package main.java;
+
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+
+public class PeptideMapTest extends TestCase {
+
+    /**
+     * A model group with one protein and one domain, the values being the
+     * group id, the start and end of the protein segment, the domain sequence
+     * and the domain start.
+     */
+    private static final String GROUP = "<group id=\"%1$d\" mh=\"900.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"sp|A|A\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "<protein expect=\"-3.0\" id=\"%1$d.1\" uid=\"1\" label=\"sp|A|A\" sumI=\"4.0\">\n"
+            + "<note label=\"description\">sp|A|A</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"%2$d\" end=\"%3$d\">%4$s\n"
+            + "<domain id=\"%1$d.1.1\" start=\"%5$d\" end=\"%6$d\" expect=\"1e-3\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"%4$s\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "</group>\n";
+
+    /**
+     * Test that the start and end of the protein segment of the peptides are
+     * read from the start and end attributes of the peptide elements.
+     */
+    public void testPeptideStartAndEnd() throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                + getGroup(1, 1, 250, "PEPTIDEK", 11)
+                + getGroup(2, 5, 48, "ELVISK", 20)
+                + "</bioml>\n";
+        XTandemFile xTandemFile = new XTandemFile(new ByteArrayInputStream(content.getBytes("UTF-8")), "test.xml");
+
+        Peptide peptide = xTandemFile.getPeptideMap().getPeptideByIndex(1, 1);
+        assertEquals(1, peptide.getStart());
+        assertEquals(250, peptide.getEnd());
+        assertEquals(11, peptide.getDomains().get(0).getDomainStart());
+        assertEquals(18, peptide.getDomains().get(0).getDomainEnd());
+
+        peptide = xTandemFile.getPeptideMap().getPeptideByIndex(2, 1);
+        assertEquals(5, peptide.getStart());
+        assertEquals(48, peptide.getEnd());
+    }
+
+    /**
+     * Returns a model group with one protein and one domain.
+     *
+     * @param aId the group id
+     * @param aStart the start of the protein segment
+     * @param aEnd the end of the protein segment
+     * @param aSequence the domain sequence
+     * @param aDomainStart the domain start
+     * @return the model group
+     */
+    private String getGroup(int aId, int aStart, int aEnd, String aSequence, int aDomainStart) {
+        return String.format(GROUP, aId, aStart, aEnd, aSequence, aDomainStart, aDomainStart + aSequence.length() - 1);
+    }
+}
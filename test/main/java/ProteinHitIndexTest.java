@@ -0,0 +1,201 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.CompactInput;
+import de.proteinms.xtandemparser.parser.CompactOutput;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.HitList;
+import de.proteinms.xtandemparser.xtandem.ProteinHitIndex;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ProteinHitIndexTest extends TestCase {
+
+    /**
+     * The number of proteins of the last spectrum.
+     */
+    private static final int NUMBER_OF_PROTEINS = 20;
+    /**
+     * A model group, the values being the group id and the proteins.
+     */
+    private static final String GROUP = "<group id=\"%1$d\" mh=\"1000.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"x\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "%2$s"
+            + "</group>\n";
+    /**
+     * A protein with one domain, the values being the protein id, label,
+     * peptide sequence and modifications of the domain.
+     */
+    private static final String PROTEIN = "<protein expect=\"-3.0\" id=\"%1$s\" uid=\"1\" label=\"%2$s\" sumI=\"4.0\">\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"20\">%3$s\n"
+            + "<domain id=\"%1$s.1\" start=\"1\" end=\"%5$d\" expect=\"1e-3\" mh=\"1000.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"%3$s\" missed_cleavages=\"0\">\n"
+            + "%4$s"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n";
+    /**
+     * The oxidation of the methionine of PEPTMIDEK.
+     */
+    private static final String OXIDATION = "<aa type=\"M\" at=\"5\" modified=\"15.995\" />\n";
+
+    /**
+     * The test file: the protein A is identified by PEPTMIDEK oxidized in
+     * spectrum 1 and unmodified in spectrum 2, the protein B by PEPTMIDEK
+     * oxidized in spectrum 1, ELVISK in spectrum 3 and SAMPLER in spectrum 4,
+     * and spectrum 5 identifies ELVISK in NUMBER_OF_PROTEINS other proteins.
+     */
+    private File iFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        StringBuilder proteins = new StringBuilder();
+        for (int i = 0; i < NUMBER_OF_PROTEINS; i++) {
+            proteins.append(getProtein("5." + (i + 1), "sp|P" + i + "|P", "ELVISK", ""));
+        }
+        iFile = File.createTempFile("index", ".xml");
+        OutputStream outputStream = new FileOutputStream(iFile);
+        try {
+            outputStream.write(("<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                    + String.format(GROUP, 1, getProtein("1.1", "sp|A|A", "PEPTMIDEK", OXIDATION) + getProtein("1.2", "sp|B|B", "PEPTMIDEK", OXIDATION))
+                    + String.format(GROUP, 2, getProtein("2.1", "sp|A|A", "PEPTMIDEK", ""))
+                    + String.format(GROUP, 3, getProtein("3.1", "sp|B|B", "ELVISK", ""))
+                    + String.format(GROUP, 4, getProtein("4.1", "sp|B|B", "SAMPLER", ""))
+                    + String.format(GROUP, 5, proteins.toString())
+                    + "</bioml>\n").getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        iFile.delete();
+    }
+
+    /**
+     * Test the proteins of the index, in order of appearance.
+     */
+    public void testProteinKeys() throws Exception {
+        for (ProteinHitIndex index : getIndexes()) {
+            List<String> proteinKeys = index.getProteinKeys();
+            assertEquals(2 + NUMBER_OF_PROTEINS, proteinKeys.size());
+            assertEquals(Arrays.asList("sp|A|A", "sp|B|B", "sp|P0|P"), proteinKeys.subList(0, 3));
+            assertEquals("sp|P" + (NUMBER_OF_PROTEINS - 1) + "|P", proteinKeys.get(proteinKeys.size() - 1));
+            assertTrue(index.contains("sp|B|B"));
+            assertFalse(index.contains("sp|C|C"));
+        }
+    }
+
+    /**
+     * Test the hits and the distinct peptide sequences of the proteins, the
+     * modified and unmodified versions of a peptide having one sequence.
+     */
+    public void testHits() throws Exception {
+        for (ProteinHitIndex index : getIndexes()) {
+            assertEquals(toList(1, 1, 1, 2, 1, 1), getHits(index, "sp|A|A"));
+            assertEquals(Arrays.asList("PEPTMIDEK"), Arrays.asList(index.getPeptideSequences("sp|A|A")));
+            assertEquals(1, index.getNumberOfPeptideSequences("sp|A|A"));
+
+            assertEquals(toList(1, 2, 1, 3, 1, 1, 4, 1, 1), getHits(index, "sp|B|B"));
+            assertEquals(3, index.getNumberOfHits("sp|B|B"));
+            assertEquals(Arrays.asList("PEPTMIDEK", "ELVISK", "SAMPLER"), Arrays.asList(index.getPeptideSequences("sp|B|B")));
+
+            assertEquals(toList(5, NUMBER_OF_PROTEINS, 1), getHits(index, "sp|P" + (NUMBER_OF_PROTEINS - 1) + "|P"));
+            assertEquals(Arrays.asList("ELVISK"), Arrays.asList(index.getPeptideSequences("sp|P" + (NUMBER_OF_PROTEINS - 1) + "|P")));
+
+            assertEquals(0, index.getHits("sp|C|C").size());
+            assertEquals(0, index.getNumberOfHits("sp|C|C"));
+            assertEquals(0, index.getPeptideSequences("sp|C|C").length);
+        }
+    }
+
+    /**
+     * Test that the domains of a protein are found through the index.
+     */
+    public void testDomainsForProtein() throws Exception {
+        XTandemFile xTandemFile = new XTandemFile(iFile, new XTandemParserOptions());
+        ArrayList<Domain> domains = xTandemFile.getDomainsForProtein("sp|B|B");
+        assertEquals(3, domains.size());
+        assertEquals("1.2.1", domains.get(0).getDomainID());
+        assertEquals("ELVISK", domains.get(1).getDomainSequence());
+        assertEquals("SAMPLER", domains.get(2).getDomainSequence());
+        assertTrue(xTandemFile.getDomainsForProtein("sp|C|C").isEmpty());
+        assertEquals(3, xTandemFile.getProteinMap().getHits("sp|B|B").size());
+        assertEquals(3, xTandemFile.getProteinMap().getPeptideSequences("sp|B|B").length);
+    }
+
+    /**
+     * Returns the index of the standard parse, of the mapped parse and the
+     * index read back from its compact form.
+     *
+     * @return the protein hit indexes
+     * @throws Exception if the file could not be parsed
+     */
+    private ArrayList<ProteinHitIndex> getIndexes() throws Exception {
+        ArrayList<ProteinHitIndex> indexes = new ArrayList<ProteinHitIndex>();
+        XTandemParserOptions options = new XTandemParserOptions();
+        indexes.add(new XTandemFile(iFile, options).getProteinMap().getHitIndex());
+        options.setMapped(true);
+        indexes.add(new XTandemFile(iFile, options).getProteinMap().getHitIndex());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactOutput output = new CompactOutput(new DataOutputStream(bytes));
+        indexes.get(0).writeCompact(output);
+        output.flush();
+        indexes.add(ProteinHitIndex.readCompact(new CompactInput(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))));
+        return indexes;
+    }
+
+    /**
+     * Returns the hits of the given protein as a list of (spectrum number,
+     * peptide index, domain index) triples.
+     *
+     * @param aIndex the protein hit index
+     * @param aProteinKey the protein key
+     * @return the hits
+     */
+    private ArrayList<Integer> getHits(ProteinHitIndex aIndex, String aProteinKey) {
+        HitList hits = aIndex.getHits(aProteinKey);
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < hits.size(); i++) {
+            values.add(hits.getSpectrumNumber(i));
+            values.add(hits.getPeptideIndex(i));
+            values.add(hits.getDomainIndex(i));
+        }
+        return values;
+    }
+
+    /**
+     * Returns the given values as a list.
+     *
+     * @param aValues the values
+     * @return the list of the values
+     */
+    private ArrayList<Integer> toList(Integer... aValues) {
+        return new ArrayList<Integer>(Arrays.asList(aValues));
+    }
+
+    /**
+     * Returns a protein element with one domain.
+     *
+     * @param aId the protein id
+     * @param aLabel the protein label
+     * @param aSequence the sequence of the domain
+     * @param aModifications the modifications of the domain
+     * @return the protein element
+     */
+    private String getProtein(String aId, String aLabel, String aSequence, String aModifications) {
+        return String.format(PROTEIN, aId, aLabel, aSequence, aModifications, aSequence.length());
+    }
+}
@@ -0,0 +1,158 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.Protein;
+import de.proteinms.xtandemparser.xtandem.ProteinGroup;
+import de.proteinms.xtandemparser.xtandem.ProteinMap;
+import de.proteinms.xtandemparser.xtandem.ProteinOccurrences;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class ProteinMapTest extends TestCase {
+
+    /**
+     * A model group, the values being the group id and the proteins.
+     */
+    private static final String GROUP = "<group id=\"%1$d\" mh=\"900.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"x\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "%2$s"
+            + "</group>\n";
+    /**
+     * A protein with one domain, the values being the protein id, label, uid,
+     * expect value, summed score and peptide sequence.
+     */
+    private static final String PROTEIN = "<protein expect=\"%4$s\" id=\"%1$s\" uid=\"%3$s\" label=\"%2$s\" sumI=\"%5$s\">\n"
+            + "<note label=\"description\">%2$s description</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"20\">%6$s\n"
+            + "<domain id=\"%1$s.1\" start=\"1\" end=\"%7$d\" expect=\"1e-3\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"%6$s\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n";
+
+    /**
+     * Test that a protein found in several model groups is stored once, with
+     * the values of its first occurrence, and that all its occurrences are
+     * kept.
+     */
+    public void testDeduplication() throws Exception {
+        XTandemFile xTandemFile = parse();
+        assertEquals(Arrays.asList("sp|A|A", "sp|B|B", "sp|C|C", "sp|D|D"), xTandemFile.getXTandemParser().getProteinIDList());
+        ProteinMap proteinMap = xTandemFile.getProteinMap();
+
+        Protein protein = proteinMap.getProtein("sp|A|A");
+        assertEquals("11", protein.getUID());
+        assertEquals(-3.0, protein.getExpectValue(), 0);
+        assertEquals(4.0, protein.getSummedScore(), 0);
+        assertEquals("sp|A|A description", protein.getDescription());
+
+        assertEquals(2, protein.getNumberOfOccurrences());
+        ProteinOccurrences occurrences = protein.getOccurrences();
+        assertEquals(1, occurrences.getSpectrumNumber(0));
+        assertEquals("1.1", occurrences.getID(0));
+        assertEquals(2, occurrences.getSpectrumNumber(1));
+        assertEquals("2.1", occurrences.getID(1));
+        assertEquals("12", occurrences.getUID(1));
+        assertEquals(-5.0, occurrences.getExpectValue(1), 0);
+        assertEquals(6.0, occurrences.getSummedScore(1), 0);
+
+        assertEquals(1, proteinMap.getProtein("sp|C|C").getNumberOfOccurrences());
+        assertEquals(2, proteinMap.getProtein("sp|D|D").getNumberOfOccurrences());
+    }
+
+    /**
+     * Test that the proteins with the same peptide sequences share a group,
+     * and that a protein whose peptides are a subset of, or overlap, those of
+     * another protein gets its own group.
+     */
+    public void testGroups() throws Exception {
+        ProteinMap proteinMap = parse().getProteinMap();
+        List<ProteinGroup> groups = proteinMap.getProteinGroups();
+        assertEquals(3, groups.size());
+
+        assertEquals(Arrays.asList("sp|A|A", "sp|B|B"), Arrays.asList(groups.get(0).getProteinKeys()));
+        assertEquals(Arrays.asList("ELVISK", "PEPTIDEK"), Arrays.asList(groups.get(0).getPeptideSequences()));
+        assertEquals(Arrays.asList("sp|C|C"), Arrays.asList(groups.get(1).getProteinKeys()));
+        assertEquals(Arrays.asList("ELVISK"), Arrays.asList(groups.get(1).getPeptideSequences()));
+        assertEquals(Arrays.asList("sp|D|D"), Arrays.asList(groups.get(2).getProteinKeys()));
+        assertEquals(Arrays.asList("ELVISK", "NESTEDK"), Arrays.asList(groups.get(2).getPeptideSequences()));
+
+        assertSame(groups.get(0), proteinMap.getProteinGroup("sp|B|B"));
+        assertSame(groups.get(2), proteinMap.getProteinGroup("sp|D|D"));
+        assertNull(proteinMap.getProteinGroup("sp|E|E"));
+    }
+
+    /**
+     * Test that protein expect values and summed scores that are not numbers
+     * are read as missing, by the standard parser and by the tokenizer.
+     */
+    public void testInvalidScores() throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                + String.format(GROUP, 1, getProtein("1.1", "sp|A|A", "11", "n/a", "n/a", "PEPTIDEK"))
+                + "</bioml>\n";
+        File file = File.createTempFile("proteins", ".xml");
+        try {
+            OutputStream output = new FileOutputStream(file);
+            try {
+                output.write(content.getBytes("UTF-8"));
+            } finally {
+                output.close();
+            }
+            XTandemParserOptions options = new XTandemParserOptions();
+            options.setMapped(true);
+            XTandemFile mappedFile = new XTandemFile(file, options);
+            assertTrue(mappedFile.getXTandemParser().isMappedParse());
+            XTandemFile[] xTandemFiles = {new XTandemFile(new ByteArrayInputStream(content.getBytes("UTF-8")), "test.xml"), mappedFile};
+            for (XTandemFile xTandemFile : xTandemFiles) {
+                Protein protein = xTandemFile.getProteinMap().getProtein("sp|A|A");
+                assertNull(protein.getExpectValue());
+                assertNull(protein.getSummedScore());
+                assertTrue(Double.isNaN(protein.getOccurrences().getExpectValue(0)));
+                assertTrue(Double.isNaN(protein.getOccurrences().getSummedScore(0)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Parses the test file: the proteins A and B are identified by PEPTIDEK
+     * and ELVISK, C by ELVISK only, and D by ELVISK and NESTEDK.
+     *
+     * @return the parsed file
+     * @throws Exception if the file could not be parsed
+     */
+    private XTandemFile parse() throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                + String.format(GROUP, 1, getProtein("1.1", "sp|A|A", "11", "-3.0", "4.0", "PEPTIDEK")
+                + getProtein("1.2", "sp|B|B", "21", "-3.0", "4.0", "PEPTIDEK"))
+                + String.format(GROUP, 2, getProtein("2.1", "sp|A|A", "12", "-5.0", "6.0", "ELVISK")
+                + getProtein("2.2", "sp|B|B", "22", "-5.0", "6.0", "ELVISK")
+                + getProtein("2.3", "sp|C|C", "31", "-5.0", "6.0", "ELVISK")
+                + getProtein("2.4", "sp|D|D", "41", "-5.0", "6.0", "ELVISK"))
+                + String.format(GROUP, 3, getProtein("3.1", "sp|D|D", "42", "-2.0", "3.0", "NESTEDK"))
+                + "</bioml>\n";
+        return new XTandemFile(new ByteArrayInputStream(content.getBytes("UTF-8")), "test.xml");
+    }
+
+    /**
+     * Returns a protein element with one domain.
+     *
+     * @param aId the protein id
+     * @param aLabel the protein label
+     * @param aUid the protein uid
+     * @param aExpect the protein expect value
+     * @param aSumI the protein summed score
+     * @param aSequence the sequence of the domain
+     * @return the protein element
+     */
+    private String getProtein(String aId, String aLabel, String aUid, String aExpect, String aSumI, String aSequence) {
+        return String.format(PROTEIN, aId, aLabel, aUid, aExpect, aSumI, aSequence, aSequence.length());
+    }
+}
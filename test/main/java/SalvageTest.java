@@ -0,0 +1,106 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.SalvageReport;
+import de.proteinms.xtandemparser.parser.XTandemParser;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import org.xml.sax.SAXException;
+
+public class SalvageTest extends TestCase {
+
+    /**
+     * The beginning of the test files.
+     */
+    private static final String HEADER = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n";
+    /**
+     * A model group, %d being replaced by the group id.
+     */
+    private static final String MODEL = "<group id=\"%d\" mh=\"900.5\" z=\"2\" expect=\"8.4e-02\" label=\"sp|P2|B\" type=\"model\">\n"
+            + "<protein expect=\"-2.0\" id=\"%<d.1\" uid=\"12\" label=\"sp|P2|B\" sumI=\"4.1\">\n"
+            + "<peptide start=\"1\" end=\"20\">PEPTIDEK\n"
+            + "<domain id=\"%<d.1.1\" start=\"1\" end=\"8\" expect=\"8.4e-02\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"PEPTIDEK\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "</group>\n";
+
+    /**
+     * Test that the complete model groups of a truncated file are kept and
+     * that the incomplete group is reported.
+     */
+    public void testTruncatedFile() throws Exception {
+        String content = HEADER + String.format(MODEL, 1) + String.format(MODEL, 2);
+        String truncated = content + String.format(MODEL, 3).substring(0, 150);
+
+        XTandemParser parser = new XTandemParser(new ByteArrayInputStream(truncated.getBytes("UTF-8")), getSalvageOptions());
+        SalvageReport report = parser.getSalvageReport();
+        assertFalse(report.isComplete());
+        assertEquals(2, report.getNumberOfModelGroups());
+        assertEquals(2, parser.getNumberOfSpectra());
+        assertTrue(report.getDiscardedGroup().startsWith("group id=\"3\""));
+        assertEquals(truncated.split("\n").length, report.getLineNumber());
+        assertNotNull(report.getReason());
+        assertTrue(report.getParameterGroups().isEmpty());
+
+        parser = new XTandemParser(new ByteArrayInputStream((content + "</bioml>\n").getBytes("UTF-8")), getSalvageOptions());
+        assertTrue(parser.getSalvageReport().isComplete());
+        assertEquals(2, parser.getNumberOfSpectra());
+        assertNull(parser.getSalvageReport().getDiscardedGroup());
+    }
+
+    /**
+     * Test that a truncated file read from the disk is salvaged, by the
+     * parser and by the XTandemFile, mapped or not.
+     */
+    public void testTruncatedFileOnDisk() throws Exception {
+        String truncated = HEADER + String.format(MODEL, 1) + String.format(MODEL, 2) + String.format(MODEL, 3).substring(0, 150);
+        File file = File.createTempFile("salvage", ".xml");
+        try {
+            OutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(truncated.getBytes("UTF-8"));
+            } finally {
+                outputStream.close();
+            }
+
+            XTandemParserOptions options = getSalvageOptions();
+            XTandemParser parser = new XTandemParser(file, options);
+            assertFalse(parser.getSalvageReport().isComplete());
+            assertEquals(2, parser.getNumberOfSpectra());
+
+            options.setSkipDetails(true);
+            options.setMapped(true);
+            options.setCompact(true);
+            XTandemFile xTandemFile = new XTandemFile(file, options);
+            assertFalse(xTandemFile.getSalvageReport().isComplete());
+            assertEquals(2, xTandemFile.getXTandemParser().getNumberOfSpectra());
+            assertFalse(xTandemFile.getXTandemParser().isMappedParse());
+
+            try {
+                new XTandemParser(file, false, null);
+                fail("A truncated file is only parsed in salvage mode.");
+            } catch (SAXException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns the options of the salvage mode.
+     *
+     * @return the parsing options
+     */
+    private XTandemParserOptions getSalvageOptions() {
+        XTandemParserOptions options = new XTandemParserOptions();
+        options.setSalvage(true);
+        return options;
+    }
+}
@@ -0,0 +1,124 @@
+package main.java;
+
+import de.proteinms.xtandemparser.parser.XTandemFilter;
+import de.proteinms.xtandemparser.parser.XTandemParser;
+import de.proteinms.xtandemparser.parser.XTandemParserOptions;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+public class StreamInputTest extends TestCase {
+
+    /**
+     * A complete result file with one model group.
+     */
+    private static final String CONTENT = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+            + "<group id=\"1\" mh=\"900.5\" z=\"2\" expect=\"8.4e-02\" label=\"sp|P2|B\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "<protein expect=\"-2.0\" id=\"1.1\" uid=\"12\" label=\"sp|P2|B\" sumI=\"4.1\">\n"
+            + "<peptide start=\"1\" end=\"20\">PEPTIDEK\n"
+            + "<domain id=\"1.1.1\" start=\"1\" end=\"8\" expect=\"8.4e-02\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"PEPTIDEK\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "</group>\n"
+            + "</bioml>\n";
+
+    /**
+     * Test that the stream given to the parser is not closed, whether the file
+     * is parsed or salvaged.
+     */
+    public void testStreamNotClosed() throws Exception {
+        ClosingTrackingStream stream = new ClosingTrackingStream(CONTENT.getBytes("UTF-8"));
+        XTandemParser parser = new XTandemParser(stream, false);
+        assertEquals(1, parser.getNumberOfSpectra());
+        assertFalse(stream.isClosed());
+
+        XTandemParserOptions options = new XTandemParserOptions();
+        options.setSalvage(true);
+        stream = new ClosingTrackingStream(CONTENT.getBytes("UTF-8"));
+        parser = new XTandemParser(stream, options);
+        assertEquals(1, parser.getNumberOfSpectra());
+        assertFalse(stream.isClosed());
+    }
+
+    /**
+     * Test that the channel given to the parser is not closed.
+     */
+    public void testChannelNotClosed() throws Exception {
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(CONTENT.getBytes("UTF-8")));
+        XTandemParser parser = new XTandemParser(channel, false);
+        assertEquals(1, parser.getNumberOfSpectra());
+        assertTrue(channel.isOpen());
+    }
+
+    /**
+     * Test that the options are applied to the files read from a channel or
+     * from memory.
+     */
+    public void testOptions() throws Exception {
+        byte[] bytes = CONTENT.getBytes("UTF-8");
+        XTandemFilter filter = new XTandemFilter();
+        filter.setMaxSpectrumExpect(1e-3);
+        XTandemParserOptions options = new XTandemParserOptions(false, filter);
+
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(bytes));
+        assertEquals(0, new XTandemParser(channel, options).getNumberOfSpectra());
+        assertTrue(channel.isOpen());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertEquals(0, new XTandemParser(buffer, options).getNumberOfSpectra());
+        assertEquals(0, buffer.position());
+
+        options = new XTandemParserOptions();
+        options.setSalvage(true);
+        options.setCompact(true);
+        byte[] truncated = CONTENT.substring(0, CONTENT.length() - 10).getBytes("UTF-8");
+        XTandemFile xTandemFile = new XTandemFile(Channels.newChannel(new ByteArrayInputStream(truncated)), "test.xml", options);
+        assertEquals(1, xTandemFile.getSpectraNumber());
+        assertTrue(xTandemFile.isTrimmed());
+        assertNotNull(xTandemFile.getXTandemParser().getSalvageReport());
+        xTandemFile = new XTandemFile(ByteBuffer.wrap(truncated), "test.xml", options);
+        assertEquals(1, xTandemFile.getSpectraNumber());
+        assertTrue(xTandemFile.isTrimmed());
+        assertEquals("test.xml", xTandemFile.getFileName());
+    }
+
+    /**
+     * A stream remembering whether it was closed.
+     */
+    private static class ClosingTrackingStream extends ByteArrayInputStream {
+
+        /**
+         * True if the stream was closed.
+         */
+        private boolean iClosed = false;
+
+        /**
+         * Constructor gets the bytes to read.
+         *
+         * @param aBytes the bytes to read
+         */
+        public ClosingTrackingStream(byte[] aBytes) {
+            super(aBytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            iClosed = true;
+            super.close();
+        }
+
+        /**
+         * Returns true if the stream was closed.
+         *
+         * @return true if the stream was closed
+         */
+        public boolean isClosed() {
+            return iClosed;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package main.java;
+
+import de.proteinms.xtandemparser.interfaces.Modification;
+import de.proteinms.xtandemparser.xtandem.Domain;
+import de.proteinms.xtandemparser.xtandem.Peptide;
+import de.proteinms.xtandemparser.xtandem.Protein;
+import de.proteinms.xtandemparser.xtandem.Spectrum;
+import de.proteinms.xtandemparser.xtandem.XTandemFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrimmedSerializationTest extends TestCase {
+
+    /**
+     * A protein with one domain, the values being the protein id, label,
+     * peptide sequence, domain start and modifications of the domain.
+     */
+    private static final String PROTEIN = "<protein expect=\"-3.0\" id=\"%1$s\" uid=\"1\" label=\"%2$s\" sumI=\"4.0\">\n"
+            + "<note label=\"description\">%2$s description</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"30\">%3$s\n"
+            + "<domain id=\"%1$s.1\" start=\"%4$d\" end=\"%5$d\" expect=\"1e-3\" mh=\"1000.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"MK\" post=\"SS\" seq=\"%3$s\" missed_cleavages=\"1\">\n"
+            + "%6$s"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n";
+    /**
+     * A model group, the values being the group id and the proteins.
+     */
+    private static final String GROUP = "<group id=\"%1$d\" mh=\"1000.5\" z=\"2\" rt=\"1.5\" expect=\"1e-3\" label=\"x\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "%2$s"
+            + "</group>\n";
+    /**
+     * The parameter groups, with a fixed modification of the cysteines.
+     */
+    private static final String PARAMETERS = "<group label=\"input parameters\" type=\"parameters\">\n"
+            + "<note type=\"input\" label=\"residue, modification mass\">57.021@C</note>\n"
+            + "<note type=\"input\" label=\"spectrum, path\">test.mgf</note>\n"
+            + "</group>\n"
+            + "<group label=\"performance parameters\" type=\"parameters\">\n"
+            + "<note label=\"process, version\">x! tandem</note>\n"
+            + "</group>\n";
+
+    /**
+     * Test that a trimmed file read back has the same spectra, proteins,
+     * peptides, domains and modifications, and that the domains sharing a
+     * hit still share it.
+     */
+    public void testRoundTrip() throws Exception {
+        String content = "<?xml version=\"1.0\"?>\n<bioml label=\"models from 'test.mgf'\">\n"
+                + String.format(GROUP, 1, getProtein("1.1", "sp|A|A", "ACDEFGHIK", 11, "<aa type=\"C\" at=\"12\" modified=\"57.021\" />\n")
+                + getProtein("1.2", "sp|B|B", "ACDEFGHIK", 11, "<aa type=\"C\" at=\"12\" modified=\"57.021\" />\n"))
+                + String.format(GROUP, 2, getProtein("2.1", "sp|A|A", "PEPTMIDEK", 3, "<aa type=\"M\" at=\"7\" modified=\"15.995\" />\n"))
+                + PARAMETERS
+                + "</bioml>\n";
+        XTandemFile xTandemFile = new XTandemFile(new ByteArrayInputStream(content.getBytes("UTF-8")), "test.xml");
+        xTandemFile.getSpectraList();
+        xTandemFile.trim();
+        XTandemFile readFile = serialize(xTandemFile);
+
+        assertTrue(readFile.isTrimmed());
+        assertEquals(2, readFile.getSpectraNumber());
+        assertEquals("x! tandem", readFile.getPerformParameters().getProcVersion());
+        for (int i = 1; i <= 2; i++) {
+            Spectrum spectrum = xTandemFile.getSpectrum(i);
+            Spectrum readSpectrum = readFile.getSpectrum(i);
+            assertEquals(spectrum.getSpectrumId(), readSpectrum.getSpectrumId());
+            assertEquals(spectrum.getPrecursorMh(), readSpectrum.getPrecursorMh(), 0);
+            assertEquals(spectrum.getPrecursorCharge(), readSpectrum.getPrecursorCharge());
+            assertEquals(spectrum.getPrecursorRetentionTime(), readSpectrum.getPrecursorRetentionTime());
+            assertEquals(spectrum.getLabel(), readSpectrum.getLabel());
+            assertEquals(spectrum.getSummedScore(), readSpectrum.getSummedScore(), 0);
+
+            assertEquals(xTandemFile.getPeptideMap().getNumberOfPeptides(i), readFile.getPeptideMap().getNumberOfPeptides(i));
+            for (int p = 1; p <= xTandemFile.getPeptideMap().getNumberOfPeptides(i); p++) {
+                assertEqualPeptides(xTandemFile, readFile, xTandemFile.getPeptideMap().getPeptideByIndex(i, p),
+                        readFile.getPeptideMap().getPeptideByIndex(i, p));
+            }
+        }
+
+        for (String proteinID : new String[]{"sp|A|A", "sp|B|B"}) {
+            Protein protein = xTandemFile.getProteinMap().getProtein(proteinID);
+            Protein readProtein = readFile.getProteinMap().getProtein(proteinID);
+            assertEquals(protein.getLabel(), readProtein.getLabel());
+            assertEquals(protein.getDescription(), readProtein.getDescription());
+            assertEquals(protein.getExpectValue(), readProtein.getExpectValue());
+            assertEquals(protein.getNumberOfOccurrences(), readProtein.getNumberOfOccurrences());
+            assertEquals(xTandemFile.getDomainsForProtein(proteinID).size(), readFile.getDomainsForProtein(proteinID).size());
+        }
+
+        Domain domainA = readFile.getPeptideMap().getPeptideByIndex(1, 1).getDomains().get(0);
+        Domain domainB = readFile.getPeptideMap().getPeptideByIndex(1, 2).getDomains().get(0);
+        assertEquals(xTandemFile.getPeptideMap().getPeptideByIndex(1, 1).getDomains().get(0).getPeptideHit()
+                == xTandemFile.getPeptideMap().getPeptideByIndex(1, 2).getDomains().get(0).getPeptideHit(),
+                domainA.getPeptideHit() == domainB.getPeptideHit());
+        assertEquals("sp|B|B", domainB.getProteinKey());
+        assertEquals(1, readFile.getModificationMap().getFixedModifications(domainB.getDomainKey()).size());
+        assertEquals(1, readFile.getModificationMap().getAllVariableModifications().size());
+    }
+
+    /**
+     * Checks that the two peptides, their domains and their modifications are
+     * equal.
+     *
+     * @param aXTandemFile the file of the expected peptide
+     * @param aReadFile the file of the actual peptide
+     * @param aExpected the expected peptide
+     * @param aActual the actual peptide
+     */
+    private void assertEqualPeptides(XTandemFile aXTandemFile, XTandemFile aReadFile, Peptide aExpected, Peptide aActual) {
+        assertEquals(aExpected.getPeptideID(), aActual.getPeptideID());
+        assertEquals(aExpected.getSpectrumNumber(), aActual.getSpectrumNumber());
+        assertEquals(aExpected.getStart(), aActual.getStart());
+        assertEquals(aExpected.getEnd(), aActual.getEnd());
+        assertEquals(aExpected.getSequence(), aActual.getSequence());
+        assertEquals(aExpected.getFastaFilePath(), aActual.getFastaFilePath());
+        List<Domain> domains = aExpected.getDomains();
+        assertEquals(domains.size(), aActual.getDomains().size());
+        for (int d = 0; d < domains.size(); d++) {
+            Domain domain = domains.get(d);
+            Domain readDomain = aActual.getDomains().get(d);
+            assertEquals(domain.getDomainKey(), readDomain.getDomainKey());
+            assertEquals(domain.getDomainID(), readDomain.getDomainID());
+            assertEquals(domain.getProteinKey(), readDomain.getProteinKey());
+            assertEquals(domain.getDomainSequence(), readDomain.getDomainSequence());
+            assertEquals(domain.getDomainStart(), readDomain.getDomainStart());
+            assertEquals(domain.getDomainEnd(), readDomain.getDomainEnd());
+            assertEquals(domain.getUpFlankSequence(), readDomain.getUpFlankSequence());
+            assertEquals(domain.getDownFlankSequence(), readDomain.getDownFlankSequence());
+            assertEquals(domain.getDomainExpect(), readDomain.getDomainExpect(), 0);
+            assertEquals(domain.getDomainHyperScore(), readDomain.getDomainHyperScore(), 0);
+            assertEquals(domain.getMissedCleavages(), readDomain.getMissedCleavages());
+            assertEqualModifications(aXTandemFile.getModificationMap().getFixedModifications(domain.getDomainKey()),
+                    aReadFile.getModificationMap().getFixedModifications(domain.getDomainKey()));
+            assertEqualModifications(aXTandemFile.getModificationMap().getVariableModifications(domain.getDomainKey()),
+                    aReadFile.getModificationMap().getVariableModifications(domain.getDomainKey()));
+        }
+    }
+
+    /**
+     * Checks that the two lists hold the same modifications.
+     *
+     * @param aExpected the expected modifications
+     * @param aActual the actual modifications
+     */
+    private void assertEqualModifications(ArrayList<Modification> aExpected, ArrayList<Modification> aActual) {
+        assertEquals(aExpected.size(), aActual.size());
+        for (int m = 0; m < aExpected.size(); m++) {
+            assertEquals(aExpected.get(m).getName(), aActual.get(m).getName());
+            assertEquals(aExpected.get(m).getMass(), aActual.get(m).getMass(), 0);
+            assertEquals(aExpected.get(m).getLocation(), aActual.get(m).getLocation());
+            assertEquals(aExpected.get(m).getNumber(), aActual.get(m).getNumber());
+            assertEquals(aExpected.get(m).isFixed(), aActual.get(m).isFixed());
+        }
+    }
+
+    /**
+     * Serializes the given file and reads it back.
+     *
+     * @param aXTandemFile the file
+     * @return the file read back
+     * @throws Exception if the file could not be serialized
+     */
+    private XTandemFile serialize(XTandemFile aXTandemFile) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(aXTandemFile);
+        output.close();
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            return (XTandemFile) input.readObject();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns a protein element with one domain.
+     *
+     * @param aId the protein id
+     * @param aLabel the protein label
+     * @param aSequence the sequence of the domain
+     * @param aStart the start of the domain
+     * @param aModifications the modifications of the domain
+     * @return the protein element
+     */
+    private String getProtein(String aId, String aLabel, String aSequence, int aStart, String aModifications) {
+        return String.format(PROTEIN, aId, aLabel, aSequence, aStart, aStart + aSequence.length() - 1, aModifications);
+    }
+}
@@ -0,0 +1,251 @@
+package main.java;
+
+import com.compomics.util.waiting.WaitingHandler;
+import de.proteinms.xtandemparser.parser.XTandemBatchLoader;
+import de.proteinms.xtandemparser.parser.XTandemIdfileReader;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class XTandemBatchLoaderTest extends TestCase {
+
+    /**
+     * One megabyte.
+     */
+    private static final long MEGABYTE = 1024 * 1024;
+    /**
+     * The temporary files of the test.
+     */
+    private ArrayList<File> iFiles = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() {
+        for (File file : iFiles) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that the estimate of the heap per file byte must be positive.
+     */
+    public void testHeapPerFileByte() {
+        XTandemBatchLoader loader = new XTandemBatchLoader(2, 10 * MEGABYTE);
+        for (double value : new double[]{0, -1, Double.NaN}) {
+            try {
+                loader.setHeapPerFileByte(value);
+                fail("The heap per file byte " + value + " was accepted.");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(XTandemBatchLoader.DEFAULT_HEAP_PER_FILE_BYTE, loader.getHeapPerFileByte(), 0);
+        loader.setHeapPerFileByte(0.5);
+        assertEquals(0.5, loader.getHeapPerFileByte(), 0);
+    }
+
+    /**
+     * Test that the files parsed at the same time fit in the memory budget,
+     * and that a file larger than the budget is parsed alone.
+     */
+    public void testBudget() throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicBoolean largeFileAlone = new AtomicBoolean(true);
+        final File largeFile = createFile(5 * MEGABYTE);
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 6; i++) {
+            files.add(createFile(MEGABYTE));
+        }
+        files.add(3, largeFile);
+
+        // every small file reserves 4 MB of the 10 MB budget
+        XTandemBatchLoader loader = new XTandemBatchLoader(4, 10 * MEGABYTE) {
+            @Override
+            protected XTandemIdfileReader createReader(File aFile) throws Exception {
+                int count = active.incrementAndGet();
+                synchronized (maxActive) {
+                    maxActive.set(Math.max(maxActive.get(), count));
+                }
+                if (aFile == largeFile && count != 1) {
+                    largeFileAlone.set(false);
+                }
+                Thread.sleep(50);
+                active.decrementAndGet();
+                return null;
+            }
+        };
+        loader.setHeapPerFileByte(4);
+        RecordingListener listener = new RecordingListener(false);
+        loader.load(files, listener, null);
+
+        assertEquals(7, listener.iLoaded.size());
+        assertEquals(0, listener.iFailed.size());
+        assertEquals(2, maxActive.get());
+        assertTrue(largeFileAlone.get());
+    }
+
+    /**
+     * Test that a canceled run returns while the next file waits for the
+     * budget, without starting the files left.
+     */
+    public void testCancellation() throws Exception {
+        final AtomicBoolean canceled = new AtomicBoolean();
+        final AtomicInteger started = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 3; i++) {
+            files.add(createFile(MEGABYTE));
+        }
+
+        // every file reserves the whole budget, the second file waits for the
+        // first one, which never ends unless interrupted
+        XTandemBatchLoader loader = new XTandemBatchLoader(2, 2 * MEGABYTE) {
+            @Override
+            protected XTandemIdfileReader createReader(File aFile) throws Exception {
+                started.incrementAndGet();
+                canceled.set(true);
+                release.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        };
+        loader.setHeapPerFileByte(4);
+        RecordingListener listener = new RecordingListener(false);
+        long start = System.currentTimeMillis();
+        loader.load(files, listener, getWaitingHandler(canceled, new AtomicInteger()));
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(1, started.get());
+        assertEquals(0, listener.iLoaded.size());
+        assertEquals(Collections.singletonList(files.get(0)), listener.iFailed);
+        release.countDown();
+    }
+
+    /**
+     * Test that the exceptions thrown by the listener do not stop the loading
+     * of the other files.
+     */
+    public void testListenerExceptions() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 4; i++) {
+            files.add(createFile(MEGABYTE));
+        }
+        XTandemBatchLoader loader = new XTandemBatchLoader(1, 100 * MEGABYTE) {
+            @Override
+            protected XTandemIdfileReader createReader(File aFile) throws Exception {
+                if (aFile.equals(iFiles.get(1))) {
+                    throw new IOException("Not an X!Tandem file.");
+                }
+                return null;
+            }
+        };
+        RecordingListener listener = new RecordingListener(true);
+        AtomicInteger progress = new AtomicInteger();
+        loader.load(files, listener, getWaitingHandler(new AtomicBoolean(), progress));
+
+        assertEquals(3, listener.iLoaded.size());
+        assertEquals(Collections.singletonList(files.get(1)), listener.iFailed);
+        assertEquals(4, progress.get());
+    }
+
+    /**
+     * Creates a temporary file of the given length.
+     *
+     * @param aLength the length of the file
+     * @return the file
+     * @throws IOException if the file could not be created
+     */
+    private File createFile(long aLength) throws IOException {
+        File file = File.createTempFile("batch", ".xml");
+        iFiles.add(file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(aLength);
+        } finally {
+            randomAccessFile.close();
+        }
+        return file;
+    }
+
+    /**
+     * Returns a waiting handler canceled through the given flag and counting
+     * the secondary progress, the other methods doing nothing.
+     *
+     * @param aCanceled the cancellation flag
+     * @param aProgress the secondary progress counter
+     * @return the waiting handler
+     */
+    private WaitingHandler getWaitingHandler(final AtomicBoolean aCanceled, final AtomicInteger aProgress) {
+        return (WaitingHandler) Proxy.newProxyInstance(WaitingHandler.class.getClassLoader(), new Class[]{WaitingHandler.class},
+                new InvocationHandler() {
+                    public Object invoke(Object aProxy, Method aMethod, Object[] aArguments) {
+                        if (aMethod.getName().equals("isRunCanceled")) {
+                            return aCanceled.get();
+                        } else if (aMethod.getName().equals("increaseSecondaryProgressCounter")) {
+                            aProgress.incrementAndGet();
+                        } else if (aMethod.getReturnType() == boolean.class) {
+                            return false;
+                        } else if (aMethod.getReturnType() == int.class) {
+                            return 0;
+                        } else if (aMethod.getReturnType() == double.class) {
+                            return 0.0;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * A listener recording the loaded and failed files.
+     */
+    private static class RecordingListener implements XTandemBatchLoader.BatchListener {
+
+        /**
+         * The loaded files.
+         */
+        private final List<File> iLoaded = Collections.synchronizedList(new ArrayList<File>());
+        /**
+         * The files that could not be loaded.
+         */
+        private final List<File> iFailed = Collections.synchronizedList(new ArrayList<File>());
+        /**
+         * If true, the methods throw an exception after recording the file.
+         */
+        private final boolean iThrow;
+
+        /**
+         * Constructor for a listener.
+         *
+         * @param aThrow if true, the methods throw an exception after
+         * recording the file
+         */
+        public RecordingListener(boolean aThrow) {
+            iThrow = aThrow;
+        }
+
+        public void fileLoaded(File aFile, XTandemIdfileReader aReader) {
+            iLoaded.add(aFile);
+            if (iThrow) {
+                throw new IllegalStateException("Listener failure for a loaded file.");
+            }
+        }
+
+        public void fileFailed(File aFile, Exception aException) {
+            iFailed.add(aFile);
+            if (iThrow) {
+                throw new IllegalStateException("Listener failure for a failed file.");
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package main.java;
+
+import de.proteinms.xtandemparser.server.XTandemRegistry;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class XTandemRegistryTest extends TestCase {
+
+    /**
+     * One megabyte.
+     */
+    private static final long MEGABYTE = 1024 * 1024;
+    /**
+     * The test file: one spectrum identifying PEPTIDEK in the protein A.
+     */
+    private static final String CONTENT = "<?xml version=\"1.0\"?>\n"
+            + "<bioml xmlns:GAML=\"http://www.bioml.com/gaml/\" label=\"models from 'test.mgf'\">\n"
+            + "<group id=\"1\" mh=\"900.5\" z=\"2\" rt=\"1.0\" expect=\"1e-3\" label=\"sp|A|A\" type=\"model\" sumI=\"5.1\" maxI=\"1000\" fI=\"10\">\n"
+            + "<protein expect=\"-3.0\" id=\"1.1\" uid=\"1\" label=\"sp|A|A\" sumI=\"4.0\">\n"
+            + "<note label=\"description\">sp|A|A</note>\n"
+            + "<file type=\"peptide\" URL=\"db.fasta\"/>\n"
+            + "<peptide start=\"1\" end=\"8\">PEPTIDEK\n"
+            + "<domain id=\"1.1.1\" start=\"1\" end=\"8\" expect=\"1e-3\" mh=\"900.5\" delta=\"0.1\" hyperscore=\"15.0\" nextscore=\"10.1\" y_score=\"10.0\" y_ions=\"5\" b_score=\"5.0\" b_ions=\"3\" pre=\"[\" post=\"]\" seq=\"PEPTIDEK\" missed_cleavages=\"0\">\n"
+            + "</domain>\n"
+            + "</peptide>\n"
+            + "</protein>\n"
+            + "<group label=\"fragment ion mass spectrum\" type=\"support\">\n"
+            + "<GAML:trace id=\"1\" label=\"1.spectrum\" type=\"tandem mass spectrum\">\n"
+            + "<GAML:attribute type=\"M+H\">900.5</GAML:attribute>\n"
+            + "<GAML:attribute type=\"charge\">2</GAML:attribute>\n"
+            + "<GAML:Xdata label=\"1.spectrum\" units=\"MASSTOCHARGERATIO\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"4\">\n"
+            + "98.060 147.113 227.103 244.166\n</GAML:values></GAML:Xdata>\n"
+            + "<GAML:Ydata label=\"1.spectrum\" units=\"UNKNOWN\"><GAML:values byteorder=\"INTEL\" format=\"ASCII\" numvalues=\"4\">\n"
+            + "10 20 30 40\n</GAML:values></GAML:Ydata>\n"
+            + "</GAML:trace>\n"
+            + "</group>\n"
+            + "</group>\n"
+            + "</bioml>\n";
+    /**
+     * The directory of the test files and of the spill files.
+     */
+    private File iDirectory;
+    /**
+     * The test file.
+     */
+    private File iFile;
+    /**
+     * The registry, every file taking 0.4 MB of its 1 MB budget.
+     */
+    private XTandemRegistry iRegistry;
+
+    @Override
+    protected void setUp() throws Exception {
+        iDirectory = File.createTempFile("registry", "");
+        iDirectory.delete();
+        iDirectory.mkdir();
+        iFile = new File(iDirectory, "test.xml");
+        FileOutputStream outputStream = new FileOutputStream(iFile);
+        try {
+            outputStream.write(CONTENT.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        iRegistry = new XTandemRegistry(MEGABYTE);
+        iRegistry.setHeapPerFileByte(0.4 * MEGABYTE / iFile.length());
+        iRegistry.setOffHeapPeaks(true, iDirectory);
+    }
+
+    @Override
+    protected void tearDown() {
+        for (String name : iRegistry.getNames()) {
+            iRegistry.unload(name);
+        }
+        for (File file : iDirectory.listFiles()) {
+            file.delete();
+        }
+        iDirectory.delete();
+    }
+
+    /**
+     * Test that the least recently used files are evicted when a new file does
+     * not fit in the budget, and that their spill files are released.
+     */
+    public void testEvictionOrder() throws Exception {
+        iRegistry.load("a", iFile);
+        iRegistry.load("b", iFile);
+        assertEquals(2, getNumberOfSpillFiles());
+        Thread.sleep(1);
+        assertNotNull(iRegistry.get("a"));
+
+        iRegistry.load("c", iFile);
+        assertNotNull(iRegistry.get("a"));
+        assertNull(iRegistry.get("b"));
+        assertNotNull(iRegistry.get("c"));
+        assertEquals(2, getNumberOfSpillFiles());
+        assertTrue(iRegistry.getUsedMemory() <= iRegistry.getMemoryBudget());
+
+        Thread.sleep(1);
+        assertNotNull(iRegistry.get("c"));
+        iRegistry.load("d", iFile);
+        assertNull(iRegistry.get("a"));
+        assertNotNull(iRegistry.get("c"));
+        assertNotNull(iRegistry.get("d"));
+        assertEquals(2, getNumberOfSpillFiles());
+    }
+
+    /**
+     * Test that loading a file under a registered name replaces the file
+     * registered under this name and releases it.
+     */
+    public void testReplaceByName() throws Exception {
+        XTandemRegistry.Entry first = iRegistry.load("a", iFile);
+        XTandemRegistry.Entry second = iRegistry.load("a", iFile);
+        assertNotSame(first, second);
+        assertSame(second, iRegistry.get("a"));
+        assertEquals(1, iRegistry.getNames().size());
+        assertEquals(1, getNumberOfSpillFiles());
+        assertEquals(second.getSize(), iRegistry.getUsedMemory());
+        assertEquals("PEPTIDEK", second.getDomain("s1_p1_d1").getDomainSequence());
+    }
+
+    /**
+     * Test that unloading a file removes it and releases it.
+     */
+    public void testUnload() throws Exception {
+        iRegistry.load("a", iFile);
+        iRegistry.load("b", iFile);
+        assertEquals(2, getNumberOfSpillFiles());
+
+        assertTrue(iRegistry.unload("a"));
+        assertNull(iRegistry.get("a"));
+        assertNotNull(iRegistry.get("b"));
+        assertEquals(1, getNumberOfSpillFiles());
+        assertFalse(iRegistry.unload("a"));
+
+        assertTrue(iRegistry.unload("b"));
+        assertEquals(0, iRegistry.getUsedMemory());
+        assertEquals(0, getNumberOfSpillFiles());
+    }
+
+    /**
+     * Test that a file failing to load is not registered and does not block
+     * loading the file again.
+     */
+    public void testLoadFailure() throws Exception {
+        iRegistry.load("a", iFile);
+        iRegistry.setOffHeapPeaks(true, new File(iDirectory, "missing"));
+        try {
+            iRegistry.load("a", iFile);
+            fail("The file was loaded without spill directory.");
+        } catch (IOException e) {
+            // expected
+        }
+        assertNotNull(iRegistry.get("a"));
+        assertEquals(1, getNumberOfSpillFiles());
+
+        iRegistry.setOffHeapPeaks(true, iDirectory);
+        iRegistry.load("a", iFile);
+        assertEquals(1, getNumberOfSpillFiles());
+    }
+
+    /**
+     * Returns the number of spill files in the test directory.
+     *
+     * @return the number of spill files
+     * @throws IOException if the directory could not be listed
+     */
+    private int getNumberOfSpillFiles() throws IOException {
+        File[] files = iDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list " + iDirectory + ".");
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().startsWith("xtandem-peaks")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
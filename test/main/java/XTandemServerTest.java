@@ -0,0 +1,132 @@
+package main.java;
+
+import de.proteinms.xtandemparser.server.XTandemRegistry;
+import de.proteinms.xtandemparser.server.XTandemServer;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+public class XTandemServerTest extends TestCase {
+
+    /**
+     * The directory the clients may load files from.
+     */
+    private File iLoadDirectory;
+    /**
+     * A file outside of the load directory.
+     */
+    private File iOutsideFile;
+    /**
+     * The service.
+     */
+    private XTandemServer iServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        File directory = File.createTempFile("server", "");
+        directory.delete();
+        directory.mkdir();
+        iLoadDirectory = new File(directory, "load");
+        iLoadDirectory.mkdir();
+        iOutsideFile = new File(directory, "outside.xml");
+        FileOutputStream outputStream = new FileOutputStream(iOutsideFile);
+        try {
+            outputStream.write("<?xml version=\"1.0\"?>\n<bioml/>\n".getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        iServer = new XTandemServer(new XTandemRegistry(1024 * 1024), 0, 1);
+        iServer.setLoadDirectory(iLoadDirectory);
+        iServer.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        iServer.stop(0);
+        iOutsideFile.delete();
+        iLoadDirectory.delete();
+        iLoadDirectory.getParentFile().delete();
+    }
+
+    /**
+     * Test that the requests are only answered if their Host header names the
+     * loopback interface and their Origin header, if any, is a page of the
+     * loopback interface.
+     */
+    public void testCheckOrigin() throws Exception {
+        int port = iServer.getPort();
+        assertEquals(200, getStatus("GET /files HTTP/1.1\r\nHost: 127.0.0.1:" + port + "\r\n"));
+        assertEquals(200, getStatus("GET /files HTTP/1.1\r\nHost: localhost:" + port + "\r\n"));
+        assertEquals(200, getStatus("GET /files HTTP/1.1\r\nHost: [::1]:" + port + "\r\n"));
+        assertEquals(200, getStatus("GET /files HTTP/1.1\r\nHost: localhost\r\nOrigin: http://localhost:" + port + "\r\n"));
+
+        assertEquals(403, getStatus("GET /files HTTP/1.1\r\nHost: example.com:" + port + "\r\n"));
+        assertEquals(403, getStatus("GET /files HTTP/1.1\r\nHost: localhost.example.com\r\n"));
+        assertEquals(403, getStatus("GET /files HTTP/1.0\r\n"));
+        assertEquals(403, getStatus("GET /files HTTP/1.1\r\nHost: localhost\r\nOrigin: http://example.com\r\n"));
+        assertEquals(403, getStatus("GET /files HTTP/1.1\r\nHost: localhost\r\nOrigin: null\r\n"));
+        assertEquals(403, getStatus("POST /unload HTTP/1.1\r\nHost: localhost\r\nOrigin: https://example.com\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: 6\r\n", "name=a"));
+    }
+
+    /**
+     * Test that the files outside of the load directory cannot be loaded.
+     */
+    public void testLoadOutsideLoadDirectory() throws Exception {
+        String headers = "POST /load HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-www-form-urlencoded\r\n";
+        String[] paths = {"../outside.xml", "..%2Foutside.xml", "./../load/../outside.xml"};
+        for (String path : paths) {
+            String body = "path=" + path;
+            assertEquals(path, 403, getStatus(headers + "Content-Length: " + body.length() + "\r\n", body));
+        }
+        assertTrue(iServer.getRegistry().getNames().isEmpty());
+
+        String body = "path=missing.xml";
+        assertEquals(404, getStatus(headers + "Content-Length: " + body.length() + "\r\n", body));
+        assertEquals(405, getStatus("GET /load?path=missing.xml HTTP/1.1\r\nHost: localhost\r\n"));
+    }
+
+    /**
+     * Sends a request without body to the service and returns the status of
+     * the response.
+     *
+     * @param aHeaders the request line and headers
+     * @return the status of the response
+     * @throws IOException if the request could not be sent
+     */
+    private int getStatus(String aHeaders) throws IOException {
+        return getStatus(aHeaders, "");
+    }
+
+    /**
+     * Sends a request to the service and returns the status of the response.
+     *
+     * @param aHeaders the request line and headers
+     * @param aBody the request body
+     * @return the status of the response
+     * @throws IOException if the request could not be sent
+     */
+    private int getStatus(String aHeaders, String aBody) throws IOException {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), iServer.getPort());
+        try {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write((aHeaders + "Connection: close\r\n\r\n" + aBody).getBytes("UTF-8"));
+            outputStream.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String statusLine = reader.readLine();
+            if (statusLine == null) {
+                throw new IOException("No response.");
+            }
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        } finally {
+            socket.close();
+        }
+    }
+}